@@ -125,6 +125,8 @@ class BuildFileContext(AbstractContext):
         self._used_env_vars = {}
         self._diagnostics = []
         self.rules = {}
+        # Seconds spent evaluating globs, reported to Buck's parse cost ledger.
+        self.glob_time = 0.0
 
         self.project_root = project_root
         self.base_path = base_path
@@ -302,6 +304,7 @@ def glob(includes, excludes=None, include_dotfiles=False, build_env=None, search
     assert not isinstance(excludes, basestring), \
         "The excludes argument must be a list of strings."
 
+    start_time = time.time()
     if search_base is None:
         search_base = Path(build_env.dirname)
     mercurial_repo_info = load_mercurial_repo_info(build_env, search_base, allow_safe_import)
@@ -335,6 +338,7 @@ def glob(includes, excludes=None, include_dotfiles=False, build_env=None, search
             include_dotfiles,
             search_base,
             build_env.project_root)
+    build_env.glob_time += time.time() - start_time
     assert build_env.allow_empty_globs or results, (
         "glob(includes={includes}, excludes={excludes}, include_dotfiles={include_dotfiles}) " +
         "returned no results.  (allow_empty_globs is set to false in the Buck " +
@@ -1094,6 +1098,9 @@ class BuildFileProcessor(object):
         # Add in used environment variables as a special meta rule.
         values.append({"__env": build_env.used_env_vars})
 
+        # Add in parse statistics as a special meta rule.
+        values.append({"__stats": {"glob_time_micros": int(build_env.glob_time * 1000000)}})
+
         diagnostics.extend(build_env.diagnostics)
 
         return values
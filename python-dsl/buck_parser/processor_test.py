@@ -1220,7 +1220,7 @@ foo_rule(
             '{"values": [{"buck.base_path": "", "buck.type": "foo", "name": '
             '"foo", "options": {"baz": "blech", "foo": "bar"}, "srcs": [], '
             '"visibility": []}, {"__includes": ["BUCK"]}, {"__configs": {}}, '
-            '{"__env": {}}]}',
+            '{"__env": {}}, {"__stats": {"glob_time_micros": 0}}]}',
             result)
 
 if __name__ == '__main__':
@@ -17,6 +17,7 @@
 package com.facebook.buck.artifact_cache;
 
 import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.FileMaterializer;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
@@ -110,8 +111,12 @@ public class DirArtifactCache implements ArtifactCache {
         }
       }
 
-      // Now copy the artifact out.
-      filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.empty()), output.get());
+      // Now copy the artifact out. Fetched artifacts are only read, so they can even share the file
+      // of the cache entry.
+      filesystem.copyFile(
+          getPathForRuleKey(ruleKey, Optional.empty()),
+          output.get(),
+          FileMaterializer.Strategy.LINK_OR_CLONE);
 
       result =
           CacheResult.hit(name, CACHE_MODE, metadata.build(), filesystem.getFileSize(output.get()));
@@ -239,7 +244,7 @@ public class DirArtifactCache implements ArtifactCache {
     // as valid artifacts during subsequent buck runs.
     Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "artifact", TMP_EXTENSION);
     try {
-      filesystem.copyFile(output, tmp);
+      filesystem.copyFile(output, tmp, FileMaterializer.Strategy.CLONE);
       filesystem.move(tmp, artifactPath);
       bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
     } finally {
@@ -307,6 +307,10 @@ public abstract class AbstractCommand implements Command {
             params.getBuckConfig().getBooleanValue("test", "incl_no_location_classes", false))
         .setRuleKeyDiagnosticsMode(params.getBuckConfig().getRuleKeyDiagnosticsMode())
         .setConcurrencyLimit(getConcurrencyLimit(params.getBuckConfig()))
+        .setTrashFilesystem(
+            params.getBuckConfig().getDeleteOutputsInBackground()
+                ? Optional.of(params.getCell().getFilesystem())
+                : Optional.empty())
         .setPersistentWorkerPools(params.getPersistentWorkerPools());
   }
 
@@ -34,6 +34,7 @@ public class AuditCommand extends AbstractContainerCommand {
     @SubCommand(name = "flavors", impl = AuditFlavorsCommand.class),
     @SubCommand(name = "input", impl = AuditInputCommand.class),
     @SubCommand(name = "owner", impl = AuditOwnerCommand.class),
+    @SubCommand(name = "parse-cost", impl = AuditParseCostCommand.class),
     @SubCommand(name = "rules", impl = AuditRulesCommand.class),
     @SubCommand(name = "tests", impl = AuditTestsCommand.class),
   })
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.parser.ParseCost;
+import com.facebook.buck.parser.ParseCostLedger;
+import com.facebook.buck.util.ObjectMappers;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.PrintStream;
+import org.kohsuke.args4j.Option;
+
+/** Lists the build files that took the longest to parse, according to the parse cost ledger. */
+public class AuditParseCostCommand extends AbstractCommand {
+
+  @Option(name = "--limit", usage = "Maximum number of build files to list. Defaults to 20.")
+  private int limit = 20;
+
+  @Option(name = "--json", usage = "Output in JSON format")
+  private boolean generateJsonOutput;
+
+  @Override
+  public int runWithoutHelp(CommandRunnerParams params) throws IOException, InterruptedException {
+    ImmutableList<ParseCost> costs =
+        ParseCostLedger.readLedgerFile(params.getCell().getFilesystem());
+    if (costs.isEmpty()) {
+      params
+          .getBuckEventBus()
+          .post(
+              ConsoleEvent.severe(
+                  "No parse costs recorded in %s. Set parser.parse_cost_ledger to true and run "
+                      + "a command that parses build files first.",
+                  ParseCostLedger.getLedgerFile(params.getCell().getFilesystem())));
+      return 1;
+    }
+    ImmutableList<ParseCost> mostExpensive = costs.subList(0, Math.min(limit, costs.size()));
+
+    PrintStream stdOut = params.getConsole().getStdOut();
+    if (generateJsonOutput) {
+      ObjectMappers.WRITER.writeValue(stdOut, mostExpensive);
+      return 0;
+    }
+    stdOut.println("parse_ms\tglob_ms\tbytes\trules\tincludes\tbuild_file");
+    for (ParseCost cost : mostExpensive) {
+      stdOut.println(
+          String.format(
+              "%d\t%d\t%d\t%d\t%d\t%s",
+              cost.getParseTimeMicros() / 1000,
+              cost.getGlobTimeMicros() / 1000,
+              cost.getProcessedBytes(),
+              cost.getRuleCount(),
+              cost.getIncludeCount(),
+              cost.getBuildFile()));
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public String getShortDescription() {
+    return "List the build files that are the most expensive to parse.";
+  }
+}
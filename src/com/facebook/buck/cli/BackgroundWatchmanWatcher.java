@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.DefaultBuckEventBus;
+import com.facebook.buck.io.PathOrGlobMatcher;
+import com.facebook.buck.io.Watchman;
+import com.facebook.buck.io.WatchmanClient;
+import com.facebook.buck.io.WatchmanSubscription;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.timing.DefaultClock;
+import com.facebook.buck.util.Console;
+import com.facebook.buck.util.WatchmanOverflowEvent;
+import com.facebook.buck.util.WatchmanPathEvent;
+import com.facebook.buck.util.WatchmanWatcher;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.facebook.buck.util.cache.ProjectFileHashCache;
+import com.facebook.buck.util.cache.WatchedFileHashCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Processes file changes as soon as Watchman reports them, rather than when the next command
+ * starts, so that the caches of the daemon are already invalidated and the hashes of the changed
+ * files already recomputed by the time the next command runs.
+ *
+ * <p>Changes are processed exactly like at the start of a command: Watchman is queried with the
+ * cursors of the daemon and the changes are posted to its file event bus. The subscription only
+ * triggers this early, and commands still query Watchman when they start, finding little or nothing
+ * left to do. Changes are only processed while no command is running, so caches are never
+ * invalidated under a running command.
+ */
+final class BackgroundWatchmanWatcher implements WatchmanSubscription.Listener, Closeable {
+  private static final Logger LOG = Logger.get(BackgroundWatchmanWatcher.class);
+
+  /** Let bursts of changes (e.g. a rebase) settle before processing them. */
+  private static final long SETTLE_DELAY_MILLIS = 200;
+
+  /** How often to check whether the running command has finished while changes are pending. */
+  private static final long BUSY_RETRY_DELAY_MILLIS = 1000;
+
+  private final Daemon daemon;
+  private final WatchmanClient watchmanClient;
+  private final WatchmanWatcher watchmanWatcher;
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean processingScheduled = new AtomicBoolean(false);
+  private final Queue<WatchmanPathEvent> changedFiles = new ConcurrentLinkedQueue<>();
+  private volatile Optional<WatchmanSubscription> subscription = Optional.empty();
+
+  private BackgroundWatchmanWatcher(
+      Daemon daemon, WatchmanClient watchmanClient, WatchmanWatcher watchmanWatcher) {
+    this.daemon = daemon;
+    this.watchmanClient = watchmanClient;
+    this.watchmanWatcher = watchmanWatcher;
+    this.executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new MostExecutors.NamedThreadFactory("Watchman subscription processing"));
+  }
+
+  /**
+   * Subscribes to the changes under the cells of {@code rootCell} on behalf of {@code daemon}.
+   *
+   * @return the watcher, or nothing if Watchman couldn't be subscribed to.
+   */
+  static Optional<BackgroundWatchmanWatcher> start(
+      Daemon daemon, Cell rootCell, ImmutableSet<PathOrGlobMatcher> ignorePaths) {
+    Watchman watchman = rootCell.getWatchman();
+    if (!watchman.getTransportPath().isPresent()) {
+      return Optional.empty();
+    }
+    // The client of the Watchman object is closed along with the command which created it.
+    Optional<WatchmanClient> watchmanClient =
+        Watchman.connect(
+            watchman.getTransportPath().get(), Console.createNullConsole(), new DefaultClock());
+    if (!watchmanClient.isPresent()) {
+      return Optional.empty();
+    }
+    BackgroundWatchmanWatcher backgroundWatcher =
+        new BackgroundWatchmanWatcher(
+            daemon,
+            watchmanClient.get(),
+            new WatchmanWatcher(
+                watchman.getProjectWatches(),
+                daemon.getFileEventBus(),
+                ignorePaths,
+                watchman,
+                watchmanClient.get(),
+                daemon.getWatchmanCursor()));
+    daemon.getFileEventBus().register(backgroundWatcher);
+    backgroundWatcher.subscription =
+        backgroundWatcher.watchmanWatcher.subscribe(watchman, backgroundWatcher);
+    if (!backgroundWatcher.subscription.isPresent()) {
+      backgroundWatcher.close();
+      return Optional.empty();
+    }
+    LOG.info("Processing file changes in the background");
+    return Optional.of(backgroundWatcher);
+  }
+
+  @Override
+  public void onFilesChanged(Path cellPath) {
+    LOG.verbose("Watchman reported changes under %s", cellPath);
+    scheduleProcessing(SETTLE_DELAY_MILLIS);
+  }
+
+  @Override
+  public void onSubscriptionEnded() {
+    // Commands still process changes when they start, so this only loses the head start.
+    LOG.warn("Watchman subscription ended, file changes will be processed by the next command");
+  }
+
+  @Subscribe
+  public void onFileChange(WatchmanPathEvent event) {
+    if (event.getKind() != WatchmanPathEvent.Kind.DELETE) {
+      changedFiles.add(event);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  @Subscribe
+  public void onFileChange(WatchmanOverflowEvent event) {
+    // Everything is rehashed on demand after an overflow, don't second guess what will be needed.
+    changedFiles.clear();
+  }
+
+  private void scheduleProcessing(long delayMillis) {
+    if (processingScheduled.compareAndSet(false, true)) {
+      executor.schedule(this::processChanges, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void processChanges() {
+    // Changes reported from now on need another run.
+    processingScheduled.set(false);
+    // Only rehash the files changed since the last command or run, not those it already handled.
+    changedFiles.clear();
+    try (BuckEventBus eventBus = new DefaultBuckEventBus(new DefaultClock(), new BuildId())) {
+      if (!daemon.watchFileSystemIfIdle(eventBus, watchmanWatcher)) {
+        scheduleProcessing(BUSY_RETRY_DELAY_MILLIS);
+        return;
+      }
+      rehashChangedFiles();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to process file changes in the background");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void rehashChangedFiles() {
+    ImmutableMap.Builder<Path, ProjectFileHashCache> cachesByCellPathBuilder =
+        ImmutableMap.builder();
+    for (ProjectFileHashCache cache : daemon.getFileHashCaches()) {
+      if (cache instanceof WatchedFileHashCache) {
+        cachesByCellPathBuilder.put(cache.getFilesystem().getRootPath(), cache);
+      }
+    }
+    ImmutableMap<Path, ProjectFileHashCache> cachesByCellPath = cachesByCellPathBuilder.build();
+
+    int rehashed = 0;
+    WatchmanPathEvent event;
+    while ((event = changedFiles.poll()) != null) {
+      if (daemon.hasActiveCommands()) {
+        // The command hashes whatever it needs itself, don't compete with it.
+        changedFiles.clear();
+        break;
+      }
+      ProjectFileHashCache cache = cachesByCellPath.get(event.getCellPath());
+      Path path = event.getPath().normalize();
+      if (cache == null
+          || cache.isIgnored(path)
+          || !cache.willGet(path)
+          || !cache.getFilesystem().isFile(path)) {
+        continue;
+      }
+      try {
+        cache.get(path);
+        rehashed++;
+      } catch (IOException e) {
+        LOG.debug(e, "Failed to rehash %s", path);
+      }
+    }
+    LOG.debug("Rehashed %d changed files in the background", rehashed);
+  }
+
+  @Override
+  public void close() {
+    subscription.ifPresent(WatchmanSubscription::close);
+    daemon.getFileEventBus().unregister(this);
+    executor.shutdownNow();
+    try {
+      watchmanClient.close();
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to close Watchman client");
+    }
+  }
+}
@@ -43,6 +43,7 @@ import com.facebook.buck.util.AnsiEnvironmentChecking;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.PatternAndMessage;
+import com.facebook.buck.util.cache.DirectoryHashMode;
 import com.facebook.buck.util.cache.FileHashCacheMode;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
@@ -1070,6 +1071,36 @@ public class BuckConfig implements ConfigPathGetter {
     return getListWithoutComments("clean", "additional_paths");
   }
 
+  /** @return whether to keep file hashes in buck-out between runs of Buck. */
+  public boolean getPersistentFileHashCache() {
+    return getBooleanValue("build", "persistent_file_hash_cache", false);
+  }
+
+  /** @return whether to hash the inputs of a build in parallel before computing rule keys. */
+  public boolean getParallelFileHashing() {
+    return getBooleanValue("build", "parallel_file_hashing", false);
+  }
+
+  /** @return whether to only update the links which changed when rebuilding symlink trees. */
+  public boolean getIncrementalSymlinkTrees() {
+    return getBooleanValue("build", "incremental_symlink_trees", false);
+  }
+
+  /** @return whether to move deleted output directories to the trash to delete them later. */
+  public boolean getDeleteOutputsInBackground() {
+    return getBooleanValue("build", "delete_outputs_in_background", false);
+  }
+
+  /** @return whether to get the hashes of source files from Watchman. */
+  public boolean getWatchmanFileHashes() {
+    return getBooleanValue("build", "watchman_file_hashes", false);
+  }
+
+  /** @return whether to check the hashes of source files returned by Watchman. */
+  public boolean getCompareWatchmanFileHashes() {
+    return getBooleanValue("build", "compare_watchman_file_hashes", false);
+  }
+
   /** @return whether to enable new file hash cache engine. */
   public boolean getCompareFileHashCacheEngines() {
     return getBooleanValue("build", "compare_file_hash_cache_engines", false);
@@ -1081,6 +1112,11 @@ public class BuckConfig implements ConfigPathGetter {
         .orElse(FileHashCacheMode.DEFAULT);
   }
 
+  public DirectoryHashMode getDirectoryHashMode() {
+    return getEnum("build", "directory_hash_mode", DirectoryHashMode.class)
+        .orElse(DirectoryHashMode.DEFAULT);
+  }
+
   public Config getConfig() {
     return config;
   }
@@ -91,6 +91,7 @@ import com.facebook.buck.util.MoreExceptions;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.cache.ParallelFileHasher;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.versions.VersionException;
 import com.google.common.base.Function;
@@ -102,6 +103,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.StringWriter;
@@ -114,7 +117,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.kohsuke.args4j.Argument;
@@ -506,6 +511,7 @@ public class BuildCommand extends AbstractCommand {
       }
     } else {
       graphs = createGraphs(params, commandThreadManager.getListeningExecutorService());
+      prefetchInputFileHashes(params, graphs.getTargetGraphForLocalBuild());
       exitCode =
           executeLocalBuild(
               params,
@@ -518,6 +524,38 @@ public class BuildCommand extends AbstractCommand {
     return exitCode;
   }
 
+  /**
+   * Hashes the inputs of all the targets being built on the file hashing pool, so that computing
+   * rule keys doesn't read them one at a time.
+   */
+  private void prefetchInputFileHashes(
+      CommandRunnerParams params, TargetGraphAndBuildTargets targetGraphAndBuildTargets)
+      throws InterruptedException {
+    ListeningExecutorService executor = params.getExecutors().get(ExecutorPool.FILE_HASHING);
+    if (executor == null || !params.getBuckConfig().getParallelFileHashing()) {
+      return;
+    }
+    long start = System.nanoTime();
+    ParallelFileHasher hasher = new ParallelFileHasher(executor);
+    List<ListenableFuture<?>> futures = new ArrayList<>();
+    try {
+      for (TargetNode<?, ?> node : targetGraphAndBuildTargets.getTargetGraph().getNodes()) {
+        futures.add(
+            params.getFileHashCache().prefetch(hasher, node.getFilesystem(), node.getInputs()));
+      }
+      Futures.allAsList(futures).get();
+    } catch (IOException | ExecutionException e) {
+      // Whatever failed here will be hashed again, and fail properly, when computing rule keys.
+      LOG.warn(e, "Failed to hash the inputs of the build ahead of time");
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw e;
+    }
+    LOG.debug(
+        "Hashed build inputs in %d ms",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
   private int processSuccessfulBuild(CommandRunnerParams params, ActionAndTargetGraphs graphs)
       throws IOException {
     if (showOutput || showFullOutput || showJsonOutput || showFullJsonOutput || showRuleKey) {
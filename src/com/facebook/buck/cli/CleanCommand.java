@@ -44,14 +44,16 @@ public class CleanCommand extends AbstractCommand {
     // On Windows, you have to close all files that will be deleted.
     // Because buck clean will delete build.log, you must close it first.
     JavaUtilsLoggingBuildListener.closeLogFile();
-    projectFilesystem.deleteRecursivelyIfExists(projectFilesystem.getBuckPaths().getScratchDir());
-    projectFilesystem.deleteRecursivelyIfExists(projectFilesystem.getBuckPaths().getGenDir());
-    projectFilesystem.deleteRecursivelyIfExists(projectFilesystem.getBuckPaths().getTrashDir());
+    // The directories are moved into the trash, which is emptied in the background (or by a later
+    // command if this process exits first), so that the next build can start right away.
+    projectFilesystem.moveToTrash(projectFilesystem.getBuckPaths().getScratchDir());
+    projectFilesystem.moveToTrash(projectFilesystem.getBuckPaths().getGenDir());
 
     // Clean out any additional directories specified via config setting.
     for (String subPath : cell.getBuckConfig().getCleanAdditionalPaths()) {
-      projectFilesystem.deleteRecursivelyIfExists(projectFilesystem.getPath(subPath));
+      projectFilesystem.moveToTrash(projectFilesystem.getPath(subPath));
     }
+    projectFilesystem.startCleaningTrash();
   }
 
   @Override
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cli;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
@@ -78,6 +79,8 @@ public class CommandThreadManager implements AutoCloseable {
     this.listeningExecutorService = MoreExecutors.listeningDecorator(executorService);
     this.weightedListeningExecutorService =
         new WeightedListeningExecutorService(semaphore, defaultAmounts, listeningExecutorService);
+    // Don't let the deletion of trash compete with the steps run by this pool for the disk.
+    ProjectFilesystem.getTrashCleaner().setDiskIOThrottle(semaphore);
     this.shutdownTimeout = shutdownTimeout;
     this.shutdownTimeoutUnit = shutdownTimeoutUnit;
   }
@@ -129,6 +132,8 @@ public class CommandThreadManager implements AutoCloseable {
 
   @Override
   public void close() throws InterruptedException {
+    ProjectFilesystem.getTrashCleaner()
+        .clearDiskIOThrottle(weightedListeningExecutorService.getSemaphore());
     boolean shutdown =
         MostExecutors.shutdown(
             weightedListeningExecutorService, shutdownTimeout, shutdownTimeoutUnit);
@@ -26,6 +26,8 @@ import com.facebook.buck.event.listener.JavaUtilsLoggingBuildListener;
 import com.facebook.buck.httpserver.WebServer;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.io.WatchmanCursor;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
+import com.facebook.buck.jvm.java.SharedClasspathIndex;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
@@ -54,6 +56,8 @@ import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Daemon used to monitor the file system and cache build rules between Main() method invocations is
@@ -75,6 +79,10 @@ final class Daemon implements Closeable {
   private final BroadcastEventListener broadcastEventListener;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<Path, WatchmanCursor> cursor;
+  private final AtomicInteger activeCommands = new AtomicInteger();
+  private final Optional<BackgroundWatchmanWatcher> backgroundWatchmanWatcher;
+  private final Optional<WatchedStatCaches> statCaches;
+  private final Optional<SharedClasspathIndex> classpathIndex;
 
   Daemon(Cell rootCell, Optional<WebServer> webServerToReuse) {
     this.rootCell = rootCell;
@@ -88,7 +96,10 @@ final class Daemon implements Closeable {
         subCell -> {
           WatchedFileHashCache watchedCache =
               new WatchedFileHashCache(
-                  subCell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode());
+                  subCell.getFilesystem(),
+                  rootCell.getBuckConfig().getFileHashCacheMode(),
+                  rootCell.getBuckConfig().getPersistentFileHashCache(),
+                  rootCell.getBuckConfig().getDirectoryHashMode());
           fileEventBus.register(watchedCache);
           hashCachesBuilder.add(watchedCache);
         });
@@ -97,6 +108,21 @@ final class Daemon implements Closeable {
             rootCell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode()));
     this.hashCaches = hashCachesBuilder.build();
 
+    if (rootCell.getBuckConfig().getView(ParserConfig.class).getFilesystemStatCache()) {
+      statCaches = Optional.of(WatchedStatCaches.install(allCells));
+      fileEventBus.register(statCaches.get());
+    } else {
+      statCaches = Optional.empty();
+    }
+
+    classpathIndex =
+        rootCell
+            .getBuckConfig()
+            .getView(JavaBuckConfig.class)
+            .getSharedClasspathIndexMaxJars()
+            .map(SharedClasspathIndex::new);
+    classpathIndex.ifPresent(SharedClasspathIndex::install);
+
     this.broadcastEventListener = new BroadcastEventListener();
     this.actionGraphCache = new ActionGraphCache();
     this.versionedTargetGraphCache = new VersionedTargetGraphCache();
@@ -137,6 +163,14 @@ final class Daemon implements Closeable {
     LOG.debug("Using Watchman Cursor: %s", cursor);
     persistentWorkerPools = new ConcurrentHashMap<>();
     JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
+
+    if (rootCell.getBuckConfig().getView(ParserConfig.class).getWatchmanSubscription()) {
+      backgroundWatchmanWatcher =
+          BackgroundWatchmanWatcher.start(
+              this, rootCell, Main.getWatchmanIgnorePaths(rootCell.getFilesystem()));
+    } else {
+      backgroundWatchmanWatcher = Optional.empty();
+    }
   }
 
   Cell getRootCell() {
@@ -264,6 +298,43 @@ final class Daemon implements Closeable {
     }
   }
 
+  /**
+   * Processes the pending file changes like {@link #watchFileSystem}, unless a command is running.
+   *
+   * @return whether the changes were processed.
+   */
+  boolean watchFileSystemIfIdle(BuckEventBus eventBus, WatchmanWatcher watchmanWatcher)
+      throws IOException, InterruptedException {
+    // Commands register before processing changes themselves, which requires the same lock, so
+    // changes can't be processed after a command has started.
+    synchronized (parser) {
+      if (hasActiveCommands()) {
+        return false;
+      }
+      watchFileSystem(
+          eventBus, watchmanWatcher, WatchmanWatcher.FreshInstanceAction.POST_OVERFLOW_EVENT);
+      return true;
+    }
+  }
+
+  /**
+   * Marks a command as running until the returned scope is closed, which keeps file changes from
+   * being processed in the background meanwhile.
+   */
+  Closeable newCommandScope() {
+    activeCommands.incrementAndGet();
+    AtomicBoolean closed = new AtomicBoolean(false);
+    return () -> {
+      if (closed.compareAndSet(false, true)) {
+        activeCommands.decrementAndGet();
+      }
+    };
+  }
+
+  boolean hasActiveCommands() {
+    return activeCommands.get() > 0;
+  }
+
   /** @return true if the web server was started successfully. */
   private boolean initWebServer() {
     if (webServer.isPresent()) {
@@ -290,10 +361,18 @@ final class Daemon implements Closeable {
 
   @Override
   public void close() throws IOException {
+    stopWatchingFileSystemInBackground();
+    classpathIndex.ifPresent(SharedClasspathIndex::uninstall);
     shutdownPersistentWorkerPools();
     shutdownWebServer();
   }
 
+  void stopWatchingFileSystemInBackground() {
+    backgroundWatchmanWatcher.ifPresent(BackgroundWatchmanWatcher::close);
+    // Nothing invalidates the stat caches from now on.
+    statCaches.ifPresent(WatchedStatCaches::close);
+  }
+
   private void shutdownPersistentWorkerPools() {
     for (WorkerProcessPool pool : persistentWorkerPools.values()) {
       try {
@@ -68,6 +68,7 @@ class DaemonLifecycleManager {
         if (shouldReuseWebServer(rootCell)) {
           webServer = daemon.getWebServer();
           LOG.info("Reusing web server");
+          daemon.stopWatchingFileSystemInBackground();
         } else {
           webServer = Optional.empty();
           daemon.close();
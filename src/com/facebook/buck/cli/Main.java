@@ -31,8 +31,10 @@ import com.facebook.buck.artifact_cache.HttpArtifactCacheEvent;
 import com.facebook.buck.config.Config;
 import com.facebook.buck.config.Configs;
 import com.facebook.buck.config.RawConfig;
+import com.facebook.buck.counters.Counter;
 import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.counters.CounterRegistryImpl;
+import com.facebook.buck.counters.ProcessTotalsCounter;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.BuckInitializationDurationEvent;
@@ -59,14 +61,16 @@ import com.facebook.buck.event.listener.SimpleConsoleEventBusListener;
 import com.facebook.buck.event.listener.SuperConsoleConfig;
 import com.facebook.buck.event.listener.SuperConsoleEventBusListener;
 import com.facebook.buck.httpserver.WebServer;
-import com.facebook.buck.io.AsynchronousDirectoryContentsCleaner;
 import com.facebook.buck.io.BuckPaths;
+import com.facebook.buck.io.FileMaterializer;
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.PathOrGlobMatcher;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.ProjectFilesystemStatCache;
 import com.facebook.buck.io.Watchman;
 import com.facebook.buck.io.WatchmanDiagnosticEventListener;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
+import com.facebook.buck.jvm.java.SharedClasspathIndex;
 import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.ConsoleHandlerState;
 import com.facebook.buck.log.GlobalStateManager;
@@ -120,6 +124,8 @@ import com.facebook.buck.util.WatchmanWatcherException;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.StackedFileHashCache;
+import com.facebook.buck.util.cache.WatchedFileHashCache;
+import com.facebook.buck.util.cache.WatchmanFileHashCache;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.environment.Architecture;
 import com.facebook.buck.util.environment.BuildEnvironmentDescription;
@@ -250,11 +256,6 @@ public final class Main {
 
   private static final DaemonLifecycleManager daemonLifecycleManager = new DaemonLifecycleManager();
 
-  // Ensure we only have one instance of this, so multiple trash cleaning
-  // operations are serialized on one queue.
-  private static final AsynchronousDirectoryContentsCleaner TRASH_CLEANER =
-      new AsynchronousDirectoryContentsCleaner();
-
   private final Platform platform;
 
   // Ignore changes to generated Xcode project files and editors' backup files
@@ -651,7 +652,7 @@ public final class Main {
           // non-buckd read-write command. (We don't bother waiting
           // for it to complete; the thread is a daemon thread which
           // will just be terminated at shutdown time.)
-          TRASH_CLEANER.startCleaningDirectory(filesystem.getBuckPaths().getTrashDir());
+          filesystem.startCleaningTrash();
         }
 
         int exitCode;
@@ -660,6 +661,8 @@ public final class Main {
             new DefaultExecutionEnvironment(clientEnvironment, System.getProperties());
 
         ImmutableList.Builder<ProjectFileHashCache> allCaches = ImmutableList.builder();
+        ImmutableList.Builder<WatchmanFileHashCache> watchmanFileHashCaches =
+            ImmutableList.builder();
 
         // Build up the hash cache, which is a collection of the stateful cell cache and some
         // per-run caches.
@@ -673,15 +676,30 @@ public final class Main {
             ProjectFilesystem.createNewOrThrowHumanReadableException(
                 rootCell.getFilesystem().getRootPath());
         if (daemon.isPresent()) {
-          allCaches.addAll(getFileHashCachesFromDaemon(daemon.get()));
+          getFileHashCachesFromDaemon(daemon.get())
+              .stream()
+              .map(
+                  cache ->
+                      cache instanceof WatchedFileHashCache
+                          ? withWatchmanFileHashes(
+                              cache, watchman, rootCell.getBuckConfig(), watchmanFileHashCaches)
+                          : cache)
+              .forEach(allCaches::add);
         } else {
           rootCell
               .getAllCells()
               .stream()
               .map(
                   cell ->
-                      DefaultFileHashCache.createDefaultFileHashCache(
-                          cell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode()))
+                      withWatchmanFileHashes(
+                          DefaultFileHashCache.createDefaultFileHashCache(
+                              cell.getFilesystem(),
+                              rootCell.getBuckConfig().getFileHashCacheMode(),
+                              rootCell.getBuckConfig().getPersistentFileHashCache(),
+                              rootCell.getBuckConfig().getDirectoryHashMode()),
+                          watchman,
+                          rootCell.getBuckConfig(),
+                          watchmanFileHashCaches))
               .forEach(allCaches::add);
           // The Daemon caches a buck-out filehashcache for the root cell, so the non-daemon case needs to create that itself.
           allCaches.add(
@@ -756,6 +774,11 @@ public final class Main {
             ExecutorPool.PROJECT,
             listeningDecorator(
                 MostExecutors.newMultiThreadExecutor("Project", buckConfig.getNumThreads())));
+        // Create a thread pool for hashing the inputs of builds ahead of computing rule keys.
+        executors.put(
+            ExecutorPool.FILE_HASHING,
+            listeningDecorator(
+                MostExecutors.newMultiThreadExecutor("File hashing", buckConfig.getNumThreads())));
 
         ScheduledExecutorService scheduledExecutorPool =
             Executors.newScheduledThreadPool(
@@ -943,14 +966,12 @@ public final class Main {
 
           if (daemon.isPresent()) {
             try {
+              closeables.register(daemon.get().newCommandScope());
               WatchmanWatcher watchmanWatcher =
                   new WatchmanWatcher(
                       watchman.getProjectWatches(),
                       daemon.get().getFileEventBus(),
-                      ImmutableSet.<PathOrGlobMatcher>builder()
-                          .addAll(filesystem.getIgnorePaths())
-                          .addAll(DEFAULT_IGNORE_GLOBS)
-                          .build(),
+                      getWatchmanIgnorePaths(filesystem),
                       watchman,
                       daemon.get().getWatchmanCursor());
               Pair<TypeCoercerFactory, Parser> pair =
@@ -1000,6 +1021,7 @@ public final class Main {
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          counterRegistry.registerCounters(getProcessTotalsCounters());
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -1081,6 +1103,10 @@ public final class Main {
                     + "Coercing to %d to avoid retries.",
                 BUSY_EXIT_CODE, FAIL_EXIT_CODE);
           }
+          persistFileHashCaches(fileHashCache);
+          for (WatchmanFileHashCache cache : watchmanFileHashCaches.build()) {
+            cache.getStatsEvents().forEach(buildEventBus::post);
+          }
           // Wait for HTTP writes to complete.
           closeHttpExecutorService(
               cacheBuckConfig, Optional.of(buildEventBus), httpWriteExecutorService);
@@ -1107,7 +1133,7 @@ public final class Main {
             // read-write command. (We don't bother waiting for it to
             // complete; the cleaner will ensure subsequent cleans are
             // serialized with this one.)
-            TRASH_CLEANER.startCleaningDirectory(filesystem.getBuckPaths().getTrashDir());
+            filesystem.startCleaningTrash();
           }
           // shut down the cached thread pools
           for (ExecutorPool p : executors.keySet()) {
@@ -1134,6 +1160,60 @@ public final class Main {
     }
   }
 
+  /**
+   * @return {@code cache} behind a {@link WatchmanFileHashCache} if file hashes should be fetched
+   *     from Watchman and Watchman can provide them, {@code cache} otherwise.
+   */
+  private static ProjectFileHashCache withWatchmanFileHashes(
+      ProjectFileHashCache cache,
+      Watchman watchman,
+      BuckConfig buckConfig,
+      ImmutableList.Builder<WatchmanFileHashCache> watchmanFileHashCaches) {
+    if (!buckConfig.getWatchmanFileHashes()) {
+      return cache;
+    }
+    Optional<WatchmanFileHashCache> watchmanCache =
+        WatchmanFileHashCache.tryCreate(
+            cache, watchman, buckConfig.getCompareWatchmanFileHashes());
+    if (!watchmanCache.isPresent()) {
+      return cache;
+    }
+    watchmanFileHashCaches.add(watchmanCache.get());
+    return watchmanCache.get();
+  }
+
+  private static void persistFileHashCaches(StackedFileHashCache fileHashCache) {
+    for (ProjectFileHashCache cache : fileHashCache.getCaches()) {
+      try {
+        cache.persist();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to persist file hashes of %s", cache.getFilesystem().getRootPath());
+      }
+    }
+  }
+
+  /** Report how much the totals of the caches shared by the commands grew during this one. */
+  private static ImmutableList<Counter> getProcessTotalsCounters() {
+    return ImmutableList.of(
+        new ProcessTotalsCounter(
+            "buck_file_materialization",
+            "file_materialization",
+            FileMaterializer.getTotals(),
+            deltas ->
+                ImmutableMap.of(
+                    "bytes_avoided", deltas.get("bytes_hard_linked") + deltas.get("bytes_cloned"))),
+        new ProcessTotalsCounter(
+            "buck_filesystem_stat_cache",
+            "filesystem_stat_cache",
+            ProjectFilesystemStatCache.getTotals(),
+            ProcessTotalsCounter::hitRate),
+        new ProcessTotalsCounter(
+            "buck_shared_classpath_index",
+            "shared_classpath_index",
+            SharedClasspathIndex.getTotals(),
+            ProcessTotalsCounter::hitRate));
+  }
+
   private Console makeCustomConsole(
       Optional<NGContext> context, Verbosity verbosity, BuckConfig buckConfig) {
     Optional<String> color;
@@ -1318,6 +1398,14 @@ public final class Main {
     }
   }
 
+  /** @return the paths whose changes Watchman shouldn't report. */
+  static ImmutableSet<PathOrGlobMatcher> getWatchmanIgnorePaths(ProjectFilesystem filesystem) {
+    return ImmutableSet.<PathOrGlobMatcher>builder()
+        .addAll(filesystem.getIgnorePaths())
+        .addAll(DEFAULT_IGNORE_GLOBS)
+        .build();
+  }
+
   /** Wire up daemon to new client and get cached Parser. */
   private Pair<TypeCoercerFactory, Parser> getParserFromDaemon(
       Daemon daemonForParser,
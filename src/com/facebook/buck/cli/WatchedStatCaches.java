@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.PathOrGlobMatcher;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.ProjectFilesystemStatCache;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.util.WatchmanOverflowEvent;
+import com.facebook.buck.util.WatchmanPathEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Installs a {@link ProjectFilesystemStatCache} for each cell of the daemon, so that the
+ * filesystems of the following commands serve repeated metadata queries from memory, and
+ * invalidates them as the changes reported by Watchman are posted to the file event bus of the
+ * daemon.
+ *
+ * <p>Watchman doesn't report changes to directories, so only the directories containing changed
+ * files are invalidated: e.g. an empty directory created outside of Buck goes unnoticed.
+ */
+final class WatchedStatCaches implements Closeable {
+  private static final Logger LOG = Logger.get(WatchedStatCaches.class);
+
+  private final ImmutableMap<Path, ProjectFilesystemStatCache> cachesByCellPath;
+
+  private WatchedStatCaches(ImmutableMap<Path, ProjectFilesystemStatCache> cachesByCellPath) {
+    this.cachesByCellPath = cachesByCellPath;
+  }
+
+  static WatchedStatCaches install(ImmutableList<Cell> cells) {
+    Map<Path, ProjectFilesystemStatCache> cachesByCellPath = new LinkedHashMap<>();
+    for (Cell cell : cells) {
+      ProjectFilesystem filesystem = cell.getFilesystem();
+      // Watchman doesn't report changes to the paths it ignores, nor Buck to those in buck-out.
+      ImmutableSet<PathOrGlobMatcher> ignorePaths = Main.getWatchmanIgnorePaths(filesystem);
+      Path buckOut = filesystem.getBuckPaths().getBuckOut();
+      cachesByCellPath.computeIfAbsent(
+          filesystem.getRootPath(),
+          root ->
+              new ProjectFilesystemStatCache(
+                  root,
+                  path ->
+                      path.startsWith(buckOut)
+                          || ignorePaths.stream().anyMatch(matcher -> matcher.matches(path))));
+    }
+    cachesByCellPath.values().forEach(ProjectFilesystemStatCache::install);
+    LOG.debug("Installed stat caches for %s", cachesByCellPath.keySet());
+    return new WatchedStatCaches(ImmutableMap.copyOf(cachesByCellPath));
+  }
+
+  @Subscribe
+  public void onFileSystemChange(WatchmanPathEvent event) {
+    ProjectFilesystemStatCache cache = cachesByCellPath.get(event.getCellPath());
+    if (cache != null) {
+      cache.invalidate(event.getPath());
+    }
+  }
+
+  @Subscribe
+  public void onFileSystemChange(WatchmanOverflowEvent event) {
+    ProjectFilesystemStatCache cache = cachesByCellPath.get(event.getCellPath());
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  /** Uninstalls the caches, which can't be invalidated any more. */
+  @Override
+  public void close() {
+    cachesByCellPath.values().forEach(ProjectFilesystemStatCache::uninstall);
+  }
+}
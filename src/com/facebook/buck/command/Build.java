@@ -164,6 +164,8 @@ public class Build implements Closeable {
                     .setEventBus(executionContext.getBuckEventBus())
                     .setAndroidPlatformTargetSupplier(
                         executionContext.getAndroidPlatformTargetSupplier())
+                    .setIncrementalSymlinkTreesEnabled(
+                        rootCell.getBuckConfig().getIncrementalSymlinkTrees())
                     .build())
             .setClock(clock)
             .setArtifactCache(artifactCache)
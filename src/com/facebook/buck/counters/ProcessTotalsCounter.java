@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.util.concurrent.ProcessTotals;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Reports how much {@link ProcessTotals} grew since the previous flush, along with values derived
+ * from these deltas. Nothing is reported while none of the totals grows.
+ */
+public class ProcessTotalsCounter extends Counter {
+  private final ProcessTotals totals;
+  private final Function<ImmutableMap<String, Long>, Map<String, Long>> derivedValues;
+  private ImmutableMap<String, Long> reportedTotals;
+
+  public ProcessTotalsCounter(
+      String category,
+      String name,
+      ProcessTotals totals,
+      Function<ImmutableMap<String, Long>, Map<String, Long>> derivedValues) {
+    super(category, name, ImmutableMap.of());
+    this.totals = totals;
+    this.derivedValues = derivedValues;
+    this.reportedTotals = totals.snapshot();
+  }
+
+  /** Derives the percentage of the lookups which hit from the {@code hits} and {@code misses}. */
+  public static Map<String, Long> hitRate(ImmutableMap<String, Long> deltas) {
+    long hits = deltas.getOrDefault("hits", 0L);
+    long lookups = hits + deltas.getOrDefault("misses", 0L);
+    if (lookups == 0) {
+      return ImmutableMap.of();
+    }
+    return ImmutableMap.of("hit_rate_percent", hits * 100 / lookups);
+  }
+
+  @Override
+  public synchronized Optional<CounterSnapshot> flush() {
+    ImmutableMap<String, Long> currentTotals = totals.snapshot();
+    ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+    boolean grew = false;
+    for (Map.Entry<String, Long> total : currentTotals.entrySet()) {
+      long delta = total.getValue() - reportedTotals.getOrDefault(total.getKey(), 0L);
+      grew |= delta != 0;
+      builder.put(total.getKey(), delta);
+    }
+    if (!grew) {
+      return Optional.empty();
+    }
+    reportedTotals = currentTotals;
+    ImmutableMap<String, Long> deltas = builder.build();
+    return Optional.of(
+        CounterSnapshot.builderForCounter(this)
+            .putAllValues(deltas)
+            .putAllValues(derivedValues.apply(deltas))
+            .build());
+  }
+}
@@ -80,6 +80,11 @@ abstract class AbstractBuckPaths {
     return getBuckOut().resolve("cache");
   }
 
+  @Value.Derived
+  public Path getJarMemberHashDir() {
+    return getBuckOut().resolve("jar-member-hashes");
+  }
+
   @Value.Derived
   public Path getTmpDir() {
     return getBuckOut().resolve("tmp");
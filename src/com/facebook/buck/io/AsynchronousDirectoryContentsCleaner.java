@@ -19,19 +19,43 @@ package com.facebook.buck.io;
 import static com.facebook.buck.util.concurrent.MostExecutors.newSingleThreadExecutor;
 
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.EnumSet;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
-/** Asynchronously cleans the contents of a directory. */
+/**
+ * Asynchronously cleans the contents of a directory.
+ *
+ * <p>Cleaning runs on a low priority thread. While a disk IO throttle is set, the cleaner also
+ * acquires disk IO resources from it for every batch of files it deletes, so that it yields the
+ * disk to the build steps sharing the throttle.
+ */
 public class AsynchronousDirectoryContentsCleaner {
   private static final Logger LOG = Logger.get(AsynchronousDirectoryContentsCleaner.class);
 
+  private static final ResourceAmounts DISK_IO_PER_BATCH = ResourceAmounts.of(0, 0, 1, 0);
+  private static final int FILES_PER_BATCH = 100;
+
   private final Executor executor;
+  private final Set<Path> pendingDirectories = ConcurrentHashMap.newKeySet();
+  private final AtomicReference<Optional<ListeningMultiSemaphore>> diskIOThrottle =
+      new AtomicReference<>(Optional.empty());
 
   /** A ThreadFactory which ensures the spawned threads do not keep the JVM alive at exit time. */
   private static class DaemonThreadFactory implements ThreadFactory {
@@ -47,6 +71,7 @@ public class AsynchronousDirectoryContentsCleaner {
       Thread newThread = Executors.defaultThreadFactory().newThread(r);
       newThread.setDaemon(true);
       newThread.setName(threadName);
+      newThread.setPriority(Thread.MIN_PRIORITY);
       return newThread;
     }
   }
@@ -60,27 +85,122 @@ public class AsynchronousDirectoryContentsCleaner {
     this.executor = executor;
   }
 
+  /** Makes the cleaner acquire disk IO resources from {@code semaphore} while deleting files. */
+  public void setDiskIOThrottle(ListeningMultiSemaphore semaphore) {
+    diskIOThrottle.set(Optional.of(semaphore));
+  }
+
+  /** Stops throttling deletions with {@code semaphore}, unless another throttle was set since. */
+  public void clearDiskIOThrottle(ListeningMultiSemaphore semaphore) {
+    diskIOThrottle.updateAndGet(
+        current -> current.equals(Optional.of(semaphore)) ? Optional.empty() : current);
+  }
+
   /**
    * Starts cleaning the configured directory in the background.
    *
    * <p>Multiple calls to this method will be serialized, so only one instance of directory cleaning
-   * will occur at a time.
+   * will occur at a time. Calls made while the same directory is waiting to be cleaned are no-ops.
    */
   public void startCleaningDirectory(final Path pathToClean) {
+    if (!pendingDirectories.add(pathToClean)) {
+      return;
+    }
     executor.execute(
         () -> {
+          // Anything added to the directory from now on needs another run.
+          pendingDirectories.remove(pathToClean);
           LOG.debug("Starting to clean %s", pathToClean);
-          try {
-            MoreFiles.deleteRecursivelyWithOptions(
-                pathToClean,
-                EnumSet.of(
-                    MoreFiles.DeleteRecursivelyOptions.IGNORE_NO_SUCH_FILE_EXCEPTION,
-                    MoreFiles.DeleteRecursivelyOptions.DELETE_CONTENTS_ONLY));
+          try (DirectoryStream<Path> entries = Files.newDirectoryStream(pathToClean)) {
+            new ThrottledDeleter().deleteAll(entries);
+          } catch (NoSuchFileException e) {
+            LOG.verbose(e, "Nothing to clean in %s", pathToClean);
           } catch (IOException e) {
             LOG.warn(e, "I/O error cleaning trash");
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
           } finally {
             LOG.debug("Done cleaning %s", pathToClean);
           }
         });
   }
+
+  /** Deletes files in batches, each of which holds disk IO resources of the current throttle. */
+  private class ThrottledDeleter extends SimpleFileVisitor<Path> {
+    private Optional<ListeningMultiSemaphore> acquiredFrom = Optional.empty();
+    private int deletedInBatch = 0;
+
+    void deleteAll(Iterable<Path> paths) throws IOException, InterruptedException {
+      try {
+        for (Path path : paths) {
+          Files.walkFileTree(path, this);
+        }
+      } catch (ThrottleInterruptedException e) {
+        throw (InterruptedException) e.getCause();
+      } finally {
+        releaseBatch();
+      }
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      delete(file);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+      if (e instanceof NoSuchFileException) {
+        return FileVisitResult.CONTINUE;
+      }
+      throw e;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+      if (e != null) {
+        throw e;
+      }
+      delete(dir);
+      return FileVisitResult.CONTINUE;
+    }
+
+    private void delete(Path path) throws IOException {
+      if (deletedInBatch == 0) {
+        acquireBatch();
+      }
+      Files.deleteIfExists(path);
+      if (++deletedInBatch == FILES_PER_BATCH) {
+        releaseBatch();
+      }
+    }
+
+    private void acquireBatch() throws ThrottleInterruptedException {
+      acquiredFrom = diskIOThrottle.get();
+      if (acquiredFrom.isPresent()) {
+        try {
+          acquiredFrom.get().acquire(DISK_IO_PER_BATCH).get();
+        } catch (InterruptedException e) {
+          acquiredFrom = Optional.empty();
+          throw new ThrottleInterruptedException(e);
+        } catch (ExecutionException e) {
+          // Only happens if the acquisition is cancelled, in which case nothing was acquired.
+          acquiredFrom = Optional.empty();
+        }
+      }
+    }
+
+    private void releaseBatch() {
+      acquiredFrom.ifPresent(semaphore -> semaphore.release(DISK_IO_PER_BATCH));
+      acquiredFrom = Optional.empty();
+      deletedInBatch = 0;
+    }
+  }
+
+  /** Carries an interruption through {@link Files#walkFileTree}. */
+  private static class ThrottleInterruptedException extends IOException {
+    ThrottleInterruptedException(InterruptedException cause) {
+      super(cause);
+    }
+  }
 }
@@ -18,14 +18,17 @@ package com.facebook.buck.io;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.util.sha1.Sha1HashCode;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.ByteSource;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Default implementation of {@link ProjectFilesystemDelegate} that talks to the filesystem via
@@ -33,6 +36,15 @@ import java.nio.file.Path;
  */
 public final class DefaultProjectFilesystemDelegate implements ProjectFilesystemDelegate {
 
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Direct buffers are read into without an extra copy, but are costly to allocate, so a few are
+   * kept around. Buffers returned while the pool is full are left to the GC.
+   */
+  private static final BlockingQueue<ByteBuffer> READ_BUFFERS =
+      new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
   private final Path root;
 
   public DefaultProjectFilesystemDelegate(Path root) {
@@ -55,18 +67,36 @@ public final class DefaultProjectFilesystemDelegate implements ProjectFilesystem
 
     // Normally, we would just use `Files.hash(fileToHash.toFile(), Hashing.sha1())`, but if
     // fileToHash is backed by Jimfs, its toFile() method throws an UnsupportedOperationException.
-    // Creating the input stream via java.nio.file.Files.newInputStream() avoids this issue.
-    ByteSource source =
-        new ByteSource() {
-          @Override
-          public InputStream openStream() throws IOException {
-            // No need to wrap with BufferedInputStream because ByteSource uses ByteStreams.copy(),
-            // which already buffers.
-            return Files.newInputStream(fileToHash);
-          }
-        };
-    HashCode hashCode = source.hash(Hashing.sha1());
-    return Sha1HashCode.fromHashCode(hashCode);
+    // Opening the channel via java.nio.channels.FileChannel.open() avoids this issue.
+    MessageDigest digest = newSha1Digest();
+    try (FileChannel channel = FileChannel.open(fileToHash, StandardOpenOption.READ)) {
+      // Files are read rather than memory mapped whatever their size: mappings are only released
+      // on GC, which keeps the files locked on Windows, and a file truncated while mapped crashes
+      // the JVM. Buffers are pooled, so hashing many files doesn't churn the heap.
+      ByteBuffer buffer = READ_BUFFERS.poll();
+      if (buffer == null) {
+        buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+      }
+      try {
+        while (channel.read(buffer) != -1) {
+          buffer.flip();
+          digest.update(buffer);
+          buffer.clear();
+        }
+      } finally {
+        buffer.clear();
+        READ_BUFFERS.offer(buffer);
+      }
+    }
+    return Sha1HashCode.fromBytes(digest.digest());
+  }
+
+  private static MessageDigest newSha1Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   @Override
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.facebook.buck.io.clonefs.CloneFS;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.ProcessTotals;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materializes copies of files as cheaply as the file system allows, falling back to actually
+ * copying their bytes.
+ *
+ * <p>Keeps track of the bytes which didn't need to be copied, in the whole process.
+ */
+public final class FileMaterializer {
+  private static final Logger LOG = Logger.get(FileMaterializer.class);
+
+  /** How a copy may be materialized. */
+  public enum Strategy {
+    /** Copy the bytes of the file. */
+    COPY,
+
+    /**
+     * Clone the file if its file system supports it, else copy it. Clones are copy-on-write, so
+     * this is safe whatever is done with the copy afterwards.
+     */
+    CLONE,
+
+    /**
+     * Hard link the copy to the file if they are on the same file system, else clone it, else copy
+     * it. Only suitable for copies which are never modified in place (e.g. they are only read, then
+     * deleted), as modifying either file then modifies both.
+     */
+    LINK_OR_CLONE,
+  }
+
+  /** How a copy was actually materialized. */
+  public enum Method {
+    HARD_LINK,
+    CLONE,
+    COPY,
+  }
+
+  private static final ProcessTotals TOTALS = new ProcessTotals();
+  private static final AtomicLong bytesLinked = TOTALS.newTotal("bytes_hard_linked");
+  private static final AtomicLong bytesCloned = TOTALS.newTotal("bytes_cloned");
+  private static final AtomicLong bytesCopied = TOTALS.newTotal("bytes_copied");
+
+  /** File stores known not to support cloning, so that it isn't attempted on every copy. */
+  private static final Map<FileStore, Boolean> cloningUnsupported = new ConcurrentHashMap<>();
+
+  private FileMaterializer() {}
+
+  /**
+   * Materializes a copy of {@code source} at {@code target}, replacing it if it exists, like {@link
+   * Files#copy} with {@link StandardCopyOption#REPLACE_EXISTING}.
+   *
+   * @return how the copy was materialized.
+   */
+  public static Method materialize(Path source, Path target, Strategy strategy)
+      throws IOException {
+    if (strategy == Strategy.COPY || !Files.isRegularFile(source, LinkOption.NOFOLLOW_LINKS)) {
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+      return Method.COPY;
+    }
+
+    long size = Files.size(source);
+    Files.deleteIfExists(target);
+    if (strategy == Strategy.LINK_OR_CLONE) {
+      try {
+        Files.createLink(target, source);
+        bytesLinked.addAndGet(size);
+        return Method.HARD_LINK;
+      } catch (FileSystemException | UnsupportedOperationException e) {
+        LOG.verbose(e, "Could not hard link %s to %s", target, source);
+      }
+    }
+
+    FileStore fileStore = Files.getFileStore(source);
+    if (source.getFileSystem() == FileSystems.getDefault()
+        && !cloningUnsupported.containsKey(fileStore)) {
+      try {
+        CloneFS.cloneFile(source, target);
+        bytesCloned.addAndGet(size);
+        return Method.CLONE;
+      } catch (CloneFS.CloningNotSupportedException e) {
+        LOG.debug(e, "Not cloning files on %s", fileStore);
+        cloningUnsupported.put(fileStore, true);
+      } catch (IOException e) {
+        LOG.verbose(e, "Could not clone %s to %s", source, target);
+      }
+    }
+    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    bytesCopied.addAndGet(size);
+    return Method.COPY;
+  }
+
+  /** @return the bytes hard linked, cloned and copied, since the process started. */
+  public static ProcessTotals getTotals() {
+    return TOTALS;
+  }
+
+  /** @return the bytes materialized by hard links rather than copies, since the process started. */
+  public static long getBytesLinked() {
+    return bytesLinked.get();
+  }
+
+  /** @return the bytes materialized by clones rather than copies, since the process started. */
+  public static long getBytesCloned() {
+    return bytesCloned.get();
+  }
+
+  /**
+   * @return the bytes which had to be copied because they could be neither hard linked nor cloned,
+   *     since the process started.
+   */
+  public static long getBytesCopied() {
+    return bytesCopied.get();
+  }
+}
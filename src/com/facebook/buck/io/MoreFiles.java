@@ -136,6 +136,26 @@ public final class MoreFiles {
       final Function<Path, Path> transform,
       final Function<Path, Boolean> filter)
       throws IOException {
+    copyRecursively(fromPath, toPath, transform, filter, FileMaterializer.Strategy.COPY);
+  }
+
+  /**
+   * Recursively copies all files under {@code fromPath} to {@code toPath}, materializing the copies
+   * of the files with {@code strategy}.
+   */
+  public static void copyRecursively(
+      final Path fromPath, final Path toPath, final FileMaterializer.Strategy strategy)
+      throws IOException {
+    copyRecursively(fromPath, toPath, Functions.identity(), input -> true, strategy);
+  }
+
+  private static void copyRecursively(
+      final Path fromPath,
+      final Path toPath,
+      final Function<Path, Path> transform,
+      final Function<Path, Boolean> filter,
+      final FileMaterializer.Strategy strategy)
+      throws IOException {
     // Adapted from http://codingjunkie.net/java-7-copy-move/.
     SimpleFileVisitor<Path> copyDirVisitor =
         new SimpleFileVisitor<Path>() {
@@ -163,7 +183,7 @@ public final class MoreFiles {
                 Files.deleteIfExists(transformedDestPath);
                 Files.createSymbolicLink(transformedDestPath, Files.readSymbolicLink(file));
               } else {
-                Files.copy(file, transformedDestPath, StandardCopyOption.REPLACE_EXISTING);
+                FileMaterializer.materialize(file, transformedDestPath, strategy);
               }
             }
             return FileVisitResult.CONTINUE;
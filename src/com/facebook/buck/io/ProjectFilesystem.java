@@ -55,6 +55,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.channels.Channels;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
@@ -65,6 +66,7 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
@@ -84,6 +86,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.UUID;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
@@ -119,6 +122,10 @@ public class ProjectFilesystem {
 
   @VisibleForTesting static final String BUCK_BUCKD_DIR_KEY = "buck.buckd_dir";
 
+  /** Deletes the contents of the trash directories of all filesystems, one at a time. */
+  private static final AsynchronousDirectoryContentsCleaner TRASH_CLEANER =
+      new AsynchronousDirectoryContentsCleaner();
+
   private final Path projectRoot;
   private final BuckPaths buckPaths;
 
@@ -424,11 +431,7 @@ public class ProjectFilesystem {
   }
 
   public long getFileSize(Path pathRelativeToProjectRoot) throws IOException {
-    Path path = getPathForRelativePath(pathRelativeToProjectRoot);
-    if (!Files.isRegularFile(path)) {
-      throw new IOException("Cannot get size of " + path + " because it is not an ordinary file.");
-    }
-    return Files.size(path);
+    return delegate.getFileSize(pathRelativeToProjectRoot);
   }
 
   /**
@@ -440,7 +443,9 @@ public class ProjectFilesystem {
    * @return {@code true} if the file was deleted, {@code false} if it did not exist
    */
   public boolean deleteFileAtPathIfExists(Path pathRelativeToProjectRoot) throws IOException {
-    return Files.deleteIfExists(getPathForRelativePath(pathRelativeToProjectRoot));
+    boolean deleted = Files.deleteIfExists(getPathForRelativePath(pathRelativeToProjectRoot));
+    delegate.onPathModified(pathRelativeToProjectRoot);
+    return deleted;
   }
 
   /**
@@ -450,6 +455,7 @@ public class ProjectFilesystem {
    */
   public void deleteFileAtPath(Path pathRelativeToProjectRoot) throws IOException {
     Files.delete(getPathForRelativePath(pathRelativeToProjectRoot));
+    delegate.onPathModified(pathRelativeToProjectRoot);
   }
 
   public Properties readPropertiesFile(Path propertiesFile) throws IOException {
@@ -468,6 +474,9 @@ public class ProjectFilesystem {
 
   /** Checks whether there is a normal file at the specified path. */
   public boolean isFile(Path pathRelativeToProjectRoot, LinkOption... options) {
+    if (options.length == 0) {
+      return delegate.isFile(pathRelativeToProjectRoot);
+    }
     return Files.isRegularFile(getPathForRelativePath(pathRelativeToProjectRoot), options);
   }
 
@@ -571,6 +580,9 @@ public class ProjectFilesystem {
 
   /** Allows {@link Files#isDirectory} to be faked in tests. */
   public boolean isDirectory(Path child, LinkOption... linkOptions) {
+    if (linkOptions.length == 0) {
+      return delegate.isDirectory(child);
+    }
     return Files.isDirectory(resolve(child), linkOptions);
   }
 
@@ -580,13 +592,10 @@ public class ProjectFilesystem {
   }
 
   public ImmutableCollection<Path> getDirectoryContents(Path pathToUse) throws IOException {
-    Path path = getPathForRelativePath(pathToUse);
-    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-      return FluentIterable.from(stream)
-          .filter(input -> !isIgnored(relativize(input)))
-          .transform(absolutePath -> MorePaths.relativize(projectRoot, absolutePath))
-          .toSortedList(Comparator.naturalOrder());
-    }
+    return FluentIterable.from(delegate.getDirectoryEntries(pathToUse))
+        .filter(input -> !isIgnored(relativize(input)))
+        .transform(absolutePath -> MorePaths.relativize(projectRoot, absolutePath))
+        .toSortedList(Comparator.naturalOrder());
   }
 
   @VisibleForTesting
@@ -614,7 +623,9 @@ public class ProjectFilesystem {
   public Path setLastModifiedTime(Path pathRelativeToProjectRoot, FileTime time)
       throws IOException {
     Path path = getPathForRelativePath(pathRelativeToProjectRoot);
-    return Files.setLastModifiedTime(path, time);
+    Files.setLastModifiedTime(path, time);
+    delegate.onPathModified(pathRelativeToProjectRoot);
+    return path;
   }
 
   /**
@@ -622,7 +633,50 @@ public class ProjectFilesystem {
    * specified path does not exist.
    */
   public void deleteRecursivelyIfExists(Path pathRelativeToProjectRoot) throws IOException {
-    MoreFiles.deleteRecursivelyIfExists(resolve(pathRelativeToProjectRoot));
+    try {
+      MoreFiles.deleteRecursivelyIfExists(resolve(pathRelativeToProjectRoot));
+    } finally {
+      delegate.onPathModified(pathRelativeToProjectRoot);
+    }
+  }
+
+  /**
+   * Deletes the file or directory at the path, if it exists, by atomically moving it into the trash
+   * directory and deleting it from there in the background. The path can be reused as soon as this
+   * returns. Falls back to deleting synchronously if the path can't be moved into the trash (e.g.
+   * because it is on a different file system).
+   */
+  public void moveToTrash(Path pathRelativeToProjectRoot) throws IOException {
+    Path path = resolve(pathRelativeToProjectRoot);
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    Path trashDir = resolve(buckPaths.getTrashDir());
+    try {
+      Files.createDirectories(trashDir);
+      Files.move(
+          path,
+          trashDir.resolve(path.getFileName() + "-" + UUID.randomUUID()),
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (AtomicMoveNotSupportedException e) {
+      MoreFiles.deleteRecursivelyIfExists(path);
+      return;
+    } finally {
+      delegate.onPathModified(pathRelativeToProjectRoot);
+    }
+    startCleaningTrash();
+  }
+
+  /** Starts deleting the contents of the trash directory in the background. */
+  public void startCleaningTrash() {
+    TRASH_CLEANER.startCleaningDirectory(resolve(buckPaths.getTrashDir()));
+  }
+
+  /** @return the cleaner which deletes the contents of the trash directories in the background. */
+  public static AsynchronousDirectoryContentsCleaner getTrashCleaner() {
+    return TRASH_CLEANER;
   }
 
   /**
@@ -633,6 +687,7 @@ public class ProjectFilesystem {
     Path resolved = resolve(pathRelativeToProjectRoot);
     try {
       Files.createDirectories(resolved);
+      delegate.onPathModified(pathRelativeToProjectRoot);
     } catch (FileAlreadyExistsException e) {
       // Don't complain if the file is a symlink that points to a valid directory.
       // This check is done only on exception as it's a rare case, and lstat is not free.
@@ -645,7 +700,9 @@ public class ProjectFilesystem {
   /** Creates a new file relative to the project root. */
   public Path createNewFile(Path pathRelativeToProjectRoot) throws IOException {
     Path path = getPathForRelativePath(pathRelativeToProjectRoot);
-    return Files.createFile(path);
+    Files.createFile(path);
+    delegate.onPathModified(pathRelativeToProjectRoot);
+    return path;
   }
 
   /**
@@ -716,16 +773,19 @@ public class ProjectFilesystem {
   public OutputStream newUnbufferedFileOutputStream(
       Path pathRelativeToProjectRoot, boolean append, FileAttribute<?>... attrs)
       throws IOException {
-    return Channels.newOutputStream(
-        Files.newByteChannel(
-            getPathForRelativePath(pathRelativeToProjectRoot),
-            append
-                ? ImmutableSet.of(StandardOpenOption.CREATE, StandardOpenOption.APPEND)
-                : ImmutableSet.of(
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.WRITE),
-            attrs));
+    OutputStream outputStream =
+        Channels.newOutputStream(
+            Files.newByteChannel(
+                getPathForRelativePath(pathRelativeToProjectRoot),
+                append
+                    ? ImmutableSet.of(StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : ImmutableSet.of(
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE),
+                attrs));
+    delegate.onPathModified(pathRelativeToProjectRoot);
+    return outputStream;
   }
 
   public <A extends BasicFileAttributes> A readAttributes(
@@ -743,6 +803,7 @@ public class ProjectFilesystem {
       InputStream inputStream, Path pathRelativeToProjectRoot, CopyOption... options)
       throws IOException {
     Files.copy(inputStream, getPathForRelativePath(pathRelativeToProjectRoot), options);
+    delegate.onPathModified(pathRelativeToProjectRoot);
   }
 
   /** Copies a file to an output stream. */
@@ -834,22 +895,40 @@ public class ProjectFilesystem {
   }
 
   public void copy(Path source, Path target, CopySourceMode sourceMode) throws IOException {
+    copy(source, target, sourceMode, FileMaterializer.Strategy.COPY);
+  }
+
+  /**
+   * Copies {@code source} to {@code target} like {@link #copy(Path, Path, CopySourceMode)}, but
+   * materializes the copies of files with {@code strategy}, e.g. by cloning them rather than
+   * copying their bytes.
+   */
+  public void copy(
+      Path source, Path target, CopySourceMode sourceMode, FileMaterializer.Strategy strategy)
+      throws IOException {
     source = getPathForRelativePath(source);
-    switch (sourceMode) {
-      case FILE:
-        Files.copy(resolve(source), resolve(target), StandardCopyOption.REPLACE_EXISTING);
-        break;
-      case DIRECTORY_CONTENTS_ONLY:
-        MoreFiles.copyRecursively(resolve(source), resolve(target));
-        break;
-      case DIRECTORY_AND_CONTENTS:
-        MoreFiles.copyRecursively(resolve(source), resolve(target.resolve(source.getFileName())));
-        break;
+    try {
+      switch (sourceMode) {
+        case FILE:
+          FileMaterializer.materialize(resolve(source), resolve(target), strategy);
+          break;
+        case DIRECTORY_CONTENTS_ONLY:
+          MoreFiles.copyRecursively(resolve(source), resolve(target), strategy);
+          break;
+        case DIRECTORY_AND_CONTENTS:
+          MoreFiles.copyRecursively(
+              resolve(source), resolve(target.resolve(source.getFileName())), strategy);
+          break;
+      }
+    } finally {
+      delegate.onPathModified(target);
     }
   }
 
   public void move(Path source, Path target, CopyOption... options) throws IOException {
     Files.move(resolve(source), resolve(target), options);
+    delegate.onPathModified(source);
+    delegate.onPathModified(target);
   }
 
   public void copyFolder(Path source, Path target) throws IOException {
@@ -860,6 +939,11 @@ public class ProjectFilesystem {
     copy(source, target, CopySourceMode.FILE);
   }
 
+  public void copyFile(Path source, Path target, FileMaterializer.Strategy strategy)
+      throws IOException {
+    copy(source, target, CopySourceMode.FILE, strategy);
+  }
+
   public void createSymLink(Path symLink, Path realFile, boolean force) throws IOException {
     symLink = resolve(symLink);
     if (force) {
@@ -884,6 +968,7 @@ public class ProjectFilesystem {
     } else {
       Files.createSymbolicLink(symLink, realFile);
     }
+    delegate.onPathModified(symLink);
   }
 
   /**
@@ -1033,6 +1118,7 @@ public class ProjectFilesystem {
   public Path createTempFile(
       Path directory, String prefix, String suffix, FileAttribute<?>... attrs) throws IOException {
     Path tmp = Files.createTempFile(resolve(directory), prefix, suffix, attrs);
+    delegate.onPathModified(tmp);
     return getPathRelativeToProjectRoot(tmp).orElse(tmp);
   }
 
@@ -18,7 +18,10 @@ package com.facebook.buck.io;
 
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.collect.ImmutableList;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 
@@ -45,6 +48,40 @@ public interface ProjectFilesystemDelegate {
 
   boolean exists(Path pathRelativeToProjectRoot, LinkOption... options);
 
+  /** @return whether the path is a directory, following symlinks. */
+  default boolean isDirectory(Path pathRelativeToProjectRoot) {
+    return Files.isDirectory(getPathForRelativePath(pathRelativeToProjectRoot));
+  }
+
+  /** @return whether the path is a regular file, following symlinks. */
+  default boolean isFile(Path pathRelativeToProjectRoot) {
+    return Files.isRegularFile(getPathForRelativePath(pathRelativeToProjectRoot));
+  }
+
+  default long getFileSize(Path pathRelativeToProjectRoot) throws IOException {
+    Path path = getPathForRelativePath(pathRelativeToProjectRoot);
+    if (!Files.isRegularFile(path)) {
+      throw new IOException("Cannot get size of " + path + " because it is not an ordinary file.");
+    }
+    return Files.size(path);
+  }
+
+  /** @return the absolute paths of the entries of the directory, in no particular order. */
+  default ImmutableList<Path> getDirectoryEntries(Path pathRelativeToProjectRoot)
+      throws IOException {
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(getPathForRelativePath(pathRelativeToProjectRoot))) {
+      return ImmutableList.copyOf(stream);
+    }
+  }
+
+  /**
+   * Called after the project filesystem created, modified or deleted the path, so that delegates
+   * caching metadata can forget what they know about it and the paths under it.
+   */
+  @SuppressWarnings("unused")
+  default void onPathModified(Path pathRelativeToProjectRoot) {}
+
   /** @return details about this delegate suitable for writing to a log file. */
   String getDetailsForLogging();
 }
@@ -46,6 +46,18 @@ public final class ProjectFilesystemDelegateFactory {
   /** Must always create a new delegate for the specified {@code root}. */
   public static ProjectFilesystemDelegate newInstance(
       Path root, Path buckOut, String hgCmd, Config config) throws InterruptedException {
+    ProjectFilesystemDelegate delegate = newUncachedInstance(root, buckOut, hgCmd, config);
+    // Only the default delegate is cached, the others having metadata of their own.
+    Optional<ProjectFilesystemStatCache> statCache = ProjectFilesystemStatCache.getInstalled(root);
+    if (statCache.isPresent() && delegate instanceof DefaultProjectFilesystemDelegate) {
+      LOG.debug("Using the stat cache installed for %s", root);
+      return statCache.get().wrap(delegate);
+    }
+    return delegate;
+  }
+
+  private static ProjectFilesystemDelegate newUncachedInstance(
+      Path root, Path buckOut, String hgCmd, Config config) throws InterruptedException {
     Optional<EdenClientPool> pool = EdenClientPool.tryToCreateEdenClientPool(root);
 
     if (pool.isPresent()) {
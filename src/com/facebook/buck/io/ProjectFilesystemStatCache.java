@@ -0,0 +1,317 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.util.concurrent.InstalledInstance;
+import com.facebook.buck.util.concurrent.ProcessTotals;
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Caches the attributes and directory listings of the paths under a project root, so that the
+ * filesystems created for that root by {@link ProjectFilesystemDelegateFactory} serve repeated
+ * metadata queries from memory.
+ *
+ * <p>The cache is only used while it is installed, and whoever installs it must invalidate it as
+ * the paths change on disk, e.g. as Watchman reports the changes. Changes made through a {@link
+ * ProjectFilesystem} using the cache are invalidated as they are made. Symlinks are not cached, as
+ * their targets can change without them changing, and neither are the paths matched by the {@code
+ * uncached} predicate, which should match whatever the invalidator doesn't know about.
+ */
+public class ProjectFilesystemStatCache {
+
+  private static final ConcurrentMap<Path, InstalledInstance<ProjectFilesystemStatCache>>
+      INSTALLED = new ConcurrentHashMap<>();
+
+  private static final ProcessTotals TOTALS = new ProcessTotals();
+  private static final AtomicLong hits = TOTALS.newTotal("hits");
+  private static final AtomicLong misses = TOTALS.newTotal("misses");
+
+  private final Path root;
+  private final Predicate<Path> uncached;
+  private final ConcurrentMap<Path, Optional<BasicFileAttributes>> attributes =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, ImmutableList<Path>> listings = new ConcurrentHashMap<>();
+  /** Bumped by every invalidation, so that entries read while invalidating are not kept. */
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile boolean installed = false;
+
+  /**
+   * @param root the absolute project root.
+   * @param uncached matches the paths relative to {@code root} which must not be cached.
+   */
+  public ProjectFilesystemStatCache(Path root, Predicate<Path> uncached) {
+    this.root = root.normalize();
+    this.uncached = uncached;
+  }
+
+  /** @return the cache installed for {@code root}, if any. */
+  public static Optional<ProjectFilesystemStatCache> getInstalled(Path root) {
+    InstalledInstance<ProjectFilesystemStatCache> installed = INSTALLED.get(root.normalize());
+    return installed == null ? Optional.empty() : installed.get();
+  }
+
+  /** Makes the filesystems created for the root from now on use this cache. */
+  public void install() {
+    invalidateAll();
+    installed = true;
+    INSTALLED
+        .computeIfAbsent(root, key -> new InstalledInstance<>())
+        .install(this)
+        .ifPresent(ProjectFilesystemStatCache::uninstall);
+  }
+
+  /**
+   * Stops this cache from being used, including by the filesystems already using it, as it is no
+   * longer going to be invalidated.
+   */
+  public void uninstall() {
+    installed = false;
+    InstalledInstance<ProjectFilesystemStatCache> installedForRoot = INSTALLED.get(root);
+    if (installedForRoot != null) {
+      installedForRoot.uninstall(this);
+    }
+    invalidateAll();
+  }
+
+  /** @return the hits and misses of the installed caches, in the whole process. */
+  public static ProcessTotals getTotals() {
+    return TOTALS;
+  }
+
+  /** @return the number of queries served from the installed caches, in the whole process. */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of queries the installed caches had to forward, in the whole process. */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  /** @return a delegate serving the metadata queries to {@code delegate} from this cache. */
+  public ProjectFilesystemDelegate wrap(ProjectFilesystemDelegate delegate) {
+    return new CachingDelegate(delegate);
+  }
+
+  /**
+   * Drops what is known about the file at {@code pathRelativeToRoot}, which was created, modified
+   * or deleted, and about the directories containing it.
+   */
+  public void invalidate(Path pathRelativeToRoot) {
+    Path path = pathRelativeToRoot.normalize();
+    generation.incrementAndGet();
+    attributes.remove(path);
+    listings.remove(path);
+    for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+      attributes.remove(parent);
+      listings.remove(parent);
+    }
+    Path rootKey = path.getFileSystem().getPath("");
+    attributes.remove(rootKey);
+    listings.remove(rootKey);
+  }
+
+  /** Like {@link #invalidate(Path)}, but also drops what is known about the paths under it. */
+  public void invalidateRecursively(Path pathRelativeToRoot) {
+    Path path = pathRelativeToRoot.normalize();
+    Optional<BasicFileAttributes> previous = attributes.get(path);
+    invalidate(path);
+    if (previous != null && previous.isPresent() && previous.get().isRegularFile()) {
+      // Nothing can be cached under a file.
+      return;
+    }
+    attributes.keySet().removeIf(key -> key.startsWith(path));
+    listings.keySet().removeIf(key -> key.startsWith(path));
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    attributes.clear();
+    listings.clear();
+  }
+
+  /** @return the path relative to the root to cache {@code absolutePath} under, if cached. */
+  private Optional<Path> getKey(Path absolutePath) {
+    if (!installed || !absolutePath.startsWith(root)) {
+      return Optional.empty();
+    }
+    Path key = root.relativize(absolutePath);
+    if (uncached.test(key)) {
+      return Optional.empty();
+    }
+    return Optional.of(key);
+  }
+
+  private static Optional<BasicFileAttributes> readAttributes(
+      Path absolutePath, LinkOption... options) {
+    try {
+      return Optional.of(Files.readAttributes(absolutePath, BasicFileAttributes.class, options));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** @return the attributes of the path, following symlinks, or nothing if it doesn't exist. */
+  private Optional<BasicFileAttributes> getAttributes(Path absolutePath) {
+    Optional<Path> key = getKey(absolutePath);
+    if (!key.isPresent()) {
+      return readAttributes(absolutePath);
+    }
+    Optional<BasicFileAttributes> cached = attributes.get(key.get());
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    misses.incrementAndGet();
+    long initialGeneration = generation.get();
+    Optional<BasicFileAttributes> read = readAttributes(absolutePath, LinkOption.NOFOLLOW_LINKS);
+    if (read.isPresent() && read.get().isSymbolicLink()) {
+      return readAttributes(absolutePath);
+    }
+    attributes.put(key.get(), read);
+    if (generation.get() != initialGeneration) {
+      attributes.remove(key.get());
+    }
+    return read;
+  }
+
+  private ImmutableList<Path> getDirectoryEntries(
+      ProjectFilesystemDelegate delegate, Path absolutePath) throws IOException {
+    Optional<Path> key = getKey(absolutePath);
+    if (!key.isPresent()) {
+      return delegate.getDirectoryEntries(absolutePath);
+    }
+    ImmutableList<Path> cached = listings.get(key.get());
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    misses.incrementAndGet();
+    long initialGeneration = generation.get();
+    ImmutableList<Path> entries = delegate.getDirectoryEntries(absolutePath);
+    // The listing of a symlink to a directory may change without it changing.
+    if (!Files.isSymbolicLink(absolutePath)) {
+      listings.put(key.get(), entries);
+      if (generation.get() != initialGeneration) {
+        listings.remove(key.get());
+      }
+    }
+    return entries;
+  }
+
+  private class CachingDelegate implements ProjectFilesystemDelegate {
+    private final ProjectFilesystemDelegate delegate;
+
+    private CachingDelegate(ProjectFilesystemDelegate delegate) {
+      this.delegate = delegate;
+    }
+
+    private Path toAbsolutePath(Path pathRelativeToProjectRoot) {
+      return delegate.getPathForRelativePath(pathRelativeToProjectRoot).normalize();
+    }
+
+    @Override
+    public void ensureConcreteFilesExist(BuckEventBus eventBus) {
+      delegate.ensureConcreteFilesExist(eventBus);
+    }
+
+    @Override
+    public Sha1HashCode computeSha1(Path pathRelativeToProjectRootOrJustAbsolute)
+        throws IOException {
+      return delegate.computeSha1(pathRelativeToProjectRootOrJustAbsolute);
+    }
+
+    @Override
+    public Path getPathForRelativePath(Path pathRelativeToProjectRoot) {
+      return delegate.getPathForRelativePath(pathRelativeToProjectRoot);
+    }
+
+    @Override
+    public boolean isExecutable(Path child) {
+      return delegate.isExecutable(child);
+    }
+
+    @Override
+    public boolean isSymlink(Path path) {
+      return delegate.isSymlink(path);
+    }
+
+    @Override
+    public boolean exists(Path pathRelativeToProjectRoot, LinkOption... options) {
+      if (options.length != 0) {
+        return delegate.exists(pathRelativeToProjectRoot, options);
+      }
+      return getAttributes(toAbsolutePath(pathRelativeToProjectRoot)).isPresent();
+    }
+
+    @Override
+    public boolean isDirectory(Path pathRelativeToProjectRoot) {
+      Optional<BasicFileAttributes> attributes =
+          getAttributes(toAbsolutePath(pathRelativeToProjectRoot));
+      return attributes.isPresent() && attributes.get().isDirectory();
+    }
+
+    @Override
+    public boolean isFile(Path pathRelativeToProjectRoot) {
+      Optional<BasicFileAttributes> attributes =
+          getAttributes(toAbsolutePath(pathRelativeToProjectRoot));
+      return attributes.isPresent() && attributes.get().isRegularFile();
+    }
+
+    @Override
+    public long getFileSize(Path pathRelativeToProjectRoot) throws IOException {
+      Path path = toAbsolutePath(pathRelativeToProjectRoot);
+      Optional<BasicFileAttributes> attributes = getAttributes(path);
+      if (!attributes.isPresent() || !attributes.get().isRegularFile()) {
+        throw new IOException(
+            "Cannot get size of " + path + " because it is not an ordinary file.");
+      }
+      return attributes.get().size();
+    }
+
+    @Override
+    public ImmutableList<Path> getDirectoryEntries(Path pathRelativeToProjectRoot)
+        throws IOException {
+      return ProjectFilesystemStatCache.this.getDirectoryEntries(
+          delegate, toAbsolutePath(pathRelativeToProjectRoot));
+    }
+
+    @Override
+    public void onPathModified(Path pathRelativeToProjectRoot) {
+      getKey(toAbsolutePath(pathRelativeToProjectRoot))
+          .ifPresent(ProjectFilesystemStatCache.this::invalidateRecursively);
+    }
+
+    @Override
+    public String getDetailsForLogging() {
+      return String.format("CachingDelegate{delegate=%s}", delegate.getDetailsForLogging());
+    }
+  }
+}
@@ -53,7 +53,8 @@ public class Watchman implements AutoCloseable {
     WILDMATCH_GLOB,
     WILDMATCH_MULTISLASH,
     GLOB_GENERATOR,
-    CLOCK_SYNC_TIMEOUT
+    CLOCK_SYNC_TIMEOUT,
+    CONTENT_SHA1
   }
 
   public static final String NULL_CLOCK = "c:0:0";
@@ -69,6 +70,7 @@ public class Watchman implements AutoCloseable {
           .put("wildmatch_multislash", Capability.WILDMATCH_MULTISLASH)
           .put("glob_generator", Capability.GLOB_GENERATOR)
           .put("clock-sync-timeout", Capability.CLOCK_SYNC_TIMEOUT)
+          .put("field-content.sha1hex", Capability.CONTENT_SHA1)
           .build();
 
   private static final Logger LOG = Logger.get(Watchman.class);
@@ -460,16 +462,25 @@ public class Watchman implements AutoCloseable {
         }
       }
 
-      private Transport createLocalWatchmanTransport(Path transportPath) throws IOException {
-        if (Platform.detect() == Platform.WINDOWS) {
-          return WindowsNamedPipe.createPipeWithPath(transportPath.toString());
-        } else {
-          return UnixDomainSocket.createSocketWithPath(transportPath);
-        }
-      }
     };
   }
 
+  static Transport createLocalWatchmanTransport(Path transportPath) throws IOException {
+    if (Platform.detect() == Platform.WINDOWS) {
+      return WindowsNamedPipe.createPipeWithPath(transportPath.toString());
+    } else {
+      return UnixDomainSocket.createSocketWithPath(transportPath);
+    }
+  }
+
+  /**
+   * Opens a new connection to the Watchman server at {@code transportPath}, for uses which outlive
+   * the command which built this object (whose client is closed along with it).
+   */
+  public static Optional<WatchmanClient> connect(Path transportPath, Console console, Clock clock) {
+    return localWatchmanConnector(console, clock).apply(transportPath);
+  }
+
   public ImmutableMap<Path, WatchmanCursor> buildClockWatchmanCursorMap() {
     ImmutableMap.Builder<Path, WatchmanCursor> cursorBuilder = ImmutableMap.builder();
     for (Map.Entry<Path, ProjectWatch> entry : projectWatches.entrySet()) {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A long-lived Watchman subscription, which gets notified by Watchman as soon as files change under
+ * the watched cells rather than having to ask Watchman what changed.
+ *
+ * <p>The subscription has a connection of its own, as Watchman pushes notifications on it at any
+ * time, and reads them on a dedicated thread. It only tells its {@link Listener} which cell
+ * changed: the listener is expected to query Watchman for the actual changes using its usual
+ * cursors, so that a missed or coalesced notification can never cause a change to be lost.
+ */
+public class WatchmanSubscription implements AutoCloseable {
+  private static final Logger LOG = Logger.get(WatchmanSubscription.class);
+
+  /** Gets notified of changes, on the thread reading the subscription. */
+  public interface Listener {
+    void onFilesChanged(Path cellPath);
+
+    /** The subscription stopped, e.g. because the connection to Watchman was lost. */
+    void onSubscriptionEnded();
+  }
+
+  private final Transport transport;
+  private final ImmutableMap<String, Path> cellPathsBySubscriptionName;
+  private final Listener listener;
+  private final Thread readerThread;
+  private final BserSerializer bserSerializer = new BserSerializer();
+  private final BserDeserializer bserDeserializer =
+      new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED);
+
+  private volatile boolean closed = false;
+
+  private WatchmanSubscription(
+      Transport transport,
+      ImmutableMap<String, Path> cellPathsBySubscriptionName,
+      Listener listener) {
+    this.transport = transport;
+    this.cellPathsBySubscriptionName = cellPathsBySubscriptionName;
+    this.listener = listener;
+    this.readerThread = new Thread(this::readNotifications, "Watchman subscription");
+    this.readerThread.setDaemon(true);
+  }
+
+  /**
+   * Subscribes to changes matching {@code queries} (keyed by cell path) on a new connection to the
+   * Watchman server {@code watchman} is connected to.
+   *
+   * @return the subscription, or nothing if Watchman couldn't be subscribed to.
+   */
+  public static Optional<WatchmanSubscription> subscribe(
+      Watchman watchman, ImmutableMap<Path, WatchmanQuery> queries, Listener listener) {
+    if (!watchman.getTransportPath().isPresent() || queries.isEmpty()) {
+      return Optional.empty();
+    }
+    Transport transport;
+    try {
+      transport = Watchman.createLocalWatchmanTransport(watchman.getTransportPath().get());
+    } catch (IOException e) {
+      LOG.warn(e, "Could not connect to Watchman to subscribe to changes");
+      return Optional.empty();
+    }
+    return subscribe(transport, queries, listener, "buckd-" + UUID.randomUUID() + "-");
+  }
+
+  @VisibleForTesting
+  static Optional<WatchmanSubscription> subscribe(
+      Transport transport,
+      ImmutableMap<Path, WatchmanQuery> queries,
+      Listener listener,
+      String subscriptionNamePrefix) {
+    ImmutableMap.Builder<String, Path> cellPathsBySubscriptionName = ImmutableMap.builder();
+    int index = 0;
+    for (Path cellPath : queries.keySet()) {
+      cellPathsBySubscriptionName.put(subscriptionNamePrefix + index++, cellPath);
+    }
+    WatchmanSubscription subscription =
+        new WatchmanSubscription(transport, cellPathsBySubscriptionName.build(), listener);
+    try {
+      for (Map.Entry<String, Path> entry :
+          subscription.cellPathsBySubscriptionName.entrySet()) {
+        WatchmanQuery query = queries.get(entry.getValue());
+        subscription.sendSubscribe(entry.getKey(), query);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Could not subscribe to changes with Watchman");
+      subscription.close();
+      return Optional.empty();
+    }
+    subscription.readerThread.start();
+    return Optional.of(subscription);
+  }
+
+  private void sendSubscribe(String name, WatchmanQuery query) throws IOException {
+    bserSerializer.serializeToStream(
+        ImmutableList.of("subscribe", query.getQueryPath(), name, query.getQueryParams()),
+        transport.getOutputStream());
+    // Notifications can't arrive before the subscription is acknowledged, so the next response is
+    // the answer to this request.
+    Map<String, Object> response = readResponse();
+    if (response.containsKey("error")) {
+      throw new IOException("Watchman refused subscription: " + response.get("error"));
+    }
+    LOG.debug("Subscribed to changes under %s as %s", query.getQueryPath(), name);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> readResponse() throws IOException {
+    Object response = bserDeserializer.deserializeBserValue(transport.getInputStream());
+    if (!(response instanceof Map<?, ?>)) {
+      throw new IOException("Unrecognized Watchman response: " + response);
+    }
+    return (Map<String, Object>) response;
+  }
+
+  private void readNotifications() {
+    try {
+      while (!closed) {
+        Map<String, Object> notification = readResponse();
+        Object name = notification.get("subscription");
+        if (name == null) {
+          // Watchman also pushes logs and state notifications on the same connection.
+          continue;
+        }
+        Path cellPath = cellPathsBySubscriptionName.get(name);
+        if (cellPath == null) {
+          continue;
+        }
+        if (notification.containsKey("state-enter") || notification.containsKey("state-leave")) {
+          continue;
+        }
+        listener.onFilesChanged(cellPath);
+      }
+    } catch (IOException | RuntimeException e) {
+      if (!closed) {
+        LOG.warn(e, "Lost Watchman subscription");
+      }
+    } finally {
+      if (!closed) {
+        closeTransport();
+        listener.onSubscriptionEnded();
+      }
+    }
+  }
+
+  private void closeTransport() {
+    try {
+      transport.close();
+    } catch (IOException e) {
+      LOG.debug(e, "Error closing Watchman subscription");
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    // Closing the connection makes the reader thread fail out of its blocking read. Watchman drops
+    // the subscriptions of a closed connection.
+    closeTransport();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io.clonefs;
+
+import com.facebook.buck.util.environment.Platform;
+import com.sun.jna.LastErrorException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Utility class for cloning files on file systems which support it (e.g. btrfs or XFS on Linux,
+ * APFS on macOS): the clone shares the blocks of the original file until either is modified, so
+ * cloning takes constant time and space whatever the size of the file.
+ */
+public class CloneFS {
+
+  /** Thrown when the file system of a file doesn't support cloning it at all. */
+  public static class CloningNotSupportedException extends IOException {
+    CloningNotSupportedException(String message) {
+      super(message);
+    }
+  }
+
+  private CloneFS() {}
+
+  /**
+   * Creates {@code target}, which must not exist, as a clone of the regular file {@code source},
+   * with the same permissions.
+   *
+   * @throws CloningNotSupportedException if the platform or the file system of the files doesn't
+   *     support cloning
+   * @throws IOException if the file couldn't be cloned otherwise, e.g. because the files are on
+   *     different file systems or {@code target} already exists
+   */
+  public static void cloneFile(Path source, Path target) throws IOException {
+    Platform platform = Platform.detect();
+    if (platform != Platform.LINUX && platform != Platform.MACOS) {
+      throw new CloningNotSupportedException("Cloning files is not supported on " + platform);
+    }
+    CloneFSLibrary library;
+    try {
+      library = CloneFSLibrary.INSTANCE;
+    } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+      throw new CloningNotSupportedException("Could not load the C library: " + e);
+    }
+    try {
+      if (platform == Platform.MACOS) {
+        library.clonefile(source.toString(), target.toString(), 0);
+      } else {
+        cloneFileOnLinux(library, source, target);
+      }
+    } catch (LastErrorException e) {
+      String message =
+          String.format("Failed to clone %s to %s: %s", source, target, e.getMessage());
+      if (isNotSupportedError(platform, e.getErrorCode())) {
+        throw new CloningNotSupportedException(message);
+      }
+      throw new IOException(message, e);
+    }
+  }
+
+  private static boolean isNotSupportedError(Platform platform, int errno) {
+    if (platform == Platform.MACOS) {
+      return errno == CloneFSLibrary.DARWIN_ENOTSUP;
+    }
+    return errno == CloneFSLibrary.LINUX_EOPNOTSUPP
+        || errno == CloneFSLibrary.LINUX_EINVAL
+        || errno == CloneFSLibrary.LINUX_ENOTTY
+        || errno == CloneFSLibrary.LINUX_ENOSYS;
+  }
+
+  private static void cloneFileOnLinux(CloneFSLibrary library, Path source, Path target)
+      throws IOException {
+    int mode = toMode(Files.getPosixFilePermissions(source));
+    int sourceFd = library.open(source.toString(), CloneFSLibrary.LINUX_O_RDONLY, 0);
+    try {
+      int targetFd =
+          library.open(
+              target.toString(),
+              CloneFSLibrary.LINUX_O_WRONLY
+                  | CloneFSLibrary.LINUX_O_CREAT
+                  | CloneFSLibrary.LINUX_O_EXCL,
+              mode);
+      boolean cloned = false;
+      try {
+        library.ioctl(targetFd, CloneFSLibrary.LINUX_FICLONE, sourceFd);
+        cloned = true;
+      } finally {
+        library.close(targetFd);
+        if (!cloned) {
+          Files.deleteIfExists(target);
+        }
+      }
+    } finally {
+      library.close(sourceFd);
+    }
+  }
+
+  private static int toMode(Set<PosixFilePermission> permissions) {
+    int mode = 0;
+    for (PosixFilePermission permission : permissions) {
+      // The enum is declared from OWNER_READ (0400) down to OTHERS_EXECUTE (01).
+      mode |= 1 << (8 - permission.ordinal());
+    }
+    return mode;
+  }
+}
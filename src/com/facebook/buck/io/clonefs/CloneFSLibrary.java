@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io.clonefs;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+/** Utility class to bridge the native file cloning calls of Linux and macOS to Java using JNA. */
+interface CloneFSLibrary extends Library {
+  CloneFSLibrary INSTANCE = Native.loadLibrary(Platform.C_LIBRARY_NAME, CloneFSLibrary.class);
+
+  int LINUX_O_RDONLY = 0;
+  int LINUX_O_WRONLY = 01;
+  int LINUX_O_CREAT = 0100;
+  int LINUX_O_EXCL = 0200;
+
+  /** {@code _IOW(0x94, 9, int)}, from linux/fs.h. */
+  NativeLong LINUX_FICLONE = new NativeLong(0x40049409L);
+
+  // The errors with which file systems refuse to clone files, or kernels don't know how to.
+  int LINUX_EINVAL = 22;
+  int LINUX_ENOTTY = 25;
+  int LINUX_ENOSYS = 38;
+  int LINUX_EOPNOTSUPP = 95;
+  int DARWIN_ENOTSUP = 45;
+
+  int open(String path, int flags, int mode) throws LastErrorException;
+
+  int close(int fd) throws LastErrorException;
+
+  /** Linux: makes {@code fd} share the extents of {@code sourceFd}, with {@link #LINUX_FICLONE}. */
+  int ioctl(int fd, NativeLong request, int sourceFd) throws LastErrorException;
+
+  /** macOS: creates {@code dst} as a copy-on-write clone of {@code src}. */
+  int clonefile(String src, String dst, int flags) throws LastErrorException;
+}
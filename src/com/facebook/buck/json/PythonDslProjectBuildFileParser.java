@@ -329,8 +329,8 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       throws BuildFileParseException, InterruptedException {
     ImmutableList<Map<String, Object>> result = getAllRulesAndMetaRules(buildFile, processedBytes);
 
-    // Strip out the __includes, __configs, and __env meta rules, which are the last rules.
-    return result.subList(0, result.size() - 3);
+    // Strip out the __includes, __configs, __env and __stats meta rules, which are the last rules.
+    return result.subList(0, result.size() - 4);
   }
 
   /**
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.json;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.syntax.Environment;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache of evaluated Skylark extensions (files loaded by build files using {@code load()}).
+ *
+ * <p>Evaluating an extension is far more expensive than reading it, and popular extensions are
+ * loaded by a large number of build files. The frozen globals of every evaluated extension are
+ * therefore kept around and shared by all build files and parse requests served by the daemon.
+ *
+ * <p>Entries are not validated when they are looked up, which would mean reading every extension
+ * again for each build file. Instead, they are dropped when the extension or any extension it
+ * loads, directly or transitively, changes on disk, see {@link #invalidatePath(Path)}.
+ */
+@ThreadSafe
+public class SkylarkExtensionCache {
+
+  private final ConcurrentMap<Path, CachedExtension> extensions = new ConcurrentHashMap<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * @param extensionPath The absolute path of the extension.
+   * @return The cached extension, unless it or an extension it loads changed since it was
+   *     evaluated.
+   */
+  Optional<CachedExtension> get(Path extensionPath) {
+    CachedExtension cached = extensions.get(extensionPath);
+    if (cached == null) {
+      missCount.incrementAndGet();
+      return Optional.empty();
+    }
+    hitCount.incrementAndGet();
+    return Optional.of(cached);
+  }
+
+  /**
+   * Remembers an evaluated extension. If two parsers evaluate the same extension concurrently, the
+   * last one wins, which is fine since both results are equivalent.
+   */
+  void put(Path extensionPath, CachedExtension extension) {
+    extensions.put(extensionPath, extension);
+  }
+
+  /** Drops the cached {@code path} extension and all extensions that load it. */
+  public void invalidatePath(Path path) {
+    extensions
+        .entrySet()
+        .removeIf(entry -> entry.getValue().getTransitiveDependencies().contains(path));
+  }
+
+  /** Drops all cached extensions. */
+  public void invalidateAll() {
+    extensions.clear();
+  }
+
+  /** @return the number of times a cached extension was reused. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** @return the number of times an extension had to be evaluated. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** An evaluated extension along with the files it was evaluated from. */
+  static final class CachedExtension {
+    private final Environment.Extension extension;
+    private final ImmutableSet<Path> transitiveDependencies;
+
+    CachedExtension(Environment.Extension extension, ImmutableSet<Path> transitiveDependencies) {
+      this.extension = extension;
+      this.transitiveDependencies = transitiveDependencies;
+    }
+
+    Environment.Extension getExtension() {
+      return extension;
+    }
+
+    /**
+     * @return the absolute paths of the extension itself and of every extension it loads, directly
+     *     or transitively.
+     */
+    ImmutableSet<Path> getTransitiveDependencies() {
+      return transitiveDependencies;
+    }
+  }
+}
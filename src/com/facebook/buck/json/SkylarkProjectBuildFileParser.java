@@ -21,6 +21,11 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.Description;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.cmdline.PackageIdentifier;
+import com.google.devtools.build.lib.cmdline.RepositoryName;
 import com.google.devtools.build.lib.events.EventKind;
 import com.google.devtools.build.lib.events.PrintingEventHandler;
 import com.google.devtools.build.lib.syntax.BuildFileAST;
@@ -32,12 +37,16 @@ import com.google.devtools.build.lib.syntax.FunctionSignature;
 import com.google.devtools.build.lib.syntax.Mutability;
 import com.google.devtools.build.lib.syntax.ParserInputSource;
 import com.google.devtools.build.lib.syntax.Runtime;
+import com.google.devtools.build.lib.syntax.SkylarkImport;
 import com.google.devtools.build.lib.vfs.FileSystem;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -46,6 +55,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>NOTE: This parser is work in progress and does not support many functions provided by Python
  * DSL parser like {@code read_config} and {@code include_defs} (currently implemented as a noop),
  * so DO NOT USE it production.
+ *
+ * <p>Extensions loaded using {@code load()} are evaluated once and shared through a {@link
+ * SkylarkExtensionCache}. Extensions are evaluated without Buck rules in scope, so they can only
+ * provide constants and helper functions that do not define rules.
  */
 public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
 
@@ -54,27 +67,45 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
   private final FileSystem fileSystem;
   private final ProjectBuildFileParserOptions options;
   private final BuckEventBus buckEventBus;
+  private final SkylarkExtensionCache extensionCache;
 
   private SkylarkProjectBuildFileParser(
       final ProjectBuildFileParserOptions options,
       BuckEventBus buckEventBus,
-      FileSystem fileSystem) {
+      FileSystem fileSystem,
+      SkylarkExtensionCache extensionCache) {
     this.options = options;
     this.buckEventBus = buckEventBus;
     this.fileSystem = fileSystem;
+    this.extensionCache = extensionCache;
   }
 
   public static SkylarkProjectBuildFileParser using(
       final ProjectBuildFileParserOptions options,
       BuckEventBus buckEventBus,
       FileSystem fileSystem) {
-    return new SkylarkProjectBuildFileParser(options, buckEventBus, fileSystem);
+    return using(options, buckEventBus, fileSystem, new SkylarkExtensionCache());
+  }
+
+  /**
+   * @param extensionCache The cache of evaluated extensions, usually shared by all parsers created
+   *     by the daemon.
+   */
+  public static SkylarkProjectBuildFileParser using(
+      final ProjectBuildFileParserOptions options,
+      BuckEventBus buckEventBus,
+      FileSystem fileSystem,
+      SkylarkExtensionCache extensionCache) {
+    return new SkylarkProjectBuildFileParser(options, buckEventBus, fileSystem, extensionCache);
   }
 
   @Override
   public ImmutableList<Map<String, Object>> getAll(Path buildFile, AtomicLong processedBytes)
       throws BuildFileParseException, InterruptedException, IOException {
-    return getAllRulesAndMetaRules(buildFile, processedBytes);
+    ImmutableList<Map<String, Object>> rulesAndMetaRules =
+        getAllRulesAndMetaRules(buildFile, processedBytes);
+    // Strip out the __includes meta rule, which is the last rule.
+    return rulesAndMetaRules.subList(0, rulesAndMetaRules.size() - 1);
   }
 
   @Override
@@ -84,34 +115,46 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     ParseBuckFileEvent.Started startEvent = ParseBuckFileEvent.started(buildFile);
     buckEventBus.post(startEvent);
     ImmutableList<Map<String, Object>> rules = ImmutableList.of();
+    ParseContext parseContext = new ParseContext();
     try {
-      rules = parseBuildRules(buildFile);
+      rules = parseBuildRules(buildFile, parseContext);
       LOG.verbose("Got rules: %s", rules);
       LOG.verbose("Parsed %d rules from %s", rules.size(), buildFile);
     } finally {
       // TODO(ttsugrii): think about reporting processed bytes and profiling support
       buckEventBus.post(ParseBuckFileEvent.finished(startEvent, rules, 0L, Optional.empty()));
     }
-    return rules;
+    ImmutableList.Builder<String> includes = ImmutableList.builder();
+    includes.add(buildFile.toString());
+    for (Path extension : parseContext.loadedExtensions) {
+      includes.add(extension.toString());
+    }
+    return ImmutableList.<Map<String, Object>>builder()
+        .addAll(rules)
+        .add(ImmutableMap.of("__includes", includes.build()))
+        .build();
   }
 
   /**
    * Parses and returns build rules defined in {@code buildFile}.
    *
    * @param buildFile The build file to parse.
+   * @param parseContext The state of the parse request.
    * @return The build rules defined in {@code buildFile}.
    */
-  private ImmutableList<Map<String, Object>> parseBuildRules(Path buildFile)
+  private ImmutableList<Map<String, Object>> parseBuildRules(
+      Path buildFile, ParseContext parseContext)
       throws BuildFileParseException, InterruptedException, IOException {
-    // TODO(ttsugrii): consider using a less verbose event handler. Also fancy handler can be
-    // configured for terminals that support it.
-    PrintingEventHandler eventHandler = new PrintingEventHandler(EnumSet.allOf(EventKind.class));
+    PrintingEventHandler eventHandler = parseContext.eventHandler;
     BuildFileAST buildFileAst =
         BuildFileAST.parseBuildFile(
             ParserInputSource.create(fileSystem.getPath(buildFile.toString())), eventHandler);
+    ImmutableMap<String, Environment.Extension> importMap =
+        loadExtensions(createContainingLabel(buildFile), buildFileAst.getImports(), parseContext)
+            .getImportMap();
     ImmutableList.Builder<Map<String, Object>> builder = ImmutableList.builder();
     try (Mutability mutability = Mutability.create("BUCK")) {
-      Environment env = Environment.builder(mutability).build();
+      Environment env = Environment.builder(mutability).setImportedExtensions(importMap).build();
       setupBuckRules(buildFile, builder, env);
       boolean exec = buildFileAst.exec(env, eventHandler);
       if (!exec) {
@@ -121,6 +164,122 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     }
   }
 
+  /**
+   * Loads the extensions imported by a file, evaluating those that are not cached yet.
+   *
+   * @param containingLabel The label of the build file or extension that has the {@code load()}
+   *     statements, which relative labels are resolved against.
+   * @param skylarkImports The imports of that file.
+   * @param parseContext The state of the parse request.
+   * @return The extensions keyed by their import strings, along with all the extension files they
+   *     were evaluated from.
+   */
+  private LoadedExtensions loadExtensions(
+      Label containingLabel, ImmutableList<SkylarkImport> skylarkImports, ParseContext parseContext)
+      throws BuildFileParseException, InterruptedException, IOException {
+    ImmutableMap.Builder<String, Environment.Extension> importMap = ImmutableMap.builder();
+    Set<Path> transitiveDependencies = new LinkedHashSet<>();
+    Set<String> importStrings = new LinkedHashSet<>();
+    for (SkylarkImport skylarkImport : skylarkImports) {
+      if (!importStrings.add(skylarkImport.getImportString())) {
+        continue;
+      }
+      Label extensionLabel = skylarkImport.getLabel(containingLabel);
+      SkylarkExtensionCache.CachedExtension extension =
+          loadExtension(extensionLabel, getExtensionPath(extensionLabel), parseContext);
+      importMap.put(skylarkImport.getImportString(), extension.getExtension());
+      transitiveDependencies.addAll(extension.getTransitiveDependencies());
+    }
+    parseContext.loadedExtensions.addAll(transitiveDependencies);
+    return new LoadedExtensions(importMap.build(), ImmutableSet.copyOf(transitiveDependencies));
+  }
+
+  /**
+   * @return The evaluated extension at {@code extensionPath}, either from the cache or by
+   *     evaluating it and all the extensions it loads.
+   */
+  private SkylarkExtensionCache.CachedExtension loadExtension(
+      Label extensionLabel, Path extensionPath, ParseContext parseContext)
+      throws BuildFileParseException, InterruptedException, IOException {
+    Optional<SkylarkExtensionCache.CachedExtension> cached = extensionCache.get(extensionPath);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    if (!parseContext.extensionsBeingLoaded.add(extensionPath)) {
+      throw BuildFileParseException.createForUnknownParseError(
+          String.format(
+              "Cycle detected while loading extensions: %s -> %s",
+              parseContext.extensionsBeingLoaded, extensionPath));
+    }
+    try {
+      com.google.devtools.build.lib.vfs.Path skylarkPath =
+          fileSystem.getPath(extensionPath.toString());
+      String contentHash =
+          Hashing.sha1().hashBytes(FileSystemUtils.readContent(skylarkPath)).toString();
+      BuildFileAST extensionAst =
+          BuildFileAST.parseSkylarkFile(
+              ParserInputSource.create(skylarkPath), parseContext.eventHandler);
+      LoadedExtensions loadedExtensions =
+          loadExtensions(extensionLabel, extensionAst.getImports(), parseContext);
+      Environment.Extension extension;
+      try (Mutability mutability = Mutability.create("importing " + extensionPath)) {
+        Environment env =
+            Environment.builder(mutability)
+                .setImportedExtensions(loadedExtensions.getImportMap())
+                .setFileContentHashCode(contentHash)
+                .build();
+        if (!extensionAst.exec(env, parseContext.eventHandler)) {
+          throw BuildFileParseException.createForUnknownParseError(
+              "Cannot evaluate extension " + extensionPath);
+        }
+        // Closing the mutability freezes the globals, so they can be safely shared.
+        extension = new Environment.Extension(env);
+      }
+      SkylarkExtensionCache.CachedExtension cachedExtension =
+          new SkylarkExtensionCache.CachedExtension(
+              extension,
+              ImmutableSet.<Path>builder()
+                  .add(extensionPath)
+                  .addAll(loadedExtensions.getTransitiveDependencies())
+                  .build());
+      extensionCache.put(extensionPath, cachedExtension);
+      return cachedExtension;
+    } finally {
+      parseContext.extensionsBeingLoaded.remove(extensionPath);
+    }
+  }
+
+  /**
+   * @return The absolute path of the extension file {@code extensionLabel} refers to, in the cell
+   *     named by its repository, or in this cell if it has none.
+   */
+  private Path getExtensionPath(Label extensionLabel) throws BuildFileParseException {
+    RepositoryName repository = extensionLabel.getPackageIdentifier().getRepository();
+    Path cellRoot;
+    if (repository.isDefault() || repository.isMain()) {
+      cellRoot = options.getProjectRoot();
+    } else {
+      cellRoot = options.getCellRoots().get(repository.strippedName());
+      if (cellRoot == null) {
+        throw BuildFileParseException.createForUnknownParseError(
+            String.format(
+                "Cannot load %s: %s is not a known cell",
+                extensionLabel, repository.strippedName()));
+      }
+    }
+    return cellRoot.resolve(extensionLabel.getPackageName()).resolve(extensionLabel.getName());
+  }
+
+  /** @return The label of {@code buildFile}, used to resolve relative labels of its imports. */
+  private Label createContainingLabel(Path buildFile) {
+    String basePath =
+        Optional.ofNullable(options.getProjectRoot().relativize(buildFile).getParent())
+            .map(Path::toString)
+            .orElse("");
+    return Label.createUnvalidated(
+        PackageIdentifier.createInMainRepo(basePath), buildFile.getFileName().toString());
+  }
+
   /**
    * Sets up native Buck rules in Skylark environment.
    *
@@ -169,6 +328,40 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     };
   }
 
+  /** State of a single build file parse request. */
+  private class ParseContext {
+    // TODO(ttsugrii): consider using a less verbose event handler. Also fancy handler can be
+    // configured for terminals that support it.
+    private final PrintingEventHandler eventHandler =
+        new PrintingEventHandler(EnumSet.allOf(EventKind.class));
+
+    /** All the extension files the build file depends on, directly or transitively. */
+    private final Set<Path> loadedExtensions = new LinkedHashSet<>();
+
+    private final Set<Path> extensionsBeingLoaded = new LinkedHashSet<>();
+  }
+
+  /** Extensions loaded by a file, keyed by their import strings. */
+  private static class LoadedExtensions {
+    private final ImmutableMap<String, Environment.Extension> importMap;
+    private final ImmutableSet<Path> transitiveDependencies;
+
+    private LoadedExtensions(
+        ImmutableMap<String, Environment.Extension> importMap,
+        ImmutableSet<Path> transitiveDependencies) {
+      this.importMap = importMap;
+      this.transitiveDependencies = transitiveDependencies;
+    }
+
+    private ImmutableMap<String, Environment.Extension> getImportMap() {
+      return importMap;
+    }
+
+    private ImmutableSet<Path> getTransitiveDependencies() {
+      return transitiveDependencies;
+    }
+  }
+
   @Override
   public void reportProfile() throws IOException {
     // TODO(ttsugrii): implement
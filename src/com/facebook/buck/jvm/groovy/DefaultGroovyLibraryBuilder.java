@@ -46,6 +46,7 @@ class DefaultGroovyLibraryBuilder extends DefaultJavaLibraryBuilder {
     super(targetGraph, buildTarget, projectFilesystem, params, buildRuleResolver, cellRoots);
     this.groovyBuckConfig = groovyBuckConfig;
     setJavacOptions(javacOptions);
+    setTrackClassUsage(groovyBuckConfig.trackClassUsage() && javacOptions.trackClassUsage());
   }
 
   @Override
@@ -56,4 +56,13 @@ public class GroovyBuckConfig {
 
     return Suppliers.ofInstance(new HashedFileTool(compiler));
   }
+
+  /**
+   * Groovy libraries only record the classes they use, for dependency file rule keys, when this is
+   * set along with java.track_class_usage. They are recorded from the compiled bytecode, which
+   * doesn't show every use, so it is off by default.
+   */
+  boolean trackClassUsage() {
+    return delegate.getBooleanValue("groovy", "track_class_usage", false);
+  }
 }
@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.groovy;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.CalculateClassUsageFromClassesStep;
 import com.facebook.buck.jvm.java.CompileToJarStepFactory;
 import com.facebook.buck.jvm.java.CompilerParameters;
 import com.facebook.buck.jvm.java.JavacOptions;
@@ -76,6 +77,13 @@ class GroovycToJarStepFactory extends CompileToJarStepFactory implements AddsToR
             pathToSrcsList,
             declaredClasspathEntries,
             filesystem));
+
+    // groovyc reads the classpath on its own, so what it used is worked out from what it wrote.
+    if (parameters.shouldTrackClassUsage()) {
+      steps.add(
+          new CalculateClassUsageFromClassesStep(
+              filesystem, outputDirectory, declaredClasspathEntries, parameters.getDepFilePath()));
+    }
   }
 
   @Override
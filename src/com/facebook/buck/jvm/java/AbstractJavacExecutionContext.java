@@ -57,4 +57,11 @@ abstract class AbstractJavacExecutionContext {
 
   /** Setting this to non-absent value enables direct to jar output. */
   public abstract Optional<JarParameters> getDirectToJarParameters();
+
+  /**
+   * Setting this to non-absent value makes the source ABI jar take its entries from these
+   * parameters, leaving the direct to jar parameters to describe the library jar that the same
+   * invocation goes on to build.
+   */
+  public abstract Optional<JarParameters> getSourceAbiJarParameters();
 }
@@ -117,6 +117,15 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return false;
   }
 
+  /**
+   * Whether to only recompile the sources which changed since the previous build, and those
+   * depending on them. This isn't part of the rule key, as the output is the same either way.
+   */
+  @Value.Default
+  public boolean isIncrementalCompilation() {
+    return false;
+  }
+
   @Value.Default
   public JavacCompilationMode getCompilationMode() {
     return JavacCompilationMode.FULL;
@@ -21,10 +21,26 @@ import com.facebook.buck.jvm.java.abi.StubJar;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class CalculateAbiFromClassesStep implements Step {
+  private static final long MAX_CACHED_ABI_BYTES = 64 * 1024 * 1024;
+
+  /**
+   * ABI jars of the jars stubbed by this daemon, keyed by the contents of the jar they were
+   * calculated from. The same third-party jars tend to be stubbed again and again, whether because
+   * several targets wrap them or because rule keys changed for reasons that don't affect the jar.
+   */
+  private static final Cache<String, byte[]> abiJarsByContents =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_ABI_BYTES)
+          .<String, byte[]>weigher((key, abiJar) -> abiJar.length)
+          .build();
 
   private final ProjectFilesystem filesystem;
   private final Path binaryJar;
@@ -44,7 +60,16 @@ public class CalculateAbiFromClassesStep implements Step {
       throws IOException, InterruptedException {
     try {
       Path binJar = filesystem.resolve(binaryJar);
+      String key = filesystem.computeSha1(binJar).getHash() + ":" + sourceAbiCompatible;
+      byte[] cachedAbiJar = abiJarsByContents.getIfPresent(key);
+      if (cachedAbiJar != null) {
+        filesystem.createParentDirs(abiJar);
+        filesystem.writeBytesToPath(cachedAbiJar, abiJar);
+        return StepExecutionResult.SUCCESS;
+      }
+
       new StubJar(binJar).setSourceAbiCompatible(sourceAbiCompatible).writeTo(filesystem, abiJar);
+      abiJarsByContents.put(key, Files.readAllBytes(filesystem.resolve(abiJar)));
     } catch (IllegalArgumentException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResult.ERROR;
@@ -53,6 +78,16 @@ public class CalculateAbiFromClassesStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
+  @VisibleForTesting
+  static long getCachedAbiJarCount() {
+    return abiJarsByContents.size();
+  }
+
+  @VisibleForTesting
+  static void invalidateCachedAbiJars() {
+    abiJarsByContents.invalidateAll();
+  }
+
   @Override
   public String getShortName() {
     return "calculate_abi_from_classes";
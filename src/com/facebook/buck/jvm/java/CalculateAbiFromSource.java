@@ -92,7 +92,7 @@ public class CalculateAbiFromSource extends AbstractBuildRuleWithDeclaredAndExtr
 
   @Override
   public boolean useRulePipelining() {
-    return true;
+    return jarBuildStepsFactory.useRulePipelining();
   }
 
   @Nullable
@@ -104,8 +104,8 @@ public class CalculateAbiFromSource extends AbstractBuildRuleWithDeclaredAndExtr
   @Override
   public ImmutableList<? extends Step> getPipelinedBuildSteps(
       BuildContext context, BuildableContext buildableContext, JavacPipelineState state) {
-    // TODO: Save javac for later rules in pipeline
-    return getBuildSteps(context, buildableContext);
+    return jarBuildStepsFactory.getPipelinedBuildStepsForAbiJar(
+        context, buildableContext, getBuildTarget(), state);
   }
 
   @Override
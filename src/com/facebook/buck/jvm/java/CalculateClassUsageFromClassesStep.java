@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+/**
+ * Writes the class usage file of a rule whose compiler can't report which classes it read, such as
+ * kotlinc or groovyc, from the classes it generated instead. These only reference some of the
+ * classes the compiler had to read, so the file also lists:
+ *
+ * <ul>
+ *   <li>the supertypes of the referenced classes, which the compiler read to resolve their members;
+ *   <li>the classes declaring constants, which are inlined without leaving any reference behind;
+ *   <li>the classes Kotlin inline functions were copied from, as named in the SMAP of the classes.
+ * </ul>
+ */
+public class CalculateClassUsageFromClassesStep implements Step {
+  private static final String CLASS_FILE_EXTENSION = ".class";
+
+  // Examples: First anonymous class is Foo$1. First local class named Bar is Foo$1Bar.
+  private static final Pattern LOCAL_OR_ANONYMOUS_CLASS = Pattern.compile("^.*\\$\\d.*$");
+
+  /**
+   * Every class of a jar needs to be read to find its constants, and the same jars are on the
+   * classpath of most rules, so what they declare is kept along with their shared index.
+   */
+  private static final SharedClasspathIndex.JarSummarizer<ClasspathJar> DECLARATIONS =
+      ClasspathJar::read;
+
+  private final ProjectFilesystem filesystem;
+  private final Path outputDirectory;
+  private final ImmutableSortedSet<Path> classpathEntries;
+  private final Path depFilePath;
+
+  /**
+   * @param outputDirectory the directory the compiler wrote the classes to.
+   * @param classpathEntries the classpath the classes were compiled against, in order.
+   * @param depFilePath where to write the class usage file.
+   */
+  public CalculateClassUsageFromClassesStep(
+      ProjectFilesystem filesystem,
+      Path outputDirectory,
+      ImmutableSortedSet<Path> classpathEntries,
+      Path depFilePath) {
+    this.filesystem = filesystem;
+    this.outputDirectory = outputDirectory;
+    this.classpathEntries = classpathEntries;
+    this.depFilePath = depFilePath;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    // The first jar defining a class is the one the compiler read it from.
+    Map<String, Path> jarsByClass = new HashMap<>();
+    Map<Path, ClasspathJar> jars = new HashMap<>();
+    Set<String> usedClasses = new HashSet<>();
+    for (Path entry : classpathEntries) {
+      Path jarPath = filesystem.resolve(entry);
+      // Directories are not built by java rules, so the class usage file doesn't track them.
+      if (!Files.isRegularFile(jarPath) || jars.containsKey(jarPath)) {
+        continue;
+      }
+      ClasspathJar jar = getClasspathJar(jarPath);
+      jars.put(jarPath, jar);
+      for (String className : jar.classes) {
+        jarsByClass.putIfAbsent(className, jarPath);
+      }
+      usedClasses.addAll(jar.classesWithConstants);
+    }
+
+    Path classesDirectory = filesystem.resolve(outputDirectory);
+    if (Files.isDirectory(classesDirectory)) {
+      try (Stream<Path> files = Files.walk(classesDirectory)) {
+        files
+            .filter(file -> file.toString().endsWith(CLASS_FILE_EXTENSION))
+            .forEach(file -> addReferencedClasses(file, usedClasses));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+
+    ImmutableSetMultimap.Builder<Path, Path> classUsageMap = ImmutableSetMultimap.builder();
+    Set<String> visitedClasses = new HashSet<>();
+    Deque<String> classesToVisit = new ArrayDeque<>(usedClasses);
+    while (!classesToVisit.isEmpty()) {
+      String className = classesToVisit.removeFirst();
+      Path jarPath = jarsByClass.get(className);
+      if (jarPath == null || !visitedClasses.add(className)) {
+        continue;
+      }
+      ClasspathJar jar = jars.get(jarPath);
+      // Only the classes kept in ABI jars can be hashed into dep file rule keys.
+      if (jar.abiClasses.contains(className)) {
+        classUsageMap.put(jarPath, Paths.get(className + CLASS_FILE_EXTENSION));
+      }
+      classesToVisit.addAll(jar.supertypes.get(className));
+    }
+
+    filesystem.createParentDirs(depFilePath);
+    DefaultClassUsageFileWriter.writeFile(
+        classUsageMap.build(), depFilePath, filesystem, context.getCellPathResolver());
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "calculate_class_usage_from_classes";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("%s %s %s", getShortName(), outputDirectory, depFilePath);
+  }
+
+  private static void addReferencedClasses(Path classFile, Set<String> usedClasses) {
+    ReferenceRecorder recorder = new ReferenceRecorder(usedClasses);
+    SourceDebugExtensionReader reader = new SourceDebugExtensionReader();
+    try {
+      new ClassReader(Files.readAllBytes(classFile))
+          .accept(new RemappingClassAdapter(reader, recorder), ClassReader.SKIP_FRAMES);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    addInlineFunctionOwners(reader.sourceDebugExtension, usedClasses);
+  }
+
+  /**
+   * Kotlin copies the bodies of inline functions into their callers, and lists the classes they
+   * were copied from in the file section of the SMAP it stores in the SourceDebugExtension:
+   *
+   * <pre>
+   * *F
+   * + 1 Foo.kt
+   * com/example/FooKt
+   * </pre>
+   */
+  @VisibleForTesting
+  static void addInlineFunctionOwners(
+      @Nullable String sourceDebugExtension, Set<String> usedClasses) {
+    if (sourceDebugExtension == null || !sourceDebugExtension.startsWith("SMAP")) {
+      return;
+    }
+    boolean inFileSection = false;
+    boolean nextLineIsPath = false;
+    for (String line : sourceDebugExtension.split("\r?\n")) {
+      if (line.startsWith("*")) {
+        inFileSection = line.equals("*F");
+        nextLineIsPath = false;
+      } else if (nextLineIsPath) {
+        usedClasses.add(line.trim());
+        nextLineIsPath = false;
+      } else if (inFileSection) {
+        nextLineIsPath = line.startsWith("+ ");
+      }
+    }
+  }
+
+  private static ClasspathJar getClasspathJar(Path jarPath) throws IOException {
+    Optional<SharedClasspathIndex> classpathIndex = SharedClasspathIndex.getInstalled();
+    if (classpathIndex.isPresent()) {
+      Optional<ClasspathJar> jar = classpathIndex.get().getSummary(jarPath, DECLARATIONS);
+      if (jar.isPresent()) {
+        return jar.get();
+      }
+    }
+    try (ZipFile zipFile = new ZipFile(jarPath.toFile())) {
+      return ClasspathJar.read(zipFile);
+    }
+  }
+
+  /** What the classes of a jar declare that matters to the classes compiled against it. */
+  private static class ClasspathJar {
+    private final ImmutableSet<String> classes;
+    private final ImmutableSet<String> abiClasses;
+    private final ImmutableSet<String> classesWithConstants;
+    private final ImmutableListMultimap<String, String> supertypes;
+
+    private ClasspathJar(
+        ImmutableSet<String> classes,
+        ImmutableSet<String> abiClasses,
+        ImmutableSet<String> classesWithConstants,
+        ImmutableListMultimap<String, String> supertypes) {
+      this.classes = classes;
+      this.abiClasses = abiClasses;
+      this.classesWithConstants = classesWithConstants;
+      this.supertypes = supertypes;
+    }
+
+    private static ClasspathJar read(ZipFile zipFile) throws IOException {
+      ImmutableSet.Builder<String> classes = ImmutableSet.builder();
+      ImmutableSet.Builder<String> abiClasses = ImmutableSet.builder();
+      ImmutableSet.Builder<String> classesWithConstants = ImmutableSet.builder();
+      ImmutableListMultimap.Builder<String, String> supertypes = ImmutableListMultimap.builder();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(CLASS_FILE_EXTENSION)) {
+          continue;
+        }
+        String className = name.substring(0, name.length() - CLASS_FILE_EXTENSION.length());
+        classes.add(className);
+
+        DeclarationReader reader = new DeclarationReader();
+        try (InputStream contents = zipFile.getInputStream(entry)) {
+          new ClassReader(contents)
+              .accept(
+                  reader,
+                  ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } catch (RuntimeException e) {
+          // Not a class ASM can read, so there is nothing to learn from it.
+          continue;
+        }
+        // The same classes the ABI jars leave out.
+        if (reader.isSynthetic || LOCAL_OR_ANONYMOUS_CLASS.matcher(className).matches()) {
+          continue;
+        }
+        abiClasses.add(className);
+        if (reader.hasConstants) {
+          classesWithConstants.add(className);
+        }
+        supertypes.putAll(className, reader.supertypes);
+      }
+      return new ClasspathJar(
+          classes.build(), abiClasses.build(), classesWithConstants.build(), supertypes.build());
+    }
+  }
+
+  /** Records every class name the adapter asks to map, which covers all the references. */
+  private static class ReferenceRecorder extends Remapper {
+    private final Set<String> referencedClasses;
+
+    private ReferenceRecorder(Set<String> referencedClasses) {
+      this.referencedClasses = referencedClasses;
+    }
+
+    @Override
+    public String map(String typeName) {
+      referencedClasses.add(typeName);
+      return typeName;
+    }
+  }
+
+  private static class SourceDebugExtensionReader extends ClassVisitor {
+    @Nullable private String sourceDebugExtension;
+
+    private SourceDebugExtensionReader() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+      sourceDebugExtension = debug;
+    }
+  }
+
+  private static class DeclarationReader extends ClassVisitor {
+    private final Set<String> supertypes = new HashSet<>();
+    private boolean isSynthetic;
+    private boolean hasConstants;
+
+    private DeclarationReader() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      isSynthetic = (access & Opcodes.ACC_SYNTHETIC) != 0;
+      if (superName != null) {
+        supertypes.add(superName);
+      }
+      if (interfaces != null) {
+        for (String anInterface : interfaces) {
+          supertypes.add(anInterface);
+        }
+      }
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access, String name, String desc, String signature, Object value) {
+      hasConstants |= value != null && (access & Opcodes.ACC_PRIVATE) == 0;
+      return null;
+    }
+  }
+}
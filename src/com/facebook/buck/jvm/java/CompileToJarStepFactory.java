@@ -39,6 +39,7 @@ import com.google.common.collect.Lists;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import javax.annotation.Nullable;
 
 /** Provides a base implementation for post compile steps. */
 public abstract class CompileToJarStepFactory implements ConfiguredCompiler {
@@ -56,6 +57,40 @@ public abstract class CompileToJarStepFactory implements ConfiguredCompiler {
       /* output params */
       ImmutableList.Builder<Step> steps,
       BuildableContext buildableContext) {
+    createCompileToJarStep(
+        context,
+        target,
+        resolver,
+        ruleFinder,
+        projectFilesystem,
+        compilerParameters,
+        resourcesParameters,
+        postprocessClassesCommands,
+        jarParameters,
+        null,
+        steps,
+        buildableContext);
+  }
+
+  /**
+   * @param pipeline if present, the compilation runs in the javac invocation shared by the rules of
+   *     the pipeline. Only factories that {@link #supportsPipelining} accept one.
+   */
+  public final void createCompileToJarStep(
+      BuildContext context,
+      BuildTarget target,
+      SourcePathResolver resolver,
+      SourcePathRuleFinder ruleFinder,
+      ProjectFilesystem projectFilesystem,
+      CompilerParameters compilerParameters,
+      ResourcesParameters resourcesParameters,
+      ImmutableList<String> postprocessClassesCommands,
+      Optional<JarParameters> jarParameters,
+      @Nullable JavacPipelineState pipeline,
+      /* output params */
+      ImmutableList.Builder<Step> steps,
+      BuildableContext buildableContext) {
+    Preconditions.checkArgument(pipeline == null || supportsPipelining(postprocessClassesCommands));
     // Always create the output directory, even if there are no .java files to compile because there
     // might be resources that need to be copied there.
     steps.addAll(
@@ -113,6 +148,7 @@ public abstract class CompileToJarStepFactory implements ConfiguredCompiler {
           compilerParameters,
           postprocessClassesCommands,
           jarParameters.get(),
+          pipeline,
           steps,
           buildableContext);
     }
@@ -135,6 +171,7 @@ public abstract class CompileToJarStepFactory implements ConfiguredCompiler {
       CompilerParameters compilerParameters,
       ImmutableList<String> postprocessClassesCommands,
       JarParameters jarParameters,
+      @SuppressWarnings("unused") @Nullable JavacPipelineState pipeline,
       /* output params */
       ImmutableList.Builder<Step> steps,
       BuildableContext buildableContext) {
@@ -156,6 +193,15 @@ public abstract class CompileToJarStepFactory implements ConfiguredCompiler {
     createJarStep(projectFilesystem, jarParameters, steps);
   }
 
+  /**
+   * @return whether the source ABI rule and the library rule of a library compiled by this factory
+   *     can share a javac invocation in a pipeline.
+   */
+  @SuppressWarnings("unused")
+  public boolean supportsPipelining(ImmutableList<String> postprocessClassesCommands) {
+    return false;
+  }
+
   public void createJarStep(
       ProjectFilesystem filesystem, JarParameters parameters, ImmutableList.Builder<Step> steps) {
     steps.add(new JarDirectoryStep(filesystem, parameters));
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+/**
+ * What incremental compilation needs to know about a compiled class: the source file it came from,
+ * the classes it references, and a hash of its ABI, so that the sources depending on it are only
+ * recompiled when that changes.
+ */
+class CompiledClassInfo {
+  private final String name;
+  @Nullable private final String sourceFile;
+  private final ImmutableSortedSet<String> referencedClasses;
+  private final ImmutableSortedSet<String> superTypes;
+  private final HashCode abiHash;
+  private final boolean hasConstants;
+  private final byte[] contents;
+
+  private CompiledClassInfo(
+      String name,
+      @Nullable String sourceFile,
+      ImmutableSortedSet<String> referencedClasses,
+      ImmutableSortedSet<String> superTypes,
+      HashCode abiHash,
+      boolean hasConstants,
+      byte[] contents) {
+    this.name = name;
+    this.sourceFile = sourceFile;
+    this.referencedClasses = referencedClasses;
+    this.superTypes = superTypes;
+    this.abiHash = abiHash;
+    this.hasConstants = hasConstants;
+    this.contents = contents;
+  }
+
+  /** @return the internal name of the class, such as {@code com/example/Foo$Bar}. */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the path of the source file the class was compiled from, relative to the root of its
+   *     package, or null if the class was compiled without that debugging information.
+   */
+  @Nullable
+  public String getSourceFile() {
+    if (sourceFile == null) {
+      return null;
+    }
+    int lastSlash = name.lastIndexOf('/');
+    return lastSlash == -1 ? sourceFile : name.substring(0, lastSlash + 1) + sourceFile;
+  }
+
+  /** @return the internal names of the classes referenced anywhere in the class file. */
+  public ImmutableSortedSet<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  /** @return the internal names of the direct superclass and interfaces of the class. */
+  public ImmutableSortedSet<String> getSuperTypes() {
+    return superTypes;
+  }
+
+  public HashCode getAbiHash() {
+    return abiHash;
+  }
+
+  /**
+   * @return whether the class declares non-private constants, which javac inlines in the classes
+   *     using them without leaving any reference to the class behind.
+   */
+  public boolean hasConstants() {
+    return hasConstants;
+  }
+
+  public byte[] getContents() {
+    return contents;
+  }
+
+  public static CompiledClassInfo read(byte[] contents) {
+    ReferenceRecorder recorder = new ReferenceRecorder();
+    AbiHasher abiHasher = new AbiHasher();
+    new ClassReader(contents).accept(new RemappingClassAdapter(abiHasher, recorder), 0);
+    recorder.referencedClasses.remove(abiHasher.name);
+    return new CompiledClassInfo(
+        abiHasher.name,
+        abiHasher.sourceFile,
+        ImmutableSortedSet.copyOf(recorder.referencedClasses),
+        ImmutableSortedSet.copyOf(abiHasher.superTypes),
+        abiHasher.hash(),
+        abiHasher.hasConstants,
+        contents);
+  }
+
+  /** Records every class name the adapter asks to map, which covers all the references. */
+  private static class ReferenceRecorder extends Remapper {
+    private final SortedSet<String> referencedClasses = new TreeSet<>();
+
+    @Override
+    public String map(String typeName) {
+      referencedClasses.add(typeName);
+      return typeName;
+    }
+  }
+
+  /**
+   * Hashes the parts of the class other classes can depend on. The members are sorted first, so
+   * that reordering them in the source doesn't count as a change.
+   */
+  private static class AbiHasher extends ClassVisitor {
+    private final SortedSet<String> members = new TreeSet<>();
+    private final MethodVisitor methodVisitor = new MethodVisitor(Opcodes.ASM5) {};
+    private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM5) {};
+    private final AnnotationVisitor annotationVisitor = new AnnotationVisitor(Opcodes.ASM5) {};
+    private final SortedSet<String> superTypes = new TreeSet<>();
+
+    private String name = "";
+    @Nullable private String sourceFile;
+    private boolean hasConstants;
+
+    private AbiHasher() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      this.name = name;
+      if (superName != null) {
+        superTypes.add(superName);
+      }
+      superTypes.addAll(Arrays.asList(interfaces));
+      String[] sortedInterfaces = interfaces.clone();
+      Arrays.sort(sortedInterfaces);
+      members.add(
+          String.format(
+              "class %d %s %s %s %s",
+              access & ~Opcodes.ACC_SUPER,
+              name,
+              signature,
+              superName,
+              Arrays.toString(sortedInterfaces)));
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+      sourceFile = source;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      members.add(String.format("annotation %s %s", desc, visible));
+      return annotationVisitor;
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      if (!isPrivate(access)) {
+        members.add(String.format("inner %d %s %s %s", access, name, outerName, innerName));
+      }
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access, String name, String desc, String signature, Object value) {
+      if (!isPrivate(access)) {
+        members.add(String.format("field %d %s %s %s %s", access, name, desc, signature, value));
+        hasConstants |= value != null;
+      }
+      // Returned even for the private members, so that the references in them are recorded.
+      return fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access, String name, String desc, String signature, String[] exceptions) {
+      if (!isPrivate(access)) {
+        members.add(
+            String.format(
+                "method %d %s %s %s %s",
+                access,
+                name,
+                desc,
+                signature,
+                exceptions == null ? null : Arrays.toString(exceptions)));
+      }
+      return methodVisitor;
+    }
+
+    private HashCode hash() {
+      Hasher hasher = Hashing.sha1().newHasher();
+      for (String member : members) {
+        hasher.putString(member, StandardCharsets.UTF_8).putByte((byte) 0);
+      }
+      return hasher.hash();
+    }
+
+    private static boolean isPrivate(int access) {
+      return (access & Opcodes.ACC_PRIVATE) != 0;
+    }
+  }
+}
@@ -49,7 +49,18 @@ public final class DefaultClassUsageFileWriter implements ClassUsageFileWriter {
 
   @Override
   public void writeFile(ProjectFilesystem filesystem, CellPathResolver cellPathResolver) {
-    ImmutableSetMultimap<Path, Path> classUsageMap = tracker.getClassUsageMap();
+    writeFile(tracker.getClassUsageMap(), relativePath, filesystem, cellPathResolver);
+  }
+
+  /**
+   * Writes a class usage file from a multimap from the absolute paths of jars to the paths of the
+   * classes used within them.
+   */
+  static void writeFile(
+      ImmutableSetMultimap<Path, Path> classUsageMap,
+      Path relativePath,
+      ProjectFilesystem filesystem,
+      CellPathResolver cellPathResolver) {
     try {
       ObjectMappers.WRITER.writeValue(
           filesystem.resolve(relativePath).toFile(),
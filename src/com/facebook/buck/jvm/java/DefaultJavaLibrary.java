@@ -398,7 +398,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithDeclaredAndExtraDep
 
   @Override
   public boolean useRulePipelining() {
-    return true;
+    return jarBuildStepsFactory.useRulePipelining();
   }
 
   @Override
@@ -415,7 +415,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithDeclaredAndExtraDep
   @Override
   public ImmutableList<? extends Step> getPipelinedBuildSteps(
       BuildContext context, BuildableContext buildableContext, JavacPipelineState state) {
-    // TODO: Reuse the javac
-    return getBuildSteps(context, buildableContext);
+    return jarBuildStepsFactory.getPipelinedBuildStepsForLibraryJar(
+        context, buildableContext, getBuildTarget(), state);
   }
 }
@@ -0,0 +1,558 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.FileMaterializer;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
+import com.facebook.buck.jvm.java.classes.DefaultClasspathTraverser;
+import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.jvm.java.classes.FileLikes;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * Compiles the sources of a java library incrementally: only the sources which changed since the
+ * previous build, and those depending on classes whose ABI changed, are given to javac. The classes
+ * compiled from the other sources are recovered from a copy of the previous output jar, kept next
+ * to the state describing which sources it was built from.
+ *
+ * <p>A change to the ABI of a class also counts as a change to its subclasses and implementors in
+ * the library, which inherit it.
+ *
+ * <p>All the sources are compiled whenever that state can't be trusted (the compiler options or
+ * the classpath changed, or the classes can't be traced back to their sources), when a class
+ * declaring constants changes its ABI (javac inlines them, leaving no trace of the dependency), or
+ * when the changes ripple through too much of the library for the incremental build to pay off.
+ */
+public class IncrementalJavacStep implements Step {
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  /** Changed whenever what is kept between builds changes, so that older states are ignored. */
+  private static final int STATE_VERSION = 1;
+
+  /** Past this fraction of the sources, recompiling all of them is about as fast. */
+  private static final double MAX_RECOMPILED_SOURCES_FRACTION = 0.5;
+
+  private static final String STATE_FILE_NAME = "state.json";
+  private static final String PREVIOUS_JAR_NAME = "previous.jar";
+  private static final String PREVIOUS_USED_CLASSES_NAME = "used-classes.json";
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+  private final CompilerParameters compilerParameters;
+  private final Path jarPath;
+  private final Path stateDirectory;
+
+  /** The state to keep for the next build, once the library has been compiled. */
+  @Nullable private State newState;
+
+  public IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      CompilerParameters compilerParameters,
+      Path jarPath) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.compilerParameters = compilerParameters;
+    this.jarPath = jarPath;
+    this.stateDirectory = getStateDirectory(invokingRule, filesystem);
+  }
+
+  public static Path getStateDirectory(BuildTarget target, ProjectFilesystem filesystem) {
+    return BuildTargets.getScratchPath(filesystem, target, "lib__%s__incremental");
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    newState = null;
+    ImmutableSortedMap<String, String> sourceHashes = hashSources();
+    Optional<String> fingerprint = computeFingerprint(context);
+    // Resources are copied to the output directory beforehand, and may contain class files.
+    ImmutableSet<String> resourceClasses = readClasses(compilerParameters.getOutputDirectory());
+
+    Optional<State> previousState = fingerprint.isPresent() ? readState() : Optional.empty();
+    if (previousState.isPresent() && previousState.get().fingerprint.equals(fingerprint.get())) {
+      Optional<StepExecutionResult> result =
+          compileIncrementally(context, previousState.get(), sourceHashes, resourceClasses);
+      if (result.isPresent()) {
+        if (result.get().isSuccess()) {
+          newState = new State(fingerprint.get(), sourceHashes);
+        }
+        return result.get();
+      }
+    }
+
+    StepExecutionResult result =
+        createJavacStep(compilerParameters.getSourceFilePaths(), false).execute(context);
+    if (result.isSuccess() && fingerprint.isPresent()) {
+      newState = new State(fingerprint.get(), sourceHashes);
+    }
+    return result;
+  }
+
+  /**
+   * Compiles the library against the classes of its previous build.
+   *
+   * @return the result of the compilation, or nothing if all the sources have to be compiled.
+   */
+  private Optional<StepExecutionResult> compileIncrementally(
+      ExecutionContext context,
+      State previousState,
+      ImmutableSortedMap<String, String> sourceHashes,
+      ImmutableSet<String> resourceClasses)
+      throws IOException, InterruptedException {
+    Path previousJar = stateDirectory.resolve(PREVIOUS_JAR_NAME);
+    Path previousUsedClasses = stateDirectory.resolve(PREVIOUS_USED_CLASSES_NAME);
+    if (!filesystem.isFile(previousJar)
+        || (compilerParameters.shouldTrackClassUsage()
+            && !filesystem.isFile(previousUsedClasses))) {
+      return Optional.empty();
+    }
+
+    Map<String, CompiledClassInfo> previousClasses = new HashMap<>();
+    readClasses(previousJar, info -> previousClasses.put(info.getName(), info));
+    Optional<SetMultimap<String, CompiledClassInfo>> previousClassesBySource =
+        mapClassesToSources(previousClasses.values(), previousState.sources.keySet());
+    if (!previousClassesBySource.isPresent()) {
+      return Optional.empty();
+    }
+    SetMultimap<String, CompiledClassInfo> classesBySource = previousClassesBySource.get();
+    SetMultimap<String, String> subTypes = HashMultimap.create();
+    for (CompiledClassInfo info : previousClasses.values()) {
+      for (String superType : info.getSuperTypes()) {
+        subTypes.put(superType, info.getName());
+      }
+    }
+
+    Set<String> compiledSources = new TreeSet<>();
+    Set<String> staleClasses = new HashSet<>();
+    for (Map.Entry<String, String> previousSource : previousState.sources.entrySet()) {
+      if (!previousSource.getValue().equals(sourceHashes.get(previousSource.getKey()))) {
+        for (CompiledClassInfo info : classesBySource.get(previousSource.getKey())) {
+          staleClasses.add(info.getName());
+        }
+      }
+    }
+    for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+      if (!source.getValue().equals(previousState.sources.get(source.getKey()))) {
+        compiledSources.add(source.getKey());
+      }
+    }
+    int maxCompiledSources = (int) (sourceHashes.size() * MAX_RECOMPILED_SOURCES_FRACTION);
+    if (compiledSources.size() > maxCompiledSources) {
+      return Optional.empty();
+    }
+
+    for (CompiledClassInfo info : previousClasses.values()) {
+      if (!staleClasses.contains(info.getName())) {
+        Path classFile = getClassFile(info.getName());
+        filesystem.createParentDirs(classFile);
+        filesystem.writeBytesToPath(info.getContents(), classFile);
+      }
+    }
+
+    SortedMap<String, SortedSet<String>> usedClasses = new TreeMap<>();
+    if (compilerParameters.shouldTrackClassUsage()) {
+      mergeUsedClasses(previousUsedClasses, usedClasses);
+    }
+
+    Set<String> sourcesToCompile = new TreeSet<>(compiledSources);
+    while (true) {
+      if (!sourcesToCompile.isEmpty()) {
+        LOG.debug("%s: compiling %d sources", invokingRule, sourcesToCompile.size());
+        StepExecutionResult result =
+            createJavacStep(
+                    sourcesToCompile
+                        .stream()
+                        .map(Paths::get)
+                        .collect(MoreCollectors.toImmutableSortedSet()),
+                    true)
+                .execute(context);
+        if (!result.isSuccess()) {
+          return Optional.of(result);
+        }
+        if (compilerParameters.shouldTrackClassUsage()) {
+          mergeUsedClasses(compilerParameters.getDepFilePath(), usedClasses);
+        }
+      }
+
+      // The sources depending on the classes whose ABI changed (or which are gone) are compiled
+      // against the new ones. Their own ABI doesn't depend on the changes in the code of others,
+      // but they are checked in the next round all the same.
+      Set<String> changedClasses = new HashSet<>();
+      for (String className : staleClasses) {
+        CompiledClassInfo previousInfo = previousClasses.get(className);
+        Path classFile = getClassFile(className);
+        if (!filesystem.isFile(classFile)
+            || !CompiledClassInfo.read(Files.readAllBytes(filesystem.resolve(classFile)))
+                .getAbiHash()
+                .equals(previousInfo.getAbiHash())) {
+          if (previousInfo.hasConstants()) {
+            LOG.debug("%s: ABI of %s, which has constants, changed", invokingRule, className);
+            return fallBackToFullCompilation(resourceClasses);
+          }
+          changedClasses.add(className);
+        }
+      }
+      // Classes inherit the ABI of their supertypes without naming them anywhere but in their
+      // own class file, so their subclasses and implementors are recompiled as if they changed
+      // too, and so are the sources using those.
+      Deque<String> superTypesToVisit = new ArrayDeque<>(changedClasses);
+      while (!superTypesToVisit.isEmpty()) {
+        for (String subType : subTypes.get(superTypesToVisit.removeFirst())) {
+          if (changedClasses.add(subType)) {
+            superTypesToVisit.add(subType);
+          }
+        }
+      }
+
+      sourcesToCompile.clear();
+      staleClasses.clear();
+      for (Map.Entry<String, CompiledClassInfo> entry : classesBySource.entries()) {
+        String source = entry.getKey();
+        if (sourceHashes.containsKey(source)
+            && !compiledSources.contains(source)
+            && (changedClasses.contains(entry.getValue().getName())
+                || !Collections.disjoint(
+                    entry.getValue().getReferencedClasses(), changedClasses))) {
+          sourcesToCompile.add(source);
+        }
+      }
+      if (sourcesToCompile.isEmpty()) {
+        break;
+      }
+      compiledSources.addAll(sourcesToCompile);
+      if (compiledSources.size() > maxCompiledSources) {
+        LOG.debug("%s: ABI changes affect too many sources", invokingRule);
+        return fallBackToFullCompilation(resourceClasses);
+      }
+      for (String source : sourcesToCompile) {
+        for (CompiledClassInfo info : classesBySource.get(source)) {
+          filesystem.deleteFileAtPathIfExists(getClassFile(info.getName()));
+          staleClasses.add(info.getName());
+        }
+      }
+    }
+
+    if (compilerParameters.shouldTrackClassUsage()) {
+      ObjectMappers.WRITER.writeValue(
+          filesystem.resolve(compilerParameters.getDepFilePath()).toFile(), usedClasses);
+    }
+    LOG.info(
+        "%s: compiled %d of %d sources incrementally",
+        invokingRule, compiledSources.size(), sourceHashes.size());
+    return Optional.of(StepExecutionResult.SUCCESS);
+  }
+
+  /** Leaves the output directory as it was before the incremental compilation. */
+  private Optional<StepExecutionResult> fallBackToFullCompilation(
+      ImmutableSet<String> resourceClasses) throws IOException {
+    for (String className : readClasses(compilerParameters.getOutputDirectory())) {
+      if (!resourceClasses.contains(className)) {
+        filesystem.deleteFileAtPathIfExists(getClassFile(className));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Maps the classes to the sources they were compiled from, using the path of the source file
+   * recorded in the class files.
+   *
+   * @return the mapping, or nothing if some class can't be mapped to exactly one source.
+   */
+  private static Optional<SetMultimap<String, CompiledClassInfo>> mapClassesToSources(
+      Iterable<CompiledClassInfo> classes, Set<String> sources) {
+    Map<String, List<Path>> sourcesByFileName = new HashMap<>();
+    for (String source : sources) {
+      Path sourcePath = Paths.get(source);
+      sourcesByFileName
+          .computeIfAbsent(sourcePath.getFileName().toString(), fileName -> new ArrayList<>())
+          .add(sourcePath);
+    }
+
+    SetMultimap<String, CompiledClassInfo> classesBySource = HashMultimap.create();
+    for (CompiledClassInfo info : classes) {
+      String sourceFile = info.getSourceFile();
+      if (sourceFile == null) {
+        return Optional.empty();
+      }
+      Path sourceFilePath = Paths.get(sourceFile);
+      List<Path> candidates =
+          sourcesByFileName.getOrDefault(
+              sourceFilePath.getFileName().toString(), ImmutableList.of());
+      if (candidates.size() > 1) {
+        // Sources usually live in a directory named after their package.
+        List<Path> matchingPackage = new ArrayList<>();
+        for (Path candidate : candidates) {
+          if (candidate.endsWith(sourceFilePath)) {
+            matchingPackage.add(candidate);
+          }
+        }
+        candidates = matchingPackage;
+      }
+      if (candidates.size() != 1) {
+        LOG.debug("Cannot tell which source %s was compiled from", info.getName());
+        return Optional.empty();
+      }
+      classesBySource.put(candidates.get(0).toString(), info);
+    }
+    return Optional.of(classesBySource);
+  }
+
+  private JavacStep createJavacStep(
+      ImmutableSortedSet<Path> sourceFilePaths, boolean againstOutputDirectory) {
+    CompilerParameters.Builder parameters =
+        CompilerParameters.builder().from(compilerParameters).setSourceFilePaths(sourceFilePaths);
+    if (againstOutputDirectory) {
+      parameters.setClasspathEntries(
+          ImmutableSortedSet.<Path>naturalOrder()
+              .addAll(compilerParameters.getClasspathEntries())
+              .add(filesystem.resolve(compilerParameters.getOutputDirectory()))
+              .build());
+    }
+    return new JavacStep(
+        compilerParameters.shouldTrackClassUsage()
+            ? new DefaultClassUsageFileWriter(compilerParameters.getDepFilePath())
+            : NoOpClassUsageFileWriter.instance(),
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        new ClasspathChecker(),
+        parameters.build(),
+        Optional.empty(),
+        null);
+  }
+
+  private ImmutableSortedMap<String, String> hashSources() throws IOException {
+    ImmutableSortedMap.Builder<String, String> sourceHashes = ImmutableSortedMap.naturalOrder();
+    for (Path source : compilerParameters.getSourceFilePaths()) {
+      sourceHashes.put(source.toString(), filesystem.computeSha1(source).getHash());
+    }
+    return sourceHashes.build();
+  }
+
+  /**
+   * Fingerprints everything but the sources that goes into the compilation: if any of it changes,
+   * the classes of the previous build can't be reused.
+   *
+   * @return the fingerprint, or nothing if the compilation can't be fingerprinted cheaply.
+   */
+  private Optional<String> computeFingerprint(ExecutionContext context) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(STATE_VERSION);
+    hasher.putString(javac.getClass().getName(), StandardCharsets.UTF_8);
+    hasher.putBoolean(compilerParameters.shouldTrackClassUsage());
+    for (String option :
+        JavacStep.getOptions(
+            javacOptions,
+            filesystem,
+            resolver,
+            compilerParameters.getOutputDirectory(),
+            compilerParameters.getGeneratedCodeDirectory(),
+            context,
+            compilerParameters.getClasspathEntries())) {
+      hasher.putString(option, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    for (Path classpathEntry : compilerParameters.getClasspathEntries()) {
+      hasher.putString(classpathEntry.toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+      if (filesystem.isDirectory(classpathEntry)) {
+        // Their modification time says nothing about the classes inside.
+        return Optional.empty();
+      }
+      if (filesystem.exists(classpathEntry)) {
+        hasher.putLong(filesystem.getFileSize(classpathEntry));
+        hasher.putLong(filesystem.getLastModifiedTime(classpathEntry).toMillis());
+      }
+    }
+    return Optional.of(hasher.hash().toString());
+  }
+
+  private Optional<State> readState() {
+    Path stateFile = stateDirectory.resolve(STATE_FILE_NAME);
+    if (!filesystem.isFile(stateFile)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ObjectMappers.readValue(filesystem.resolve(stateFile), State.class));
+    } catch (IOException e) {
+      LOG.warn(e, "Could not read the incremental compilation state of %s", invokingRule);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Keeps what the next build needs to compile incrementally. The state file is written last, so
+   * that it never describes another build's jar.
+   */
+  private void saveState() throws IOException {
+    Path stateFile = stateDirectory.resolve(STATE_FILE_NAME);
+    filesystem.deleteFileAtPathIfExists(stateFile);
+    if (newState == null) {
+      return;
+    }
+    filesystem.mkdirs(stateDirectory);
+    filesystem.copyFile(
+        jarPath, stateDirectory.resolve(PREVIOUS_JAR_NAME), FileMaterializer.Strategy.CLONE);
+    if (compilerParameters.shouldTrackClassUsage()) {
+      filesystem.copyFile(
+          compilerParameters.getDepFilePath(),
+          stateDirectory.resolve(PREVIOUS_USED_CLASSES_NAME),
+          FileMaterializer.Strategy.CLONE);
+    }
+    ObjectMappers.WRITER.writeValue(filesystem.resolve(stateFile).toFile(), newState);
+  }
+
+  /** @return a step saving the state of this compilation, to run once the jar is built. */
+  public Step createSaveStateStep() {
+    return new AbstractExecutionStep("save_incremental_javac_state") {
+      @Override
+      public StepExecutionResult execute(ExecutionContext context) throws IOException {
+        saveState();
+        return StepExecutionResult.SUCCESS;
+      }
+    };
+  }
+
+  private Path getClassFile(String className) {
+    return compilerParameters.getOutputDirectory().resolve(className + ".class");
+  }
+
+  private ImmutableSet<String> readClasses(Path directory) throws IOException {
+    ImmutableSet.Builder<String> classNames = ImmutableSet.builder();
+    if (filesystem.isDirectory(directory)) {
+      readClasses(directory, info -> classNames.add(info.getName()));
+    }
+    return classNames.build();
+  }
+
+  private void readClasses(Path jarOrDirectory, ClassInfoConsumer consumer) throws IOException {
+    new DefaultClasspathTraverser()
+        .traverse(
+            new ClasspathTraversal(
+                Collections.singleton(filesystem.resolve(jarOrDirectory)), filesystem) {
+              @Override
+              public void visit(FileLike fileLike) throws IOException {
+                if (!FileLikes.isClassFile(fileLike)) {
+                  return;
+                }
+                try (InputStream input = fileLike.getInput()) {
+                  consumer.accept(CompiledClassInfo.read(ByteStreams.toByteArray(input)));
+                }
+              }
+            });
+  }
+
+  private void mergeUsedClasses(
+      Path usedClassesFile, SortedMap<String, SortedSet<String>> usedClasses) throws IOException {
+    ImmutableMap<String, ImmutableList<String>> fileContents =
+        ObjectMappers.readValue(
+            filesystem.resolve(usedClassesFile),
+            new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {});
+    for (Map.Entry<String, ImmutableList<String>> entry : fileContents.entrySet()) {
+      usedClasses.computeIfAbsent(entry.getKey(), jar -> new TreeSet<>()).addAll(entry.getValue());
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "javac_incremental";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "incremental javac of %d sources into %s, state in %s",
+        compilerParameters.getSourceFilePaths().size(),
+        compilerParameters.getOutputDirectory(),
+        stateDirectory);
+  }
+
+  @FunctionalInterface
+  private interface ClassInfoConsumer {
+    void accept(CompiledClassInfo info);
+  }
+
+  /** What is kept of a build: the fingerprint of its options and the hashes of its sources. */
+  private static class State {
+    @JsonProperty final String fingerprint;
+    @JsonProperty final ImmutableSortedMap<String, String> sources;
+
+    @JsonCreator
+    State(
+        @JsonProperty("fingerprint") String fingerprint,
+        @JsonProperty("sources") ImmutableSortedMap<String, String> sources) {
+      this.fingerprint = fingerprint;
+      this.sources = sources;
+    }
+  }
+}
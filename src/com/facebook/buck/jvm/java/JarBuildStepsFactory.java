@@ -132,19 +132,26 @@ public class JarBuildStepsFactory
 
   public ImmutableList<Step> getBuildStepsForAbiJar(
       BuildContext context, BuildableContext buildableContext, BuildTarget buildTarget) {
+    return getBuildStepsForAbiJar(context, buildableContext, buildTarget, null);
+  }
+
+  public ImmutableList<Step> getPipelinedBuildStepsForAbiJar(
+      BuildContext context,
+      BuildableContext buildableContext,
+      BuildTarget buildTarget,
+      JavacPipelineState state) {
+    return getBuildStepsForAbiJar(context, buildableContext, buildTarget, state);
+  }
+
+  private ImmutableList<Step> getBuildStepsForAbiJar(
+      BuildContext context,
+      BuildableContext buildableContext,
+      BuildTarget buildTarget,
+      @Nullable JavacPipelineState state) {
     Preconditions.checkState(producesJar());
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
 
-    CompilerParameters compilerParameters =
-        CompilerParameters.builder()
-            .setClasspathEntriesSourcePaths(
-                compileTimeClasspathSourcePaths, context.getSourcePathResolver())
-            .setSourceFileSourcePaths(srcs, projectFilesystem, context.getSourcePathResolver())
-            .setStandardPaths(buildTarget, projectFilesystem)
-            .setShouldTrackClassUsage(false)
-            .setShouldGenerateAbiJar(true)
-            .setRuleIsRequiredForSourceAbi(ruleRequiredForSourceAbi)
-            .build();
+    CompilerParameters compilerParameters = getCompilerParametersForAbiJar(context, buildTarget);
 
     ResourcesParameters resourcesParameters = getResourcesParameters();
 
@@ -162,6 +169,7 @@ public class JarBuildStepsFactory
         resourcesParameters,
         ImmutableList.of(),
         jarParameters,
+        state,
         steps,
         buildableContext);
 
@@ -170,17 +178,26 @@ public class JarBuildStepsFactory
 
   public ImmutableList<Step> getBuildStepsForLibraryJar(
       BuildContext context, BuildableContext buildableContext, BuildTarget buildTarget) {
+    return getBuildStepsForLibraryJar(context, buildableContext, buildTarget, null);
+  }
+
+  public ImmutableList<Step> getPipelinedBuildStepsForLibraryJar(
+      BuildContext context,
+      BuildableContext buildableContext,
+      BuildTarget buildTarget,
+      JavacPipelineState state) {
+    return getBuildStepsForLibraryJar(context, buildableContext, buildTarget, state);
+  }
+
+  private ImmutableList<Step> getBuildStepsForLibraryJar(
+      BuildContext context,
+      BuildableContext buildableContext,
+      BuildTarget buildTarget,
+      @Nullable JavacPipelineState state) {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
 
     CompilerParameters compilerParameters =
-        CompilerParameters.builder()
-            .setClasspathEntriesSourcePaths(
-                compileTimeClasspathSourcePaths, context.getSourcePathResolver())
-            .setSourceFileSourcePaths(srcs, projectFilesystem, context.getSourcePathResolver())
-            .setStandardPaths(buildTarget, projectFilesystem)
-            .setShouldTrackClassUsage(trackClassUsage)
-            .setRuleIsRequiredForSourceAbi(ruleRequiredForSourceAbi)
-            .build();
+        getCompilerParametersForLibraryJar(context, buildTarget);
 
     ResourcesParameters resourcesParameters = getResourcesParameters();
 
@@ -198,6 +215,7 @@ public class JarBuildStepsFactory
         resourcesParameters,
         postprocessClassesCommands,
         jarParameters,
+        state,
         steps,
         buildableContext);
 
@@ -212,6 +230,31 @@ public class JarBuildStepsFactory
     return steps.build();
   }
 
+  private CompilerParameters getCompilerParametersForAbiJar(
+      BuildContext context, BuildTarget buildTarget) {
+    return CompilerParameters.builder()
+        .setClasspathEntriesSourcePaths(
+            compileTimeClasspathSourcePaths, context.getSourcePathResolver())
+        .setSourceFileSourcePaths(srcs, projectFilesystem, context.getSourcePathResolver())
+        .setStandardPaths(buildTarget, projectFilesystem)
+        .setShouldTrackClassUsage(false)
+        .setShouldGenerateAbiJar(true)
+        .setRuleIsRequiredForSourceAbi(ruleRequiredForSourceAbi)
+        .build();
+  }
+
+  private CompilerParameters getCompilerParametersForLibraryJar(
+      BuildContext context, BuildTarget buildTarget) {
+    return CompilerParameters.builder()
+        .setClasspathEntriesSourcePaths(
+            compileTimeClasspathSourcePaths, context.getSourcePathResolver())
+        .setSourceFileSourcePaths(srcs, projectFilesystem, context.getSourcePathResolver())
+        .setStandardPaths(buildTarget, projectFilesystem)
+        .setShouldTrackClassUsage(trackClassUsage)
+        .setRuleIsRequiredForSourceAbi(ruleRequiredForSourceAbi)
+        .build();
+  }
+
   protected ResourcesParameters getResourcesParameters() {
     return ResourcesParameters.builder()
         .setResources(this.resources)
@@ -280,8 +323,37 @@ public class JarBuildStepsFactory
     return pathToSourcePathMapBuilder.build();
   }
 
+  /**
+   * @return whether the source ABI and library rules can share their javac invocation, so that it
+   *     parses and enters the sources only once.
+   */
+  public boolean useRulePipelining() {
+    return ((CompileToJarStepFactory) configuredCompiler)
+        .supportsPipelining(postprocessClassesCommands);
+  }
+
   @Override
-  public JavacPipelineState newInstance() {
-    return new JavacPipelineState();
+  public JavacPipelineState newInstance(BuildContext context, BuildTarget firstTarget) {
+    BuildTarget libraryTarget =
+        HasJavaAbi.isLibraryTarget(firstTarget)
+            ? firstTarget
+            : HasJavaAbi.getLibraryTarget(firstTarget);
+    CompilerParameters compilerParameters =
+        getCompilerParametersForLibraryJar(context, libraryTarget);
+    Optional<JarParameters> sourceAbiJarParameters = Optional.empty();
+    if (HasJavaAbi.isSourceAbiTarget(firstTarget)) {
+      sourceAbiJarParameters =
+          getJarParameters(
+              context, firstTarget, getCompilerParametersForAbiJar(context, firstTarget));
+    }
+
+    return ((JavacToJarStepFactory) configuredCompiler)
+        .createPipelineState(
+            context,
+            libraryTarget,
+            projectFilesystem,
+            compilerParameters,
+            getJarParameters(context, libraryTarget, compilerParameters),
+            sourceAbiJarParameters);
   }
 }
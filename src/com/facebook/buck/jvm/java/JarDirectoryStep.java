@@ -85,6 +85,7 @@ public class JarDirectoryStep implements Step {
             .setShouldDisallowAllDuplicates(parameters.getDisallowAllDuplicates())
             .setShouldHashEntries(parameters.getHashEntries())
             .setRemoveEntryPredicate(parameters.getRemoveEntryPredicate())
+            .setShouldDeflateInParallel(true)
             .createJarFile(filesystem.resolve(parameters.getJarPath())));
   }
 }
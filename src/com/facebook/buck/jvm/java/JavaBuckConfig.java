@@ -88,6 +88,8 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
         delegate.getListWithoutComments(SECTION, "safe_annotation_processors");
 
     builder.setTrackClassUsage(trackClassUsage());
+    builder.setIncrementalCompilation(
+        delegate.getBooleanValue(SECTION, "incremental_compilation", false));
 
     AbiGenerationMode abiGenerationMode = getAbiGenerationMode();
     switch (abiGenerationMode) {
@@ -241,6 +243,18 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
         .orElse(SourceAbiVerificationMode.OFF);
   }
 
+  /**
+   * @return the maximum number of jars the daemon indexes for the in-process javac invocations to
+   *     share, if enabled.
+   */
+  public Optional<Integer> getSharedClasspathIndexMaxJars() {
+    if (!delegate.getBooleanValue(SECTION, "shared_classpath_index", false)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        delegate.getInteger(SECTION, "shared_classpath_index_max_jars").orElse(1024));
+  }
+
   public boolean shouldCompileAgainstAbis() {
     return delegate.getBooleanValue(SECTION, PROPERTY_COMPILE_AGAINST_ABIS, false);
   }
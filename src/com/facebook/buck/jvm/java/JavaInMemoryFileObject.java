@@ -19,6 +19,8 @@ package com.facebook.buck.jvm.java;
 import com.facebook.buck.zip.CustomZipEntry;
 import com.facebook.buck.zip.JarBuilder;
 import com.facebook.buck.zip.JarEntrySupplier;
+import com.facebook.buck.zip.PrecompressedContents;
+import com.google.common.base.Preconditions;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
@@ -30,12 +32,16 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
 import javax.tools.SimpleJavaFileObject;
 
 /**
  * A {@link SimpleJavaFileObject} implementation that forwards the content of the file to a Jar
- * output stream instead of writing it to disk. Since the Jar can be shared between multiple
- * threads, a semaphore is used to ensure exclusive access to the output stream.
+ * output stream instead of writing it to disk. The content is deflated in the background as soon as
+ * the file is closed, so that compressing the classes overlaps with generating the rest of them.
  */
 public class JavaInMemoryFileObject extends JarFileObject {
   // Bump the initial buffer size because usual file sizes using this are way more than 4K and the
@@ -45,7 +51,11 @@ public class JavaInMemoryFileObject extends JarFileObject {
 
   private boolean isOpened = false;
   private boolean isWritten = false;
-  private final ByteArrayOutputStream bos = new ByteArrayOutputStream(BUFFER_SIZE);
+  /** Only kept until the file is closed, so that its contents aren't held twice. */
+  @Nullable private ByteArrayOutputStream bos = new ByteArrayOutputStream(BUFFER_SIZE);
+  /** The same array the compressed contents are built from. */
+  @Nullable private byte[] contents;
+  @Nullable private CompletableFuture<PrecompressedContents> compressedContents;
 
   public JavaInMemoryFileObject(URI uri, String pathInJar, Kind kind) {
     super(uri, pathInJar, kind);
@@ -53,10 +63,7 @@ public class JavaInMemoryFileObject extends JarFileObject {
 
   @Override
   public InputStream openInputStream() throws IOException {
-    if (!isWritten) {
-      throw new FileNotFoundException(uri.toString());
-    }
-    return new ByteArrayInputStream(bos.toByteArray());
+    return new ByteArrayInputStream(getContents());
   }
 
   @Override
@@ -68,13 +75,34 @@ public class JavaInMemoryFileObject extends JarFileObject {
     return new OutputStream() {
       @Override
       public void write(int b) throws IOException {
-        bos.write(b);
+        getOpenStream().write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        getOpenStream().write(b, off, len);
       }
 
       @Override
       public void close() throws IOException {
-        bos.close();
+        if (isWritten) {
+          return;
+        }
+        byte[] writtenContents = getOpenStream().toByteArray();
+        bos = null;
+        contents = writtenContents;
         isWritten = true;
+        compressedContents =
+            CompletableFuture.supplyAsync(
+                () -> PrecompressedContents.compress(writtenContents, Deflater.DEFAULT_COMPRESSION),
+                ForkJoinPool.commonPool());
+      }
+
+      private ByteArrayOutputStream getOpenStream() throws IOException {
+        if (bos == null) {
+          throw new IOException("Output stream has already been closed.");
+        }
+        return bos;
       }
     };
   }
@@ -86,10 +114,14 @@ public class JavaInMemoryFileObject extends JarFileObject {
 
   @Override
   public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
-    if (!isWritten) {
+    return new String(getContents());
+  }
+
+  private byte[] getContents() throws FileNotFoundException {
+    if (!isWritten || contents == null) {
       throw new FileNotFoundException(uri.toString());
     }
-    return new String(bos.toByteArray());
+    return contents;
   }
 
   @Override
@@ -103,7 +135,9 @@ public class JavaInMemoryFileObject extends JarFileObject {
       // Nothing was written to this file, so it doesn't really exist.
       return;
     }
+    CompletableFuture<PrecompressedContents> contents =
+        Preconditions.checkNotNull(compressedContents);
     jarBuilder.addEntry(
-        new JarEntrySupplier(new CustomZipEntry(getName()), owner, this::openInputStream));
+        JarEntrySupplier.ofPrecompressed(new CustomZipEntry(getName()), owner, contents::join));
   }
 }
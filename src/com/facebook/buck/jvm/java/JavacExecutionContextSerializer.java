@@ -48,6 +48,7 @@ public class JavacExecutionContextSerializer {
   private static final String PROCESS_EXECUTOR = "process_executor";
   private static final String ABSOLUTE_PATHS_FOR_INPUTS = "absolute_paths_for_inputs";
   private static final String DIRECT_TO_JAR_PARAMETERS = "direct_to_jar_parameters";
+  private static final String SOURCE_ABI_JAR_PARAMETERS = "source_abi_jar_parameters";
 
   public static ImmutableMap<String, Object> serialize(JavacExecutionContext context) {
     ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
@@ -73,6 +74,11 @@ public class JavacExecutionContextSerializer {
           DIRECT_TO_JAR_PARAMETERS,
           JarParametersSerializer.serialize(context.getDirectToJarParameters().get()));
     }
+    if (context.getSourceAbiJarParameters().isPresent()) {
+      builder.put(
+          SOURCE_ABI_JAR_PARAMETERS,
+          JarParametersSerializer.serialize(context.getSourceAbiJarParameters().get()));
+    }
 
     return builder.build();
   }
@@ -125,6 +131,15 @@ public class JavacExecutionContextSerializer {
                       Preconditions.checkNotNull(data.get(DIRECT_TO_JAR_PARAMETERS))));
     }
 
+    Optional<JarParameters> sourceAbiJarParameters = Optional.empty();
+    if (data.containsKey(SOURCE_ABI_JAR_PARAMETERS)) {
+      sourceAbiJarParameters =
+          Optional.of(
+              JarParametersSerializer.deserialize(
+                  (Map<String, Object>)
+                      Preconditions.checkNotNull(data.get(SOURCE_ABI_JAR_PARAMETERS))));
+    }
+
     return JavacExecutionContext.of(
         eventSink,
         stdErr,
@@ -140,6 +155,7 @@ public class JavacExecutionContextSerializer {
                 "Missing environment when deserializing JavacExectionContext"),
         processExecutor,
         absolutePathsForInputs,
-        directToJarParameters);
+        directToJarParameters,
+        sourceAbiJarParameters);
   }
 }
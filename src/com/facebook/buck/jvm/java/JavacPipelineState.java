@@ -16,9 +16,155 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.RulePipelineState;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.CapturingPrintStream;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.Verbosity;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.Optional;
+import javax.annotation.Nullable;
 
+/**
+ * The javac invocation compiling a java library, shared by the rules of its pipeline. The source
+ * ABI rule runs the frontend and writes the ABI jar from the entered symbols, then the library rule
+ * generates the classes from the very same trees instead of parsing and entering the sources again.
+ */
 public class JavacPipelineState implements RulePipelineState {
+  private static final Logger LOG = Logger.get(JavacPipelineState.class);
+
+  private final CapturingPrintStream stdout = new CapturingPrintStream();
+  private final CapturingPrintStream stderr = new CapturingPrintStream();
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+  private final ClassUsageFileWriter usedClassesFileWriter;
+  private final CompilerParameters compilerParameters;
+  private final Optional<JarParameters> jarParameters;
+  private final Optional<JarParameters> sourceAbiJarParameters;
+
+  @Nullable private ExecutionContext firstOrderContext;
+  @Nullable private Javac.Invocation invocation;
+
+  /**
+   * @param invokingRule the library the invocation compiles.
+   * @param compilerParameters the parameters for compiling the library.
+   * @param jarParameters the parameters for the library jar, if written straight from javac.
+   * @param sourceAbiJarParameters the parameters for the source ABI jar, if the pipeline starts
+   *     with the rule building it.
+   */
+  public JavacPipelineState(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      ClassUsageFileWriter usedClassesFileWriter,
+      CompilerParameters compilerParameters,
+      Optional<JarParameters> jarParameters,
+      Optional<JarParameters> sourceAbiJarParameters) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.usedClassesFileWriter = usedClassesFileWriter;
+    this.compilerParameters = compilerParameters;
+    this.jarParameters = jarParameters;
+    this.sourceAbiJarParameters = sourceAbiJarParameters;
+  }
+
+  /** @return the invocation, starting it if this is the first rule of the pipeline to need it. */
+  public Javac.Invocation getJavacInvocation(ExecutionContext context) {
+    if (invocation == null) {
+      Verbosity verbosity =
+          context.getVerbosity().isSilent()
+              ? Verbosity.STANDARD_INFORMATION
+              : context.getVerbosity();
+      firstOrderContext = context.createSubContext(stdout, stderr, Optional.of(verbosity));
+      JavacExecutionContext javacExecutionContext =
+          JavacExecutionContext.of(
+              new JavacEventSinkToBuckEventBusBridge(firstOrderContext.getBuckEventBus()),
+              stderr,
+              firstOrderContext.getClassLoaderCache(),
+              verbosity,
+              firstOrderContext.getCellPathResolver(),
+              firstOrderContext.getJavaPackageFinder(),
+              filesystem,
+              usedClassesFileWriter,
+              firstOrderContext.getEnvironment(),
+              firstOrderContext.getProcessExecutor(),
+              javac
+                  .getInputs()
+                  .stream()
+                  .map(resolver::getAbsolutePath)
+                  .collect(MoreCollectors.toImmutableList()),
+              jarParameters,
+              sourceAbiJarParameters);
+      ImmutableList<JavacPluginJsr199Fields> pluginFields =
+          javacOptions
+              .getAnnotationProcessingParams()
+              .getAnnotationProcessors(filesystem, resolver)
+              .stream()
+              .map(ResolvedJavacPluginProperties::getJavacPluginJsr199Fields)
+              .collect(MoreCollectors.toImmutableList());
+      invocation =
+          javac.newBuildInvocation(
+              javacExecutionContext,
+              invokingRule,
+              JavacStep.getOptions(
+                  javacOptions,
+                  filesystem,
+                  resolver,
+                  compilerParameters.getOutputDirectory(),
+                  compilerParameters.getGeneratedCodeDirectory(),
+                  context,
+                  compilerParameters.getClasspathEntries()),
+              pluginFields,
+              compilerParameters.getSourceFilePaths(),
+              compilerParameters.getPathToSourcesList(),
+              compilerParameters.getWorkingDirectory(),
+              javacOptions.getCompilationMode(),
+              compilerParameters.ruleIsRequiredForSourceAbi());
+    }
+    return invocation;
+  }
+
+  /** @return what the invocation printed since the last call, which is then forgotten. */
+  public String takeStdoutContents() {
+    String contents = stdout.getContentsAsString(Charsets.UTF_8);
+    stdout.reset();
+    return contents;
+  }
+
+  /** @return what the invocation reported since the last call, which is then forgotten. */
+  public String takeStderrContents() {
+    String contents = stderr.getContentsAsString(Charsets.UTF_8);
+    stderr.reset();
+    return contents;
+  }
+
   @Override
-  public void close() {}
+  public void close() {
+    if (invocation != null) {
+      invocation.close();
+    }
+    if (firstOrderContext != null) {
+      try {
+        firstOrderContext.close();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to close the javac execution context for %s.", invokingRule);
+      }
+    }
+    stdout.close();
+    stderr.close();
+  }
 }
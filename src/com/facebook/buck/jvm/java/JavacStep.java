@@ -25,11 +25,7 @@ import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.util.CapturingPrintStream;
-import com.facebook.buck.util.MoreCollectors;
-import com.facebook.buck.util.Verbosity;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -40,7 +36,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /** Command used to compile java libraries with a variety of ways to handle dependencies. */
@@ -66,6 +61,8 @@ public class JavacStep implements Step {
 
   @Nullable private final Path abiJar;
 
+  @Nullable private final JavacPipelineState pipeline;
+
   public JavacStep(
       ClassUsageFileWriter usedClassesFileWriter,
       Javac javac,
@@ -77,6 +74,36 @@ public class JavacStep implements Step {
       CompilerParameters compilerParameters,
       Optional<JarParameters> jarParameters,
       @Nullable Path abiJar) {
+    this(
+        usedClassesFileWriter,
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        classpathChecker,
+        compilerParameters,
+        jarParameters,
+        abiJar,
+        null);
+  }
+
+  /**
+   * @param pipeline if present, the step runs its part of the compilation in the javac invocation
+   *     shared by the rules of the pipeline, rather than in one of its own.
+   */
+  public JavacStep(
+      ClassUsageFileWriter usedClassesFileWriter,
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      ClasspathChecker classpathChecker,
+      CompilerParameters compilerParameters,
+      Optional<JarParameters> jarParameters,
+      @Nullable Path abiJar,
+      @Nullable JavacPipelineState pipeline) {
     this.usedClassesFileWriter = usedClassesFileWriter;
     this.javacOptions = javacOptions;
     this.javac = javac;
@@ -87,6 +114,7 @@ public class JavacStep implements Step {
     this.compilerParameters = compilerParameters;
     this.jarParameters = jarParameters;
     this.abiJar = abiJar;
+    this.pipeline = pipeline;
   }
 
   @Override
@@ -94,70 +122,47 @@ public class JavacStep implements Step {
       throws IOException, InterruptedException {
     javacOptions.validateOptions(classpathChecker::validateClasspath);
 
-    Verbosity verbosity =
-        context.getVerbosity().isSilent() ? Verbosity.STANDARD_INFORMATION : context.getVerbosity();
-    try (CapturingPrintStream stdout = new CapturingPrintStream();
-        CapturingPrintStream stderr = new CapturingPrintStream();
-        ExecutionContext firstOrderContext =
-            context.createSubContext(stdout, stderr, Optional.of(verbosity));
-        Connection<OutOfProcessJavacConnectionInterface> connection =
+    try (Connection<OutOfProcessJavacConnectionInterface> connection =
             OutOfProcessConnectionFactory.connectionForOutOfProcessBuild(
-                context, filesystem, getJavac(), invokingRule)) {
-      JavacExecutionContext javacExecutionContext =
-          JavacExecutionContext.of(
-              new JavacEventSinkToBuckEventBusBridge(firstOrderContext.getBuckEventBus()),
-              stderr,
-              firstOrderContext.getClassLoaderCache(),
-              verbosity,
-              firstOrderContext.getCellPathResolver(),
-              firstOrderContext.getJavaPackageFinder(),
-              filesystem,
-              usedClassesFileWriter,
-              firstOrderContext.getEnvironment(),
-              firstOrderContext.getProcessExecutor(),
-              getAbsolutePathsForJavacInputs(getJavac()),
-              jarParameters);
-      ImmutableList<JavacPluginJsr199Fields> pluginFields =
-          ImmutableList.copyOf(
-              javacOptions
-                  .getAnnotationProcessingParams()
-                  .getAnnotationProcessors(this.filesystem, resolver)
-                  .stream()
-                  .map(ResolvedJavacPluginProperties::getJavacPluginJsr199Fields)
-                  .collect(Collectors.toList()));
-      int declaredDepsBuildResult;
-      String firstOrderStdout;
-      String firstOrderStderr;
-      Optional<String> returnedStderr;
-      try (Javac.Invocation invocation =
-          getJavac()
-              .newBuildInvocation(
-                  javacExecutionContext,
-                  invokingRule,
-                  getOptions(context, compilerParameters.getClasspathEntries()),
-                  pluginFields,
-                  compilerParameters.getSourceFilePaths(),
-                  compilerParameters.getPathToSourcesList(),
-                  compilerParameters.getWorkingDirectory(),
-                  javacOptions.getCompilationMode(),
-                  compilerParameters.ruleIsRequiredForSourceAbi())) {
-        if (abiJar != null) {
-          declaredDepsBuildResult =
-              invocation.buildSourceAbiJar(
-                  this.filesystem.resolve(Preconditions.checkNotNull(abiJar)));
-        } else {
-          declaredDepsBuildResult = invocation.buildClasses();
-        }
-      }
-      firstOrderStdout = stdout.getContentsAsString(Charsets.UTF_8);
-      firstOrderStderr = stderr.getContentsAsString(Charsets.UTF_8);
-      if (declaredDepsBuildResult != 0) {
-        returnedStderr = processBuildFailure(context, firstOrderStdout, firstOrderStderr);
-      } else {
-        returnedStderr = Optional.empty();
-      }
-      return StepExecutionResult.of(declaredDepsBuildResult, returnedStderr);
+                context, filesystem, getJavac());
+        // Outside of a pipeline, the step has an invocation all to itself.
+        JavacPipelineState ownPipeline = pipeline == null ? newPipelineState() : null) {
+      return execute(
+          context, ownPipeline != null ? ownPipeline : Preconditions.checkNotNull(pipeline));
+    }
+  }
+
+  private StepExecutionResult execute(ExecutionContext context, JavacPipelineState state)
+      throws InterruptedException {
+    Javac.Invocation invocation = state.getJavacInvocation(context);
+    int declaredDepsBuildResult;
+    if (abiJar != null) {
+      declaredDepsBuildResult = invocation.buildSourceAbiJar(filesystem.resolve(abiJar));
+    } else {
+      declaredDepsBuildResult = invocation.buildClasses();
+    }
+    String firstOrderStdout = state.takeStdoutContents();
+    String firstOrderStderr = state.takeStderrContents();
+    Optional<String> returnedStderr;
+    if (declaredDepsBuildResult != 0) {
+      returnedStderr = processBuildFailure(context, firstOrderStdout, firstOrderStderr);
+    } else {
+      returnedStderr = Optional.empty();
     }
+    return StepExecutionResult.of(declaredDepsBuildResult, returnedStderr);
+  }
+
+  private JavacPipelineState newPipelineState() {
+    return new JavacPipelineState(
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        usedClassesFileWriter,
+        compilerParameters,
+        jarParameters,
+        Optional.empty());
   }
 
   private Optional<String> processBuildFailure(
@@ -177,14 +182,6 @@ public class JavacStep implements Step {
     return Optional.of(Joiner.on("\n").join(errorMessage.build()));
   }
 
-  private ImmutableList<Path> getAbsolutePathsForJavacInputs(Javac javac) {
-    return javac
-        .getInputs()
-        .stream()
-        .map(resolver::getAbsolutePath)
-        .collect(MoreCollectors.toImmutableList());
-  }
-
   @VisibleForTesting
   Javac getJavac() {
     return javac;
@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import java.nio.file.Path;
 import java.util.Optional;
+import javax.annotation.Nullable;
 
 public class JavacToJarStepFactory extends CompileToJarStepFactory implements AddsToRuleKey {
   private static final Logger LOG = Logger.get(JavacToJarStepFactory.class);
@@ -124,12 +125,38 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
       CompilerParameters compilerParameters,
       ImmutableList<String> postprocessClassesCommands,
       JarParameters jarParameters,
+      @Nullable JavacPipelineState pipeline,
       /* output params */
       ImmutableList.Builder<Step> steps,
       BuildableContext buildableContext) {
     Preconditions.checkArgument(
         jarParameters.getEntriesToJar().contains(compilerParameters.getOutputDirectory()));
 
+    // Incremental compilation recovers classes from the previous build, so it needs them on disk
+    // and takes precedence over spooling them to the jar. It can't tell which sources what
+    // annotation processors or postprocessing commands generate depends on, so it isn't used with
+    // them.
+    boolean isIncrementalCompilationEnabled =
+        javacOptions.isIncrementalCompilation()
+            && postprocessClassesCommands.isEmpty()
+            && javacOptions.getAnnotationProcessingParams().isEmpty()
+            && !compilerParameters.shouldGenerateAbiJar();
+    if (isIncrementalCompilationEnabled) {
+      IncrementalJavacStep javacStep =
+          new IncrementalJavacStep(
+              javac,
+              javacOptions.withBootclasspathFromContext(extraClasspathFromContextFunction, context),
+              invokingRule,
+              resolver,
+              filesystem,
+              compilerParameters,
+              jarParameters.getJarPath());
+      steps.add(javacStep);
+      createJarStep(filesystem, jarParameters, steps);
+      steps.add(javacStep.createSaveStateStep());
+      return;
+    }
+
     String spoolMode = javacOptions.getSpoolMode().name();
     // In order to use direct spooling to the Jar:
     // (1) It must be enabled through a .buckconfig.
@@ -178,7 +205,8 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
               Optional.of(jarParameters),
               compilerParameters.shouldGenerateAbiJar()
                   ? compilerParameters.getAbiJarPath()
-                  : null));
+                  : null,
+              pipeline));
     } else {
       super.createCompileToJarStepImpl(
           context,
@@ -189,11 +217,53 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
           compilerParameters,
           postprocessClassesCommands,
           jarParameters,
+          pipeline,
           steps,
           buildableContext);
     }
   }
 
+  /**
+   * The library can only be pipelined when javac runs in process and writes the jar itself, as the
+   * source ABI jar is written from the compiler's own symbols. Annotation processors are left out,
+   * as the library rule would clean the sources they generated while building the ABI jar.
+   */
+  @Override
+  public boolean supportsPipelining(ImmutableList<String> postprocessClassesCommands) {
+    return postprocessClassesCommands.isEmpty()
+        && javacOptions.getSpoolMode() == AbstractJavacOptions.SpoolMode.DIRECT_TO_JAR
+        && javac instanceof Jsr199Javac
+        && !javacOptions.isIncrementalCompilation()
+        && javacOptions.getAnnotationProcessingParams().isEmpty();
+  }
+
+  /**
+   * Creates the state of a pipeline compiling the given library.
+   *
+   * @param sourceAbiJarParameters the parameters of the source ABI jar, if the pipeline starts by
+   *     building it.
+   */
+  public JavacPipelineState createPipelineState(
+      BuildContext context,
+      BuildTarget libraryTarget,
+      ProjectFilesystem filesystem,
+      CompilerParameters compilerParameters,
+      Optional<JarParameters> jarParameters,
+      Optional<JarParameters> sourceAbiJarParameters) {
+    return new JavacPipelineState(
+        javac,
+        javacOptions.withBootclasspathFromContext(extraClasspathFromContextFunction, context),
+        libraryTarget,
+        context.getSourcePathResolver(),
+        filesystem,
+        compilerParameters.shouldTrackClassUsage()
+            ? new DefaultClassUsageFileWriter(compilerParameters.getDepFilePath())
+            : NoOpClassUsageFileWriter.instance(),
+        compilerParameters,
+        jarParameters,
+        sourceAbiJarParameters);
+  }
+
   private static void addAnnotationGenFolderStep(
       Path annotationGenFolder,
       ProjectFilesystem filesystem,
@@ -47,6 +47,7 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -72,6 +73,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
   private final boolean requiredForSourceAbi;
   private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
   private final List<AutoCloseable> closeables = new ArrayList<>();
+  private final JavacPhaseEventLogger phaseEventLogger;
 
   @Nullable private BuckJavacTaskProxy javacTask;
   private boolean frontendRunAttempted = false;
@@ -96,20 +98,29 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     this.pathToSrcsList = pathToSrcsList;
     this.compilationMode = compilationMode;
     this.requiredForSourceAbi = requiredForSourceAbi;
+    this.phaseEventLogger = new JavacPhaseEventLogger(invokingRule, context.getEventSink());
   }
 
   @Override
   public int buildSourceAbiJar(Path sourceAbiJar) throws InterruptedException {
     BuckTracing.setCurrentThreadTracingInterfaceFromJsr199Javac(
         new Jsr199TracingBridge(context.getEventSink(), invokingRule));
+    phaseEventLogger.beginSourceAbi();
     try {
       // Invoke the compilation and inspect the result.
       BuckJavacTaskProxy javacTask = getJavacTask();
 
+      // When the library is built by this same invocation, the source ABI jar still gets its
+      // resources from its own rule.
+      JarParameters sourceAbiJarParameters =
+          context
+              .getSourceAbiJarParameters()
+              .orElseGet(() -> context.getDirectToJarParameters().get());
       javacTask.addPostEnterCallback(
           topLevelTypes -> {
             try {
-              JarBuilder jarBuilder = newJarBuilder().setShouldHashEntries(true);
+              JarBuilder jarBuilder =
+                  newJarBuilder(sourceAbiJarParameters).setShouldHashEntries(true);
               StubGenerator stubGenerator =
                   new StubGenerator(
                       getTargetVersion(options),
@@ -142,6 +153,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       LOG.error(e);
       throw new HumanReadableException("IOException during abi generation: ", e.getMessage());
     } finally {
+      phaseEventLogger.endSourceAbi();
       // Clear the tracing interface so we have no chance of leaking it to code that shouldn't
       // be using it.
       BuckTracing.clearCurrentThreadTracingInterfaceFromJsr199Javac();
@@ -191,7 +203,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
         return 0;
       }
 
-      return newJarBuilder()
+      return newJarBuilder(context.getDirectToJarParameters().get())
           .createJarFile(
               Preconditions.checkNotNull(
                   context
@@ -222,7 +234,12 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       // JavacTask.generate will still try to run analyze even if enter failed, and in some cases
       // that can actually crash the compiler, so we make sure that it doesn't happen.
       if (buildSuccessful()) {
-        javacTask.generate();
+        phaseEventLogger.beginCodeGeneration();
+        try {
+          javacTask.generate();
+        } finally {
+          phaseEventLogger.endCodeGeneration();
+        }
       }
     } catch (Throwable t) {
       // When invoking JavacTask.compile, javac itself catches all exceptions. (See the catch
@@ -304,6 +321,10 @@ class Jsr199JavacInvocation implements Javac.Invocation {
 
       StandardJavaFileManager standardFileManager =
           compiler.getStandardFileManager(null, null, null);
+      Optional<SharedClasspathIndex> classpathIndex = SharedClasspathIndex.getInstalled();
+      if (classpathIndex.isPresent()) {
+        standardFileManager = classpathIndex.get().wrap(standardFileManager);
+      }
       addCloseable(standardFileManager);
 
       StandardJavaFileManager fileManager;
@@ -369,8 +390,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       }
 
       TranslatingJavacPhaseTracer tracer =
-          new TranslatingJavacPhaseTracer(
-              new JavacPhaseEventLogger(invokingRule, context.getEventSink()));
+          new TranslatingJavacPhaseTracer(phaseEventLogger);
       // TranslatingJavacPhaseTracer is AutoCloseable so that it can detect the end of tracing
       // in some unusual situations
       addCloseable(tracer);
@@ -393,23 +413,18 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     return javacTask;
   }
 
-  private JarBuilder newJarBuilder() throws IOException {
+  private JarBuilder newJarBuilder(JarParameters jarParameters) throws IOException {
     JarBuilder jarBuilder = new JarBuilder();
     Preconditions.checkNotNull(inMemoryFileManager).writeToJar(jarBuilder);
     return jarBuilder
         .setObserver(new LoggingJarBuilderObserver(context.getEventSink()))
         .setEntriesToJar(
-            context
-                .getDirectToJarParameters()
-                .get()
-                .getEntriesToJar()
-                .stream()
-                .map(context.getProjectFilesystem()::resolve))
-        .setMainClass(context.getDirectToJarParameters().get().getMainClass().orElse(null))
-        .setManifestFile(context.getDirectToJarParameters().get().getManifestFile().orElse(null))
+            jarParameters.getEntriesToJar().stream().map(context.getProjectFilesystem()::resolve))
+        .setMainClass(jarParameters.getMainClass().orElse(null))
+        .setManifestFile(jarParameters.getManifestFile().orElse(null))
         .setShouldMergeManifests(true)
-        .setRemoveEntryPredicate(
-            context.getDirectToJarParameters().get().getRemoveEntryPredicate());
+        .setShouldDeflateInParallel(true)
+        .setRemoveEntryPredicate(jarParameters.getRemoveEntryPredicate());
   }
 
   @Override
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm_compiler_worker.CompilerArguments;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.external.BundledExternalProcessLauncher;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Runs kotlinc and scalac in persistent worker processes, so that the compilers are loaded and
+ * warmed up once per daemon rather than once per rule. Each compiler classpath gets a pool of its
+ * own, which the daemon keeps from one command to the next.
+ */
+public class JvmCompilerWorkers {
+
+  /** The compilers the workers know how to drive. */
+  public enum Compiler {
+    KOTLINC,
+    SCALAC,
+    ;
+
+    private String getWorkerName() {
+      return name().toLowerCase(Locale.US);
+    }
+  }
+
+  private JvmCompilerWorkers() {}
+
+  private static final BundledExternalProcessLauncher LAUNCHER =
+      new BundledExternalProcessLauncher();
+  private static final Supplier<ImmutableList<String>> COMMAND_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getCommandForJvmCompilerWorker);
+  private static final Supplier<ImmutableMap<String, String>> ENV_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getEnvForJvmCompilerWorker);
+
+  /**
+   * Compiles with a worker of the given compiler, launching one if none is idle.
+   *
+   * @param compilerClasspath the jars of the compiler, resolved to absolute paths.
+   * @param maxWorkers how many workers the pool of this compiler may have.
+   * @param args the command line arguments of the compiler, with absolute paths.
+   */
+  public static WorkerJobResult compile(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      Compiler compiler,
+      ImmutableList<Path> compilerClasspath,
+      int maxWorkers,
+      ImmutableList<String> args)
+      throws IOException, InterruptedException {
+    // Shared by all the rules, as the workers outlive them.
+    Path relativeTmpDir =
+        filesystem
+            .getBuckPaths()
+            .getScratchDir()
+            .resolve(compiler.getWorkerName() + "_worker__tmp");
+    filesystem.mkdirs(relativeTmpDir);
+
+    WorkerProcessPool pool =
+        new WorkerProcessPoolFactory(filesystem)
+            .getWorkerProcessPool(
+                context,
+                WorkerProcessParams.of(
+                    relativeTmpDir,
+                    getCommand(compiler, compilerClasspath),
+                    ENV_SUPPLIER.get(),
+                    maxWorkers,
+                    Optional.of(getWorkerProcessIdentity(compiler, compilerClasspath))));
+    WorkerProcess process = pool.borrowWorkerProcess();
+    try {
+      WorkerJobResult result = process.submitAndWaitForJob(CompilerArguments.encode(args));
+      pool.returnWorkerProcess(process);
+      process = null; // to avoid finally below
+      return result;
+    } finally {
+      if (process != null) {
+        pool.destroyWorkerProcess(process);
+      }
+    }
+  }
+
+  /**
+   * @return the identity of the persistent pool running the given compiler. Pools are kept per
+   *     compiler, so that rules built with different versions of it do not keep replacing each
+   *     other's workers, and are recreated once the way they are launched changes.
+   */
+  @VisibleForTesting
+  public static WorkerProcessIdentity getWorkerProcessIdentity(
+      Compiler compiler, ImmutableList<Path> compilerClasspath) {
+    String key =
+        "jvm_compiler_worker_"
+            + compiler.getWorkerName()
+            + "_"
+            + Hashing.sha1().hashString(compilerClasspath.toString(), StandardCharsets.UTF_8);
+    HashCode hash =
+        Hashing.sha1()
+            .newHasher()
+            .putString(getCommand(compiler, compilerClasspath).toString(), StandardCharsets.UTF_8)
+            .putString(ENV_SUPPLIER.get().toString(), StandardCharsets.UTF_8)
+            .hash();
+    return WorkerProcessIdentity.of(key, hash);
+  }
+
+  private static ImmutableList<String> getCommand(
+      Compiler compiler, ImmutableList<Path> compilerClasspath) {
+    return ImmutableList.<String>builder()
+        .addAll(COMMAND_SUPPLIER.get())
+        .add(compiler.getWorkerName())
+        .addAll(compilerClasspath.stream().map(Path::toString).iterator())
+        .build();
+  }
+}
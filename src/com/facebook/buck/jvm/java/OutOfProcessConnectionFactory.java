@@ -19,19 +19,21 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.message_ipc.Connection;
 import com.facebook.buck.message_ipc.MessageSerializer;
 import com.facebook.buck.message_ipc.MessageTransport;
-import com.facebook.buck.model.BuildTarget;
-import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.external.BundledExternalProcessLauncher;
 import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessIdentity;
 import com.facebook.buck.worker.WorkerProcessParams;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -39,6 +41,7 @@ import javax.annotation.Nullable;
 public class OutOfProcessConnectionFactory {
 
   private static final MessageSerializer MESSAGE_SERIALIZER = new MessageSerializer();
+  private static final String PERSISTENT_WORKER_KEY = "oop_javac";
 
   private OutOfProcessConnectionFactory() {}
 
@@ -48,16 +51,30 @@ public class OutOfProcessConnectionFactory {
       Suppliers.memoize(LAUNCHER::getCommandForOutOfProcessJavac);
   private static final Supplier<ImmutableMap<String, String>> ENV_SUPPLIER =
       Suppliers.memoize(LAUNCHER::getEnvForOutOfProcessJavac);
+  /**
+   * Lets the daemon keep the workers, and their warmed up compilers, class loaders and classpath
+   * indexes, from one command to the next, until the way they are launched changes.
+   */
+  private static final Supplier<WorkerProcessIdentity> WORKER_IDENTITY_SUPPLIER =
+      Suppliers.memoize(
+          () ->
+              WorkerProcessIdentity.of(
+                  PERSISTENT_WORKER_KEY,
+                  Hashing.sha1()
+                      .newHasher()
+                      .putString(COMMAND_SUPPLIER.get().toString(), StandardCharsets.UTF_8)
+                      .putString(ENV_SUPPLIER.get().toString(), StandardCharsets.UTF_8)
+                      .hash()));
 
   @Nullable
   public static Connection<OutOfProcessJavacConnectionInterface> connectionForOutOfProcessBuild(
-      ExecutionContext context, ProjectFilesystem filesystem, Javac javac, BuildTarget invokingRule)
+      ExecutionContext context, ProjectFilesystem filesystem, Javac javac)
       throws IOException, InterruptedException {
     Connection<OutOfProcessJavacConnectionInterface> connection = null;
     if (javac instanceof OutOfProcessJsr199Javac) {
       OutOfProcessJsr199Javac outOfProcessJsr199Javac = (OutOfProcessJsr199Javac) javac;
-      Path relativeTmpDir =
-          BuildTargets.getScratchPath(filesystem, invokingRule, "%s_oop_javac__tmp");
+      // Shared by all the rules, as the workers outlive them.
+      Path relativeTmpDir = filesystem.getBuckPaths().getScratchDir().resolve("oop_javac__tmp");
       filesystem.mkdirs(relativeTmpDir);
 
       WorkerProcessPoolFactory factory = new WorkerProcessPoolFactory(filesystem);
@@ -66,8 +83,8 @@ public class OutOfProcessConnectionFactory {
               relativeTmpDir,
               COMMAND_SUPPLIER.get(),
               ENV_SUPPLIER.get(),
-              Runtime.getRuntime().availableProcessors() / 4,
-              Optional.empty());
+              Math.max(1, Runtime.getRuntime().availableProcessors() / 4),
+              Optional.of(getWorkerProcessIdentity()));
       WorkerProcessPool processPool = factory.getWorkerProcessPool(context, workerProcessParams);
       WorkerProcess workerProcess = processPool.borrowWorkerProcess();
 
@@ -76,7 +93,15 @@ public class OutOfProcessConnectionFactory {
               workerProcess,
               MESSAGE_SERIALIZER,
               () -> processPool.returnWorkerProcess(workerProcess));
-      connection = new Connection<>(transport);
+      connection =
+          new Connection<OutOfProcessJavacConnectionInterface>(transport) {
+            @Override
+            public void close() {
+              // The threads running the steps are pooled, so they mustn't keep closed connections.
+              outOfProcessJsr199Javac.clearConnection(this);
+              super.close();
+            }
+          };
       connection.setRemoteInterface(
           OutOfProcessJavacConnectionInterface.class,
           OutOfProcessJdkProvidedInMemoryJavac.class.getClassLoader());
@@ -84,4 +109,9 @@ public class OutOfProcessConnectionFactory {
     }
     return connection;
   }
+
+  @VisibleForTesting
+  static WorkerProcessIdentity getWorkerProcessIdentity() {
+    return WORKER_IDENTITY_SUPPLIER.get();
+  }
 }
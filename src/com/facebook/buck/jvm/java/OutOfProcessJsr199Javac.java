@@ -24,12 +24,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Path;
-import javax.annotation.Nullable;
 
 public abstract class OutOfProcessJsr199Javac implements Javac {
   private static final JavacVersion VERSION = JavacVersion.of("oop in memory");
 
-  @Nullable private Connection<OutOfProcessJavacConnectionInterface> connection;
+  /**
+   * The connection to the worker borrowed by the step running on the current thread, as the same
+   * instance is shared by the steps running in parallel.
+   */
+  private final ThreadLocal<Connection<OutOfProcessJavacConnectionInterface>> connection =
+      new ThreadLocal<>();
 
   @Override
   public JavacVersion getVersion() {
@@ -64,11 +68,19 @@ public abstract class OutOfProcessJsr199Javac implements Javac {
   }
 
   public void setConnection(Connection<OutOfProcessJavacConnectionInterface> connection) {
-    this.connection = connection;
+    this.connection.set(connection);
+  }
+
+  /** Forgets {@code connection}, if it is the one set for the current thread. */
+  public void clearConnection(Connection<OutOfProcessJavacConnectionInterface> connection) {
+    if (this.connection.get() == connection) {
+      this.connection.remove();
+    }
   }
 
   public Connection<OutOfProcessJavacConnectionInterface> getConnection() {
-    return Preconditions.checkNotNull(connection, "setConnection() is expected to be called first");
+    return Preconditions.checkNotNull(
+        connection.get(), "setConnection() is expected to be called first");
   }
 
   protected Javac.Invocation wrapInvocation(
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.InstalledInstance;
+import com.facebook.buck.util.concurrent.ProcessTotals;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Indexes the packages and classes of the jars on the classpath once for the whole process, so
+ * that the in-process javac invocations wrapping their file managers with {@link #wrap} don't each
+ * reopen and rescan every jar of their classpath.
+ *
+ * <p>The jars are identified by their path, size, modification time and file key, and reindexed as
+ * soon as any of these changes. The least recently used jars are evicted once more than {@code
+ * maxJars} are indexed. The contents of the entries are read on demand, from a {@link ZipFile} kept
+ * open until the jar is evicted.
+ */
+public class SharedClasspathIndex {
+  private static final Logger LOG = Logger.get(SharedClasspathIndex.class);
+
+  private static final InstalledInstance<SharedClasspathIndex> INSTALLED =
+      new InstalledInstance<>();
+
+  private static final ProcessTotals TOTALS = new ProcessTotals();
+  private static final AtomicLong hits = TOTALS.newTotal("hits");
+  private static final AtomicLong misses = TOTALS.newTotal("misses");
+  private static final AtomicLong evictions = TOTALS.newTotal("evictions");
+
+  private final Cache<Path, JarIndex> jarIndexes;
+
+  public SharedClasspathIndex(long maxJars) {
+    this.jarIndexes =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxJars)
+            .removalListener(
+                (RemovalNotification<Path, JarIndex> notification) -> {
+                  if (notification.wasEvicted()) {
+                    evictions.incrementAndGet();
+                  }
+                  Objects.requireNonNull(notification.getValue()).close();
+                })
+            .build();
+  }
+
+  /** @return the index used by the javac invocations of this process, if any. */
+  public static Optional<SharedClasspathIndex> getInstalled() {
+    return INSTALLED.get();
+  }
+
+  /** Makes the javac invocations started from now on use this index. */
+  public void install() {
+    INSTALLED.install(this).ifPresent(SharedClasspathIndex::invalidateAll);
+  }
+
+  /** Stops this index from being used by new invocations, and closes the jars it opened. */
+  public void uninstall() {
+    INSTALLED.uninstall(this);
+    invalidateAll();
+  }
+
+  public void invalidateAll() {
+    jarIndexes.invalidateAll();
+  }
+
+  /** @return the hits, misses and evictions of the installed indexes, in the whole process. */
+  public static ProcessTotals getTotals() {
+    return TOTALS;
+  }
+
+  /** @return the number of jars whose index was reused, in the whole process. */
+  public static long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of jars which had to be indexed, in the whole process. */
+  public static long getMisses() {
+    return misses.get();
+  }
+
+  /** @return the number of indexed jars evicted to make room for others, in the whole process. */
+  public static long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return a file manager listing the jars on the classpath of {@code fileManager} from this
+   *     index.
+   */
+  public StandardJavaFileManager wrap(StandardJavaFileManager fileManager) {
+    return new IndexedClasspathFileManager(fileManager);
+  }
+
+  /**
+   * @return what {@code summarizer} derives from the jar, computed once for as long as the jar is
+   *     indexed, or nothing if it isn't a readable jar.
+   */
+  public <T> Optional<T> getSummary(Path jar, JarSummarizer<T> summarizer) throws IOException {
+    Optional<JarIndex> jarIndex = getJarIndex(jar.toAbsolutePath().normalize());
+    if (!jarIndex.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(jarIndex.get().getSummary(summarizer));
+  }
+
+  /**
+   * Derives something from the contents of a jar which is worth keeping along with its index. The
+   * summaries are keyed by the summarizer, so each should be a single shared instance.
+   */
+  @FunctionalInterface
+  public interface JarSummarizer<T> {
+    T summarize(ZipFile jar) throws IOException;
+  }
+
+  /** @return the index of the jar, or nothing if it isn't a readable jar. */
+  private Optional<JarIndex> getJarIndex(Path jar) {
+    Fingerprint fingerprint;
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+      if (!attributes.isRegularFile()) {
+        return Optional.empty();
+      }
+      fingerprint = new Fingerprint(attributes);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+
+    JarIndex cached = jarIndexes.getIfPresent(jar);
+    if (cached != null && cached.fingerprint.equals(fingerprint)) {
+      hits.incrementAndGet();
+      return Optional.of(cached);
+    }
+    if (cached != null) {
+      jarIndexes.asMap().remove(jar, cached);
+    }
+    misses.incrementAndGet();
+    try {
+      // Concurrent compilations wait for the same index rather than each building their own.
+      return Optional.of(jarIndexes.get(jar, () -> JarIndex.create(jar, fingerprint)));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      LOG.debug(e.getCause(), "Unable to index %s, leaving it to javac.", jar);
+      return Optional.empty();
+    }
+  }
+
+  /** What identifies the contents of a jar without reading it. */
+  private static class Fingerprint {
+    private final long size;
+    private final long lastModifiedMillis;
+    @Nullable private final Object fileKey;
+
+    private Fingerprint(BasicFileAttributes attributes) {
+      this.size = attributes.size();
+      this.lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+      this.fileKey = attributes.fileKey();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint that = (Fingerprint) other;
+      return size == that.size
+          && lastModifiedMillis == that.lastModifiedMillis
+          && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, lastModifiedMillis, fileKey);
+    }
+  }
+
+  /** The entries of a jar, by package. */
+  private static class JarIndex {
+    private final Path jar;
+    private final Fingerprint fingerprint;
+    private final ImmutableMap<String, ImmutableList<String>> entriesByPackage;
+    private final ConcurrentMap<JarSummarizer<?>, Object> summaries = new ConcurrentHashMap<>();
+
+    @GuardedBy("this")
+    @Nullable
+    private ZipFile zipFile;
+
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    private JarIndex(
+        Path jar,
+        Fingerprint fingerprint,
+        ImmutableMap<String, ImmutableList<String>> entriesByPackage,
+        ZipFile zipFile) {
+      this.jar = jar;
+      this.fingerprint = fingerprint;
+      this.entriesByPackage = entriesByPackage;
+      this.zipFile = zipFile;
+    }
+
+    private static JarIndex create(Path jar, Fingerprint fingerprint) throws IOException {
+      ZipFile zipFile = new ZipFile(jar.toFile());
+      try {
+        Map<String, ImmutableList.Builder<String>> entriesByPackage = new HashMap<>();
+        for (Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            entries.hasMoreElements();
+            ) {
+          ZipEntry entry = entries.nextElement();
+          if (entry.isDirectory()) {
+            continue;
+          }
+          String name = entry.getName();
+          int lastSlash = name.lastIndexOf('/');
+          String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+          entriesByPackage.computeIfAbsent(packageName, key -> ImmutableList.builder()).add(name);
+        }
+        ImmutableMap.Builder<String, ImmutableList<String>> builder = ImmutableMap.builder();
+        entriesByPackage.forEach((packageName, names) -> builder.put(packageName, names.build()));
+        return new JarIndex(jar, fingerprint, builder.build(), zipFile);
+      } catch (RuntimeException e) {
+        zipFile.close();
+        throw e;
+      }
+    }
+
+    private void addEntries(
+        String packageName,
+        Set<JavaFileObject.Kind> kinds,
+        boolean recurse,
+        List<JavaFileObject> results) {
+      if (recurse) {
+        for (Map.Entry<String, ImmutableList<String>> entry : entriesByPackage.entrySet()) {
+          String name = entry.getKey();
+          if (packageName.isEmpty()
+              || name.equals(packageName)
+              || name.startsWith(packageName + ".")) {
+            addEntries(entry.getValue(), kinds, results);
+          }
+        }
+      } else {
+        ImmutableList<String> names = entriesByPackage.get(packageName);
+        if (names != null) {
+          addEntries(names, kinds, results);
+        }
+      }
+    }
+
+    private void addEntries(
+        ImmutableList<String> names, Set<JavaFileObject.Kind> kinds, List<JavaFileObject> results) {
+      for (String name : names) {
+        JavaFileObject.Kind kind = getKind(name);
+        if (kinds.contains(kind)) {
+          results.add(new IndexedJavaFileObject(this, name, kind));
+        }
+      }
+    }
+
+    private static JavaFileObject.Kind getKind(String name) {
+      for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+        if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+          return kind;
+        }
+      }
+      return JavaFileObject.Kind.OTHER;
+    }
+
+    private <T> T getSummary(JarSummarizer<T> summarizer) throws IOException {
+      Object summary = summaries.get(summarizer);
+      if (summary == null) {
+        // Read from a zip file of its own, so that compilations reading the jar don't wait for it.
+        try (ZipFile summarizedZipFile = new ZipFile(jar.toFile())) {
+          summary = summarizer.summarize(summarizedZipFile);
+        }
+        Object previous = summaries.putIfAbsent(summarizer, summary);
+        if (previous != null) {
+          summary = previous;
+        }
+      }
+      @SuppressWarnings("unchecked")
+      T typedSummary = (T) summary;
+      return typedSummary;
+    }
+
+    private synchronized byte[] read(String name) throws IOException {
+      if (closed) {
+        // Evicted while a compilation was still using it.
+        try (ZipFile temporaryZipFile = new ZipFile(jar.toFile())) {
+          return read(temporaryZipFile, name);
+        }
+      }
+      if (zipFile == null) {
+        zipFile = new ZipFile(jar.toFile());
+      }
+      return read(zipFile, name);
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException {
+      ZipEntry entry = zipFile.getEntry(name);
+      if (entry == null) {
+        throw new IOException(String.format("%s was removed from %s.", name, zipFile.getName()));
+      }
+      try (InputStream inputStream = zipFile.getInputStream(entry)) {
+        return ByteStreams.toByteArray(inputStream);
+      }
+    }
+
+    private synchronized void close() {
+      closed = true;
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        } catch (IOException e) {
+          LOG.warn(e, "Unable to close %s.", jar);
+        }
+        zipFile = null;
+      }
+    }
+  }
+
+  /**
+   * An entry of an indexed jar, whose contents are read when it is opened. Unlike {@link
+   * SimpleJavaFileObject}, it has a jar URI, like the entries javac lists itself.
+   */
+  private static class IndexedJavaFileObject implements JavaFileObject {
+    private final JarIndex jarIndex;
+    private final String name;
+    private final Kind kind;
+    private final URI uri;
+
+    private IndexedJavaFileObject(JarIndex jarIndex, String name, Kind kind) {
+      this.jarIndex = jarIndex;
+      this.name = name;
+      this.kind = kind;
+      this.uri = createJarUri(jarIndex.jar, name);
+    }
+
+    /**
+     * Creates the same URI as javac does for the entries of jars, which the usage tracker reads.
+     */
+    private static URI createJarUri(Path jar, String name) {
+      try {
+        String entryPath = new URI(null, null, name, null).getRawPath();
+        return URI.create("jar:" + jar.toUri().normalize() + "!/" + entryPath);
+      } catch (URISyntaxException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** @return the binary name of the class, as javac infers it for the entries of jars. */
+    private String inferBinaryName() {
+      String withoutExtension = name.substring(0, name.lastIndexOf('.'));
+      return withoutExtension.replace('/', '.');
+    }
+
+    @Override
+    public URI toUri() {
+      return uri;
+    }
+
+    @Override
+    public String getName() {
+      return jarIndex.jar + "(" + name + ")";
+    }
+
+    @Override
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      String baseName = simpleName + kind.extension;
+      return kind.equals(this.kind) && (baseName.equals(name) || name.endsWith("/" + baseName));
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return new ByteArrayInputStream(jarIndex.read(name));
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      return new String(jarIndex.read(name), Charsets.UTF_8);
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      throw new UnsupportedOperationException("Jars on the classpath are read only.");
+    }
+
+    @Override
+    public Writer openWriter() {
+      throw new UnsupportedOperationException("Jars on the classpath are read only.");
+    }
+
+    @Override
+    public long getLastModified() {
+      return jarIndex.fingerprint.lastModifiedMillis;
+    }
+
+    @Override
+    public boolean delete() {
+      return false;
+    }
+
+    @Override
+    @Nullable
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "[" + uri + "]";
+    }
+  }
+
+  /**
+   * Lists the jars on the classpath from the index, and the directories from the disk, leaving the
+   * rest to the file manager it wraps.
+   */
+  private class IndexedClasspathFileManager extends ForwardingStandardJavaFileManager {
+    /** The jars indexed for this compilation, which keeps using them even if they change. */
+    private final Map<File, Optional<JarIndex>> jarIndexesForCompilation = new HashMap<>();
+    /** Whether each element of the classpath is a directory, checked once per compilation. */
+    private final Map<File, Boolean> directoriesForCompilation = new HashMap<>();
+
+    private IndexedClasspathFileManager(StandardJavaFileManager fileManager) {
+      super(fileManager);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(
+        Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+        throws IOException {
+      Iterable<? extends File> classpath = getLocation(location);
+      if (location != StandardLocation.CLASS_PATH || classpath == null) {
+        return super.list(location, packageName, kinds, recurse);
+      }
+
+      List<JavaFileObject> results = new ArrayList<>();
+      // In the order of the classpath, as javac uses the first class it finds.
+      for (File element : classpath) {
+        if (directoriesForCompilation.computeIfAbsent(element, File::isDirectory)) {
+          if (recurse) {
+            // Rarely needed, and not worth reimplementing.
+            return super.list(location, packageName, kinds, recurse);
+          }
+          addDirectoryEntries(element, packageName, kinds, results);
+          continue;
+        }
+        Optional<JarIndex> jarIndex =
+            jarIndexesForCompilation.computeIfAbsent(
+                element, file -> getJarIndex(file.toPath().toAbsolutePath().normalize()));
+        if (jarIndex.isPresent()) {
+          jarIndex.get().addEntries(packageName, kinds, recurse, results);
+        }
+      }
+      return results;
+    }
+
+    private void addDirectoryEntries(
+        File directory,
+        String packageName,
+        Set<JavaFileObject.Kind> kinds,
+        List<JavaFileObject> results) {
+      File packageDirectory = new File(directory, packageName.replace('.', File.separatorChar));
+      File[] files = packageDirectory.listFiles();
+      if (files == null) {
+        return;
+      }
+      List<File> matchingFiles = new ArrayList<>();
+      for (File file : files) {
+        if (file.isFile() && kinds.contains(JarIndex.getKind(file.getName()))) {
+          matchingFiles.add(file);
+        }
+      }
+      for (JavaFileObject fileObject : fileManager.getJavaFileObjectsFromFiles(matchingFiles)) {
+        results.add(fileObject);
+      }
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+      if (file instanceof IndexedJavaFileObject) {
+        return ((IndexedJavaFileObject) file).inferBinaryName();
+      }
+      return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+      if (a instanceof IndexedJavaFileObject || b instanceof IndexedJavaFileObject) {
+        return a.toUri().equals(b.toUri());
+      }
+      return super.isSameFile(a, b);
+    }
+  }
+}
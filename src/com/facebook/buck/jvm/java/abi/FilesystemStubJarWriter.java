@@ -42,7 +42,11 @@ class FilesystemStubJarWriter implements StubJarWriter {
     }
 
     this.outputPath = filesystem.resolve(outputPath);
-    jarBuilder = new JarBuilder().setShouldHashEntries(true).setShouldMergeManifests(true);
+    jarBuilder =
+        new JarBuilder()
+            .setShouldHashEntries(true)
+            .setShouldMergeManifests(true)
+            .setShouldDeflateInParallel(true);
   }
 
   @Override
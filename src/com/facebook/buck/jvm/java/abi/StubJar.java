@@ -19,12 +19,16 @@ package com.facebook.buck.jvm.java.abi;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.zip.JarBuilder;
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.processing.Messager;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -33,9 +37,15 @@ import javax.lang.model.util.Elements;
 public class StubJar {
   private final Supplier<LibraryReader> libraryReaderSupplier;
   private boolean sourceAbiCompatible;
+  private boolean stubClassesInParallel;
 
+  /**
+   * Mirrors the classes of a jar or directory. Classes are read and stubbed concurrently on the
+   * common fork-join pool, which is what makes stubbing huge prebuilt jars bearable.
+   */
   public StubJar(Path toMirror) {
     libraryReaderSupplier = () -> LibraryReader.of(toMirror);
+    stubClassesInParallel = true;
   }
 
   /**
@@ -60,6 +70,16 @@ public class StubJar {
     return this;
   }
 
+  /**
+   * Whether to stub classes concurrently. Only jars and directories can be read from several
+   * threads at once; elements are always mirrored one at a time.
+   */
+  @VisibleForTesting
+  StubJar setStubClassesInParallel(boolean stubClassesInParallel) {
+    this.stubClassesInParallel = stubClassesInParallel;
+    return this;
+  }
+
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
     // The order of these declarations is important -- FilesystemStubJarWriter actually uses
     // the LibraryReader in its close method, and try-with-resources closes the items in the
@@ -85,11 +105,27 @@ public class StubJar {
             .sorted(Comparator.comparing(MorePaths::pathWithUnixSeparators))
             .collect(Collectors.toList());
 
-    for (Path path : paths) {
-      StubJarEntry entry = StubJarEntry.of(input, path, sourceAbiCompatible);
-      if (entry == null) {
-        continue;
-      }
+    // Entries are still written in order, so the jar doesn't depend on how they were stubbed.
+    Stream<Path> pathStream = stubClassesInParallel ? paths.parallelStream() : paths.stream();
+    List<StubJarEntry> entries;
+    try {
+      entries =
+          pathStream
+              .map(
+                  path -> {
+                    try {
+                      return StubJarEntry.of(input, path, sourceAbiCompatible);
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  })
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    for (StubJarEntry entry : entries) {
       entry.write(writer);
     }
   }
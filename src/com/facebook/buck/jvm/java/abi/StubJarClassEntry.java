@@ -31,9 +31,8 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InnerClassNode;
 
 class StubJarClassEntry extends StubJarEntry {
-  @Nullable private final Set<String> referencedClassNames;
   private final Path path;
-  private final ClassNode stub;
+  private final byte[] stubBytes;
 
   @Nullable
   public static StubJarClassEntry of(LibraryReader input, Path path, boolean sourceAbiCompatible)
@@ -63,10 +62,20 @@ class StubJarClassEntry extends StubJarEntry {
     return null;
   }
 
-  private StubJarClassEntry(Path path, ClassNode stub, Set<String> referencedClassNames) {
+  /**
+   * The stub is written out right away, on whichever thread is stubbing the class, rather than kept
+   * around until the jar is written.
+   */
+  private StubJarClassEntry(
+      Path path, ClassNode stub, @Nullable Set<String> referencedClassNames) {
     this.path = path;
-    this.stub = stub;
-    this.referencedClassNames = referencedClassNames;
+
+    ClassWriter writer = new ClassWriter(0);
+    ClassVisitor visitor = writer;
+    visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
+    visitor = new AbiFilteringClassVisitor(visitor, referencedClassNames);
+    stub.accept(visitor);
+    this.stubBytes = writer.toByteArray();
   }
 
   @Override
@@ -75,13 +84,7 @@ class StubJarClassEntry extends StubJarEntry {
   }
 
   private InputStream openInputStream() {
-    ClassWriter writer = new ClassWriter(0);
-    ClassVisitor visitor = writer;
-    visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
-    visitor = new AbiFilteringClassVisitor(visitor, referencedClassNames);
-    stub.accept(visitor);
-
-    return new ByteArrayInputStream(writer.toByteArray());
+    return new ByteArrayInputStream(stubBytes);
   }
 
   private static boolean isAnonymousOrLocalOrSyntheticClass(ClassNode node) {
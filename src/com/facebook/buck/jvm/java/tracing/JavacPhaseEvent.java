@@ -54,7 +54,19 @@ public abstract class JavacPhaseEvent extends AbstractBuckEvent implements WorkA
      * Generate a class file for a single type. Source file and type being generated will be in the
      * args.
      */
-    GENERATE(Constants.GENERATE);
+    GENERATE(Constants.GENERATE),
+    /**
+     * Parsing and entering all the sources, then writing the source ABI jar from the resulting
+     * symbols. Dependents can start building as soon as it finishes. Contains the PARSE and ENTER
+     * phases. No args.
+     */
+    SOURCE_ABI(Constants.SOURCE_ABI),
+    /**
+     * Analyzing all the types and generating their class files, picking up where the source ABI
+     * left off when both run in the same compiler. Contains the ANALYZE and GENERATE phases. No
+     * args.
+     */
+    CODE_GENERATION(Constants.CODE_GENERATION);
 
     private final String name;
 
@@ -78,6 +90,10 @@ public abstract class JavacPhaseEvent extends AbstractBuckEvent implements WorkA
           return ANALYZE;
         case Constants.GENERATE:
           return GENERATE;
+        case Constants.SOURCE_ABI:
+          return SOURCE_ABI;
+        case Constants.CODE_GENERATION:
+          return CODE_GENERATION;
         default:
           throw new IllegalArgumentException(
               Phase.class.getName() + " cannot be created from value " + value);
@@ -98,6 +114,8 @@ public abstract class JavacPhaseEvent extends AbstractBuckEvent implements WorkA
     public static final String RUN_ANNOTATION_PROCESSORS = "run annotation processors";
     public static final String ANALYZE = "analyze";
     public static final String GENERATE = "generate";
+    public static final String SOURCE_ABI = "source abi";
+    public static final String CODE_GENERATION = "code generation";
   }
 
   private final BuildTarget buildTarget;
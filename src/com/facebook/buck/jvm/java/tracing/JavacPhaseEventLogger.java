@@ -101,6 +101,22 @@ public class JavacPhaseEventLogger {
     postFinishedEvent(JavacPhaseEvent.Phase.GENERATE, EMPTY_MAP);
   }
 
+  public void beginSourceAbi() {
+    postStartedEvent(JavacPhaseEvent.Phase.SOURCE_ABI, EMPTY_MAP);
+  }
+
+  public void endSourceAbi() {
+    postFinishedEvent(JavacPhaseEvent.Phase.SOURCE_ABI, EMPTY_MAP);
+  }
+
+  public void beginCodeGeneration() {
+    postStartedEvent(JavacPhaseEvent.Phase.CODE_GENERATION, EMPTY_MAP);
+  }
+
+  public void endCodeGeneration() {
+    postFinishedEvent(JavacPhaseEvent.Phase.CODE_GENERATION, EMPTY_MAP);
+  }
+
   private void postStartedEvent(JavacPhaseEvent.Phase phase, ImmutableMap<String, String> args) {
     eventSink.reportJavacPhaseStarted(buildTarget, phase.toString(), args);
   }
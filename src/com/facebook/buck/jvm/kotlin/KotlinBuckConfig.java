@@ -49,6 +49,10 @@ public class KotlinBuckConfig {
               delegate.getSourcePath(getPathToStdlibJar()),
               delegate.getSourcePath(getPathToCompilerJar()));
 
+      int compilerWorkers = getCompilerWorkers();
+      if (compilerWorkers > 0) {
+        return new WorkerKotlinc(classpathEntries, compilerWorkers);
+      }
       return new JarBackedReflectedKotlinc(classpathEntries);
     }
   }
@@ -143,6 +147,29 @@ public class KotlinBuckConfig {
     return value.orElse(false);
   }
 
+  /**
+   * Determine how many persistent workers kotlinc may run in. The default is none, which compiles
+   * in-process, but this can be overridden in .buckconfig by setting the "compiler_workers"
+   * property. Ignored when compiling externally.
+   *
+   * @return the maximum number of kotlinc workers, or 0 to compile in-process
+   */
+  int getCompilerWorkers() {
+    return delegate.getInteger(SECTION, "compiler_workers").orElse(0);
+  }
+
+  /**
+   * Determine whether Kotlin libraries record the classes they use, to get dependency file rule
+   * keys when java.track_class_usage is also set. They are only recorded from the compiled
+   * bytecode, which misses uses such as type aliases, so the default is not to, but this can be
+   * overridden in .buckconfig by setting the "track_class_usage" property to "true".
+   *
+   * @return true if Kotlin libraries should track the classes they use, false otherwise
+   */
+  boolean trackClassUsage() {
+    return delegate.getBooleanValue(SECTION, "track_class_usage", false);
+  }
+
   /**
    * Find the Kotlin home (installation) directory by searching in this order: <br>
    *
@@ -45,7 +45,7 @@ public class KotlinConfiguredCompilerFactory extends ConfiguredCompilerFactory {
 
   @Override
   public boolean trackClassUsage(JavacOptions javacOptions) {
-    return false;
+    return kotlinBuckConfig.trackClassUsage() && javacOptions.trackClassUsage();
   }
 
   @Override
@@ -67,6 +67,7 @@ public class KotlinLibraryBuilder extends DefaultJavaLibraryBuilder {
   @Override
   public KotlinLibraryBuilder setJavacOptions(JavacOptions javacOptions) {
     super.setJavacOptions(javacOptions);
+    setTrackClassUsage(kotlinBuckConfig.trackClassUsage() && javacOptions.trackClassUsage());
     return this;
   }
 
@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.kotlin;
 
 import com.facebook.buck.io.PathOrGlobMatcher;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.CalculateClassUsageFromClassesStep;
 import com.facebook.buck.jvm.java.CompileToJarStepFactory;
 import com.facebook.buck.jvm.java.CompilerParameters;
 import com.facebook.buck.jvm.java.ExtraClasspathFromContextFunction;
@@ -78,6 +79,13 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
     ImmutableSortedSet<Path> sourceFilePaths = parameters.getSourceFilePaths();
     Path outputDirectory = parameters.getOutputDirectory();
     Path pathToSrcsList = parameters.getPathToSourcesList();
+    ImmutableSortedSet<Path> classpathEntries =
+        ImmutableSortedSet.<Path>naturalOrder()
+            .addAll(
+                Optional.ofNullable(extraClassPath.apply(buildContext))
+                    .orElse(ImmutableList.of()))
+            .addAll(declaredClasspathEntries)
+            .build();
 
     // Don't invoke kotlinc if we don't have any kotlin files.
     if (sourceFilePaths.stream().anyMatch(KOTLIN_PATH_MATCHER::matches)) {
@@ -87,12 +95,7 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
               outputDirectory,
               sourceFilePaths,
               pathToSrcsList,
-              ImmutableSortedSet.<Path>naturalOrder()
-                  .addAll(
-                      Optional.ofNullable(extraClassPath.apply(buildContext))
-                          .orElse(ImmutableList.of()))
-                  .addAll(declaredClasspathEntries)
-                  .build(),
+              classpathEntries,
               kotlinc,
               extraArguments,
               filesystem));
@@ -113,12 +116,11 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
               .setClasspathEntries(
                   ImmutableSortedSet.<Path>naturalOrder()
                       .add(outputDirectory)
-                      .addAll(
-                          Optional.ofNullable(extraClassPath.apply(buildContext))
-                              .orElse(ImmutableList.of()))
-                      .addAll(declaredClasspathEntries)
+                      .addAll(classpathEntries)
                       .build())
               .setSourceFilePaths(javaSourceFiles)
+              // The class usage of the Kotlin and Java classes is calculated in one go below.
+              .setShouldTrackClassUsage(false)
               .build();
       new JavacToJarStepFactory(javac, javacOptions, extraClassPath)
           .createCompileStep(
@@ -130,6 +132,13 @@ public class KotlincToJarStepFactory extends CompileToJarStepFactory implements
               steps,
               buildableContext);
     }
+
+    // kotlinc reads the classpath on its own, so what it used is worked out from what it wrote.
+    if (parameters.shouldTrackClassUsage()) {
+      steps.add(
+          new CalculateClassUsageFromClassesStep(
+              filesystem, outputDirectory, classpathEntries, parameters.getDepFilePath()));
+    }
   }
 
   @Override
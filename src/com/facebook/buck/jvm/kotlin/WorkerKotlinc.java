@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.JvmCompilerWorkers;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.RuleKeyObjectSink;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Compiles with kotlinc running in persistent workers, which keep the compiler loaded and warmed up
+ * from one rule to the next without sharing the heap of buck.
+ */
+public class WorkerKotlinc implements Kotlinc {
+
+  private static final KotlincVersion VERSION = KotlincVersion.of("in memory");
+
+  private final ImmutableSet<SourcePath> compilerClassPath;
+  private final int maxWorkers;
+
+  WorkerKotlinc(ImmutableSet<SourcePath> compilerClassPath, int maxWorkers) {
+    this.compilerClassPath = compilerClassPath;
+    this.maxWorkers = maxWorkers;
+  }
+
+  @Override
+  public KotlincVersion getVersion() {
+    return VERSION;
+  }
+
+  @Override
+  public String getDescription(
+      ImmutableList<String> options,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      Path pathToSrcsList) {
+    StringBuilder builder = new StringBuilder("kotlinc ");
+    Joiner.on(" ").appendTo(builder, options);
+    builder.append(" ");
+    builder.append("@").append(pathToSrcsList);
+
+    return builder.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "kotlinc";
+  }
+
+  @Override
+  public ImmutableList<String> getCommandPrefix(SourcePathResolver resolver) {
+    throw new UnsupportedOperationException("Worker kotlinc may not be used externally");
+  }
+
+  @Override
+  public int buildWithClasspath(
+      ExecutionContext context,
+      BuildTarget invokingRule,
+      ImmutableList<String> options,
+      ImmutableSortedSet<Path> kotlinSourceFilePaths,
+      Path pathToSrcsList,
+      Optional<Path> workingDirectory,
+      ProjectFilesystem projectFilesystem)
+      throws InterruptedException {
+    ImmutableList<String> args =
+        ImmutableList.<String>builder()
+            .addAll(options)
+            .addAll(
+                kotlinSourceFilePaths
+                    .stream()
+                    .map(path -> projectFilesystem.resolve(path).toAbsolutePath().toString())
+                    .iterator())
+            .build();
+    ImmutableList<Path> classpath =
+        compilerClassPath
+            .stream()
+            .map(p -> ((PathSourcePath) p).getRelativePath().toAbsolutePath())
+            .collect(MoreCollectors.toImmutableList());
+
+    try {
+      WorkerJobResult result =
+          JvmCompilerWorkers.compile(
+              context,
+              projectFilesystem,
+              JvmCompilerWorkers.Compiler.KOTLINC,
+              classpath,
+              maxWorkers,
+              args);
+      result.getStdout().ifPresent(context.getStdErr()::print);
+      result.getStderr().ifPresent(context.getStdErr()::print);
+      return result.getExitCode();
+    } catch (IOException e) {
+      context.getStdErr().println(e.getMessage());
+      return 1;
+    }
+  }
+
+  @Override
+  public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
+    return ruleFinder.filterBuildRuleInputs(getInputs());
+  }
+
+  @Override
+  public ImmutableCollection<SourcePath> getInputs() {
+    return ImmutableSet.of();
+  }
+
+  /** Compiles exactly what the in memory kotlinc would, so it shares its rule keys. */
+  @Override
+  public void appendToRuleKey(RuleKeyObjectSink sink) {
+    sink.setReflectively("kotlinc", "jar-backed")
+        .setReflectively("kotlinc.version", "in-memory")
+        .setReflectively("kotlinc.classpath", compilerClassPath);
+  }
+
+  @Override
+  public ImmutableMap<String, String> getEnvironment(SourcePathResolver resolver) {
+    throw new UnsupportedOperationException("Worker kotlinc may not be used externally");
+  }
+}
@@ -24,11 +24,15 @@ import com.facebook.buck.rules.CommandTool;
 import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public class ScalaBuckConfig {
   private static final String SECTION = "scala";
@@ -71,24 +75,66 @@ public class ScalaBuckConfig {
             .split(delegate.getValue(SECTION, "compiler_flags").orElse("")));
   }
 
+  /** @return how many persistent workers scalac may run in, or 0 to run it for each rule. */
+  public int getCompilerWorkers() {
+    return delegate.getInteger(SECTION, "compiler_workers").orElse(0);
+  }
+
+  /**
+   * @return the jars of the scalac installation, which its workers load the compiler from.
+   * @throws HumanReadableException if scalac is not an installation with a lib directory next to
+   *     its bin one, as when scala.compiler is set.
+   */
+  public ImmutableList<Path> getCompilerWorkerClasspath() {
+    if (delegate.getValue(SECTION, "compiler").isPresent()) {
+      throw new HumanReadableException(
+          "scala.compiler_workers cannot be used along with scala.compiler, as the workers load "
+              + "scalac from the lib directory of a scala installation. Unset one of them.");
+    }
+
+    Path scalac = findScalacExecutable();
+    Path lib;
+    try {
+      lib = scalac.toRealPath().getParent().resolveSibling("lib");
+      try (Stream<Path> jars = Files.list(lib)) {
+        ImmutableList<Path> classpath =
+            jars.filter(jar -> jar.getFileName().toString().endsWith(".jar"))
+                .sorted()
+                .collect(MoreCollectors.toImmutableList());
+        if (!classpath.isEmpty()) {
+          return classpath;
+        }
+      }
+    } catch (IOException e) {
+      throw new HumanReadableException(
+          e, "Could not find the jars of %s for scala.compiler_workers: %s", scalac, e);
+    }
+    throw new HumanReadableException(
+        "Could not find the jars of %s for scala.compiler_workers in %s.", scalac, lib);
+  }
+
   private Tool findScalac(BuildRuleResolver resolver) {
     Optional<Tool> configScalac = delegate.getTool(SECTION, "compiler", resolver);
     if (configScalac.isPresent()) {
       return configScalac.get();
     }
 
+    return new HashedFileTool(findScalacExecutable());
+  }
+
+  private Path findScalacExecutable() {
     Optional<Path> externalScalac =
         new ExecutableFinder()
             .getOptionalExecutable(Paths.get("scalac"), delegate.getEnvironment());
     if (externalScalac.isPresent()) {
-      return new HashedFileTool(externalScalac.get());
+      return externalScalac.get();
     }
 
     String scalaHome = delegate.getEnvironment().get("SCALA_HOME");
     if (scalaHome != null) {
       Path scalacInHomePath = Paths.get(scalaHome, "bin", "scalac");
       if (scalacInHomePath.toFile().exists()) {
-        return new HashedFileTool(scalacInHomePath);
+        return scalacInHomePath;
       }
       throw new HumanReadableException("Could not find scalac at $SCALA_HOME/bin/scalac.");
     }
@@ -26,12 +26,15 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.util.Optionals;
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Path;
 import javax.annotation.Nullable;
 
 public class ScalaConfiguredCompilerFactory extends ConfiguredCompilerFactory {
   private final ScalaBuckConfig scalaBuckConfig;
   private final ExtraClasspathFromContextFunction extraClasspathFromContextFunction;
   private @Nullable Tool scalac;
+  private @Nullable ImmutableList<Path> compilerWorkerClasspath;
 
   public ScalaConfiguredCompilerFactory(
       ScalaBuckConfig config, ExtraClasspathFromContextFunction extraClasspathFromContextFunction) {
@@ -46,6 +49,16 @@ public class ScalaConfiguredCompilerFactory extends ConfiguredCompilerFactory {
     return scalac;
   }
 
+  private ImmutableList<Path> getCompilerWorkerClasspath() {
+    if (compilerWorkerClasspath == null) {
+      compilerWorkerClasspath =
+          scalaBuckConfig.getCompilerWorkers() > 0
+              ? scalaBuckConfig.getCompilerWorkerClasspath()
+              : ImmutableList.of();
+    }
+    return compilerWorkerClasspath;
+  }
+
   @Override
   public boolean trackClassUsage(JavacOptions javacOptions) {
     return false;
@@ -61,7 +74,9 @@ public class ScalaConfiguredCompilerFactory extends ConfiguredCompilerFactory {
         scalaBuckConfig.getCompilerFlags(),
         arg.getExtraArguments(),
         resolver.getAllRules(scalaBuckConfig.getCompilerPlugins()),
-        extraClasspathFromContextFunction);
+        extraClasspathFromContextFunction,
+        scalaBuckConfig.getCompilerWorkers(),
+        getCompilerWorkerClasspath());
   }
 
   @Override
@@ -19,6 +19,7 @@ package com.facebook.buck.jvm.scala;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.ConfiguredCompiler;
 import com.facebook.buck.jvm.java.DefaultJavaLibraryBuilder;
+import com.facebook.buck.jvm.java.ExtraClasspathFromContextFunction;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -71,7 +72,12 @@ public class ScalaLibraryBuilder extends DefaultJavaLibraryBuilder {
           buildRuleResolver.getRule(scalaBuckConfig.getScalaLibraryTarget()),
           scalaBuckConfig.getCompilerFlags(),
           extraArguments,
-          buildRuleResolver.getAllRules(scalaBuckConfig.getCompilerPlugins()));
+          buildRuleResolver.getAllRules(scalaBuckConfig.getCompilerPlugins()),
+          ExtraClasspathFromContextFunction.EMPTY,
+          scalaBuckConfig.getCompilerWorkers(),
+          scalaBuckConfig.getCompilerWorkers() > 0
+              ? scalaBuckConfig.getCompilerWorkerClasspath()
+              : ImmutableList.of());
     }
   }
 }
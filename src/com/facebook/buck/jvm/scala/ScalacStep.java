@@ -16,16 +16,21 @@
 
 package com.facebook.buck.jvm.scala;
 
+import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.JvmCompilerWorkers;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.worker.WorkerJobResult;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.stream.Collectors;
 
@@ -37,6 +42,8 @@ public class ScalacStep extends ShellStep {
   private final ImmutableSortedSet<Path> sourceFilePaths;
   private final ImmutableSortedSet<Path> classpathEntries;
   private final ProjectFilesystem filesystem;
+  private final int compilerWorkers;
+  private final ImmutableList<Path> compilerWorkerClasspath;
 
   ScalacStep(
       Tool scalac,
@@ -45,7 +52,9 @@ public class ScalacStep extends ShellStep {
       Path outputDirectory,
       ImmutableSortedSet<Path> sourceFilePaths,
       ImmutableSortedSet<Path> classpathEntries,
-      ProjectFilesystem filesystem) {
+      ProjectFilesystem filesystem,
+      int compilerWorkers,
+      ImmutableList<Path> compilerWorkerClasspath) {
     super(filesystem.getRootPath());
 
     this.scalac = scalac;
@@ -55,6 +64,8 @@ public class ScalacStep extends ShellStep {
     this.sourceFilePaths = sourceFilePaths;
     this.classpathEntries = classpathEntries;
     this.filesystem = filesystem;
+    this.compilerWorkers = compilerWorkers;
+    this.compilerWorkerClasspath = compilerWorkerClasspath;
   }
 
   @Override
@@ -62,12 +73,49 @@ public class ScalacStep extends ShellStep {
     return "scalac";
   }
 
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    if (compilerWorkers == 0) {
+      return super.execute(context);
+    }
+
+    // The workers run scalac from the jars of the installation the command prefix points at, so
+    // only the options following the executable are passed on.
+    ImmutableList<String> commandPrefix = scalac.getCommandPrefix(resolver);
+    WorkerJobResult result =
+        JvmCompilerWorkers.compile(
+            context,
+            filesystem,
+            JvmCompilerWorkers.Compiler.SCALAC,
+            compilerWorkerClasspath,
+            compilerWorkers,
+            getCommand(context, commandPrefix.subList(1, commandPrefix.size()), ""));
+    // Reported just like the output of the scalac process would be.
+    Verbosity verbosity = context.getVerbosity();
+    if (result.getStdout().isPresent()
+        && !result.getStdout().get().isEmpty()
+        && (result.getExitCode() != 0 || shouldPrintStdout(verbosity))) {
+      context.postEvent(ConsoleEvent.info("%s", result.getStdout().get()));
+    }
+    if (result.getStderr().isPresent()
+        && !result.getStderr().get().isEmpty()
+        && (result.getExitCode() != 0 || shouldPrintStderr(verbosity))) {
+      context.postEvent(ConsoleEvent.warning("%s", result.getStderr().get()));
+    }
+    return StepExecutionResult.of(result.getExitCode(), result.getStderr());
+  }
+
   @Override
   protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
+    return getCommand(context, scalac.getCommandPrefix(resolver), "''");
+  }
+
+  /** @param emptyClasspath how to pass an empty classpath, which a shell would otherwise drop. */
+  private ImmutableList<String> getCommand(
+      ExecutionContext context, ImmutableList<String> commandPrefix, String emptyClasspath) {
     ImmutableList.Builder<String> commandBuilder =
-        ImmutableList.<String>builder()
-            .addAll(scalac.getCommandPrefix(resolver))
-            .addAll(extraArguments);
+        ImmutableList.<String>builder().addAll(commandPrefix).addAll(extraArguments);
 
     Verbosity verbosity = context.getVerbosity();
     if (verbosity.shouldUseVerbosityFlagIfAvailable()) {
@@ -84,11 +132,13 @@ public class ScalacStep extends ShellStep {
             .map(Path::toString)
             .collect(Collectors.joining(File.pathSeparator));
     if (classpath.isEmpty()) {
-      commandBuilder.add("-classpath", "''");
+      commandBuilder.add("-classpath", emptyClasspath);
     } else {
       commandBuilder.add("-classpath", classpath);
     }
-    commandBuilder.addAll(sourceFilePaths.stream().map(Object::toString).iterator());
+    // Absolute, as the compiler worker may have been started in the root of another cell.
+    commandBuilder.addAll(
+        sourceFilePaths.stream().map(filesystem::resolve).map(Path::toString).iterator());
 
     return commandBuilder.build();
   }
@@ -47,6 +47,9 @@ public class ScalacToJarStepFactory extends CompileToJarStepFactory implements A
   @AddToRuleKey private final ImmutableList<String> extraArguments;
   @AddToRuleKey private final ImmutableSet<SourcePath> compilerPlugins;
   @AddToRuleKey private final ExtraClasspathFromContextFunction extraClassPath;
+  // The workers run the very same compiler, so they do not change the output.
+  private final int compilerWorkers;
+  private final ImmutableList<Path> compilerWorkerClasspath;
 
   public ScalacToJarStepFactory(
       Tool scalac,
@@ -70,6 +73,32 @@ public class ScalacToJarStepFactory extends CompileToJarStepFactory implements A
       ImmutableList<String> extraArguments,
       ImmutableSet<BuildRule> compilerPlugins,
       ExtraClasspathFromContextFunction extraClassPath) {
+    this(
+        scalac,
+        scalaLibraryTarget,
+        configCompilerFlags,
+        extraArguments,
+        compilerPlugins,
+        extraClassPath,
+        0,
+        ImmutableList.of());
+  }
+
+  /**
+   * @param compilerWorkers how many persistent workers scalac may run in, or 0 to run it as a
+   *     process for each rule.
+   * @param compilerWorkerClasspath the jars the workers load scalac from. Workers are not used if
+   *     it is empty.
+   */
+  public ScalacToJarStepFactory(
+      Tool scalac,
+      BuildRule scalaLibraryTarget,
+      ImmutableList<String> configCompilerFlags,
+      ImmutableList<String> extraArguments,
+      ImmutableSet<BuildRule> compilerPlugins,
+      ExtraClasspathFromContextFunction extraClassPath,
+      int compilerWorkers,
+      ImmutableList<Path> compilerWorkerClasspath) {
     this.scalac = scalac;
     this.scalaLibraryTarget = scalaLibraryTarget;
     this.configCompilerFlags = configCompilerFlags;
@@ -80,6 +109,8 @@ public class ScalacToJarStepFactory extends CompileToJarStepFactory implements A
             .map(BuildRule::getSourcePathToOutput)
             .collect(MoreCollectors.toImmutableSet());
     this.extraClassPath = extraClassPath;
+    this.compilerWorkers = compilerWorkerClasspath.isEmpty() ? 0 : compilerWorkers;
+    this.compilerWorkerClasspath = compilerWorkerClasspath;
   }
 
   @Override
@@ -110,7 +141,7 @@ public class ScalacToJarStepFactory extends CompileToJarStepFactory implements A
                             "-Xplugin:"
                                 + context
                                     .getSourcePathResolver()
-                                    .getRelativePath(input)
+                                    .getAbsolutePath(input)
                                     .toString()))
                 .build(),
             resolver,
@@ -121,7 +152,9 @@ public class ScalacToJarStepFactory extends CompileToJarStepFactory implements A
                     Optional.ofNullable(extraClassPath.apply(context)).orElse(ImmutableList.of()))
                 .addAll(classpathEntries)
                 .build(),
-            filesystem));
+            filesystem,
+            compilerWorkers,
+            compilerWorkerClasspath));
   }
 
   @Override
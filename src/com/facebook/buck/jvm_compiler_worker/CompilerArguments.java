@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm_compiler_worker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The format of the arguments file of a compilation sent to a worker. Each argument is written as
+ * {@code <length>:<argument>} followed by a line break, so that arguments may contain any
+ * character, line breaks included.
+ */
+public final class CompilerArguments {
+  private CompilerArguments() {}
+
+  public static String encode(List<String> arguments) {
+    StringBuilder builder = new StringBuilder();
+    for (String argument : arguments) {
+      builder.append(argument.length()).append(':').append(argument).append('\n');
+    }
+    return builder.toString();
+  }
+
+  public static List<String> decode(String encoded) {
+    List<String> arguments = new ArrayList<>();
+    int position = 0;
+    while (position < encoded.length()) {
+      int separator = encoded.indexOf(':', position);
+      if (separator == -1) {
+        throw new IllegalArgumentException(
+            String.format("Argument %d has no length: %s", arguments.size(), encoded));
+      }
+      int end = separator + 1 + Integer.parseInt(encoded.substring(position, separator));
+      if (end >= encoded.length() || encoded.charAt(end) != '\n') {
+        throw new IllegalArgumentException(
+            String.format("Argument %d is truncated: %s", arguments.size(), encoded));
+      }
+      arguments.add(encoded.substring(separator + 1, end));
+      position = end + 1;
+    }
+    return arguments;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm_compiler_worker;
+
+import com.facebook.buck.worker.WorkerProcessCommand;
+import com.facebook.buck.worker.WorkerProcessProtocol;
+import com.facebook.buck.worker.WorkerProcessProtocolZero;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Entry point of the workers compiling Kotlin or Scala. The compiler is loaded once, from the
+ * classpath given on the command line, then runs the compilations sent over the worker protocol
+ * until the pool is closed. The arguments of each job are read as {@link CompilerArguments}.
+ *
+ * <p>Usage: {@code Main <kotlinc|scalac> <compiler classpath entry>...}
+ */
+public class Main {
+  private Main() {}
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: Main <kotlinc|scalac> <compiler classpath entry>...");
+      System.exit(2);
+    }
+
+    // Buck talks to the worker through its stdout, so whatever the compiler prints goes to the
+    // output files of the job being run instead.
+    PrintStream protocolOut = System.out;
+    RedirectableOutputStream stdout = new RedirectableOutputStream(System.err);
+    RedirectableOutputStream stderr = new RedirectableOutputStream(System.err);
+    System.setOut(new PrintStream(stdout, true));
+    System.setErr(new PrintStream(stderr, true));
+
+    ReflectedCompiler compiler = ReflectedCompiler.valueOf(args[0].toUpperCase(Locale.US));
+    URL[] classpath = new URL[args.length - 1];
+    for (int i = 1; i < args.length; i++) {
+      classpath[i - 1] = Paths.get(args[i]).toUri().toURL();
+    }
+    ClassLoader compilerClassLoader = new URLClassLoader(classpath, null);
+    Thread.currentThread().setContextClassLoader(compilerClassLoader);
+    Object compilerInstance = compiler.load(compilerClassLoader);
+
+    serve(
+        (arguments, jobStderr) -> compiler.compile(compilerInstance, arguments, jobStderr),
+        System.in,
+        protocolOut,
+        stdout,
+        stderr);
+  }
+
+  /**
+   * Runs the jobs received from {@code commands} until buck closes the protocol.
+   *
+   * @param stdout where the output the compiler prints goes, redirected to each job's files.
+   * @param stderr where the errors the compiler prints go, redirected to each job's files.
+   */
+  static void serve(
+      Compilation compilation,
+      InputStream commands,
+      OutputStream responses,
+      RedirectableOutputStream stdout,
+      RedirectableOutputStream stderr)
+      throws IOException {
+    int messageId = 0;
+    WorkerProcessProtocol.CommandReceiver protocol =
+        new WorkerProcessProtocolZero.CommandReceiver(responses, commands);
+    try {
+      protocol.handshake(messageId++);
+      while (!protocol.shouldClose()) {
+        int jobId = messageId++;
+        WorkerProcessCommand command = protocol.receiveCommand(jobId);
+        protocol.sendResponse(jobId, "result", runJob(compilation, command, stdout, stderr));
+      }
+    } finally {
+      protocol.close();
+    }
+  }
+
+  private static int runJob(
+      Compilation compilation,
+      WorkerProcessCommand command,
+      RedirectableOutputStream stdout,
+      RedirectableOutputStream stderr)
+      throws IOException {
+    List<String> arguments =
+        CompilerArguments.decode(
+            new String(Files.readAllBytes(command.getArgsPath()), StandardCharsets.UTF_8));
+    try (OutputStream jobStdout = new FileOutputStream(command.getStdOutPath().toFile());
+        OutputStream jobStderr = new FileOutputStream(command.getStdErrPath().toFile());
+        PrintStream jobStderrPrinter = new PrintStream(jobStderr, true)) {
+      stdout.redirectTo(jobStdout);
+      stderr.redirectTo(jobStderr);
+      try {
+        return compilation.compile(
+            arguments.toArray(new String[arguments.size()]), jobStderrPrinter);
+      } catch (Exception e) {
+        e.printStackTrace(jobStderrPrinter);
+        return 1;
+      } finally {
+        System.out.flush();
+        System.err.flush();
+        stdout.reset();
+        stderr.reset();
+      }
+    }
+  }
+
+  /** Runs one compilation with the compiler loaded by the worker. */
+  interface Compilation {
+    /** @return the exit code of the compilation. */
+    int compile(String[] arguments, PrintStream stderr) throws Exception;
+  }
+
+  /** A stream whose destination can be swapped, since System.out is captured early by compilers. */
+  static class RedirectableOutputStream extends OutputStream {
+    private final OutputStream defaultDestination;
+    private volatile OutputStream destination;
+
+    RedirectableOutputStream(OutputStream defaultDestination) {
+      this.defaultDestination = defaultDestination;
+      this.destination = defaultDestination;
+    }
+
+    void redirectTo(OutputStream destination) {
+      this.destination = destination;
+    }
+
+    void reset() {
+      destination = defaultDestination;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      destination.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      destination.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      destination.flush();
+    }
+  }
+}
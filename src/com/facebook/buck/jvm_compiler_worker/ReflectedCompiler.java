@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm_compiler_worker;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+
+/** The compilers a worker can run, each driven through its command line entry point. */
+enum ReflectedCompiler {
+  KOTLINC {
+    private static final String COMPILER_CLASS = "org.jetbrains.kotlin.cli.jvm.K2JVMCompiler";
+
+    @Override
+    Object load(ClassLoader classLoader) throws ReflectiveOperationException {
+      return classLoader.loadClass(COMPILER_CLASS).newInstance();
+    }
+
+    @Override
+    int compile(Object compiler, String[] arguments, PrintStream stderr)
+        throws ReflectiveOperationException {
+      Method exec = compiler.getClass().getMethod("exec", PrintStream.class, String[].class);
+      Object exitCode = exec.invoke(compiler, stderr, arguments);
+      return (Integer) exitCode.getClass().getMethod("getCode").invoke(exitCode);
+    }
+  },
+
+  SCALAC {
+    private static final String COMPILER_CLASS = "scala.tools.nsc.Main";
+
+    @Override
+    Object load(ClassLoader classLoader) throws ReflectiveOperationException {
+      return classLoader.loadClass(COMPILER_CLASS);
+    }
+
+    /** The driver reports to the console, which the worker points at the job's stderr. */
+    @Override
+    int compile(Object compiler, String[] arguments, PrintStream stderr)
+        throws ReflectiveOperationException {
+      Method process = ((Class<?>) compiler).getMethod("process", String[].class);
+      Object succeeded = process.invoke(null, (Object) arguments);
+      return Boolean.TRUE.equals(succeeded) ? 0 : 1;
+    }
+  },
+  ;
+
+  /** @return what {@link #compile} needs to run a compilation, loaded once per worker. */
+  abstract Object load(ClassLoader classLoader) throws ReflectiveOperationException;
+
+  /** @return the exit code of the compilation. */
+  abstract int compile(Object compiler, String[] arguments, PrintStream stderr)
+      throws ReflectiveOperationException;
+}
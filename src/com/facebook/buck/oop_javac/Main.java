@@ -15,10 +15,18 @@
  */
 package com.facebook.buck.oop_javac;
 
+import com.facebook.buck.jvm.java.SharedClasspathIndex;
+
 public class Main {
   private Main() {}
 
+  /** The number of jars the worker keeps indexed for the compilations it runs. */
+  private static final int CLASSPATH_INDEX_MAX_JARS = 1024;
+
   public static void main(String[] args) throws Exception {
+    // The worker lives as long as its pool, so the jars on the classpaths of its compilations are
+    // worth indexing once for all of them.
+    new SharedClasspathIndex(CLASSPATH_INDEX_MAX_JARS).install();
     try (MainOutOfProcessJavac javac = new MainOutOfProcessJavac()) {
       javac.ensureHandshake();
       while (true) {
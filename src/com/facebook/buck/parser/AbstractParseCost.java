@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+/** What it cost to parse a single build file, as recorded in the {@link ParseCostLedger}. */
+@Value.Immutable(copy = false)
+@BuckStyleTuple
+@JsonSerialize(as = ParseCost.class)
+@JsonDeserialize(as = ParseCost.class)
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+abstract class AbstractParseCost {
+
+  /** @return the absolute path of the build file. */
+  public abstract String getBuildFile();
+
+  /** @return wall time spent by the build file parser, not counting time waiting for a parser. */
+  public abstract long getParseTimeMicros();
+
+  /** @return the number of bytes read by the build file parser. */
+  public abstract long getProcessedBytes();
+
+  /** @return the number of rules defined by the build file. */
+  public abstract int getRuleCount();
+
+  /** @return the number of files included or loaded by the build file. */
+  public abstract int getIncludeCount();
+
+  /** @return time spent evaluating globs, if reported by the build file parser. */
+  public abstract long getGlobTimeMicros();
+}
@@ -154,6 +154,24 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("project", "watch_cells", true);
   }
 
+  /**
+   * @return whether the daemon should subscribe to Watchman to process file changes as they happen
+   *     instead of when the next command starts.
+   */
+  @Value.Lazy
+  public boolean getWatchmanSubscription() {
+    return getDelegate().getBooleanValue("project", "watchman_subscription", false);
+  }
+
+  /**
+   * @return whether the daemon should cache the metadata and directory listings of the files of
+   *     the cells, invalidating them as Watchman reports changes.
+   */
+  @Value.Lazy
+  public boolean getFilesystemStatCache() {
+    return getDelegate().getBooleanValue("project", "filesystem_stat_cache", false);
+  }
+
   @Value.Lazy
   public WatchmanWatcher.CursorType getWatchmanCursor() {
     return getDelegate()
@@ -244,6 +262,26 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("parser", "freeze_globals", false);
   }
 
+  /**
+   * @return boolean flag indicating whether the parser should start parsing, ahead of the target
+   *     graph traversal, the build files that were needed the last time the daemon built a target
+   *     graph for the same targets.
+   */
+  @Value.Lazy
+  public boolean getEnableSpeculativeParsingFromPreviousBuild() {
+    return getDelegate()
+        .getBooleanValue("parser", "speculative_parsing_from_previous_build", false);
+  }
+
+  /**
+   * @return whether the cost of parsing each build file should be written to the parse cost ledger
+   *     file read by {@code buck audit parse-cost}.
+   */
+  @Value.Lazy
+  public boolean getEnableParseCostLedger() {
+    return getDelegate().getBooleanValue("parser", "parse_cost_ledger", false);
+  }
+
   /**
    * @return boolean flag indicating whether support for parsing build files using non default
    *     syntax (currently Python DSL).
@@ -17,11 +17,16 @@
 package com.facebook.buck.parser;
 
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.BuildRuleType;
+import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import org.immutables.value.Value;
 
@@ -60,4 +65,32 @@ abstract class AbstractTargetNodePredicateSpec implements TargetNodeSpec {
 
     return resultBuilder.build();
   }
+
+  /**
+   * Equivalent of {@link #filter(Iterable)} that works on the raw nodes of a build file, so that
+   * resolving this spec doesn't require coercing every target in the file into a {@link
+   * TargetNode}. Only the targets that are actually reached by the resulting target graph will be
+   * coerced.
+   *
+   * @param cell the {@link Cell} that the build file belongs to.
+   * @param buildFile absolute path to the build file the raw nodes were read from.
+   * @param rawNodes raw nodes of the build file, without meta entries.
+   * @return the targets which should be built according to this spec.
+   */
+  public ImmutableSet<BuildTarget> filterRawNodes(
+      Cell cell, Path buildFile, Iterable<Map<String, Object>> rawNodes) {
+    ImmutableSet.Builder<BuildTarget> resultBuilder = ImmutableSet.builder();
+
+    for (Map<String, Object> rawNode : rawNodes) {
+      if (onlyTests() && !BuildRuleType.of((String) rawNode.get("buck.type")).isTestRule()) {
+        continue;
+      }
+      resultBuilder.add(
+          BuildTarget.of(
+              RawNodeParsePipeline.parseBuildTargetFromRawRule(
+                  cell.getRoot(), cell.getCanonicalName(), rawNode, buildFile)));
+    }
+
+    return resultBuilder.build();
+  }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Compact, immutable representation of the raw nodes that the {@link DaemonicCellState} keeps
+ * around for the lifetime of the daemon.
+ *
+ * <p>Rules of the same type almost always have the same attributes, and the same strings
+ * (visibility patterns, common deps, labels, ...) show up in thousands of rules. Rather than
+ * keeping a hash table per node, every node points at a shared, interned {@link Layout} holding the
+ * attribute names and only stores a flat array of values. The values themselves are interned too,
+ * so equal strings and lists are shared between all the raw nodes in the daemon.
+ */
+final class CompactRawNode extends AbstractMap<String, Object> {
+
+  private static final Interner<Layout> LAYOUTS = Interners.newWeakInterner();
+  private static final Interner<Object> VALUES = Interners.newWeakInterner();
+
+  /** Rough size of an object header plus a reference on a 64 bit JVM with compressed oops. */
+  private static final int OBJECT_OVERHEAD_BYTES = 16;
+
+  private static final int REFERENCE_BYTES = 4;
+
+  private final Layout layout;
+  private final Object[] values;
+  private int hashCode;
+
+  private CompactRawNode(Layout layout, Object[] values) {
+    this.layout = layout;
+    this.values = values;
+  }
+
+  /** @return a compact copy of {@code rawNode}, or {@code rawNode} itself if already compacted. */
+  public static Map<String, Object> of(Map<String, Object> rawNode) {
+    if (rawNode instanceof CompactRawNode) {
+      return rawNode;
+    }
+    String[] keys = new String[rawNode.size()];
+    Object[] values = new Object[rawNode.size()];
+    int i = 0;
+    for (Map.Entry<String, Object> entry : rawNode.entrySet()) {
+      keys[i] = entry.getKey();
+      values[i] = compactValue(entry.getValue());
+      i++;
+    }
+    return new CompactRawNode(LAYOUTS.intern(new Layout(keys)), values);
+  }
+
+  /** @return compact copies of all the given raw nodes, in the same order. */
+  public static ImmutableSet<Map<String, Object>> copyOf(Iterable<Map<String, Object>> rawNodes) {
+    ImmutableSet.Builder<Map<String, Object>> builder = ImmutableSet.builder();
+    for (Map<String, Object> rawNode : rawNodes) {
+      builder.add(of(rawNode));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the approximate number of bytes retained by the given raw nodes, not counting the
+   *     layouts and interned values which are shared with other nodes.
+   */
+  public static long getEstimatedHeapBytes(Iterable<Map<String, Object>> rawNodes) {
+    long bytes = 0;
+    for (Map<String, Object> rawNode : rawNodes) {
+      if (rawNode instanceof CompactRawNode) {
+        bytes += ((CompactRawNode) rawNode).getEstimatedHeapBytes();
+      }
+    }
+    return bytes;
+  }
+
+  private long getEstimatedHeapBytes() {
+    // The node itself (layout, values and hash code fields) and its value array.
+    return OBJECT_OVERHEAD_BYTES + 3 * REFERENCE_BYTES + OBJECT_OVERHEAD_BYTES
+        + (long) values.length * REFERENCE_BYTES;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  private static Object compactValue(@Nullable Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof Map) {
+      return VALUES.intern(of((Map<String, Object>) value));
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      Object[] elements = new Object[list.size()];
+      boolean hasNulls = false;
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = compactValue(list.get(i));
+        hasNulls |= elements[i] == null;
+      }
+      if (hasNulls) {
+        // ImmutableList can't hold nulls, and lists like this are too rare to be worth sharing.
+        return Collections.unmodifiableList(Arrays.asList(elements));
+      }
+      return VALUES.intern(ImmutableList.copyOf(elements));
+    } else if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+      return VALUES.intern(value);
+    }
+    return value;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    return layout.indexOf(key) >= 0;
+  }
+
+  @Override
+  @Nullable
+  public Object get(@Nullable Object key) {
+    int index = layout.indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int index = 0;
+
+          @Override
+          public boolean hasNext() {
+            return index < values.length;
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry =
+                new AbstractMap.SimpleImmutableEntry<>(layout.keys[index], values[index]);
+            index++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return values.length;
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    // Raw nodes are immutable and end up in sets, so it's worth remembering the hash code.
+    int result = hashCode;
+    if (result == 0) {
+      for (int i = 0; i < values.length; i++) {
+        result += layout.keys[i].hashCode() ^ Objects.hashCode(values[i]);
+      }
+      hashCode = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other instanceof CompactRawNode) {
+      CompactRawNode that = (CompactRawNode) other;
+      if (hashCode() != that.hashCode()) {
+        return false;
+      }
+      if (layout == that.layout) {
+        return Arrays.equals(values, that.values);
+      }
+    }
+    // Nodes with the same attributes in a different order are still equal maps.
+    return super.equals(other);
+  }
+
+  /** The attribute names of a raw node, in their original order. Shared by all similar nodes. */
+  private static final class Layout {
+    private final String[] keys;
+    private final ImmutableMap<String, Integer> indices;
+
+    private Layout(String[] keys) {
+      this.keys = keys;
+      ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+      for (int i = 0; i < keys.length; i++) {
+        builder.put(keys[i], i);
+      }
+      this.indices = builder.build();
+    }
+
+    private int indexOf(@Nullable Object key) {
+      Integer index = key == null ? null : indices.get(key);
+      return index == null ? -1 : index;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      return other instanceof Layout && Arrays.equals(keys, ((Layout) other).keys);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(keys);
+    }
+  }
+}
@@ -101,6 +101,9 @@ class DaemonicCellState {
 
   @GuardedBy("rawAndComputedNodesLock")
   private final ConcurrentMapCache<Path, ImmutableSet<Map<String, Object>>> allRawNodes;
+  // Approximate heap footprint of `allRawNodes`, see CompactRawNode#getEstimatedHeapBytes.
+  @GuardedBy("rawAndComputedNodesLock")
+  private long allRawNodesEstimatedHeapBytes;
   // Tracks all targets in `allRawNodes`.  Used to verify that every target in `allComputedNodes`
   // is also in `allRawNodes`, as we use the latter for bookkeeping invalidations.
   @GuardedBy("rawAndComputedNodesLock")
@@ -162,21 +165,32 @@ class DaemonicCellState {
     }
   }
 
+  long getRawNodesEstimatedHeapBytes() {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      return allRawNodesEstimatedHeapBytes;
+    }
+  }
+
   ImmutableSet<Map<String, Object>> putRawNodesIfNotPresentAndStripMetaEntries(
       final Path buildFile,
       final ImmutableSet<Map<String, Object>> withoutMetaIncludes,
       final ImmutableSet<Path> dependentsOfEveryNode,
       ImmutableMap<String, Optional<String>> env) {
+    // Raw nodes live as long as the daemon does, so store them in their compact form. Do this
+    // outside of the lock, as it touches every value of every node.
+    final ImmutableSet<Map<String, Object>> compactNodes =
+        CompactRawNode.copyOf(withoutMetaIncludes);
     try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
       ImmutableSet<Map<String, Object>> updated =
-          allRawNodes.putIfAbsentAndGet(buildFile, withoutMetaIncludes);
+          allRawNodes.putIfAbsentAndGet(buildFile, compactNodes);
       for (Map<String, Object> node : updated) {
         allRawNodeTargets.add(
             RawNodeParsePipeline.parseBuildTargetFromRawRule(
                 cellRoot, cellCanonicalName, node, buildFile));
       }
       buildFileEnv.put(buildFile, env);
-      if (updated == withoutMetaIncludes) {
+      if (updated == compactNodes) {
+        allRawNodesEstimatedHeapBytes += CompactRawNode.getEstimatedHeapBytes(compactNodes);
         // We now know all the nodes. They all implicitly depend on everything in
         // the "dependentsOfEveryNode" set.
         for (Path dependent : dependentsOfEveryNode) {
@@ -205,6 +219,7 @@ class DaemonicCellState {
           targetsCornucopia.removeAll(target);
           allRawNodeTargets.remove(target);
         }
+        allRawNodesEstimatedHeapBytes -= CompactRawNode.getEstimatedHeapBytes(rawNodes);
         allRawNodes.invalidate(path);
       }
 
@@ -347,9 +362,13 @@ class DaemonicCellState {
     for (String pathString : remote.allRawNodesJsons.keySet()) {
       String json = remote.allRawNodesJsons.get(pathString);
       ImmutableSet<Map<String, Object>> deserialisedRawNodes =
-          ObjectMappers.readValue(json, new TypeReference<ImmutableSet<Map<String, Object>>>() {});
+          CompactRawNode.copyOf(
+              ObjectMappers.readValue(
+                  json, new TypeReference<ImmutableSet<Map<String, Object>>>() {}));
       Path key = root.resolve(pathString);
       daemonicCellState.allRawNodes.putIfAbsentAndGet(key, deserialisedRawNodes);
+      daemonicCellState.allRawNodesEstimatedHeapBytes +=
+          CompactRawNode.getEstimatedHeapBytes(deserialisedRawNodes);
       deserialisedRawNodes.forEach(
           rawNode -> {
             daemonicCellState.allRawNodeTargets.add(
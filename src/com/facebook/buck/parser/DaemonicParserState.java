@@ -23,6 +23,7 @@ import com.facebook.buck.counters.TagSetCounter;
 import com.facebook.buck.event.ParsingEvent;
 import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.json.BuildFileParseException;
+import com.facebook.buck.json.SkylarkExtensionCache;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildFileTree;
 import com.facebook.buck.model.BuildTarget;
@@ -38,6 +39,7 @@ import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -81,11 +83,17 @@ public class DaemonicParserState {
    * list of strings with the root build file as the head and included build files as the tail, for
    * example: {"__includes":["/foo/BUCK", "/foo/buck_includes"]}
    */
-  private static final String INCLUDES_META_RULE = "__includes";
+  static final String INCLUDES_META_RULE = "__includes";
 
   private static final String CONFIGS_META_RULE = "__configs";
   private static final String ENV_META_RULE = "__env";
 
+  /**
+   * Key of the meta-rule with statistics about parsing the build file, such as the time spent in
+   * globs. Only used by the {@link ParseCostLedger}.
+   */
+  static final String STATS_META_RULE = "__stats";
+
   private static final String COUNTER_CATEGORY = "buck_parser_state";
   private static final String INVALIDATED_BY_ENV_VARS_COUNTER_NAME = "invalidated_by_env_vars";
   private static final String INVALIDATED_BY_DEFAULT_INCLUDES_COUNTER_NAME =
@@ -99,10 +107,15 @@ public class DaemonicParserState {
       "rules_invalidated_by_watch_events";
   private static final String PATHS_ADDED_OR_REMOVED_INVALIDATING_BUILD_FILES =
       "paths_added_or_removed_invalidating_build_files";
+  private static final String RAW_NODES_ESTIMATED_HEAP_BYTES_COUNTER_NAME =
+      "raw_nodes_estimated_heap_bytes";
 
   /** Taken from {@link ConcurrentMap}. */
   static final int DEFAULT_INITIAL_CAPACITY = 16;
 
+  /** Number of distinct sets of target graph roots whose build files we remember. */
+  private static final int MAX_RECORDED_TARGET_GRAPHS = 32;
+
   static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
   /** Stateless view of caches on object that conforms to {@link PipelineNodeCache.Cache}. */
@@ -213,7 +226,9 @@ public class DaemonicParserState {
               Preconditions.checkNotNull((List<String>) rawNode.get(INCLUDES_META_RULE))) {
             dependentsOfEveryNode.add(cell.getFilesystem().resolve(path));
           }
-        } else if (rawNode.containsKey(CONFIGS_META_RULE)) {
+        } else if (rawNode.containsKey(CONFIGS_META_RULE)
+            || rawNode.containsKey(STATS_META_RULE)) {
+          // Not targets: the configs aren't tracked here, and the stats go to the ParseCostLedger.
         } else if (rawNode.containsKey(ENV_META_RULE)) {
           env =
               ImmutableMap.copyOf(
@@ -273,6 +288,17 @@ public class DaemonicParserState {
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  /**
+   * For a set of target graph roots, one target per build file that was needed to build the target
+   * graph the last time it was built. This is only a hint used for speculative parsing, so it's not
+   * invalidated when build files change.
+   */
+  private final Cache<ImmutableSet<BuildTarget>, ImmutableSet<BuildTarget>> targetGraphPackages =
+      CacheBuilder.newBuilder().maximumSize(MAX_RECORDED_TARGET_GRAPHS).build();
+
+  /** Skylark extensions evaluated while parsing build files, shared by all parse requests. */
+  private final SkylarkExtensionCache skylarkExtensionCache = new SkylarkExtensionCache();
+
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
    * root path). If this value changes, then we need to invalidate all the caches.
@@ -342,6 +368,10 @@ public class DaemonicParserState {
     return buildFileTrees;
   }
 
+  SkylarkExtensionCache getSkylarkExtensionCache() {
+    return skylarkExtensionCache;
+  }
+
   /**
    * Retrieve the cache view for caching a particular type.
    *
@@ -361,6 +391,26 @@ public class DaemonicParserState {
     return rawNodeCache;
   }
 
+  /**
+   * Remember which build files were needed to build the target graph for the given roots.
+   *
+   * @param roots the targets the target graph was built for.
+   * @param packages one target per build file that was parsed to build the target graph.
+   */
+  void recordTargetGraphPackages(
+      ImmutableSet<BuildTarget> roots, ImmutableSet<BuildTarget> packages) {
+    targetGraphPackages.put(roots, packages);
+  }
+
+  /**
+   * @return one target per build file that was needed the last time a target graph was built for
+   *     the given roots, or an empty set if no such graph was built by this daemon.
+   */
+  ImmutableSet<BuildTarget> getTargetGraphPackages(ImmutableSet<BuildTarget> roots) {
+    ImmutableSet<BuildTarget> packages = targetGraphPackages.getIfPresent(roots);
+    return packages == null ? ImmutableSet.of() : packages;
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
@@ -435,6 +485,7 @@ public class DaemonicParserState {
     }
 
     invalidatePath(fullPath);
+    skylarkExtensionCache.invalidatePath(fullPath);
   }
 
   public void invalidatePath(Path path) {
@@ -602,6 +653,7 @@ public class DaemonicParserState {
       boolean invalidated = !cellPathToDaemonicState.isEmpty();
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
+      skylarkExtensionCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -612,6 +664,13 @@ public class DaemonicParserState {
   }
 
   public ImmutableList<Counter> getCounters() {
+    // Unlike the other counters, this one is a snapshot of the state carried over from previous
+    // commands, so a fresh counter is created each time the counters are requested.
+    IntegerCounter rawNodesEstimatedHeapBytesCounter =
+        new IntegerCounter(
+            COUNTER_CATEGORY, RAW_NODES_ESTIMATED_HEAP_BYTES_COUNTER_NAME, ImmutableMap.of());
+    rawNodesEstimatedHeapBytesCounter.inc(getRawNodesEstimatedHeapBytes());
+
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
         cacheInvalidatedByDefaultIncludesChangeCounter,
@@ -619,7 +678,19 @@ public class DaemonicParserState {
         buildFilesInvalidatedByFileAddOrRemoveCounter,
         filesChangedCounter,
         rulesInvalidatedByWatchEventsCounter,
-        pathsAddedOrRemovedInvalidatingBuildFiles);
+        pathsAddedOrRemovedInvalidatingBuildFiles,
+        rawNodesEstimatedHeapBytesCounter);
+  }
+
+  /** @return the approximate number of bytes of heap used by the cached raw nodes. */
+  public long getRawNodesEstimatedHeapBytes() {
+    long bytes = 0;
+    try (AutoCloseableLock readLock = cellStateLock.readLock()) {
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        bytes += state.getRawNodesEstimatedHeapBytes();
+      }
+    }
+    return bytes;
   }
 
   @Override
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Per build file record of what it cost to parse it: parse wall time, bytes read, number of rules,
+ * number of includes and time spent in globs.
+ *
+ * <p>The ledger is filled in by the {@link ProjectBuildFileParserPool} as build files are parsed
+ * and can be merged into a machine-readable file, which is what {@code buck audit parse-cost}
+ * reads to find the build files that slow parsing down the most.
+ */
+@ThreadSafe
+public class ParseCostLedger {
+  private static final Logger LOG = Logger.get(ParseCostLedger.class);
+
+  private static final String LEDGER_FILE_NAME = "parse-cost.json";
+  private static final String LOCK_FILE_NAME = "parse-cost.json.lock";
+
+  /** File locks are held by the whole process, so threads of the same process queue up here. */
+  private static final Object MERGE_LOCK = new Object();
+
+  private final ConcurrentMap<Path, ParseCost> costs = new ConcurrentHashMap<>();
+
+  /**
+   * Records the cost of parsing {@code buildFile}.
+   *
+   * @param rulesAndMetaRules the output of the build file parser, meta rules included.
+   */
+  public void record(
+      Path buildFile,
+      long parseTimeNanos,
+      long processedBytes,
+      Iterable<Map<String, Object>> rulesAndMetaRules) {
+    int ruleCount = 0;
+    int includeCount = 0;
+    long globTimeMicros = 0;
+    for (Map<String, Object> rawNode : rulesAndMetaRules) {
+      if (rawNode.containsKey(DaemonicParserState.INCLUDES_META_RULE)) {
+        // The build file itself is the head of the list.
+        includeCount =
+            Math.max(0, ((List<?>) rawNode.get(DaemonicParserState.INCLUDES_META_RULE)).size() - 1);
+      } else if (rawNode.containsKey(DaemonicParserState.STATS_META_RULE)) {
+        Object globTime =
+            ((Map<?, ?>) rawNode.get(DaemonicParserState.STATS_META_RULE)).get("glob_time_micros");
+        if (globTime instanceof Number) {
+          globTimeMicros = ((Number) globTime).longValue();
+        }
+      } else if (rawNode.containsKey("buck.type")) {
+        ruleCount++;
+      }
+    }
+    costs.put(
+        buildFile,
+        ParseCost.of(
+            buildFile.toString(),
+            TimeUnit.NANOSECONDS.toMicros(parseTimeNanos),
+            processedBytes,
+            ruleCount,
+            includeCount,
+            globTimeMicros));
+  }
+
+  public boolean isEmpty() {
+    return costs.isEmpty();
+  }
+
+  /** @return all recorded costs, most expensive build file first. */
+  public ImmutableList<ParseCost> getCosts() {
+    return sortByParseTime(costs.values());
+  }
+
+  /**
+   * Merges the recorded costs into the ledger file of {@code filesystem}, replacing older entries
+   * for the same build files, so the file describes the last time each build file was parsed.
+   *
+   * <p>Concurrent Buck processes take turns through a lock file, so that none of them drops the
+   * entries merged by another. The ledger file is replaced atomically, so readers never see it
+   * partially written.
+   */
+  public void mergeIntoLedgerFile(ProjectFilesystem filesystem) throws IOException {
+    Path ledgerFile = getLedgerFile(filesystem);
+    filesystem.mkdirs(ledgerFile.getParent());
+    synchronized (MERGE_LOCK) {
+      mergeIntoLedgerFileLocked(filesystem, ledgerFile);
+    }
+    LOG.debug("Merged the cost of parsing %d build files into %s", costs.size(), ledgerFile);
+  }
+
+  private void mergeIntoLedgerFileLocked(ProjectFilesystem filesystem, Path ledgerFile)
+      throws IOException {
+    try (FileChannel lockChannel =
+            FileChannel.open(
+                filesystem.resolve(ledgerFile.resolveSibling(LOCK_FILE_NAME)),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.lock()) {
+      Map<String, ParseCost> merged = new TreeMap<>();
+      for (ParseCost cost : readLedgerFile(filesystem)) {
+        merged.put(cost.getBuildFile(), cost);
+      }
+      for (ParseCost cost : costs.values()) {
+        merged.put(cost.getBuildFile(), cost);
+      }
+      Path tempPath =
+          filesystem.createTempFile(ledgerFile.getParent(), LEDGER_FILE_NAME + ".", ".tmp");
+      try {
+        try (OutputStream output = filesystem.newFileOutputStream(tempPath)) {
+          ObjectMappers.WRITER.writeValue(output, sortByParseTime(merged.values()));
+        }
+        filesystem.move(
+            tempPath,
+            ledgerFile,
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        filesystem.deleteFileAtPathIfExists(tempPath);
+      }
+    }
+  }
+
+  /** @return the costs in the ledger file of {@code filesystem}, most expensive first. */
+  public static ImmutableList<ParseCost> readLedgerFile(ProjectFilesystem filesystem)
+      throws IOException {
+    Path ledgerFile = getLedgerFile(filesystem);
+    if (!filesystem.exists(ledgerFile)) {
+      return ImmutableList.of();
+    }
+    List<ParseCost> costs =
+        ObjectMappers.readValue(
+            filesystem.resolve(ledgerFile), new TypeReference<List<ParseCost>>() {});
+    return sortByParseTime(costs);
+  }
+
+  public static Path getLedgerFile(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getLogDir().resolve(LEDGER_FILE_NAME);
+  }
+
+  private static ImmutableList<ParseCost> sortByParseTime(Iterable<ParseCost> costs) {
+    return FluentIterable.from(costs)
+        .toSortedList(
+            Comparator.comparingLong(ParseCost::getParseTimeMicros)
+                .reversed()
+                .thenComparing(ParseCost::getBuildFile));
+  }
+}
@@ -264,10 +264,15 @@ public class Parser {
 
     final MutableDirectedGraph<TargetNode<?, ?>> graph = new MutableDirectedGraph<>();
     final Map<BuildTarget, TargetNode<?, ?>> index = new HashMap<>();
+    final ImmutableSet<BuildTarget> roots = ImmutableSet.copyOf(toExplore);
 
     ParseEvent.Started parseStart = ParseEvent.started(toExplore);
     eventBus.post(parseStart);
 
+    // Kick off parsing of everything that was needed the last time we were asked for the same
+    // targets, rather than discovering the build files one dependency at a time.
+    state.startSpeculativeParsing(permState.getTargetGraphPackages(roots));
+
     GraphTraversable<BuildTarget> traversable =
         target -> {
           TargetNode<?, ?> node;
@@ -318,18 +323,32 @@ public class Parser {
 
       targetGraph = new TargetGraph(graph, ImmutableMap.copyOf(index));
       state.ensureConcreteFilesExist(eventBus);
+      ImmutableSet<BuildTarget> packages = getOneTargetPerBuildFile(index.keySet());
+      state.countSpeculativeParseProcessedBytes(packages);
+      permState.recordTargetGraphPackages(roots, packages);
       return targetGraph;
     } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
       throw new HumanReadableException(e.getMessage());
     } catch (RuntimeException e) {
       throw propagateRuntimeCause(e);
     } finally {
+      state.cancelSpeculativeParsing();
       eventBus.post(
           ParseEvent.finished(
               parseStart, state.getParseProcessedBytes(), Optional.ofNullable(targetGraph)));
     }
   }
 
+  private static ImmutableSet<BuildTarget> getOneTargetPerBuildFile(Iterable<BuildTarget> targets) {
+    Map<Path, BuildTarget> targetsByPackage = new HashMap<>();
+    for (BuildTarget target : targets) {
+      targetsByPackage.putIfAbsent(
+          target.getCellPath().resolve(target.getBasePath()),
+          BuildTarget.of(target.getUnflavoredBuildTarget()));
+    }
+    return ImmutableSet.copyOf(targetsByPackage.values());
+  }
+
   /**
    * @param eventBus used to log events while parsing.
    * @param targetNodeSpecs the specs representing the build targets to generate a target graph for.
@@ -484,6 +503,17 @@ public class Parser {
                         node.getBuildTarget());
                     return new AbstractMap.SimpleEntry<>(index, buildTargets);
                   }));
+        } else if (spec instanceof TargetNodePredicateSpec) {
+          // Pattern specs only need the names and rule types of the targets in the build file,
+          // which the raw nodes already carry. Resolving them from the raw nodes means targets
+          // that the target graph never reaches are never coerced.
+          TargetNodePredicateSpec predicateSpec = (TargetNodePredicateSpec) spec;
+          targetFutures.add(
+              Futures.transform(
+                  state.getAllRawNodesJob(cell, buildFile),
+                  rawNodes ->
+                      new AbstractMap.SimpleEntry<>(
+                          index, predicateSpec.filterRawNodes(cell, buildFile, rawNodes))));
         } else {
           // Build up a list of all target nodes from the build file.
           targetFutures.add(
@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -47,10 +48,15 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class PerBuildState implements AutoCloseable {
@@ -83,6 +89,20 @@ public class PerBuildState implements AutoCloseable {
   private final RawNodeParsePipeline rawNodeParsePipeline;
   private final TargetNodeParsePipeline targetNodeParsePipeline;
 
+  private final ParseCostLedger parseCostLedger;
+  private final boolean enableParseCostLedger;
+  private final ProjectFilesystem rootCellFilesystem;
+
+  private final ListeningExecutorService executorService;
+  private final boolean speculativeParsingFromPreviousBuild;
+  /** Jobs scheduling the speculative parses, which may be cancelled until they start. */
+  private final List<Future<?>> speculativeParseJobs;
+  /** The speculative parses themselves, complete once the build file has been parsed. */
+  private final List<ListenableFuture<?>> speculativeParses;
+  /** Bytes read by the speculative parses, by package path. */
+  private final Map<Path, AtomicLong> speculativeParseProcessedBytes;
+  private final AtomicBoolean speculativeParsingCancelled;
+
   public enum SpeculativeParsing {
     ENABLED,
     DISABLED,
@@ -99,6 +119,7 @@ public class PerBuildState implements AutoCloseable {
     this.parser = parser;
     this.eventBus = eventBus;
     this.enableProfiling = enableProfiling;
+    this.executorService = executorService;
 
     this.cells = new ConcurrentHashMap<>();
     this.cellSymlinkAllowability = new ConcurrentHashMap<>();
@@ -112,11 +133,15 @@ public class PerBuildState implements AutoCloseable {
     TargetNodeListener<TargetNode<?, ?>> symlinkCheckers = this::registerInputsUnderSymlinks;
     ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
     int numParsingThreads = parserConfig.getNumParsingThreads();
+    this.parseCostLedger = new ParseCostLedger();
+    this.enableParseCostLedger = parserConfig.getEnableParseCostLedger();
+    this.rootCellFilesystem = rootCell.getFilesystem();
     this.projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
             input -> createBuildFileParser(input),
-            enableProfiling);
+            enableProfiling,
+            parseCostLedger);
 
     this.rawNodeParsePipeline =
         new RawNodeParsePipeline(
@@ -137,9 +162,106 @@ public class PerBuildState implements AutoCloseable {
                 && speculativeParsing == SpeculativeParsing.ENABLED,
             rawNodeParsePipeline);
 
+    this.speculativeParsingFromPreviousBuild =
+        parserConfig.getEnableParallelParsing()
+            && parserConfig.getEnableSpeculativeParsingFromPreviousBuild()
+            && speculativeParsing == SpeculativeParsing.ENABLED;
+    this.speculativeParseJobs = new CopyOnWriteArrayList<>();
+    this.speculativeParses = new CopyOnWriteArrayList<>();
+    this.speculativeParseProcessedBytes = new ConcurrentHashMap<>();
+    this.speculativeParsingCancelled = new AtomicBoolean(false);
+
     register(rootCell);
   }
 
+  /**
+   * Start parsing the build files defining the given targets without waiting for anything to ask
+   * for them, so that they're likely to be ready by the time the target graph traversal reaches
+   * them. Only the raw nodes are produced; targets are still coerced on demand. The bytes read
+   * aren't counted in {@link #getParseProcessedBytes()} until {@link
+   * #countSpeculativeParseProcessedBytes(Iterable)} is told the build files were needed.
+   *
+   * <p>This does nothing unless speculative parsing from the previous build is enabled.
+   *
+   * @param packages one target per build file to parse.
+   */
+  public void startSpeculativeParsing(Iterable<BuildTarget> packages) {
+    if (!speculativeParsingFromPreviousBuild) {
+      return;
+    }
+    for (BuildTarget target : packages) {
+      ListenableFuture<ListenableFuture<?>> job =
+          executorService.submit(
+              () -> {
+                if (speculativeParsingCancelled.get()) {
+                  return Futures.immediateFuture(null);
+                }
+                try {
+                  Cell cell = getCell(target);
+                  AtomicLong processedBytes = new AtomicLong();
+                  speculativeParseProcessedBytes.put(getPackagePath(target), processedBytes);
+                  return rawNodeParsePipeline.getAllNodesJob(
+                      cell, cell.getAbsolutePathToBuildFile(target), processedBytes);
+                } catch (BuildTargetException | HumanReadableException e) {
+                  // The build file may well have gone away since the last build. If it's actually
+                  // needed, the non-speculative path will report the error.
+                  LOG.debug(e, "Could not schedule speculative parsing for %s", target);
+                  return Futures.immediateFuture(null);
+                }
+              });
+      speculativeParseJobs.add(job);
+      speculativeParses.add(Futures.dereference(job));
+    }
+  }
+
+  /**
+   * Count the bytes read by the speculative parsing of the given packages towards {@link
+   * #getParseProcessedBytes()}. Bytes read for packages which turned out not to be needed are
+   * never counted.
+   *
+   * @param packages one target per build file that was needed.
+   */
+  public void countSpeculativeParseProcessedBytes(Iterable<BuildTarget> packages) {
+    for (BuildTarget target : packages) {
+      AtomicLong processedBytes = speculativeParseProcessedBytes.remove(getPackagePath(target));
+      if (processedBytes != null) {
+        parseProcessedBytes.addAndGet(processedBytes.get());
+      }
+    }
+  }
+
+  private static Path getPackagePath(BuildTarget target) {
+    return target.getCellPath().resolve(target.getBasePath());
+  }
+
+  /**
+   * Stop scheduling build files from {@link #startSpeculativeParsing(Iterable)} which haven't been
+   * scheduled yet. Build files which are already being parsed are left alone, as their results may
+   * be shared with non-speculative requests.
+   */
+  public void cancelSpeculativeParsing() {
+    speculativeParsingCancelled.set(true);
+    for (Future<?> job : speculativeParseJobs) {
+      job.cancel(false);
+    }
+    speculativeParseJobs.clear();
+  }
+
+  /**
+   * Wait for the speculative parses which were started to finish, so that the parsers aren't shut
+   * down under them. Their failures are ignored, as nothing needed their results.
+   */
+  private void awaitSpeculativeParsing() {
+    try {
+      Futures.successfulAsList(speculativeParses).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOG.debug(e, "Speculative parsing failed.");
+    }
+    speculativeParses.clear();
+  }
+
   public TargetNode<?, ?> getTargetNode(BuildTarget target)
       throws BuildFileParseException, BuildTargetException {
     Cell owningCell = getCell(target);
@@ -176,9 +298,20 @@ public class PerBuildState implements AutoCloseable {
     return rawNodeParsePipeline.getAllNodes(cell, buildFile, parseProcessedBytes);
   }
 
+  public ListenableFuture<ImmutableSet<Map<String, Object>>> getAllRawNodesJob(
+      Cell cell, Path buildFile) throws BuildTargetException {
+    Preconditions.checkState(buildFile.startsWith(cell.getRoot()));
+
+    return rawNodeParsePipeline.getAllNodesJob(cell, buildFile, parseProcessedBytes);
+  }
+
   private ProjectBuildFileParser createBuildFileParser(Cell cell) {
     return cell.createBuildFileParser(
-        this.parser.getTypeCoercerFactory(), console, eventBus, enableProfiling);
+        this.parser.getTypeCoercerFactory(),
+        console,
+        eventBus,
+        enableProfiling,
+        this.parser.getPermState().getSkylarkExtensionCache());
   }
 
   private void register(Cell cell) {
@@ -321,14 +454,29 @@ public class PerBuildState implements AutoCloseable {
     return parseProcessedBytes.get();
   }
 
+  /** @return the cost of parsing each of the build files parsed so far. */
+  public ParseCostLedger getParseCostLedger() {
+    return parseCostLedger;
+  }
+
   @Override
   public void close() throws BuildFileParseException {
     stdout.close();
     stderr.close();
+    cancelSpeculativeParsing();
+    awaitSpeculativeParsing();
     targetNodeParsePipeline.close();
     rawNodeParsePipeline.close();
     projectBuildFileParserPool.close();
 
+    if (enableParseCostLedger && !parseCostLedger.isEmpty()) {
+      try {
+        parseCostLedger.mergeIntoLedgerFile(rootCellFilesystem);
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to write the parse cost ledger.");
+      }
+    }
+
     if (!buildInputPathsUnderSymlink.isEmpty()) {
       LOG.debug(
           "Cleaning cache of build files with inputs under symlink %s",
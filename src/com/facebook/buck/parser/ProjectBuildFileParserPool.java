@@ -22,6 +22,7 @@ import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.concurrent.ResourcePool;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -51,6 +52,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
   private final Function<Cell, ProjectBuildFileParser> parserFactory;
   private final AtomicBoolean closing;
   private final boolean enableProfiler;
+  private final ParseCostLedger parseCostLedger;
 
   /**
    * @param maxParsersPerCell maximum number of parsers to create for a single cell.
@@ -60,6 +62,19 @@ class ProjectBuildFileParserPool implements AutoCloseable {
       int maxParsersPerCell,
       Function<Cell, ProjectBuildFileParser> parserFactory,
       boolean enableProfiler) {
+    this(maxParsersPerCell, parserFactory, enableProfiler, new ParseCostLedger());
+  }
+
+  /**
+   * @param maxParsersPerCell maximum number of parsers to create for a single cell.
+   * @param parserFactory function used to create a new parser.
+   * @param parseCostLedger where to record the cost of parsing each build file.
+   */
+  public ProjectBuildFileParserPool(
+      int maxParsersPerCell,
+      Function<Cell, ProjectBuildFileParser> parserFactory,
+      boolean enableProfiler,
+      ParseCostLedger parseCostLedger) {
     Preconditions.checkArgument(maxParsersPerCell > 0);
 
     this.maxParsersPerCell = maxParsersPerCell;
@@ -67,6 +82,7 @@ class ProjectBuildFileParserPool implements AutoCloseable {
     this.parserFactory = parserFactory;
     this.closing = new AtomicBoolean(false);
     this.enableProfiler = enableProfiler;
+    this.parseCostLedger = parseCostLedger;
   }
 
   /**
@@ -85,8 +101,19 @@ class ProjectBuildFileParserPool implements AutoCloseable {
 
     return getResourcePoolForCell(cell)
         .scheduleOperationWithResource(
-            parser ->
-                ImmutableSet.copyOf(parser.getAllRulesAndMetaRules(buildFile, processedBytes)),
+            parser -> {
+              // The time is measured here rather than around the whole future so that the time
+              // spent waiting for a parser isn't blamed on the build file.
+              AtomicLong buildFileProcessedBytes = new AtomicLong();
+              long startNanos = System.nanoTime();
+              ImmutableList<Map<String, Object>> rulesAndMetaRules =
+                  parser.getAllRulesAndMetaRules(buildFile, buildFileProcessedBytes);
+              long parseTimeNanos = System.nanoTime() - startNanos;
+              processedBytes.addAndGet(buildFileProcessedBytes.get());
+              parseCostLedger.record(
+                  buildFile, parseTimeNanos, buildFileProcessedBytes.get(), rulesAndMetaRules);
+              return ImmutableSet.copyOf(rulesAndMetaRules);
+            },
             executorService);
   }
 
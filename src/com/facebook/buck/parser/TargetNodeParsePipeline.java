@@ -47,6 +47,10 @@ import javax.annotation.concurrent.ThreadSafe;
  * constrain the number of concurrent active parsers. Within a single pipeline instance work is not
  * duplicated (the **JobsCache variables) are used to make sure we don't schedule the same work more
  * than once), however it's possible for multiple read-only commands to duplicate work.
+ *
+ * <p>Coercing raw nodes into TargetNodes is the expensive part of parsing, so callers that only
+ * need the names of the targets in a build file should go through the {@link RawNodeParsePipeline}
+ * instead and only request the TargetNodes they actually need.
  */
 @ThreadSafe
 public class TargetNodeParsePipeline
@@ -41,4 +41,10 @@ abstract class AbstractBuildContext {
   public Supplier<AndroidPlatformTarget> getAndroidPlatformTargetSupplier() {
     return AndroidPlatformTarget.EXPLODING_ANDROID_PLATFORM_TARGET_SUPPLIER;
   }
+
+  /** @return whether symlink trees should only update the links which changed. */
+  @Value.Default
+  public boolean isIncrementalSymlinkTreesEnabled() {
+    return false;
+  }
 }
@@ -648,7 +648,8 @@ class CachingBuildRuleBuilder {
   private ListenableFuture<Optional<BuildResult>> buildLocally(
       final CacheResult cacheResult, final ListeningExecutorService service) {
     if (SupportsPipelining.isSupported(rule)) {
-      return pipelinesRunner.runPipelineStartingAt((SupportsPipelining<?>) rule, service);
+      return pipelinesRunner.runPipelineStartingAt(
+          buildRuleBuildContext, (SupportsPipelining<?>) rule, service);
     } else {
       BuildRuleSteps<RulePipelineState> buildRuleSteps = new BuildRuleSteps<>(cacheResult, null);
       service.execute(buildRuleSteps);
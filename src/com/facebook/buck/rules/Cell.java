@@ -26,6 +26,7 @@ import com.facebook.buck.json.HybridProjectBuildFileParser;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.json.ProjectBuildFileParserOptions;
 import com.facebook.buck.json.PythonDslProjectBuildFileParser;
+import com.facebook.buck.json.SkylarkExtensionCache;
 import com.facebook.buck.json.SkylarkProjectBuildFileParser;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
@@ -272,6 +273,21 @@ public class Cell {
       Console console,
       BuckEventBus eventBus,
       boolean enableProfiling) {
+    return createBuildFileParser(
+        typeCoercerFactory, console, eventBus, enableProfiling, new SkylarkExtensionCache());
+  }
+
+  /**
+   * Same as {@link #createBuildFileParser(TypeCoercerFactory, Console, BuckEventBus, boolean)} but
+   * lets the Skylark parser share evaluated extensions with other parsers through {@code
+   * skylarkExtensionCache}.
+   */
+  public ProjectBuildFileParser createBuildFileParser(
+      TypeCoercerFactory typeCoercerFactory,
+      Console console,
+      BuckEventBus eventBus,
+      boolean enableProfiling,
+      SkylarkExtensionCache skylarkExtensionCache) {
 
     ParserConfig parserConfig = getBuckConfig().getView(ParserConfig.class);
 
@@ -320,7 +336,10 @@ public class Cell {
       return HybridProjectBuildFileParser.using(
           pythonDslProjectBuildFileParser,
           SkylarkProjectBuildFileParser.using(
-              buildFileParserOptions, eventBus, SkylarkFilesystem.using(filesystem)));
+              buildFileParserOptions,
+              eventBus,
+              SkylarkFilesystem.using(filesystem),
+              skylarkExtensionCache));
     }
     return pythonDslProjectBuildFileParser;
   }
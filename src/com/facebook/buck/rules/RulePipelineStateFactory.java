@@ -16,6 +16,12 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.model.BuildTarget;
+
 public interface RulePipelineStateFactory<T extends RulePipelineState> {
-  T newInstance();
+  /**
+   * Creates the state shared by the rules of a pipeline, which is about to start building the rule
+   * with the given target.
+   */
+  T newInstance(BuildContext context, BuildTarget firstTarget);
 }
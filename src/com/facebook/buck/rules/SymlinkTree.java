@@ -26,6 +26,7 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.fs.IncrementalSymlinkTreeStep;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.google.common.annotations.VisibleForTesting;
@@ -157,6 +158,14 @@ public class SymlinkTree implements BuildRule, HasRuntimeDeps, SupportsInputBase
   public ImmutableList<Step> getBuildSteps(
       BuildContext context, BuildableContext buildableContext) {
 
+    if (context.isIncrementalSymlinkTreesEnabled()) {
+      return ImmutableList.of(
+          getVerifyStep(),
+          new IncrementalSymlinkTreeStep(
+              getProjectFilesystem(),
+              root,
+              context.getSourcePathResolver().getMappedPaths(links)));
+    }
     return new ImmutableList.Builder<Step>()
         .add(getVerifyStep())
         .addAll(
@@ -21,6 +21,7 @@ import com.facebook.buck.android.exopackage.AndroidDevicesHelper;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ThrowableConsoleEvent;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.CellPathResolver;
@@ -157,6 +158,12 @@ abstract class AbstractExecutionContext implements Closeable {
     return new ClassLoaderCache();
   }
 
+  /**
+   * The filesystem into whose trash steps move the directories they delete, so that they are
+   * deleted in the background. Steps delete directories synchronously if absent.
+   */
+  abstract Optional<ProjectFilesystem> getTrashFilesystem();
+
   @Value.Derived
   public Verbosity getVerbosity() {
     return getConsole().getVerbosity();
@@ -51,7 +51,10 @@ abstract class AbstractRmStep implements Step {
       throws IOException, InterruptedException {
     Path absolutePath =
         context.getBuildCellRootPath().resolve(getPath().getPathRelativeToBuildCellRoot());
-    if (isRecursive()) {
+    if (isRecursive() && context.getTrashFilesystem().isPresent()) {
+      // Move a folder out of the way, to be deleted in the background
+      context.getTrashFilesystem().get().moveToTrash(absolutePath);
+    } else if (isRecursive()) {
       // Delete a folder recursively
       MoreFiles.deleteRecursivelyIfExists(absolutePath);
     } else {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.step.fs;
 
+import com.facebook.buck.io.FileMaterializer;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.io.ProjectFilesystem.CopySourceMode;
 import com.facebook.buck.step.ExecutionContext;
@@ -138,7 +139,8 @@ public class CopyStep implements Step {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
-    filesystem.copy(source, destination, copySourceMode);
+    // Clones are copy-on-write, so the copies can be cloned whatever is done with them later.
+    filesystem.copy(source, destination, copySourceMode, FileMaterializer.Strategy.CLONE);
     return StepExecutionResult.SUCCESS;
   }
 }
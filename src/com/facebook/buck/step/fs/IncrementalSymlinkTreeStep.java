@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Creates a symlink tree like {@link MakeCleanDirectoryStep} followed by {@link SymlinkTreeStep},
+ * but only creates and removes the links which changed since the tree was last created, which saves
+ * most of the work of rebuilding big trees of which only a few entries changed.
+ *
+ * <p>The links of the tree are recorded in a manifest next to it. The tree is recreated from
+ * scratch if the manifest is missing, or was written for a different instance of the root
+ * directory (e.g. the tree was since recreated by a non-incremental build). Links the manifest
+ * lists are still checked one by one, and recreated if they were since removed or replaced. The
+ * manifest is removed while the tree is updated, so an interrupted update is redone from scratch.
+ */
+public class IncrementalSymlinkTreeStep implements Step {
+  private static final Logger LOG = Logger.get(IncrementalSymlinkTreeStep.class);
+
+  private static final int MAGIC = 0x53544d31; // "STM1"
+  private static final int VERSION = 1;
+
+  private final ProjectFilesystem filesystem;
+  private final Path root;
+  private final ImmutableMap<Path, Path> links;
+
+  public IncrementalSymlinkTreeStep(
+      ProjectFilesystem filesystem, Path root, ImmutableMap<Path, Path> links) {
+    this.filesystem = filesystem;
+    this.root = root;
+    this.links = links;
+  }
+
+  public static Path getManifestPath(Path root) {
+    return root.resolveSibling(root.getFileName() + ".symlinks");
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "incremental link tree @ " + root.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "link_tree";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Path manifestPath = getManifestPath(root);
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(
+            context.getBuckEventBus(), PerfEventId.of("incremental_link_tree"), "root", root)) {
+      Optional<Map<Path, Path>> existingLinks = readManifest(manifestPath);
+      filesystem.deleteFileAtPathIfExists(manifestPath);
+
+      Map<Path, Path> currentLinks;
+      if (existingLinks.isPresent()) {
+        currentLinks = existingLinks.get();
+      } else {
+        filesystem.deleteRecursivelyIfExists(root);
+        filesystem.mkdirs(root);
+        currentLinks = new HashMap<>();
+      }
+
+      Map<Path, Path> desiredLinks = new HashMap<>();
+      for (Map.Entry<Path, Path> entry : links.entrySet()) {
+        desiredLinks.put(entry.getKey(), filesystem.resolve(entry.getValue()));
+      }
+
+      // Remove the links which are gone or point elsewhere, then prune the directories they leave
+      // empty, deepest first.
+      int removed = 0;
+      Set<Path> parentsOfRemovedLinks = new TreeSet<>((a, b) -> b.compareTo(a));
+      for (Map.Entry<Path, Path> entry : currentLinks.entrySet()) {
+        if (!entry.getValue().equals(desiredLinks.get(entry.getKey()))) {
+          filesystem.deleteFileAtPathIfExists(root.resolve(entry.getKey()));
+          removed++;
+          for (Path parent = entry.getKey().getParent();
+              parent != null;
+              parent = parent.getParent()) {
+            parentsOfRemovedLinks.add(parent);
+          }
+        }
+      }
+      for (Path parent : parentsOfRemovedLinks) {
+        try {
+          filesystem.deleteFileAtPathIfExists(root.resolve(parent));
+        } catch (DirectoryNotEmptyException e) {
+          // Still in use.
+        }
+      }
+
+      int created = 0;
+      for (Map.Entry<Path, Path> entry : desiredLinks.entrySet()) {
+        Path link = root.resolve(entry.getKey());
+        if (entry.getValue().equals(currentLinks.get(entry.getKey()))
+            && isLinkTo(link, entry.getValue())) {
+          continue;
+        }
+        if (link.getParent() != null) {
+          filesystem.mkdirs(link.getParent());
+        }
+        if (!filesystem.isSymLink(link) && filesystem.isDirectory(link)) {
+          filesystem.deleteRecursivelyIfExists(link);
+        }
+        filesystem.createSymLink(filesystem.resolve(link), entry.getValue(), true /* force */);
+        created++;
+      }
+
+      writeManifest(manifestPath, desiredLinks);
+      scope.appendFinishedInfo("created", created);
+      scope.appendFinishedInfo("removed", removed);
+      scope.appendFinishedInfo("unchanged", desiredLinks.size() - created);
+      LOG.verbose(
+          "Updated %s: %d links created, %d removed, %d unchanged",
+          root, created, removed, desiredLinks.size() - created);
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * @return whether the link recorded in the manifest is still there, as the root directory does
+   *     not change when links deeper in the tree are removed or replaced.
+   */
+  private boolean isLinkTo(Path link, Path target) {
+    try {
+      return filesystem.isSymLink(link) && filesystem.readSymLink(link).equals(target);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Identifies the root directory, so that a tree recreated from scratch is never diffed. The
+   * modification time is included as a recreated directory may well reuse the same inode.
+   */
+  private String getRootIdentity() throws IOException {
+    BasicFileAttributes attributes =
+        filesystem.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    Object fileKey = attributes.fileKey();
+    return (fileKey != null ? fileKey.toString() : attributes.creationTime().toString())
+        + "@"
+        + attributes.lastModifiedTime();
+  }
+
+  private Optional<Map<Path, Path>> readManifest(Path manifestPath) {
+    if (!filesystem.exists(manifestPath) || !filesystem.isDirectory(root)) {
+      return Optional.empty();
+    }
+    try (DataInputStream input = new DataInputStream(filesystem.newFileInputStream(manifestPath))) {
+      if (input.readInt() != MAGIC
+          || input.readInt() != VERSION
+          || !input.readUTF().equals(getRootIdentity())) {
+        return Optional.empty();
+      }
+      int count = input.readInt();
+      Map<Path, Path> existingLinks = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        existingLinks.put(Paths.get(input.readUTF()), Paths.get(input.readUTF()));
+      }
+      return Optional.of(existingLinks);
+    } catch (IOException e) {
+      LOG.debug(e, "Ignoring unreadable %s", manifestPath);
+      return Optional.empty();
+    }
+  }
+
+  private void writeManifest(Path manifestPath, Map<Path, Path> desiredLinks) throws IOException {
+    try (DataOutputStream output =
+        new DataOutputStream(filesystem.newFileOutputStream(manifestPath))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeUTF(getRootIdentity());
+      output.writeInt(desiredLinks.size());
+      for (Map.Entry<Path, Path> entry : desiredLinks.entrySet()) {
+        output.writeUTF(entry.getKey().toString());
+        output.writeUTF(entry.getValue().toString());
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof IncrementalSymlinkTreeStep)) {
+      return false;
+    }
+    IncrementalSymlinkTreeStep that = (IncrementalSymlinkTreeStep) obj;
+    return Objects.equal(this.root, that.root) && Objects.equal(this.links, that.links);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(root, links);
+  }
+}
@@ -41,4 +41,10 @@ public class CapturingPrintStream extends PrintStream {
       throw new RuntimeException(e);
     }
   }
+
+  /** Discards everything captured so far. */
+  public void reset() {
+    flush();
+    byteArrayOutputStream.reset();
+  }
 }
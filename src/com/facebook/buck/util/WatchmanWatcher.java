@@ -30,6 +30,7 @@ import com.facebook.buck.io.WatchmanCursor;
 import com.facebook.buck.io.WatchmanDiagnostic;
 import com.facebook.buck.io.WatchmanDiagnosticEvent;
 import com.facebook.buck.io.WatchmanQuery;
+import com.facebook.buck.io.WatchmanSubscription;
 import com.facebook.buck.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
@@ -96,8 +97,25 @@ public class WatchmanWatcher {
       Watchman watchman,
       Map<Path, WatchmanCursor> cursors) {
     this(
+        projectWatch,
         fileChangeEventBus,
+        ignorePaths,
+        watchman,
         watchman.getWatchmanClient().get(),
+        cursors);
+  }
+
+  /** Creates a watcher querying Watchman through {@code watchmanClient}. */
+  public WatchmanWatcher(
+      ImmutableMap<Path, ProjectWatch> projectWatch,
+      EventBus fileChangeEventBus,
+      ImmutableSet<PathOrGlobMatcher> ignorePaths,
+      Watchman watchman,
+      WatchmanClient watchmanClient,
+      Map<Path, WatchmanCursor> cursors) {
+    this(
+        fileChangeEventBus,
+        watchmanClient,
         DEFAULT_TIMEOUT_MILLIS,
         createQueries(projectWatch, ignorePaths, watchman.getCapabilities()),
         cursors);
@@ -200,6 +218,15 @@ public class WatchmanWatcher {
     return ImmutableList.of();
   }
 
+  /**
+   * Subscribes to the changes this watcher would find, so that {@code listener} is notified as soon
+   * as there are some to post.
+   */
+  public Optional<WatchmanSubscription> subscribe(
+      Watchman watchman, WatchmanSubscription.Listener listener) {
+    return WatchmanSubscription.subscribe(watchman, queries, listener);
+  }
+
   /**
    * Query Watchman for file change events. If too many events are pending or an error occurs an
    * overflow event is posted to the EventBus signalling that events may have been lost (and so
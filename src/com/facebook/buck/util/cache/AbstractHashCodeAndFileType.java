@@ -62,7 +62,7 @@ abstract class AbstractHashCodeAndFileType {
     return HashCodeAndFileType.builder()
         .setType(Type.ARCHIVE)
         .setGetHashCode(hashCode)
-        .setJarContentHasher(new JarContentHasher(projectFilesystem, archiveRelativePath))
+        .setJarContentHasher(new JarContentHasher(projectFilesystem, archiveRelativePath, hashCode))
         .build();
   }
 
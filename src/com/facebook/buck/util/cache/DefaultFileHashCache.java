@@ -31,6 +31,7 @@ import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,8 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   private final ProjectFilesystem projectFilesystem;
   private final Predicate<Path> ignoredPredicate;
+  private final Optional<PersistentFileHashStore> persistentStore;
+  private final Optional<MerkleDirectoryHasher> merkleDirectoryHasher;
 
   @VisibleForTesting FileHashCacheEngine fileHashCacheEngine;
 
@@ -51,8 +54,27 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
       ProjectFilesystem projectFilesystem,
       Predicate<Path> ignoredPredicate,
       FileHashCacheMode fileHashCacheMode) {
+    this(
+        projectFilesystem,
+        ignoredPredicate,
+        fileHashCacheMode,
+        Optional.empty(),
+        DirectoryHashMode.FLAT);
+  }
+
+  protected DefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      Predicate<Path> ignoredPredicate,
+      FileHashCacheMode fileHashCacheMode,
+      Optional<PersistentFileHashStore> persistentStore,
+      DirectoryHashMode directoryHashMode) {
     this.projectFilesystem = projectFilesystem;
     this.ignoredPredicate = ignoredPredicate;
+    this.persistentStore = persistentStore;
+    this.merkleDirectoryHasher =
+        directoryHashMode == DirectoryHashMode.MERKLE
+            ? Optional.of(new MerkleDirectoryHasher(projectFilesystem, this::get))
+            : Optional.empty();
     FileHashCacheEngine.ValueLoader<HashCodeAndFileType> hashLoader =
         path -> {
           try {
@@ -134,6 +156,38 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
         projectFilesystem, getDefaultPathPredicate(projectFilesystem), fileHashCacheMode);
   }
 
+  /**
+   * @param persistent whether to keep file hashes in a {@link PersistentFileHashStore} under
+   *     buck-out, so that unchanged files don't need to be rehashed by later runs of Buck.
+   */
+  public static DefaultFileHashCache createDefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      boolean persistent) {
+    return createDefaultFileHashCache(
+        projectFilesystem, fileHashCacheMode, persistent, DirectoryHashMode.FLAT);
+  }
+
+  public static DefaultFileHashCache createDefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      boolean persistent,
+      DirectoryHashMode directoryHashMode) {
+    return new DefaultFileHashCache(
+        projectFilesystem,
+        getDefaultPathPredicate(projectFilesystem),
+        fileHashCacheMode,
+        loadPersistentStore(projectFilesystem, persistent),
+        directoryHashMode);
+  }
+
+  protected static Optional<PersistentFileHashStore> loadPersistentStore(
+      ProjectFilesystem projectFilesystem, boolean persistent) {
+    return persistent
+        ? Optional.of(PersistentFileHashStore.load(projectFilesystem))
+        : Optional.empty();
+  }
+
   protected static Predicate<Path> getDefaultPathPredicate(ProjectFilesystem projectFilesystem) {
     return path ->
         path.startsWith(projectFilesystem.getBuckPaths().getBuckOut())
@@ -182,7 +236,20 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   }
 
   private HashCode getFileHashCode(Path path) throws IOException {
-    return projectFilesystem.computeSha1(path).asHashCode();
+    if (!persistentStore.isPresent()) {
+      return projectFilesystem.computeSha1(path).asHashCode();
+    }
+    // Stat the file before hashing it, so that a concurrent modification shows up as a mismatch
+    // the next time the stored hash is looked up.
+    BasicFileAttributes attributes =
+        projectFilesystem.readAttributes(path, BasicFileAttributes.class);
+    Optional<HashCode> storedHashCode = persistentStore.get().get(path, attributes);
+    if (storedHashCode.isPresent()) {
+      return storedHashCode.get();
+    }
+    HashCode hashCode = projectFilesystem.computeSha1(path).asHashCode();
+    persistentStore.get().put(path, attributes, hashCode);
+    return hashCode;
   }
 
   private long getPathSize(Path path) throws IOException {
@@ -194,6 +261,12 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   }
 
   private HashCodeAndFileType getDirHashCode(Path path) throws IOException {
+    if (merkleDirectoryHasher.isPresent()) {
+      // The children aren't recorded here, the hashes under the directory are invalidated by
+      // prefix instead (see invalidateSubtree).
+      return HashCodeAndFileType.ofDirectory(
+          merkleDirectoryHasher.get().hashDirectory(path), ImmutableSet.of());
+    }
     Hasher hasher = Hashing.sha1().newHasher();
     ImmutableSet<Path> children = PathHashing.hashPath(hasher, this, projectFilesystem, path);
     return HashCodeAndFileType.ofDirectory(hasher.hash(), children);
@@ -221,12 +294,38 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   @Override
   public void invalidate(Path relativePath) {
+    merkleDirectoryHasher.ifPresent(hasher -> invalidateSubtree(hasher, relativePath));
     fileHashCacheEngine.invalidate(relativePath);
+    persistentStore.ifPresent(store -> store.remove(relativePath));
+  }
+
+  /** Invalidates the path, which was changed, along with the directories containing it. */
+  protected void invalidateWithParents(Path relativePath) {
+    merkleDirectoryHasher.ifPresent(hasher -> invalidateSubtree(hasher, relativePath));
+    fileHashCacheEngine.invalidateWithParents(relativePath);
+    persistentStore.ifPresent(store -> store.remove(relativePath));
+  }
+
+  /**
+   * Directories hashed by the merkle hasher don't record their children, so unless the path is
+   * known to be a file, everything cached under it is dropped by prefix.
+   */
+  private void invalidateSubtree(MerkleDirectoryHasher hasher, Path relativePath) {
+    HashCodeAndFileType cached = fileHashCacheEngine.getIfPresent(relativePath);
+    if (cached == null || cached.getType() == HashCodeAndFileType.Type.DIRECTORY) {
+      for (Path path : fileHashCacheEngine.asMap().keySet()) {
+        if (path.startsWith(relativePath)) {
+          fileHashCacheEngine.invalidate(path);
+        }
+      }
+    }
+    hasher.invalidate(relativePath.normalize());
   }
 
   @Override
   public void invalidateAll() {
     fileHashCacheEngine.invalidateAll();
+    merkleDirectoryHasher.ifPresent(MerkleDirectoryHasher::invalidateAll);
   }
 
   /** @return The {@link com.google.common.hash.HashCode} of the contents of path. */
@@ -306,13 +405,25 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
         errors.add(path.toString());
       }
     }
+    int filesExamined = cacheMap.size();
+    if (persistentStore.isPresent()) {
+      errors.addAll(persistentStore.get().verify());
+      filesExamined += persistentStore.get().size();
+    }
     return FileHashCacheVerificationResult.builder()
         .setCachesExamined(1)
-        .setFilesExamined(cacheMap.size())
+        .setFilesExamined(filesExamined)
         .addAllVerificationErrors(errors)
         .build();
   }
 
+  @Override
+  public void persist() throws IOException {
+    if (persistentStore.isPresent()) {
+      persistentStore.get().save();
+    }
+  }
+
   public List<AbstractBuckEvent> getStatsEvents() {
     return fileHashCacheEngine.getStatsEvents();
   }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+/** Defines how the hashes of directories are computed from the hashes of the files under them. */
+public enum DirectoryHashMode {
+  /** Hash the paths and hashes of all the files under the directory, one after the other. */
+  FLAT,
+  /**
+   * Hash the directory as a Merkle tree, hashing subdirectories in parallel and keeping their
+   * hashes until something under them changes. See {@link MerkleDirectoryHasher}.
+   */
+  MERKLE;
+  public static final DirectoryHashMode DEFAULT = FLAT;
+}
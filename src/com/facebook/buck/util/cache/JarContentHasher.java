@@ -19,6 +19,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.zip.CustomJarOutputStream;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -31,11 +32,24 @@ class JarContentHasher {
 
   private final ProjectFilesystem filesystem;
   private final Path jarRelativePath;
+  private final HashCode jarHashCode;
+  private final JarMemberHashIndex index;
 
-  public JarContentHasher(ProjectFilesystem filesystem, Path jarRelativePath) {
+  public JarContentHasher(
+      ProjectFilesystem filesystem, Path jarRelativePath, HashCode jarHashCode) {
+    this(filesystem, jarRelativePath, jarHashCode, JarMemberHashIndex.INSTANCE);
+  }
+
+  JarContentHasher(
+      ProjectFilesystem filesystem,
+      Path jarRelativePath,
+      HashCode jarHashCode,
+      JarMemberHashIndex index) {
     Preconditions.checkState(!jarRelativePath.isAbsolute());
     this.filesystem = filesystem;
     this.jarRelativePath = jarRelativePath;
+    this.jarHashCode = jarHashCode;
+    this.index = index;
   }
 
   public Path getJarRelativePath() {
@@ -43,6 +57,16 @@ class JarContentHasher {
   }
 
   public ImmutableMap<Path, HashCodeAndFileType> getContentHashes() throws IOException {
+    return ImmutableMap.copyOf(
+        Maps.transformValues(getMemberHashes(), HashCodeAndFileType::ofFile));
+  }
+
+  /** @return the hashes of the members of the jar, reading its manifest only if not indexed. */
+  public ImmutableMap<Path, HashCode> getMemberHashes() throws IOException {
+    return index.getMemberHashes(filesystem, jarRelativePath, jarHashCode, this::readMemberHashes);
+  }
+
+  private ImmutableMap<Path, HashCode> readMemberHashes() throws IOException {
     Manifest manifest = filesystem.getJarManifest(jarRelativePath);
     if (manifest == null) {
       throw new UnsupportedOperationException(
@@ -52,7 +76,7 @@ class JarContentHasher {
               + " attributes for each file.");
     }
 
-    ImmutableMap.Builder<Path, HashCodeAndFileType> builder = ImmutableMap.builder();
+    ImmutableMap.Builder<Path, HashCode> builder = ImmutableMap.builder();
     for (Map.Entry<String, Attributes> nameAttributesEntry : manifest.getEntries().entrySet()) {
       Path memberPath = Paths.get(nameAttributesEntry.getKey());
       Attributes attributes = nameAttributesEntry.getValue();
@@ -61,10 +85,7 @@ class JarContentHasher {
         continue;
       }
 
-      HashCode memberHash = HashCode.fromString(hashStringValue);
-      HashCodeAndFileType memberHashCodeAndFileType = HashCodeAndFileType.ofFile(memberHash);
-
-      builder.put(memberPath, memberHashCodeAndFileType);
+      builder.put(memberPath, HashCode.fromString(hashStringValue));
     }
 
     return builder.build();
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Remembers the hashes of the members of jars, keyed by the hash of the jar itself, so that the
+ * manifest of a jar is only read and parsed once for a given version of its contents.
+ *
+ * <p>Recently used jars are kept in memory, up to a bounded size shared by all the caches of the
+ * process (so a daemon keeps them across commands and across invalidations of the jar paths).
+ * Every jar is also indexed in a small file in the scratch directory, which lets new processes skip
+ * reading jars that were already indexed by a previous run. There is one index file per jar path,
+ * recording the hash of the jar it was written for, so that a changed jar replaces its stale index
+ * instead of adding to it, and {@code buck clean} removes them all.
+ */
+@ThreadSafe
+class JarMemberHashIndex {
+  private static final Logger LOG = Logger.get(JarMemberHashIndex.class);
+
+  private static final int MAGIC = 0x4a4d4831; // "JMH1"
+  private static final int VERSION = 2;
+
+  private static final long MAX_IN_MEMORY_BYTES = 64 * 1024 * 1024;
+  /** Roughly what a member costs besides the characters of its path: map entry, Path, HashCode. */
+  private static final int MEMBER_OVERHEAD_BYTES = 160;
+
+  static final JarMemberHashIndex INSTANCE = new JarMemberHashIndex(MAX_IN_MEMORY_BYTES);
+
+  /** Reads the member hashes out of a jar. */
+  interface Loader {
+    ImmutableMap<Path, HashCode> load() throws IOException;
+  }
+
+  private final Cache<HashCode, ImmutableMap<Path, HashCode>> inMemory;
+
+  /** @param maxInMemoryBytes roughly how much memory the jars kept in memory may take. */
+  JarMemberHashIndex(long maxInMemoryBytes) {
+    this.inMemory =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxInMemoryBytes)
+            .weigher(
+                (HashCode key, ImmutableMap<Path, HashCode> value) -> estimateSizeInBytes(value))
+            .build();
+  }
+
+  private static int estimateSizeInBytes(ImmutableMap<Path, HashCode> memberHashes) {
+    long size = MEMBER_OVERHEAD_BYTES;
+    for (Map.Entry<Path, HashCode> entry : memberHashes.entrySet()) {
+      size +=
+          MEMBER_OVERHEAD_BYTES
+              + 2L * entry.getKey().toString().length()
+              + entry.getValue().bits() / Byte.SIZE;
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  static Path getIndexPath(ProjectFilesystem filesystem, Path jarRelativePath) {
+    HashCode pathHash =
+        Hashing.sha1().hashString(jarRelativePath.toString(), StandardCharsets.UTF_8);
+    return filesystem.getBuckPaths().getJarMemberHashDir().resolve(pathHash.toString());
+  }
+
+  /**
+   * @param jarRelativePath the path of the jar, relative to the root of {@code filesystem}.
+   * @param jarHashCode the hash of the contents of the jar.
+   * @return the hashes of the members of the jar, from memory or from its index file if the jar was
+   *     already indexed, otherwise from {@code loader}, in which case the result is indexed.
+   */
+  ImmutableMap<Path, HashCode> getMemberHashes(
+      ProjectFilesystem filesystem, Path jarRelativePath, HashCode jarHashCode, Loader loader)
+      throws IOException {
+    @Nullable ImmutableMap<Path, HashCode> memberHashes = inMemory.getIfPresent(jarHashCode);
+    if (memberHashes != null) {
+      return memberHashes;
+    }
+
+    Path indexPath = getIndexPath(filesystem, jarRelativePath);
+    Optional<ImmutableMap<Path, HashCode>> indexed = read(filesystem, indexPath, jarHashCode);
+    if (indexed.isPresent()) {
+      memberHashes = indexed.get();
+    } else {
+      memberHashes = loader.load();
+      try {
+        write(filesystem, indexPath, jarHashCode, memberHashes);
+      } catch (IOException e) {
+        // The index is only an optimization, the jar will just be read again next time.
+        LOG.warn(e, "Unable to write %s", indexPath);
+      }
+    }
+    inMemory.put(jarHashCode, memberHashes);
+    return memberHashes;
+  }
+
+  /** @return the indexed member hashes, unless the index was written for other jar contents. */
+  private static Optional<ImmutableMap<Path, HashCode>> read(
+      ProjectFilesystem filesystem, Path indexPath, HashCode jarHashCode) {
+    if (!filesystem.exists(indexPath)) {
+      return Optional.empty();
+    }
+    try (DataInputStream input = new DataInputStream(filesystem.newFileInputStream(indexPath))) {
+      if (input.readInt() != MAGIC
+          || input.readInt() != VERSION
+          || !input.readUTF().equals(jarHashCode.toString())) {
+        return Optional.empty();
+      }
+      int count = input.readInt();
+      ImmutableMap.Builder<Path, HashCode> builder = ImmutableMap.builder();
+      for (int i = 0; i < count; i++) {
+        Path memberPath = Paths.get(input.readUTF());
+        byte[] bytes = new byte[input.readUnsignedByte()];
+        input.readFully(bytes);
+        builder.put(memberPath, HashCode.fromBytes(bytes));
+      }
+      return Optional.of(builder.build());
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn(e, "Ignoring unreadable %s", indexPath);
+      return Optional.empty();
+    }
+  }
+
+  private static void write(
+      ProjectFilesystem filesystem,
+      Path indexPath,
+      HashCode jarHashCode,
+      ImmutableMap<Path, HashCode> memberHashes)
+      throws IOException {
+    filesystem.mkdirs(indexPath.getParent());
+    // Several processes may index the same jar at once, so each writes its own temporary file and
+    // moves it in place. Whichever wins, readers check that it is for the contents they have.
+    Path tempPath = filesystem.createTempFile(indexPath.getParent(), "index", ".tmp");
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(filesystem.newFileOutputStream(tempPath))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(jarHashCode.toString());
+        output.writeInt(memberHashes.size());
+        for (Map.Entry<Path, HashCode> entry : memberHashes.entrySet()) {
+          output.writeUTF(entry.getKey().toString());
+          byte[] bytes = entry.getValue().asBytes();
+          output.writeByte(bytes.length);
+          output.write(bytes);
+        }
+      }
+      filesystem.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      filesystem.deleteFileAtPathIfExists(tempPath);
+    }
+  }
+}
@@ -19,7 +19,6 @@ import com.facebook.buck.event.AbstractBuckEvent;
 import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.FileSystemMap;
-import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
@@ -81,13 +80,8 @@ class LimitedFileHashCacheEngine implements FileHashCacheEngine {
 
     private ImmutableMap<Path, HashCode> loadJarContentsHashes() {
       try {
-        return new JarContentHasher(filesystem, path)
-            .getContentHashes()
-            .entrySet()
-            .stream()
-            .collect(
-                MoreCollectors.toImmutableMap(
-                    entry -> entry.getKey(), entry -> entry.getValue().getHashCode()));
+        return new JarContentHasher(filesystem, path, hashCodeAndFileType.get().getHashCode())
+            .getMemberHashes();
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
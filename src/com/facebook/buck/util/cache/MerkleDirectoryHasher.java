@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.hashing.StringHashing;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Hashes directories as Merkle trees: the hash of a directory combines the names and hashes of its
+ * entries, the subdirectories being hashed the same way. Subtrees are hashed in parallel, and their
+ * hashes are kept, so that a change deep in a tree only rehashes the directories containing it.
+ *
+ * <p>Like {@link com.facebook.buck.hashing.PathHashing}, symlinks are followed and directories
+ * without any files don't contribute to the hash, as they aren't reported by Watchman. Ignored
+ * paths are left out for the same reason. The hashes of the subtrees reached through a symlink are
+ * not kept, as their contents can change without any path under the symlink changing.
+ */
+class MerkleDirectoryHasher {
+
+  /** Eden mounts have a magic directory in every directory, leading back to the mount. */
+  private static final Path EDEN_MAGIC_PATH_ELEMENT = Paths.get(".eden");
+
+  private static final HashCode EMPTY_DIRECTORY_HASH = Hashing.sha1().newHasher().hash();
+
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  /** Loads the hash of a file. */
+  @FunctionalInterface
+  interface FileHashLoader {
+    HashCode get(Path path) throws IOException;
+  }
+
+  private final ProjectFilesystem projectFilesystem;
+  private final FileHashLoader fileHashLoader;
+  /** The hashes of the subtrees, or nothing for those without any files. */
+  private final ConcurrentMap<Path, Optional<HashCode>> subtreeHashes = new ConcurrentHashMap<>();
+
+  MerkleDirectoryHasher(ProjectFilesystem projectFilesystem, FileHashLoader fileHashLoader) {
+    this.projectFilesystem = projectFilesystem;
+    this.fileHashLoader = fileHashLoader;
+  }
+
+  HashCode hashDirectory(Path directory) throws IOException {
+    directory = directory.normalize();
+    SubtreeTask task = new SubtreeTask(directory, !projectFilesystem.isSymLink(directory));
+    try {
+      Optional<HashCode> hashCode =
+          ForkJoinTask.getPool() == POOL ? task.compute() : POOL.invoke(task);
+      return hashCode.orElse(EMPTY_DIRECTORY_HASH);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Forgets the hashes of the subtrees containing the path, which was changed, along with those
+   * under it in case a directory was deleted or replaced.
+   */
+  void invalidate(Path path) {
+    subtreeHashes.keySet().removeIf(subtree -> subtree.startsWith(path));
+    for (Path subtree = path.getParent(); subtree != null; subtree = subtree.getParent()) {
+      subtreeHashes.remove(subtree);
+    }
+  }
+
+  void invalidateAll() {
+    subtreeHashes.clear();
+  }
+
+  private class SubtreeTask extends RecursiveTask<Optional<HashCode>> {
+    private final Path directory;
+    private final boolean cacheable;
+
+    private SubtreeTask(Path directory, boolean cacheable) {
+      this.directory = directory;
+      this.cacheable = cacheable;
+    }
+
+    @Override
+    protected Optional<HashCode> compute() {
+      if (cacheable) {
+        Optional<HashCode> cached = subtreeHashes.get(directory);
+        if (cached != null) {
+          return cached;
+        }
+      }
+      try {
+        Optional<HashCode> hashCode = hashEntries();
+        if (cacheable) {
+          subtreeHashes.put(directory, hashCode);
+        }
+        return hashCode;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private Optional<HashCode> hashEntries() throws IOException {
+      List<Path> names = new ArrayList<>();
+      List<ForkJoinTask<Optional<HashCode>>> entryTasks = new ArrayList<>();
+      // Sorted, so that the hash doesn't depend on the order of the listing.
+      for (Path entry : projectFilesystem.getDirectoryContents(directory)) {
+        if (EDEN_MAGIC_PATH_ELEMENT.equals(entry.getFileName())) {
+          continue;
+        }
+        BasicFileAttributes attributes =
+            projectFilesystem.readAttributes(
+                entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        boolean isSymlink = attributes.isSymbolicLink();
+        if (isSymlink ? projectFilesystem.isDirectory(entry) : attributes.isDirectory()) {
+          entryTasks.add(new SubtreeTask(entry, cacheable && !isSymlink).fork());
+        } else {
+          entryTasks.add(new FileTask(entry).fork());
+        }
+        names.add(entry.getFileName());
+      }
+
+      Hasher hasher = Hashing.sha1().newHasher();
+      boolean hasFiles = false;
+      for (int i = 0; i < names.size(); i++) {
+        Optional<HashCode> entryHash = entryTasks.get(i).join();
+        if (entryHash.isPresent()) {
+          StringHashing.hashStringAndLength(hasher, names.get(i).toString());
+          hasher.putBytes(entryHash.get().asBytes());
+          hasFiles = true;
+        }
+      }
+      return hasFiles ? Optional.of(hasher.hash()) : Optional.empty();
+    }
+  }
+
+  private class FileTask extends RecursiveTask<Optional<HashCode>> {
+    private final Path file;
+
+    private FileTask(Path file) {
+      this.file = file;
+    }
+
+    @Override
+    protected Optional<HashCode> compute() {
+      try {
+        return Optional.of(fileHashLoader.get(file));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
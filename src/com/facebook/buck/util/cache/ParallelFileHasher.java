@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.util.RichStream;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Hashes batches of files on a dedicated pool ahead of them being needed (e.g. all the inputs of
+ * the rules about to be built), so that computing rule keys on a cold cache doesn't stall on
+ * reading files one at a time from whichever build thread first asks for them.
+ *
+ * <p>Files are hashed by asking the cache for them, so the hashes land in the cache and any hashes
+ * the cache can get without reading the files (persisted or Watchman provided) are used as usual.
+ */
+public class ParallelFileHasher {
+
+  private final ListeningExecutorService executor;
+
+  public ParallelFileHasher(ListeningExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Starts hashing the files among {@code paths} which {@code cache} doesn't know the hash of yet.
+   *
+   * @return a future which completes with the number of files which were hashed.
+   */
+  public ListenableFuture<Integer> hashAll(ProjectFileHashCache cache, Iterable<Path> paths)
+      throws IOException {
+    ImmutableList<Path> toHash =
+        RichStream.from(paths)
+            .filter(
+                path ->
+                    !cache.isIgnored(path)
+                        && !cache.getIfPresent(path).isPresent()
+                        && cache.willGet(path))
+            .toImmutableList();
+    if (toHash.isEmpty()) {
+      return Futures.immediateFuture(0);
+    }
+    if (cache instanceof WatchmanFileHashCache) {
+      // Fetch whatever Watchman knows in one request rather than one per file.
+      ((WatchmanFileHashCache) cache).prefetch(toHash);
+    }
+
+    ImmutableList.Builder<ListenableFuture<HashCode>> futures = ImmutableList.builder();
+    for (Path path : toHash) {
+      futures.add(executor.submit(() -> cache.get(path)));
+    }
+    return Futures.transform(
+        Futures.allAsList(futures.build()),
+        (List<HashCode> hashCodes) -> hashCodes.size(),
+        MoreExecutors.directExecutor());
+  }
+}
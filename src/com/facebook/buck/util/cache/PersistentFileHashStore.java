@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * File hashes that survive restarts of Buck, stored under buck-out.
+ *
+ * <p>Each entry maps a path to the size, modification time and file key (the inode on most
+ * platforms) the file had when it was hashed. A stored hash is only used if a fresh stat of the
+ * file returns exactly the same values, so this only saves reading and hashing the contents of
+ * files that haven't been touched since they were last hashed.
+ *
+ * <p>Modification times have a limited granularity, so a file which is modified again within the
+ * same tick after being hashed would keep its old stat data. To avoid this, files modified less
+ * than {@link #RACY_WINDOW_MILLIS} before they were hashed are not stored (the same approach git
+ * takes with its index).
+ */
+@ThreadSafe
+public class PersistentFileHashStore {
+  private static final Logger LOG = Logger.get(PersistentFileHashStore.class);
+
+  private static final int MAGIC = 0x46485331; // "FHS1"
+  private static final int VERSION = 1;
+
+  private static final long RACY_WINDOW_MILLIS = 2000;
+
+  private final ProjectFilesystem filesystem;
+  private final Path storePath;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private PersistentFileHashStore(ProjectFilesystem filesystem, Path storePath) {
+    this.filesystem = filesystem;
+    this.storePath = storePath;
+  }
+
+  /** Loads the store of {@code filesystem}, or creates an empty one if there isn't any yet. */
+  public static PersistentFileHashStore load(ProjectFilesystem filesystem) {
+    PersistentFileHashStore store =
+        new PersistentFileHashStore(filesystem, getStorePath(filesystem));
+    store.read();
+    return store;
+  }
+
+  public static Path getStorePath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getBuckOut().resolve("file-hash-store");
+  }
+
+  /**
+   * @param attributes the current attributes of {@code path}.
+   * @return the stored hash of {@code path}, if the file still has the given attributes.
+   */
+  public Optional<HashCode> get(Path path, BasicFileAttributes attributes) {
+    Entry entry = entries.get(path.toString());
+    if (entry == null || !entry.matches(attributes)) {
+      return Optional.empty();
+    }
+    return Optional.of(entry.hashCode);
+  }
+
+  /**
+   * Stores the hash of {@code path}.
+   *
+   * @param attributes the attributes of {@code path} read before it was hashed.
+   */
+  public void put(Path path, BasicFileAttributes attributes, HashCode hashCode) {
+    long modifiedMillis = attributes.lastModifiedTime().toMillis();
+    if (System.currentTimeMillis() - modifiedMillis < RACY_WINDOW_MILLIS) {
+      // The file may still change without its stat data changing, don't trust it.
+      entries.remove(path.toString());
+      return;
+    }
+    entries.put(
+        path.toString(),
+        new Entry(attributes.size(), modifiedMillis, fileKeyOf(attributes), hashCode));
+    dirty.set(true);
+  }
+
+  /** Drops the hash of {@code path}, which was changed or deleted. */
+  public void remove(Path path) {
+    if (entries.remove(path.toString()) != null) {
+      dirty.set(true);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Rehashes every stored file whose attributes still match, and reports the ones whose stored hash
+   * is wrong.
+   */
+  public ImmutableList<String> verify() throws IOException {
+    ImmutableList.Builder<String> errors = ImmutableList.builder();
+    for (Map.Entry<String, Entry> stored : entries.entrySet()) {
+      Path path = filesystem.getPath(stored.getKey());
+      BasicFileAttributes attributes;
+      try {
+        attributes = filesystem.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        continue;
+      }
+      if (stored.getValue().matches(attributes)
+          && !stored.getValue().hashCode.equals(filesystem.computeSha1(path).asHashCode())) {
+        errors.add(path.toString());
+      }
+    }
+    return errors.build();
+  }
+
+  /**
+   * Writes the store back to disk if anything changed since it was loaded or last saved. The
+   * entries of deleted files are dropped as their invalidations come in, see {@link #remove}.
+   */
+  public void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    filesystem.mkdirs(storePath.getParent());
+    // Write to a temporary file of our own and atomically move it in place, so that concurrent
+    // Buck processes neither see a partially written store nor write over each other's.
+    Path tempPath =
+        filesystem.createTempFile(storePath.getParent(), storePath.getFileName() + ".", ".tmp");
+    try {
+      try (DataOutputStream output =
+          new DataOutputStream(filesystem.newFileOutputStream(tempPath))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+          output.writeBoolean(true);
+          output.writeUTF(entry.getKey());
+          entry.getValue().writeTo(output);
+        }
+        output.writeBoolean(false);
+      }
+      filesystem.move(tempPath, storePath, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      filesystem.deleteFileAtPathIfExists(tempPath);
+    }
+    LOG.debug("Saved %d file hashes to %s", entries.size(), storePath);
+  }
+
+  private void read() {
+    if (!filesystem.exists(storePath)) {
+      return;
+    }
+    try (DataInputStream input = new DataInputStream(filesystem.newFileInputStream(storePath))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        LOG.debug("Ignoring %s, it was written by an incompatible version of Buck", storePath);
+        return;
+      }
+      while (input.readBoolean()) {
+        String path = input.readUTF();
+        entries.put(path, Entry.readFrom(input));
+      }
+      LOG.debug("Loaded %d file hashes from %s", entries.size(), storePath);
+    } catch (EOFException e) {
+      LOG.warn("%s is truncated, ignoring the rest of it", storePath);
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read %s, starting from an empty store", storePath);
+      entries.clear();
+    }
+  }
+
+  private static String fileKeyOf(BasicFileAttributes attributes) {
+    @Nullable Object fileKey = attributes.fileKey();
+    return fileKey == null ? "" : fileKey.toString();
+  }
+
+  private static final class Entry {
+    private final long size;
+    private final long modifiedMillis;
+    private final String fileKey;
+    private final HashCode hashCode;
+
+    private Entry(long size, long modifiedMillis, String fileKey, HashCode hashCode) {
+      this.size = size;
+      this.modifiedMillis = modifiedMillis;
+      this.fileKey = fileKey;
+      this.hashCode = hashCode;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return attributes.isRegularFile()
+          && size == attributes.size()
+          && modifiedMillis == attributes.lastModifiedTime().toMillis()
+          && Objects.equals(fileKey, fileKeyOf(attributes));
+    }
+
+    private void writeTo(DataOutputStream output) throws IOException {
+      output.writeLong(size);
+      output.writeLong(modifiedMillis);
+      output.writeUTF(fileKey);
+      byte[] bytes = hashCode.asBytes();
+      output.writeByte(bytes.length);
+      output.write(bytes);
+    }
+
+    private static Entry readFrom(DataInputStream input) throws IOException {
+      long size = input.readLong();
+      long modifiedMillis = input.readLong();
+      String fileKey = input.readUTF();
+      byte[] bytes = new byte[input.readUnsignedByte()];
+      input.readFully(bytes);
+      return new Entry(size, modifiedMillis, fileKey, HashCode.fromBytes(bytes));
+    }
+  }
+}
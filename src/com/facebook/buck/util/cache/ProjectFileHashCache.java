@@ -47,4 +47,7 @@ public interface ProjectFileHashCache extends ProjectFileHashLoader {
     throw new RuntimeException(
         "ProjectFileHashCache class " + getClass().getName() + " does not support verification.");
   }
+
+  /** Writes any hashes this cache keeps between runs of Buck to disk. */
+  default void persist() throws IOException {}
 }
@@ -21,11 +21,18 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.Pair;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -227,6 +234,30 @@ public class StackedFileHashCache implements FileHashCache {
     return new StackedFileHashCache(decoratedCaches.build());
   }
 
+  /**
+   * Starts hashing the given paths, relative to {@code filesystem}, with {@code hasher}, in the
+   * caches which handle them.
+   *
+   * @return a future which completes once all of the paths have been hashed.
+   */
+  public ListenableFuture<?> prefetch(
+      ParallelFileHasher hasher, ProjectFilesystem filesystem, Iterable<Path> paths)
+      throws IOException {
+    SetMultimap<ProjectFileHashCache, Path> pathsByCache = LinkedHashMultimap.create();
+    for (Path path : paths) {
+      Optional<? extends ProjectFileHashCache> cache = lookup(filesystem, path);
+      if (cache.isPresent()) {
+        pathsByCache.put(cache.get(), path);
+      }
+    }
+    ImmutableList.Builder<ListenableFuture<Integer>> futures = ImmutableList.builder();
+    for (Map.Entry<ProjectFileHashCache, Set<Path>> entry :
+        Multimaps.asMap(pathsByCache).entrySet()) {
+      futures.add(hasher.hashAll(entry.getKey(), entry.getValue()));
+    }
+    return Futures.allAsList(futures.build());
+  }
+
   public ImmutableList<? extends ProjectFileHashCache> getCaches() {
     return caches;
   }
@@ -29,7 +29,27 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
 
   public WatchedFileHashCache(
       ProjectFilesystem projectFilesystem, FileHashCacheMode fileHashCacheMode) {
-    super(projectFilesystem, getDefaultPathPredicate(projectFilesystem), fileHashCacheMode);
+    this(projectFilesystem, fileHashCacheMode, false);
+  }
+
+  public WatchedFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      boolean persistent) {
+    this(projectFilesystem, fileHashCacheMode, persistent, DirectoryHashMode.FLAT);
+  }
+
+  public WatchedFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      boolean persistent,
+      DirectoryHashMode directoryHashMode) {
+    super(
+        projectFilesystem,
+        getDefaultPathPredicate(projectFilesystem),
+        fileHashCacheMode,
+        loadPersistentStore(projectFilesystem, persistent),
+        directoryHashMode);
   }
 
   /**
@@ -42,7 +62,7 @@ public class WatchedFileHashCache extends DefaultFileHashCache {
     // Path event, remove the path from the cache as it has been changed, added or deleted.
     Path path = event.getPath().normalize();
     LOG.verbose("Invalidating %s", path);
-    fileHashCacheEngine.invalidateWithParents(path);
+    invalidateWithParents(path);
   }
 
   @SuppressWarnings("unused")
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.event.AbstractBuckEvent;
+import com.facebook.buck.event.FileHashCacheEvent;
+import com.facebook.buck.io.ArchiveMemberPath;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.ProjectWatch;
+import com.facebook.buck.io.Watchman;
+import com.facebook.buck.io.WatchmanClient;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A {@link ProjectFileHashCache} which gets the hashes of source files from Watchman, which keeps
+ * the SHA-1 of the files it tracks up to date, rather than reading and hashing them itself.
+ *
+ * <p>Hashes are fetched in batches: a whole directory is queried at once when a directory is
+ * hashed, and callers which know which files they are about to need can {@link #prefetch} them in
+ * one request. Files missed by concurrent lookups while a query is in flight are fetched together
+ * by the next one. Files Watchman doesn't know the hash of (untracked, ignored, symlinks...) fall
+ * back to the wrapped cache, which hashes them locally. All hashes end up in the wrapped cache, so
+ * this is only meant to live for the duration of a single command.
+ */
+public class WatchmanFileHashCache implements ProjectFileHashCache {
+  private static final Logger LOG = Logger.get(WatchmanFileHashCache.class);
+
+  private static final long DEFAULT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final int MAX_PATHS_PER_QUERY = 1000;
+  private static final String CONTENT_SHA1_FIELD = "content.sha1hex";
+
+  private final ProjectFileHashCache delegate;
+  private final WatchmanClient watchmanClient;
+  private final ProjectWatch projectWatch;
+  private final boolean supportsDirname;
+  private final boolean compareWithLocalHashes;
+
+  private final Object batchLock = new Object();
+
+  @GuardedBy("batchLock")
+  private Batch pendingBatch = new Batch();
+
+  @GuardedBy("batchLock")
+  private boolean batchInFlight = false;
+
+  private final AtomicLong queryCount = new AtomicLong();
+  private final AtomicLong queryNanos = new AtomicLong();
+  private final AtomicLong watchmanHashCount = new AtomicLong();
+  private final AtomicLong comparisonCount = new AtomicLong();
+  private final AtomicLong comparisonNanos = new AtomicLong();
+  private final AtomicLong mismatchCount = new AtomicLong();
+
+  WatchmanFileHashCache(
+      ProjectFileHashCache delegate,
+      WatchmanClient watchmanClient,
+      ProjectWatch projectWatch,
+      boolean supportsDirname,
+      boolean compareWithLocalHashes) {
+    this.delegate = delegate;
+    this.watchmanClient = watchmanClient;
+    this.projectWatch = projectWatch;
+    this.supportsDirname = supportsDirname;
+    this.compareWithLocalHashes = compareWithLocalHashes;
+  }
+
+  /**
+   * @param compareWithLocalHashes whether to also hash the files locally and report how often the
+   *     hashes from Watchman differ. The local hash is used when they do.
+   * @return a cache getting hashes from {@code watchman} on top of {@code delegate}, or nothing if
+   *     {@code watchman} can't provide hashes for the filesystem of {@code delegate}.
+   */
+  public static Optional<WatchmanFileHashCache> tryCreate(
+      ProjectFileHashCache delegate, Watchman watchman, boolean compareWithLocalHashes) {
+    Optional<WatchmanClient> watchmanClient = watchman.getWatchmanClient();
+    ProjectWatch projectWatch =
+        watchman.getProjectWatches().get(delegate.getFilesystem().getRootPath());
+    if (!watchmanClient.isPresent()
+        || projectWatch == null
+        || !watchman.getCapabilities().contains(Watchman.Capability.CONTENT_SHA1)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new WatchmanFileHashCache(
+            delegate,
+            watchmanClient.get(),
+            projectWatch,
+            watchman.getCapabilities().contains(Watchman.Capability.DIRNAME),
+            compareWithLocalHashes));
+  }
+
+  /**
+   * Fetches the hashes of the given files from Watchman, in as few requests as possible, so that
+   * later lookups don't need to hash them.
+   */
+  public void prefetch(Iterable<Path> paths) throws IOException {
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (Path path : paths) {
+      if (!delegate.isIgnored(path) && !delegate.getIfPresent(path).isPresent()) {
+        names.add(MorePaths.pathWithUnixSeparators(path));
+      }
+    }
+    for (List<String> batch : Iterables.partition(names.build(), MAX_PATHS_PER_QUERY)) {
+      query(ImmutableList.of("name", batch, "wholename"));
+    }
+  }
+
+  /**
+   * Fetches the hash of a file that was missed, along with the others missed while the previous
+   * batch was being fetched. The first caller to find no batch in flight sends the pending one.
+   */
+  private void fetch(Path path) throws IOException {
+    Batch batch;
+    synchronized (batchLock) {
+      batch = pendingBatch;
+      batch.names.add(MorePaths.pathWithUnixSeparators(path));
+      while (batchInFlight && !batch.fetched) {
+        try {
+          batchLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      if (batch.fetched) {
+        return;
+      }
+      batchInFlight = true;
+      pendingBatch = new Batch();
+    }
+    try {
+      for (List<String> names : Iterables.partition(batch.names, MAX_PATHS_PER_QUERY)) {
+        query(ImmutableList.of("name", names, "wholename"));
+      }
+    } finally {
+      synchronized (batchLock) {
+        batch.fetched = true;
+        batchInFlight = false;
+        batchLock.notifyAll();
+      }
+    }
+  }
+
+  private void prefetchDirectory(Path path) throws IOException {
+    if (supportsDirname) {
+      query(ImmutableList.of("dirname", MorePaths.pathWithUnixSeparators(path)));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void query(ImmutableList<Object> nameExpression) throws IOException {
+    ImmutableMap.Builder<String, Object> params = ImmutableMap.builder();
+    if (projectWatch.getProjectPrefix().isPresent()) {
+      params.put("relative_root", projectWatch.getProjectPrefix().get());
+    }
+    params.put(
+        "expression", ImmutableList.of("allof", ImmutableList.of("type", "f"), nameExpression));
+    params.put("fields", ImmutableList.of("name", CONTENT_SHA1_FIELD));
+
+    Optional<? extends Map<String, ? extends Object>> response;
+    long start = System.nanoTime();
+    try {
+      // The client runs the queries of all its callers one at a time.
+      response =
+          watchmanClient.queryWithTimeout(
+              DEFAULT_TIMEOUT_NANOS, "query", projectWatch.getWatchRoot(), params.build());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      queryCount.incrementAndGet();
+      queryNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    if (!response.isPresent()) {
+      LOG.warn("Timed out querying Watchman for file hashes, hashing files locally");
+      return;
+    }
+    if (response.get().containsKey("error")) {
+      LOG.warn("Error querying Watchman for file hashes: %s", response.get().get("error"));
+      return;
+    }
+    Object files = response.get().get("files");
+    if (!(files instanceof List<?>)) {
+      return;
+    }
+    ProjectFilesystem filesystem = delegate.getFilesystem();
+    for (Object file : (List<?>) files) {
+      if (!(file instanceof Map<?, ?>)) {
+        continue;
+      }
+      Map<String, Object> fields = (Map<String, Object>) file;
+      Object name = fields.get("name");
+      Object sha1 = fields.get(CONTENT_SHA1_FIELD);
+      // Watchman reports an error object instead of a hash for files it couldn't hash.
+      if (!(name instanceof String) || !(sha1 instanceof String)) {
+        continue;
+      }
+      Path path = filesystem.getPath((String) name);
+      if (delegate.isIgnored(path)) {
+        continue;
+      }
+      HashCode hashCode;
+      try {
+        hashCode = HashCode.fromString((String) sha1);
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      watchmanHashCount.incrementAndGet();
+      if (compareWithLocalHashes) {
+        hashCode = compareWithLocalHash(path, hashCode);
+      }
+      delegate.set(path, hashCode);
+    }
+  }
+
+  private HashCode compareWithLocalHash(Path path, HashCode watchmanHashCode) throws IOException {
+    long start = System.nanoTime();
+    HashCode localHashCode = delegate.getFilesystem().computeSha1(path).asHashCode();
+    comparisonNanos.addAndGet(System.nanoTime() - start);
+    comparisonCount.incrementAndGet();
+    if (!localHashCode.equals(watchmanHashCode)) {
+      mismatchCount.incrementAndGet();
+      LOG.warn(
+          "Watchman hash of %s is %s, but it hashes to %s", path, watchmanHashCode, localHashCode);
+    }
+    return localHashCode;
+  }
+
+  @Override
+  public HashCode get(Path path) throws IOException {
+    Optional<HashCode> cached = delegate.getIfPresent(path);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    if (!delegate.isIgnored(path)) {
+      if (delegate.getFilesystem().isDirectory(path)) {
+        prefetchDirectory(path);
+      } else {
+        fetch(path);
+      }
+    }
+    return delegate.get(path);
+  }
+
+  @Override
+  public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
+    get(archiveMemberPath.getArchivePath());
+    return delegate.get(archiveMemberPath);
+  }
+
+  @Override
+  public long getSize(Path path) throws IOException {
+    return delegate.getSize(path);
+  }
+
+  @Override
+  public Optional<HashCode> getIfPresent(Path path) {
+    return delegate.getIfPresent(path);
+  }
+
+  @Override
+  public ProjectFilesystem getFilesystem() {
+    return delegate.getFilesystem();
+  }
+
+  @Override
+  public boolean willGet(Path path) {
+    return delegate.willGet(path);
+  }
+
+  @Override
+  public boolean willGet(ArchiveMemberPath archiveMemberPath) {
+    return delegate.willGet(archiveMemberPath);
+  }
+
+  @Override
+  public boolean isIgnored(Path path) {
+    return delegate.isIgnored(path);
+  }
+
+  @Override
+  public void invalidate(Path path) {
+    delegate.invalidate(path);
+  }
+
+  @Override
+  public void invalidateAll() {
+    delegate.invalidateAll();
+  }
+
+  @Override
+  public void set(Path path, HashCode hashCode) throws IOException {
+    delegate.set(path, hashCode);
+  }
+
+  @Override
+  public FileHashCacheVerificationResult verify() throws IOException {
+    return delegate.verify();
+  }
+
+  @Override
+  public void persist() throws IOException {
+    delegate.persist();
+  }
+
+  /** Files missed by lookups, to be fetched in one go. */
+  private static class Batch {
+    private final Set<String> names = new LinkedHashSet<>();
+    private boolean fetched = false;
+  }
+
+  /** @return events describing how many hashes came from Watchman, and what that cost. */
+  public List<AbstractBuckEvent> getStatsEvents() {
+    ImmutableList.Builder<AbstractBuckEvent> events = ImmutableList.builder();
+    if (queryCount.get() > 0) {
+      events.add(
+          new FileHashCacheEvent(
+              "watchman.query",
+              queryNanos.get() / queryCount.get(),
+              queryNanos.get(),
+              queryCount.get()));
+    }
+    if (watchmanHashCount.get() > 0) {
+      events.add(
+          new FileHashCacheEvent(
+              "watchman.hash",
+              queryNanos.get() / watchmanHashCount.get(),
+              queryNanos.get(),
+              watchmanHashCount.get()));
+    }
+    if (comparisonCount.get() > 0) {
+      events.add(
+          new FileHashCacheEvent(
+              "watchman.local_hash",
+              comparisonNanos.get() / comparisonCount.get(),
+              comparisonNanos.get(),
+              comparisonCount.get()));
+      events.add(new FileHashCacheEvent("watchman.mismatch", 0, 0, mismatchCount.get()));
+    }
+    return events.build();
+  }
+}
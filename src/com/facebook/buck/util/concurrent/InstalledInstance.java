@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The instance of a class installed for the whole process, e.g. a cache shared by the commands of
+ * the daemon. Whoever installs an instance is responsible for uninstalling it.
+ */
+public final class InstalledInstance<T> {
+  private final AtomicReference<T> installed = new AtomicReference<>();
+
+  public Optional<T> get() {
+    return Optional.ofNullable(installed.get());
+  }
+
+  /** @return the instance which was replaced by {@code instance}, if it isn't the same one. */
+  public Optional<T> install(T instance) {
+    T previous = installed.getAndSet(instance);
+    return previous == instance ? Optional.empty() : Optional.ofNullable(previous);
+  }
+
+  /** Uninstalls {@code instance}, unless another one was installed since. */
+  public void uninstall(T instance) {
+    installed.compareAndSet(instance, null);
+  }
+}
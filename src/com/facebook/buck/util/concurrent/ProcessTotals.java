@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals which only grow for the whole life of the process, e.g. the hits and misses of a cache
+ * shared by the commands of the daemon. Each command reports how much they grew while it ran.
+ */
+public final class ProcessTotals {
+  private final Map<String, AtomicLong> totals = new LinkedHashMap<>();
+
+  /** @return a new total, reported as {@code name}. */
+  public synchronized AtomicLong newTotal(String name) {
+    AtomicLong total = new AtomicLong();
+    if (totals.putIfAbsent(name, total) != null) {
+      throw new IllegalArgumentException("There is already a total named " + name);
+    }
+    return total;
+  }
+
+  /** @return the current value of each total, in the order they were created. */
+  public synchronized ImmutableMap<String, Long> snapshot() {
+    ImmutableMap.Builder<String, Long> snapshot = ImmutableMap.builder();
+    totals.forEach((name, total) -> snapshot.put(name, total.get()));
+    return snapshot.build();
+  }
+}
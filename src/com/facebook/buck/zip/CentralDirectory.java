@@ -17,8 +17,14 @@
 package com.facebook.buck.zip;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
 import java.util.zip.ZipEntry;
 
 /**
@@ -29,6 +35,130 @@ import java.util.zip.ZipEntry;
  * zip, and a "end of central directory" signature containing book keeping information.
  */
 class CentralDirectory {
+  private static final long MAX_COMMENT_SIZE = 0xffff;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+  private static final int ZIP64_MAGIC_COUNT = 0xffff;
+
+  /**
+   * Read the file headers of the central directory of a zip, in the order they are stored.
+   *
+   * @param channel The zip file to read from.
+   * @return the file headers, or nothing if the zip spans several disks, needs zip64 extensions, or
+   *     otherwise can't be made sense of. Callers should fall back to {@link java.util.zip.ZipFile}
+   *     then.
+   * @throws IOException Should something go awry.
+   */
+  public static Optional<ImmutableList<FileHeader>> readFileHeaders(FileChannel channel)
+      throws IOException {
+    long fileSize = channel.size();
+    long tailSize = Math.min(fileSize, ZipEntry.ENDHDR + MAX_COMMENT_SIZE);
+    if (tailSize < ZipEntry.ENDHDR) {
+      return Optional.empty();
+    }
+    ByteBuffer tail = read(channel, fileSize - tailSize, (int) tailSize);
+
+    // The end of central directory record is followed by a variable length comment, so look for
+    // its signature backwards, checking that the comment size matches to avoid false positives.
+    int end = -1;
+    for (int i = (int) tailSize - ZipEntry.ENDHDR; i >= 0; i--) {
+      if (tail.getInt(i) == (int) ZipEntry.ENDSIG
+          && Short.toUnsignedInt(tail.getShort(i + ZipEntry.ENDCOM))
+              == tailSize - i - ZipEntry.ENDHDR) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      return Optional.empty();
+    }
+
+    int entryCount = Short.toUnsignedInt(tail.getShort(end + ZipEntry.ENDTOT));
+    int entryCountOnDisk = Short.toUnsignedInt(tail.getShort(end + ZipEntry.ENDSUB));
+    long size = Integer.toUnsignedLong(tail.getInt(end + ZipEntry.ENDSIZ));
+    long startOffset = Integer.toUnsignedLong(tail.getInt(end + ZipEntry.ENDOFF));
+    if (entryCount == ZIP64_MAGIC_COUNT
+        || entryCount != entryCountOnDisk
+        || size == ZIP64_MAGIC
+        || startOffset == ZIP64_MAGIC
+        || startOffset + size > fileSize - tailSize + end) {
+      return Optional.empty();
+    }
+
+    ByteBuffer directory = read(channel, startOffset, (int) size);
+    ImmutableList.Builder<FileHeader> headers = ImmutableList.builder();
+    int offset = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (offset + ZipEntry.CENHDR > size || directory.getInt(offset) != (int) ZipEntry.CENSIG) {
+        return Optional.empty();
+      }
+      int nameLength = Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENNAM));
+      int headerSize =
+          ZipEntry.CENHDR
+              + nameLength
+              + Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENEXT))
+              + Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENCOM));
+      if (offset + headerSize > size) {
+        return Optional.empty();
+      }
+
+      byte[] nameBytes = new byte[nameLength];
+      directory.position(offset + ZipEntry.CENHDR);
+      directory.get(nameBytes);
+      FileHeader header =
+          new FileHeader(
+              new String(nameBytes, Charsets.UTF_8),
+              Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENFLG)),
+              Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENHOW)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENCRC)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENSIZ)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENLEN)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENOFF)));
+      if (header.getCompressedSize() == ZIP64_MAGIC
+          || header.getSize() == ZIP64_MAGIC
+          || header.getLocalHeaderOffset() == ZIP64_MAGIC) {
+        return Optional.empty();
+      }
+      headers.add(header);
+      offset += headerSize;
+    }
+    return Optional.of(headers.build());
+  }
+
+  /**
+   * Read the compressed data of an entry, as it is stored right after the entry's local file
+   * header.
+   *
+   * @param channel The zip file to read from.
+   * @param header The entry's file header, as read by {@link #readFileHeaders(FileChannel)}.
+   * @throws IOException Should something go awry.
+   */
+  public static byte[] readCompressedData(FileChannel channel, FileHeader header)
+      throws IOException {
+    ByteBuffer localHeader = read(channel, header.getLocalHeaderOffset(), ZipEntry.LOCHDR);
+    if (localHeader.getInt(0) != (int) ZipEntry.LOCSIG) {
+      throw new IOException(
+          String.format("Missing local file header for %s.", header.getName()));
+    }
+    // The extra field of the local header need not be the one in the central directory.
+    long dataOffset =
+        header.getLocalHeaderOffset()
+            + ZipEntry.LOCHDR
+            + Short.toUnsignedInt(localHeader.getShort(ZipEntry.LOCNAM))
+            + Short.toUnsignedInt(localHeader.getShort(ZipEntry.LOCEXT));
+    return read(channel, dataOffset, Math.toIntExact(header.getCompressedSize())).array();
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
 
   /**
    * Write the entire central directory, including the file headers and the end of central directory
@@ -90,4 +220,71 @@ class CentralDirectory {
 
     return size;
   }
+
+  /** The parts of a file header of the central directory needed to copy its entry as is. */
+  public static class FileHeader {
+    private static final int ENCRYPTED_FLAG = 1;
+
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    private FileHeader(
+        String name,
+        int flags,
+        int method,
+        long crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isEncrypted() {
+      return (flags & ENCRYPTED_FLAG) != 0;
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLocalHeaderOffset() {
+      return localHeaderOffset;
+    }
+
+    /** @return whether this header and the given entry describe the very same data. */
+    public boolean describes(ZipEntry entry) {
+      return name.equals(entry.getName())
+          && method == entry.getMethod()
+          && crc == entry.getCrc()
+          && compressedSize == entry.getCompressedSize()
+          && size == entry.getSize();
+    }
+  }
 }
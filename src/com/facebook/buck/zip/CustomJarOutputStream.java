@@ -94,6 +94,16 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       }
     }
 
+    @Override
+    public void actuallyWritePrecompressed(PrecompressedContents contents) throws IOException {
+      inner.actuallyWritePrecompressed(contents);
+
+      // Empty contents are never written, so they don't get hashed either.
+      if (shouldHashEntries && contents.getSize() > 0) {
+        hasher = HASH_FUNCTION.newHasher().putBytes(contents.getContents());
+      }
+    }
+
     @Override
     public void actuallyCloseEntry() throws IOException {
       inner.actuallyCloseEntry();
@@ -54,6 +54,12 @@ public class CustomZipOutputStream extends OutputStream {
      */
     void actuallyWrite(byte b[], int off, int len) throws IOException;
 
+    /**
+     * Called by {@link CustomZipOutputStream#writePrecompressedEntry} once the entry has been put,
+     * in place of any call to {@link #actuallyWrite(byte[], int, int)}.
+     */
+    void actuallyWritePrecompressed(PrecompressedContents contents) throws IOException;
+
     void actuallyClose() throws IOException;
   }
 
@@ -133,6 +139,18 @@ public class CustomZipOutputStream extends OutputStream {
     }
   }
 
+  /**
+   * Writes a whole entry from contents that were deflated ahead of time, which produces the same
+   * bytes as putting the entry and writing the uncompressed contents would. Deflated data copied
+   * from another zip is written as is.
+   */
+  public final void writePrecompressedEntry(ZipEntry entry, PrecompressedContents contents)
+      throws IOException {
+    putNextEntry(entry);
+    impl.actuallyWritePrecompressed(contents);
+    closeEntry();
+  }
+
   @Override
   public final void close() throws IOException {
     if (state == State.CLOSED) {
@@ -29,6 +29,7 @@ import java.util.Calendar;
 import java.util.Locale;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import javax.annotation.Nullable;
 
 /**
  * A wrapper containing the {@link ZipEntry} and additional book keeping information required to
@@ -57,6 +58,8 @@ class EntryAccounting {
   private long offset;
   private long length = 0;
   private long externalAttributes = 0;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  @Nullable private PrecompressedContents precompressedContents;
 
   /**
    * General purpose bit flag: Bit 00: encrypted file Bit 01: compression option Bit 02: compression
@@ -82,7 +85,8 @@ class EntryAccounting {
     }
 
     if (entry instanceof CustomZipEntry) {
-      deflater.setLevel(((CustomZipEntry) entry).getCompressionLevel());
+      compressionLevel = ((CustomZipEntry) entry).getCompressionLevel();
+      deflater.setLevel(compressionLevel);
       externalAttributes = ((CustomZipEntry) entry).getExternalAttributes();
     }
   }
@@ -257,6 +261,31 @@ class EntryAccounting {
     }
   }
 
+  /**
+   * Writes the whole of the entry's contents, which were already deflated with the entry's
+   * compression level, or copied from another zip. Must be the only write to the entry.
+   */
+  public void writePrecompressed(OutputStream out, PrecompressedContents contents)
+      throws IOException {
+    if (method == Method.STORE) {
+      byte[] bytes = contents.getContents();
+      write(out, bytes, 0, bytes.length);
+      return;
+    }
+    Preconditions.checkState(
+        precompressedContents == null && deflater.getBytesRead() == 0,
+        "Precompressed contents must be the only data written to an entry.");
+    Preconditions.checkArgument(
+        !contents.getCompressionLevel().isPresent()
+            || contents.getCompressionLevel().getAsInt() == compressionLevel,
+        "Contents of %s were compressed with level %s instead of %s.",
+        entry.getName(),
+        contents.getCompressionLevel(),
+        compressionLevel);
+    precompressedContents = contents;
+    out.write(contents.getCompressedContents());
+  }
+
   /**
    * Finish the entry and return the total number of compressed bytes written (not counting the
    * local file header, but counting the data descriptor if present). Must be called exactly once.
@@ -269,6 +298,10 @@ class EntryAccounting {
       Preconditions.checkState(
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
+    } else if (method == Method.DEFLATE && precompressedContents != null) {
+      entry.setSize(precompressedContents.getSize());
+      entry.setCompressedSize(precompressedContents.getCompressedContents().length);
+      entry.setCrc(precompressedContents.getCrc());
     } else if (method == Method.DEFLATE) {
       deflater.finish();
       while (!deflater.finished()) {
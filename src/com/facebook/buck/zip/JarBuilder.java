@@ -68,6 +68,7 @@ public class JarBuilder {
   private boolean shouldMergeManifests;
   private boolean shouldDisallowAllDuplicates;
   private boolean shouldHashEntries;
+  private boolean shouldDeflateInParallel;
   private Predicate<? super CustomZipEntry> removeEntryPredicate = entry -> false;
   private List<JarEntryContainer> sourceContainers = new ArrayList<>();
   private Set<String> alreadyAddedEntries = new HashSet<>();
@@ -127,6 +128,15 @@ public class JarBuilder {
     return this;
   }
 
+  /**
+   * Deflates the entries of the jar concurrently, which doesn't change the jar that is written but
+   * holds a few entries per thread in memory.
+   */
+  public JarBuilder setShouldDeflateInParallel(boolean shouldDeflateInParallel) {
+    this.shouldDeflateInParallel = shouldDeflateInParallel;
+    return this;
+  }
+
   public JarBuilder setRemoveEntryPredicate(
       Predicate<? super CustomZipEntry> removeEntryPredicate) {
     this.removeEntryPredicate = removeEntryPredicate;
@@ -136,7 +146,7 @@ public class JarBuilder {
   public int createJarFile(Path outputFile) throws IOException {
     Preconditions.checkArgument(outputFile.isAbsolute());
     try (CustomJarOutputStream jar =
-        ZipOutputStreams.newJarOutputStream(outputFile, APPEND_TO_ZIP)) {
+        ZipOutputStreams.newJarOutputStream(outputFile, APPEND_TO_ZIP, shouldDeflateInParallel)) {
       jar.setEntryHashingEnabled(shouldHashEntries);
       this.outputFile = outputFile;
 
@@ -270,6 +280,12 @@ public class JarBuilder {
       return;
     }
 
+    if (entrySupplier.getPrecompressedContentsSupplier().isPresent()) {
+      jar.writePrecompressedEntry(
+          entry, entrySupplier.getPrecompressedContentsSupplier().get().get());
+      return;
+    }
+
     jar.putNextEntry(entry);
     try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
       if (entryInputStream != null) {
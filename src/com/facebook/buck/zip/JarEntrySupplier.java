@@ -17,8 +17,11 @@
 package com.facebook.buck.zip;
 
 import com.facebook.buck.util.function.ThrowingSupplier;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
+import javax.annotation.Nullable;
 
 /**
  * Encapsulates a file or directory to be added as a single entry to a jar by {@link JarBuilder}.
@@ -28,13 +31,41 @@ public class JarEntrySupplier {
   private final String owner;
   private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
 
+  @Nullable
+  private final ThrowingSupplier<PrecompressedContents, IOException> precompressedContentsSupplier;
+
   public JarEntrySupplier(
       CustomZipEntry entry,
       String owner,
       ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+    this(entry, owner, inputStreamSupplier, null);
+  }
+
+  private JarEntrySupplier(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<InputStream, IOException> inputStreamSupplier,
+      @Nullable
+          ThrowingSupplier<PrecompressedContents, IOException> precompressedContentsSupplier) {
     this.entry = entry;
     this.owner = owner;
     this.inputStreamSupplier = inputStreamSupplier;
+    this.precompressedContentsSupplier = precompressedContentsSupplier;
+  }
+
+  /**
+   * Creates a supplier for an entry whose contents are compressed ahead of time, with the
+   * compression level of the given entry, or copied from the deflated data of another zip.
+   */
+  public static JarEntrySupplier ofPrecompressed(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<PrecompressedContents, IOException> precompressedContentsSupplier) {
+    return new JarEntrySupplier(
+        entry,
+        owner,
+        () -> new ByteArrayInputStream(precompressedContentsSupplier.get().getContents()),
+        precompressedContentsSupplier);
   }
 
   public CustomZipEntry getEntry() {
@@ -48,4 +79,9 @@ public class JarEntrySupplier {
   public ThrowingSupplier<InputStream, IOException> getInputStreamSupplier() {
     return inputStreamSupplier;
   }
+
+  public Optional<ThrowingSupplier<PrecompressedContents, IOException>>
+      getPrecompressedContentsSupplier() {
+    return Optional.ofNullable(precompressedContentsSupplier);
+  }
 }
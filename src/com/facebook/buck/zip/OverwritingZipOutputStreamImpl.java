@@ -102,6 +102,13 @@ public class OverwritingZipOutputStreamImpl implements CustomZipOutputStream.Imp
     currentEntry.write(currentOutput, b, off, len);
   }
 
+  @Override
+  public void actuallyWritePrecompressed(PrecompressedContents contents) throws IOException {
+    Preconditions.checkNotNull(currentEntry);
+    Preconditions.checkNotNull(currentOutput);
+    currentEntry.writePrecompressed(currentOutput, contents);
+  }
+
   @Override
   public void actuallyClose() throws IOException {
     long currentOffset = 0;
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+
+/**
+ * Deflates entries concurrently on a {@link ForkJoinPool}, then hands them to the wrapped impl in
+ * the order they were put. Since precompressed entries are written exactly like streamed ones, the
+ * zip is byte for byte the one the wrapped impl would have written alone.
+ *
+ * <p>Entries are held in memory until they are written, and only a few entries per thread of the
+ * pool, and a bounded number of bytes, are in flight at any time. An entry that grows past a
+ * fraction of that bound is streamed to the wrapped impl instead, once the entries before it are
+ * written. Errors of the wrapped impl other than duplicate entries are only raised once the entry
+ * reaches it, which may be on a later call.
+ */
+class ParallelDeflatingZipOutputStreamImpl implements CustomZipOutputStream.Impl {
+  private static final int PENDING_ENTRIES_PER_THREAD = 4;
+  private static final long DEFAULT_MAX_PENDING_BYTES = 64 * 1024 * 1024;
+  /** Entries larger than this fraction of the pending bytes are streamed to the wrapped impl. */
+  private static final int LARGE_ENTRY_FRACTION = 16;
+
+  private final CustomZipOutputStream.Impl delegate;
+  private final boolean throwExceptionsOnDuplicate;
+  private final ForkJoinPool pool;
+  private final int maxPendingEntries;
+  private final long maxPendingBytes;
+  private final long largeEntryThreshold;
+  private final Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+  private final Set<String> seenNames = new HashSet<>();
+  private long pendingBytes;
+
+  @Nullable private ZipEntry currentEntry;
+  @Nullable private ByteArrayOutputStream currentContents;
+  @Nullable private PrecompressedContents currentPrecompressedContents;
+  /** Whether the current entry is being streamed to the wrapped impl rather than buffered. */
+  private boolean currentEntryIsStreamed;
+
+  public ParallelDeflatingZipOutputStreamImpl(
+      CustomZipOutputStream.Impl delegate, boolean throwExceptionsOnDuplicate) {
+    this(
+        delegate,
+        throwExceptionsOnDuplicate,
+        ForkJoinPool.commonPool(),
+        DEFAULT_MAX_PENDING_BYTES);
+  }
+
+  public ParallelDeflatingZipOutputStreamImpl(
+      CustomZipOutputStream.Impl delegate,
+      boolean throwExceptionsOnDuplicate,
+      ForkJoinPool pool,
+      long maxPendingBytes) {
+    this.delegate = delegate;
+    this.throwExceptionsOnDuplicate = throwExceptionsOnDuplicate;
+    this.pool = pool;
+    this.maxPendingEntries = PENDING_ENTRIES_PER_THREAD * pool.getParallelism();
+    this.maxPendingBytes = maxPendingBytes;
+    this.largeEntryThreshold = maxPendingBytes / LARGE_ENTRY_FRACTION;
+  }
+
+  @Override
+  public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
+      // Same exception as ZipOutputStream.
+      throw new ZipException("duplicate entry: " + entry.getName());
+    }
+    currentEntry = entry;
+    currentContents = new ByteArrayOutputStream();
+    currentPrecompressedContents = null;
+    currentEntryIsStreamed = false;
+  }
+
+  @Override
+  public void actuallyWrite(byte[] b, int off, int len) throws IOException {
+    Preconditions.checkState(currentPrecompressedContents == null);
+    if (currentEntryIsStreamed) {
+      delegate.actuallyWrite(b, off, len);
+      return;
+    }
+    ByteArrayOutputStream contents = Preconditions.checkNotNull(currentContents);
+    contents.write(b, off, len);
+    if (contents.size() > largeEntryThreshold) {
+      // Buffering it whole would hold too much in memory, and there is little to gain from
+      // deflating a single entry elsewhere anyway.
+      writePendingEntries();
+      delegate.actuallyPutNextEntry(Preconditions.checkNotNull(currentEntry));
+      delegate.actuallyWrite(contents.toByteArray(), 0, contents.size());
+      currentContents = null;
+      currentEntryIsStreamed = true;
+    }
+  }
+
+  @Override
+  public void actuallyWritePrecompressed(PrecompressedContents contents) throws IOException {
+    Preconditions.checkState(!currentEntryIsStreamed);
+    Preconditions.checkState(Preconditions.checkNotNull(currentContents).size() == 0);
+    currentPrecompressedContents = contents;
+  }
+
+  @Override
+  public void actuallyCloseEntry() throws IOException {
+    if (currentEntry == null) {
+      return;
+    }
+
+    if (currentEntryIsStreamed) {
+      delegate.actuallyCloseEntry();
+    } else {
+      PendingEntry pendingEntry =
+          newPendingEntry(
+              currentEntry,
+              Preconditions.checkNotNull(currentContents).toByteArray(),
+              currentPrecompressedContents);
+      pendingEntries.add(pendingEntry);
+      pendingBytes += pendingEntry.size;
+    }
+    currentEntry = null;
+    currentContents = null;
+    currentPrecompressedContents = null;
+    currentEntryIsStreamed = false;
+
+    while (pendingEntries.size() > maxPendingEntries || pendingBytes > maxPendingBytes) {
+      writePendingEntry(pendingEntries.removeFirst());
+    }
+  }
+
+  @Override
+  public void actuallyClose() throws IOException {
+    actuallyCloseEntry();
+    writePendingEntries();
+    delegate.actuallyClose();
+  }
+
+  private PendingEntry newPendingEntry(
+      ZipEntry entry, byte[] contents, @Nullable PrecompressedContents precompressedContents) {
+    if (precompressedContents != null) {
+      return new PendingEntry(
+          entry,
+          null,
+          CompletableFuture.completedFuture(precompressedContents),
+          precompressedContents.getCompressedContents().length);
+    }
+    // Stored entries need no compression, and empty ones are never written to.
+    if (entry.getMethod() == ZipEntry.STORED || contents.length == 0) {
+      return new PendingEntry(entry, contents, null, contents.length);
+    }
+    int compressionLevel =
+        entry instanceof CustomZipEntry
+            ? ((CustomZipEntry) entry).getCompressionLevel()
+            : Deflater.DEFAULT_COMPRESSION;
+    return new PendingEntry(
+        entry,
+        null,
+        CompletableFuture.supplyAsync(
+            () -> PrecompressedContents.compress(contents, compressionLevel), pool),
+        contents.length);
+  }
+
+  private void writePendingEntries() throws IOException {
+    while (!pendingEntries.isEmpty()) {
+      writePendingEntry(pendingEntries.removeFirst());
+    }
+  }
+
+  private void writePendingEntry(PendingEntry pendingEntry) throws IOException {
+    pendingBytes -= pendingEntry.size;
+    delegate.actuallyPutNextEntry(pendingEntry.entry);
+    if (pendingEntry.compressedContents != null) {
+      delegate.actuallyWritePrecompressed(pendingEntry.compressedContents.join());
+    } else {
+      byte[] contents = Preconditions.checkNotNull(pendingEntry.contents);
+      if (contents.length > 0) {
+        delegate.actuallyWrite(contents, 0, contents.length);
+      }
+    }
+    delegate.actuallyCloseEntry();
+  }
+
+  private static class PendingEntry {
+    private final ZipEntry entry;
+    @Nullable private final byte[] contents;
+    @Nullable private final CompletableFuture<PrecompressedContents> compressedContents;
+    /** The number of bytes held in memory for the entry, as far as the bound is concerned. */
+    private final long size;
+
+    private PendingEntry(
+        ZipEntry entry,
+        @Nullable byte[] contents,
+        @Nullable CompletableFuture<PrecompressedContents> compressedContents,
+        long size) {
+      this.entry = entry;
+      this.contents = contents;
+      this.compressedContents = compressedContents;
+      this.size = size;
+    }
+  }
+}
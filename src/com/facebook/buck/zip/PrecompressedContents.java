@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.OptionalInt;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+
+/**
+ * The contents of a zip entry, deflated before the entry is written so that the work can be done on
+ * any thread. {@link CustomZipOutputStream#writePrecompressedEntry} writes exactly the bytes that
+ * writing the uncompressed contents to the entry would.
+ *
+ * <p>The deflated data of an entry of another zip can also be wrapped, so that it is copied to the
+ * new zip without being inflated and deflated again.
+ */
+public class PrecompressedContents {
+  private static final int BUFFER_SIZE = 4096;
+
+  @Nullable private byte[] contents;
+  private final byte[] compressedContents;
+  private final OptionalInt compressionLevel;
+  private final long crc;
+  private final long size;
+
+  private PrecompressedContents(
+      @Nullable byte[] contents,
+      byte[] compressedContents,
+      OptionalInt compressionLevel,
+      long crc,
+      long size) {
+    this.contents = contents;
+    this.compressedContents = compressedContents;
+    this.compressionLevel = compressionLevel;
+    this.crc = crc;
+    this.size = size;
+  }
+
+  /**
+   * Deflates the given contents the way {@link CustomZipOutputStream} would for an entry with the
+   * given compression level. The array is kept, not copied, so it must not be modified afterwards.
+   */
+  public static PrecompressedContents compress(byte[] contents, int compressionLevel) {
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 64);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      // Feed the input and finish the stream in two stages, just like the streaming path does.
+      deflater.setInput(contents);
+      while (!deflater.needsInput()) {
+        out.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length));
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length));
+      }
+      return new PrecompressedContents(
+          contents,
+          out.toByteArray(),
+          OptionalInt.of(compressionLevel),
+          crc.getValue(),
+          contents.length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Wraps data deflated by some other zip writer, as found in an existing zip. The compression
+   * level it was deflated with is unknown, so it may be written to an entry of any level, and the
+   * zip is then not necessarily the one that writing the uncompressed contents would produce.
+   *
+   * @param compressedContents the raw deflated data, with no zlib header.
+   * @param crc the CRC-32 of the uncompressed contents.
+   * @param size the size of the uncompressed contents.
+   */
+  public static PrecompressedContents ofDeflatedData(
+      byte[] compressedContents, long crc, long size) {
+    return new PrecompressedContents(null, compressedContents, OptionalInt.empty(), crc, size);
+  }
+
+  /**
+   * @return the uncompressed contents, inflated on first use if only the deflated data was given.
+   */
+  public synchronized byte[] getContents() {
+    if (contents == null) {
+      try {
+        contents = inflate(compressedContents, size);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return contents;
+  }
+
+  public byte[] getCompressedContents() {
+    return compressedContents;
+  }
+
+  /** @return the compression level the contents were deflated with, if known. */
+  public OptionalInt getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public long getCrc() {
+    return crc;
+  }
+
+  /** @return the size of the uncompressed contents. */
+  public long getSize() {
+    return size;
+  }
+
+  private static byte[] inflate(byte[] compressedContents, long size) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      byte[] contents = new byte[Math.toIntExact(size)];
+      inflater.setInput(compressedContents);
+      int length = 0;
+      while (length < contents.length && !inflater.finished()) {
+        int read = inflater.inflate(contents, length, contents.length - length);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += read;
+      }
+      if (length != contents.length) {
+        throw new ZipException(
+            String.format("Inflated %d bytes instead of the expected %d.", length, size));
+      }
+      return contents;
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+}
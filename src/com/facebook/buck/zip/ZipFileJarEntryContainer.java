@@ -16,20 +16,34 @@
 
 package com.facebook.buck.zip;
 
+import com.google.common.collect.ImmutableList;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
-/** Provides all entries of a given zip or jar file, so they can be added to another jar. */
+/**
+ * Provides all entries of a given zip or jar file, so they can be added to another jar. Deflated
+ * entries are provided as their compressed data, which is copied as is rather than inflated and
+ * deflated again.
+ */
 class ZipFileJarEntryContainer implements JarEntryContainer {
   private final String owner;
   private final Path jarFilePath;
   @Nullable private JarFile jar;
+  @Nullable private FileChannel channel;
+  @Nullable private Map<String, CentralDirectory.FileHeader> deflatedEntries;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -44,17 +58,27 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
 
   @Override
   public Stream<JarEntrySupplier> stream() throws IOException {
+    Map<String, CentralDirectory.FileHeader> deflatedEntries = getDeflatedEntries();
     return getJarFile()
         .stream()
         .map(
-            entry ->
-                new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+            entry -> {
+              CentralDirectory.FileHeader header = deflatedEntries.get(entry.getName());
+              if (header != null && header.describes(entry)) {
+                return JarEntrySupplier.ofPrecompressed(
+                    makeCustomEntry(entry), owner, () -> readDeflatedContents(header));
+              }
+              return new JarEntrySupplier(
+                  makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry));
+            });
   }
 
   @Override
   public void close() throws IOException {
     getJarFile().close();
+    if (channel != null) {
+      channel.close();
+    }
   }
 
   private JarFile getJarFile() throws IOException {
@@ -70,6 +94,47 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
     return jar;
   }
 
+  /** Indexes the non-empty deflated entries which can be copied without being inflated. */
+  private Map<String, CentralDirectory.FileHeader> getDeflatedEntries() throws IOException {
+    if (deflatedEntries == null) {
+      deflatedEntries = new HashMap<>();
+      Set<String> duplicateNames = new HashSet<>();
+      Optional<ImmutableList<CentralDirectory.FileHeader>> headers =
+          CentralDirectory.readFileHeaders(getChannel());
+      for (CentralDirectory.FileHeader header : headers.orElse(ImmutableList.of())) {
+        if (header.getMethod() == ZipEntry.DEFLATED
+            && header.getSize() > 0
+            && !header.isEncrypted()
+            && !header.getName().endsWith("/")
+            && deflatedEntries.putIfAbsent(header.getName(), header) != null) {
+          duplicateNames.add(header.getName());
+        }
+      }
+      // Entries sharing a name can't be told apart by name, so they are read the slow way.
+      deflatedEntries.keySet().removeAll(duplicateNames);
+    }
+    return deflatedEntries;
+  }
+
+  private PrecompressedContents readDeflatedContents(CentralDirectory.FileHeader header)
+      throws IOException {
+    return PrecompressedContents.ofDeflatedData(
+        CentralDirectory.readCompressedData(getChannel(), header),
+        header.getCrc(),
+        header.getSize());
+  }
+
+  private FileChannel getChannel() throws IOException {
+    if (channel == null) {
+      try {
+        channel = FileChannel.open(jarFilePath, StandardOpenOption.READ);
+      } catch (IOException e) {
+        throw new IOException("Failed to process ZipFile " + owner, e);
+      }
+    }
+    return channel;
+  }
+
   private static CustomZipEntry makeCustomEntry(ZipEntry entry) {
     CustomZipEntry wrappedEntry = new CustomZipEntry(entry);
 
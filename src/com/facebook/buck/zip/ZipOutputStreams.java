@@ -80,6 +80,38 @@ public class ZipOutputStreams {
     return newJarOutputStream(new BufferedOutputStream(Files.newOutputStream(jarFile)), mode);
   }
 
+  /**
+   * Create a new {@link CustomZipOutputStream} that handles duplicate entries in the way dictated
+   * by {@code mode}, and that may deflate entries in parallel. Either way, the same bytes end up in
+   * the zip.
+   *
+   * @param zipFile The file to write to.
+   * @param mode How to handle duplicate entries.
+   * @param deflateInParallel Whether entries are deflated concurrently on the common fork-join
+   *     pool, if there is more than one processor. This holds a few entries per thread, and at
+   *     most 64 MiB of them, in memory.
+   */
+  public static CustomZipOutputStream newOutputStream(
+      Path zipFile, HandleDuplicates mode, boolean deflateInParallel) throws IOException {
+    return newOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(zipFile)), mode, deflateInParallel);
+  }
+
+  public static CustomZipOutputStream newOutputStream(
+      OutputStream out, HandleDuplicates mode, boolean deflateInParallel) {
+    return new CustomZipOutputStream(newImpl(out, mode, new DefaultClock(), deflateInParallel));
+  }
+
+  public static CustomJarOutputStream newJarOutputStream(
+      Path jarFile, HandleDuplicates mode, boolean deflateInParallel) throws IOException {
+    return new CustomJarOutputStream(
+        newImpl(
+            new BufferedOutputStream(Files.newOutputStream(jarFile)),
+            mode,
+            new DefaultClock(),
+            deflateInParallel));
+  }
+
   /**
    * Create a new {@link CustomZipOutputStream} that handles duplicate entries in the way dictated
    * by {@code mode}.
@@ -105,6 +137,15 @@ public class ZipOutputStreams {
     return new CustomJarOutputStream(newImpl(out, mode, clock));
   }
 
+  private static CustomZipOutputStream.Impl newImpl(
+      OutputStream out, HandleDuplicates mode, Clock clock, boolean deflateInParallel) {
+    CustomZipOutputStream.Impl impl = newImpl(out, mode, clock);
+    // With a single processor, deflating elsewhere only adds the cost of buffering the entries.
+    return deflateInParallel && Runtime.getRuntime().availableProcessors() > 1
+        ? new ParallelDeflatingZipOutputStreamImpl(impl, mode == HandleDuplicates.THROW_EXCEPTION)
+        : impl;
+  }
+
   protected static CustomZipOutputStream.Impl newImpl(
       OutputStream out, HandleDuplicates mode, Clock clock) {
     CustomZipOutputStream.Impl impl;
@@ -169,7 +169,9 @@ public class ZipStep implements Step {
 
     try (BufferedOutputStream baseOut =
             new BufferedOutputStream(filesystem.newFileOutputStream(pathToZipFile));
-        CustomZipOutputStream out = ZipOutputStreams.newOutputStream(baseOut, THROW_EXCEPTION)) {
+        CustomZipOutputStream out =
+            ZipOutputStreams.newOutputStream(
+                baseOut, THROW_EXCEPTION, /* deflateInParallel */ true)) {
 
       filesystem.walkRelativeFileTree(baseDir, pathFileVisitor);
 
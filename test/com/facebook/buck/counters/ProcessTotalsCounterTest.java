@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.util.concurrent.ProcessTotals;
+import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessTotalsCounterTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+
+  @Test
+  public void testSnapshotHasTheGrowthSinceThePreviousFlush() {
+    ProcessTotals totals = new ProcessTotals();
+    AtomicLong hits = totals.newTotal("hits");
+    AtomicLong misses = totals.newTotal("misses");
+    // Whatever happened before the counter was created isn't reported.
+    hits.addAndGet(10);
+    ProcessTotalsCounter counter =
+        new ProcessTotalsCounter(CATEGORY, NAME, totals, ProcessTotalsCounter::hitRate);
+    Assert.assertFalse(counter.flush().isPresent());
+
+    hits.addAndGet(3);
+    misses.incrementAndGet();
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(CATEGORY, snapshot.get().getCategory());
+    Assert.assertEquals(
+        ImmutableMap.of("hits", 3L, "misses", 1L, "hit_rate_percent", 75L),
+        snapshot.get().getValues());
+    Assert.assertFalse(counter.flush().isPresent());
+  }
+
+  @Test
+  public void testHitRateIsOmittedWithoutLookups() {
+    ProcessTotals totals = new ProcessTotals();
+    totals.newTotal("hits");
+    totals.newTotal("misses");
+    AtomicLong evictions = totals.newTotal("evictions");
+    ProcessTotalsCounter counter =
+        new ProcessTotalsCounter(CATEGORY, NAME, totals, ProcessTotalsCounter::hitRate);
+
+    evictions.incrementAndGet();
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(
+        ImmutableMap.of("hits", 0L, "misses", 0L, "evictions", 1L), snapshot.get().getValues());
+  }
+}
@@ -20,12 +20,18 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import com.facebook.buck.util.concurrent.ListeningMultiSemaphore;
+import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
 /** Unit tests for {@link AsynchronousDirectoryContentsCleaner}. */
@@ -55,4 +61,41 @@ public class AsynchronousDirectoryContentsCleanerTest {
     assertThat(Files.exists(fooBarDir), is(false));
     assertThat(Files.exists(fooBarBlechTxtFile), is(false));
   }
+
+  @Test
+  public void cleaningWaitsForDiskIOOfThrottle() throws Exception {
+    FileSystem vfs = Jimfs.newFileSystem(Configuration.unix());
+    Path dirToClean = vfs.getPath("/tmp/fake-trash-dir");
+    Path file = dirToClean.resolve("foo").resolve("bar.txt");
+    Files.createDirectories(file.getParent());
+    Files.write(file, "hello world\n".getBytes(UTF_8));
+
+    ListeningMultiSemaphore semaphore =
+        new ListeningMultiSemaphore(
+            ResourceAmounts.of(1, 0, 1, 0), ResourceAllocationFairness.FAIR);
+    ResourceAmounts buildStep = ResourceAmounts.of(0, 0, 1, 0);
+    semaphore.acquire(buildStep).get();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      AsynchronousDirectoryContentsCleaner cleaner =
+          new AsynchronousDirectoryContentsCleaner(executor);
+      cleaner.setDiskIOThrottle(semaphore);
+      cleaner.startCleaningDirectory(dirToClean);
+
+      // The cleaner can't delete anything while the disk IO is used by the build.
+      Thread.sleep(100);
+      assertThat(Files.exists(file), is(true));
+      assertThat(semaphore.getQueueLength(), is(1));
+
+      semaphore.release(buildStep);
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+      assertThat(Files.exists(dirToClean), is(true));
+      assertThat(Files.exists(file.getParent()), is(false));
+      assertThat(semaphore.getAvailableResources(), is(ResourceAmounts.of(1, 0, 1, 0)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
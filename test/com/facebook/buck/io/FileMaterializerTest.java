@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.isOneOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.environment.Platform;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class FileMaterializerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private Path source;
+  private Path target;
+
+  @Before
+  public void setUp() throws IOException {
+    Assume.assumeTrue(Platform.detect() != Platform.WINDOWS);
+    source = tmp.newFile("source");
+    Files.write(source, "contents".getBytes(UTF_8));
+    Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rwxr-x---"));
+    target = tmp.getRoot().resolve("target");
+    Files.write(target, "previous contents".getBytes(UTF_8));
+  }
+
+  private Object getFileKey(Path path) throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+  }
+
+  @Test
+  public void linkOrCloneHardLinksFilesOnTheSameFileSystem() throws IOException {
+    long bytesLinked = FileMaterializer.getBytesLinked();
+
+    assertEquals(
+        FileMaterializer.Method.HARD_LINK,
+        FileMaterializer.materialize(source, target, FileMaterializer.Strategy.LINK_OR_CLONE));
+
+    assertEquals(getFileKey(source), getFileKey(target));
+    assertEquals("contents", new String(Files.readAllBytes(target), UTF_8));
+    assertThat(FileMaterializer.getBytesLinked() - bytesLinked, greaterThanOrEqualTo(8L));
+  }
+
+  @Test
+  public void clonesAreIndependentOfTheirSource() throws IOException {
+    assertThat(
+        FileMaterializer.materialize(source, target, FileMaterializer.Strategy.CLONE),
+        isOneOf(FileMaterializer.Method.CLONE, FileMaterializer.Method.COPY));
+
+    assertNotEquals(getFileKey(source), getFileKey(target));
+    assertEquals(Files.getPosixFilePermissions(source), Files.getPosixFilePermissions(target));
+    Files.write(target, "modified".getBytes(UTF_8));
+    assertEquals("contents", new String(Files.readAllBytes(source), UTF_8));
+  }
+
+  @Test
+  public void symlinksAreCopiedAsTheirTarget() throws IOException {
+    Path link = tmp.getRoot().resolve("link");
+    Files.createSymbolicLink(link, source);
+
+    assertEquals(
+        FileMaterializer.Method.COPY,
+        FileMaterializer.materialize(link, target, FileMaterializer.Strategy.LINK_OR_CLONE));
+
+    assertEquals("contents", new String(Files.readAllBytes(target), UTF_8));
+    assertFalse(Files.isSymbolicLink(target));
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectFilesystemStatCacheTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private Path root;
+  private ProjectFilesystemStatCache cache;
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    root = tmpDir.getRoot().toPath().toAbsolutePath().normalize();
+    cache = new ProjectFilesystemStatCache(root, path -> path.startsWith("uncached"));
+    cache.install();
+    filesystem = new ProjectFilesystem(root);
+  }
+
+  @After
+  public void tearDown() {
+    cache.uninstall();
+  }
+
+  @Test
+  public void repeatedQueriesAreServedFromTheCacheUntilInvalidated() throws IOException {
+    Path file = Paths.get("dir", "file");
+    filesystem.mkdirs(file.getParent());
+    long hits = ProjectFilesystemStatCache.getHits();
+
+    assertFalse(filesystem.exists(file));
+    // Made behind the back of the cache, like any change reported by Watchman.
+    Files.write(root.resolve(file), new byte[] {1, 2, 3});
+    assertFalse(filesystem.exists(file));
+    assertTrue(ProjectFilesystemStatCache.getHits() > hits);
+
+    cache.invalidate(file);
+    assertTrue(filesystem.isFile(file));
+    assertEquals(3, filesystem.getFileSize(file));
+    assertEquals(ImmutableList.of(file), filesystem.getDirectoryContents(file.getParent()));
+  }
+
+  @Test
+  public void changesMadeThroughTheFilesystemInvalidateTheCache() throws IOException {
+    Path dir = Paths.get("dir");
+    filesystem.mkdirs(dir);
+    assertEquals(ImmutableList.of(), filesystem.getDirectoryContents(dir));
+    assertFalse(filesystem.exists(dir.resolve("file")));
+
+    filesystem.writeContentsToPath("contents", dir.resolve("file"));
+    assertTrue(filesystem.isFile(dir.resolve("file")));
+    assertEquals(ImmutableList.of(dir.resolve("file")), filesystem.getDirectoryContents(dir));
+
+    filesystem.deleteRecursivelyIfExists(dir);
+    assertFalse(filesystem.exists(dir.resolve("file")));
+    assertFalse(filesystem.isDirectory(dir));
+  }
+
+  @Test
+  public void uncachedPathsAndUninstalledCachesGoToTheDisk() throws IOException {
+    Path uncached = Paths.get("uncached", "file");
+    assertFalse(filesystem.exists(uncached));
+    Files.createDirectories(root.resolve(uncached).getParent());
+    Files.createFile(root.resolve(uncached));
+    assertTrue(filesystem.exists(uncached));
+
+    Path file = Paths.get("file");
+    assertFalse(filesystem.exists(file));
+    cache.uninstall();
+    Files.createFile(root.resolve(file));
+    assertTrue(filesystem.exists(file));
+  }
+
+  @Test
+  public void symlinksAreNotCached() throws IOException {
+    Path link = Paths.get("link");
+    Files.createSymbolicLink(root.resolve(link), root.resolve("target"));
+    assertFalse(filesystem.exists(link));
+
+    Files.createFile(root.resolve("target"));
+    assertTrue(filesystem.exists(link));
+  }
+}
@@ -300,6 +300,20 @@ public class ProjectFilesystemTest {
     assertFalse(Files.exists(file));
   }
 
+  @Test
+  public void testMoveToTrash() throws IOException {
+    tmp.newFolder("dir", "subdir");
+    tmp.newFile("dir/subdir/file.txt");
+
+    filesystem.moveToTrash(Paths.get("dir"));
+
+    assertFalse(filesystem.exists(Paths.get("dir")));
+    assertTrue(filesystem.isDirectory(filesystem.getBuckPaths().getTrashDir()));
+    // The path can be reused right away, while the trash is cleaned in the background.
+    filesystem.mkdirs(Paths.get("dir/subdir"));
+    filesystem.moveToTrash(Paths.get("does-not-exist"));
+  }
+
   @Test
   public void testWalkFileTreeWhenProjectRootIsNotWorkingDir() throws IOException {
     tmp.newFolder("dir");
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class WatchmanSubscriptionTest {
+
+  private static final Path CELL_PATH = Paths.get("/root/project");
+  private static final WatchmanQuery QUERY =
+      WatchmanQuery.of("/root", ImmutableMap.of("relative_root", "project"));
+
+  private static class FakeTransport implements Transport {
+    private final InputStream input;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    FakeTransport(Object... responses) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      BserSerializer serializer = new BserSerializer();
+      for (Object response : responses) {
+        serializer.serializeToStream(response, bytes);
+      }
+      this.input = new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return output;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static class RecordingListener implements WatchmanSubscription.Listener {
+    private final List<Path> changes = new CopyOnWriteArrayList<>();
+    private final CountDownLatch ended = new CountDownLatch(1);
+
+    @Override
+    public void onFilesChanged(Path cellPath) {
+      changes.add(cellPath);
+    }
+
+    @Override
+    public void onSubscriptionEnded() {
+      ended.countDown();
+    }
+  }
+
+  @Test
+  public void notificationsOfTheSubscriptionAreForwarded() throws Exception {
+    FakeTransport transport =
+        new FakeTransport(
+            ImmutableMap.of("subscribe", "test-0"),
+            ImmutableMap.of("log", "some log line"),
+            ImmutableMap.of("subscription", "test-0", "files", ImmutableList.of("Foo.java")),
+            ImmutableMap.of("subscription", "other", "files", ImmutableList.of("Bar.java")),
+            ImmutableMap.of("subscription", "test-0", "state-enter", "hg.update"));
+    RecordingListener listener = new RecordingListener();
+
+    Optional<WatchmanSubscription> subscription =
+        WatchmanSubscription.subscribe(
+            transport, ImmutableMap.of(CELL_PATH, QUERY), listener, "test-");
+
+    assertTrue(subscription.isPresent());
+    // The transport runs out of responses after the notifications, which ends the subscription.
+    assertTrue(listener.ended.await(10, TimeUnit.SECONDS));
+    assertEquals(ImmutableList.of(CELL_PATH), listener.changes);
+    assertEquals(
+        ImmutableList.of(
+            "subscribe", "/root", "test-0", ImmutableMap.of("relative_root", "project")),
+        new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED)
+            .deserializeBserValue(new ByteArrayInputStream(transport.output.toByteArray())));
+  }
+
+  @Test
+  public void refusedSubscriptionIsNotStarted() throws Exception {
+    FakeTransport transport = new FakeTransport(ImmutableMap.of("error", "unknown root"));
+
+    Optional<WatchmanSubscription> subscription =
+        WatchmanSubscription.subscribe(
+            transport, ImmutableMap.of(CELL_PATH, QUERY), new RecordingListener(), "test-");
+
+    assertFalse(subscription.isPresent());
+  }
+}
@@ -59,7 +59,8 @@ public class WatchmanTest {
                       "wildmatch",
                       "wildmatch_multislash",
                       "glob_generator",
-                      "clock-sync-timeout")));
+                      "clock-sync-timeout",
+                      "field-content.sha1hex")));
   private static final Function<Path, Optional<WatchmanClient>> NULL_WATCHMAN_CONNECTOR =
       path -> Optional.empty();
 
@@ -30,6 +30,7 @@ import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.syntax.Type;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
@@ -46,6 +47,7 @@ public class SkylarkProjectBuildFileParserTest {
   private SkylarkProjectBuildFileParser parser;
   private Cell cell;
   private ProjectFilesystem projectFilesystem;
+  private SkylarkExtensionCache extensionCache;
 
   @Before
   public void setUp() throws Exception {
@@ -54,10 +56,12 @@ public class SkylarkProjectBuildFileParserTest {
     projectFilesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
     skylarkFilesystem = SkylarkFilesystem.using(projectFilesystem);
     cell = new TestCellBuilder().setFilesystem(projectFilesystem).build();
+    extensionCache = new SkylarkExtensionCache();
     parser =
         SkylarkProjectBuildFileParser.using(
             ProjectBuildFileParserOptions.builder()
                 .setProjectRoot(cell.getRoot())
+                .setCellRoots(ImmutableMap.of("other", cell.getRoot().resolve("other")))
                 .setAllowEmptyGlobs(ParserConfig.DEFAULT_ALLOW_EMPTY_GLOBS)
                 .setIgnorePaths(ImmutableSet.of())
                 .setBuildFileName("BUCK")
@@ -66,7 +70,8 @@ public class SkylarkProjectBuildFileParserTest {
                 .setPythonInterpreter("skylark")
                 .build(),
             BuckEventBusForTests.newInstance(),
-            skylarkFilesystem);
+            skylarkFilesystem,
+            extensionCache);
   }
 
   @Test
@@ -84,11 +89,10 @@ public class SkylarkProjectBuildFileParserTest {
             + "visibility=['PUBLIC'],"
             + ")");
 
-    ImmutableList<Map<String, Object>> allRulesAndMetaRules =
-        parser.getAllRulesAndMetaRules(
-            projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
-    assertThat(allRulesAndMetaRules, Matchers.hasSize(1));
-    Map<String, Object> rule = allRulesAndMetaRules.get(0);
+    ImmutableList<Map<String, Object>> allRules =
+        parser.getAll(projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
+    assertThat(allRules, Matchers.hasSize(1));
+    Map<String, Object> rule = allRules.get(0);
     assertThat(rule.get("name"), equalTo("guava"));
     assertThat(rule.get("binary_jar"), equalTo("guava.jar"));
     assertThat(
@@ -100,4 +104,77 @@ public class SkylarkProjectBuildFileParserTest {
         equalTo(ImmutableList.of("PUBLIC")));
     assertThat(rule.get("buck.base_path"), equalTo("test"));
   }
+
+  @Test
+  public void canUseSymbolsLoadedFromExtension() throws Exception {
+    writeFile("test/defs.bzl", "JAR = 'guava.jar'");
+    Path buildFile =
+        writeFile(
+            "test/BUCK",
+            "load('//test:defs.bzl', 'JAR')\nprebuilt_jar(name='guava', binary_jar=JAR)");
+
+    ImmutableList<Map<String, Object>> allRulesAndMetaRules =
+        parser.getAllRulesAndMetaRules(
+            projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
+
+    assertThat(allRulesAndMetaRules, Matchers.hasSize(2));
+    assertThat(allRulesAndMetaRules.get(0).get("binary_jar"), equalTo("guava.jar"));
+    assertThat(
+        allRulesAndMetaRules.get(1).get("__includes"),
+        equalTo(
+            ImmutableList.of(
+                buildFile.toString(), cell.getRoot().resolve("test/defs.bzl").toString())));
+  }
+
+  @Test
+  public void extensionIsEvaluatedOnceForAllBuildFiles() throws Exception {
+    writeFile("defs.bzl", "JAR = 'guava.jar'");
+    Path first =
+        writeFile("a/BUCK", "load('//:defs.bzl', 'JAR')\nprebuilt_jar(name='a', binary_jar=JAR)");
+    Path second =
+        writeFile("b/BUCK", "load('//:defs.bzl', 'JAR')\nprebuilt_jar(name='b', binary_jar=JAR)");
+
+    parser.getAll(projectFilesystem.getPath(first.toString()), new AtomicLong());
+    parser.getAll(projectFilesystem.getPath(second.toString()), new AtomicLong());
+
+    assertThat(extensionCache.getMissCount(), equalTo(1L));
+    assertThat(extensionCache.getHitCount(), equalTo(1L));
+  }
+
+  @Test
+  public void changedExtensionIsEvaluatedAgain() throws Exception {
+    writeFile("defs.bzl", "JAR = 'guava.jar'");
+    Path buildFile =
+        writeFile("BUCK", "load('//:defs.bzl', 'JAR')\nprebuilt_jar(name='a', binary_jar=JAR)");
+    parser.getAll(projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
+
+    writeFile("defs.bzl", "JAR = 'jsr305.jar'");
+    extensionCache.invalidatePath(cell.getRoot().resolve("defs.bzl"));
+    ImmutableList<Map<String, Object>> allRules =
+        parser.getAll(projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
+
+    assertThat(allRules.get(0).get("binary_jar"), equalTo("jsr305.jar"));
+    assertThat(extensionCache.getMissCount(), equalTo(2L));
+  }
+
+  @Test
+  public void extensionsOfOtherCellsAreLoadedFromTheirRoot() throws Exception {
+    writeFile("other/defs.bzl", "load(':jars.bzl', 'GUAVA')\nJAR = GUAVA");
+    writeFile("other/jars.bzl", "GUAVA = 'guava.jar'");
+    Path buildFile =
+        writeFile(
+            "BUCK", "load('@other//:defs.bzl', 'JAR')\nprebuilt_jar(name='a', binary_jar=JAR)");
+
+    ImmutableList<Map<String, Object>> allRules =
+        parser.getAll(projectFilesystem.getPath(buildFile.toString()), new AtomicLong());
+
+    assertThat(allRules.get(0).get("binary_jar"), equalTo("guava.jar"));
+  }
+
+  private Path writeFile(String relativePath, String content) throws Exception {
+    Path path = skylarkFilesystem.getPath(cell.getRoot().resolve(relativePath).toString());
+    FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+    FileSystemUtils.writeContentAsLatin1(path, content);
+    return path;
+  }
 }
@@ -17,6 +17,8 @@ package com.facebook.buck.jvm.groovy;
 
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.cli.BuckConfig;
@@ -99,6 +101,17 @@ public class GroovyBuckConfigTest {
     groovyBuckConfig.getGroovyCompiler();
   }
 
+  @Test
+  public void tracksClassUsageOnlyWhenConfigured() throws InterruptedException {
+    ImmutableMap<String, String> environment = ImmutableMap.of();
+    assertFalse(createGroovyConfig(environment, ImmutableMap.of()).trackClassUsage());
+    assertTrue(
+        createGroovyConfig(
+                environment,
+                ImmutableMap.of("groovy", ImmutableMap.of("track_class_usage", "true")))
+            .trackClassUsage());
+  }
+
   private GroovyBuckConfig createGroovyConfig(
       ImmutableMap<String, String> environment,
       ImmutableMap<String, ImmutableMap<String, String>> rawConfig)
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -76,4 +77,37 @@ public class CalculateAbiFromClassesStepTest {
               .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
     }
   }
+
+  @Test
+  public void shouldReuseTheAbiOfJarsWithTheSameContents()
+      throws InterruptedException, IOException {
+    Path outDir = temp.newFolder().toAbsolutePath();
+    ProjectFilesystem filesystem = new ProjectFilesystem(outDir);
+
+    Path source = TestDataHelper.getTestDataDirectory(this).resolve("prebuilt/junit.jar");
+    Files.copy(source, outDir.resolve("first.jar"));
+    Files.copy(source, outDir.resolve("second.jar"));
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    CalculateAbiFromClassesStep.invalidateCachedAbiJars();
+
+    new CalculateAbiFromClassesStep(
+            filesystem, Paths.get("first.jar"), Paths.get("first-abi.jar"), false)
+        .execute(executionContext);
+    assertEquals(1, CalculateAbiFromClassesStep.getCachedAbiJarCount());
+
+    new CalculateAbiFromClassesStep(
+            filesystem, Paths.get("second.jar"), Paths.get("abis/second-abi.jar"), false)
+        .execute(executionContext);
+    assertEquals(1, CalculateAbiFromClassesStep.getCachedAbiJarCount());
+    assertArrayEquals(
+        Files.readAllBytes(outDir.resolve("first-abi.jar")),
+        Files.readAllBytes(outDir.resolve("abis/second-abi.jar")));
+
+    // Source ABI compatible stubs are different, so they are cached separately.
+    new CalculateAbiFromClassesStep(
+            filesystem, Paths.get("second.jar"), Paths.get("compatible-abi.jar"), true)
+        .execute(executionContext);
+    assertEquals(2, CalculateAbiFromClassesStep.getCachedAbiJarCount());
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class CalculateClassUsageFromClassesStepTest {
+  private static final Path DEP_JAR = Paths.get("dep.jar");
+  private static final Path CLASSES = Paths.get("classes");
+  private static final Path DEP_FILE = Paths.get("out/used-classes.json");
+
+  @Rule public TemporaryPaths temp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    filesystem = new ProjectFilesystem(temp.getRoot());
+  }
+
+  @Test
+  public void recordsWhatTheClassesCouldHaveBeenCompiledFrom()
+      throws InterruptedException, IOException {
+    try (ZipOutputStream jar = new ZipOutputStream(filesystem.newFileOutputStream(DEP_JAR))) {
+      addClass(jar, "com/dep/Base", "java/lang/Object", null, null);
+      addClass(jar, "com/dep/Used", "com/dep/Base", null, null);
+      addClass(jar, "com/dep/Used$1", "java/lang/Object", null, null);
+      addClass(jar, "com/dep/Unused", "java/lang/Object", null, null);
+      addClass(jar, "com/dep/Constants", "java/lang/Object", 42, null);
+      addClass(jar, "com/dep/InlineKt", "java/lang/Object", null, null);
+    }
+    filesystem.mkdirs(CLASSES.resolve("com/example"));
+    filesystem.writeBytesToPath(
+        newClass(
+            "com/example/Foo",
+            "com/dep/Used",
+            null,
+            "SMAP\nFoo.kt\nKotlin\n*S Kotlin\n*F\n+ 1 Foo.kt\ncom/example/Foo\n"
+                + "+ 2 Inline.kt\ncom/dep/InlineKt\n*L\n1#1,5:1\n*E\n"),
+        CLASSES.resolve("com/example/Foo.class"));
+
+    assertTrue(
+        new CalculateClassUsageFromClassesStep(
+                filesystem, CLASSES, ImmutableSortedSet.of(DEP_JAR), DEP_FILE)
+            .execute(TestExecutionContext.newInstance())
+            .isSuccess());
+
+    ImmutableMap<String, ImmutableList<String>> usedClasses =
+        ObjectMappers.readValue(
+            filesystem.resolve(DEP_FILE),
+            new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {});
+    assertEquals(
+        ImmutableMap.of(
+            "dep.jar",
+            ImmutableList.of(
+                "com/dep/Base.class",
+                "com/dep/Constants.class",
+                "com/dep/InlineKt.class",
+                "com/dep/Used.class")),
+        usedClasses);
+  }
+
+  @Test
+  public void readsTheOwnersOfInlineFunctionsFromTheFileSection() {
+    Set<String> usedClasses = new HashSet<>();
+    CalculateClassUsageFromClassesStep.addInlineFunctionOwners(
+        "SMAP\nFoo.kt\nKotlin\n*S Kotlin\n*F\n+ 1 Foo.kt\ncom/example/Foo\n"
+            + "+ 2 Strings.kt\nkotlin/text/StringsKt\n*L\n1#1,5:1\n12#2:6\n*E\n"
+            + "*S KotlinDebug\n*F\n+ 1 Foo.kt\ncom/example/Foo\n*L\n3#1:6\n*E\n",
+        usedClasses);
+    assertEquals(ImmutableSortedSet.of("com/example/Foo", "kotlin/text/StringsKt"), usedClasses);
+
+    usedClasses.clear();
+    CalculateClassUsageFromClassesStep.addInlineFunctionOwners(
+        "*F\n+ 1 Foo.groovy\nA", usedClasses);
+    assertTrue(usedClasses.isEmpty());
+  }
+
+  private static void addClass(
+      ZipOutputStream jar,
+      String name,
+      String superName,
+      @Nullable Object constant,
+      @Nullable String sourceDebugExtension)
+      throws IOException {
+    jar.putNextEntry(new ZipEntry(name + ".class"));
+    jar.write(newClass(name, superName, constant, sourceDebugExtension));
+    jar.closeEntry();
+  }
+
+  private static byte[] newClass(
+      String name,
+      String superName,
+      @Nullable Object constant,
+      @Nullable String sourceDebugExtension) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+    if (sourceDebugExtension != null) {
+      writer.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".kt", sourceDebugExtension);
+    }
+    if (constant != null) {
+      writer
+          .visitField(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+              "VALUE",
+              "I",
+              null,
+              constant)
+          .visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.DefaultBuildRuleResolver;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavacStepTest {
+  private static final Path OUTPUT_DIRECTORY = Paths.get("classes");
+  private static final Path JAR = Paths.get("lib.jar");
+  private static final Path SOURCES_LIST = Paths.get("srcs");
+  private static final Path A = Paths.get("com/example/A.java");
+  private static final Path B = Paths.get("com/example/B.java");
+  private static final Path C = Paths.get("com/example/C.java");
+  private static final Path D = Paths.get("com/example/D.java");
+  private static final Path E = Paths.get("com/example/E.java");
+  private static final ImmutableList<Path> SOURCES = ImmutableList.of(A, B, C, D, E);
+
+  @Rule public TemporaryPaths temp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() throws InterruptedException, IOException {
+    filesystem = new ProjectFilesystem(temp.getRoot());
+    context = TestExecutionContext.newInstance();
+    filesystem.mkdirs(A.getParent());
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public int value() { return 1; } }", A);
+    filesystem.writeContentsToPath(
+        "package com.example; class B { int value = new A().value(); }", B);
+    filesystem.writeContentsToPath("package com.example; class C { int value = 1; }", C);
+    filesystem.writeContentsToPath("package com.example; class D {}", D);
+    filesystem.writeContentsToPath("package com.example; class E {}", E);
+    assertTrue(build());
+  }
+
+  @Test
+  public void onlyChangedSourcesAreRecompiled() throws InterruptedException, IOException {
+    filesystem.writeContentsToPath("package com.example; class C { int value = 2; }", C);
+    assertTrue(build());
+
+    assertEquals(ImmutableList.of(C.toString()), filesystem.readLines(SOURCES_LIST));
+    assertTrue(filesystem.isFile(OUTPUT_DIRECTORY.resolve("com/example/A.class")));
+    assertTrue(filesystem.isFile(OUTPUT_DIRECTORY.resolve("com/example/B.class")));
+  }
+
+  @Test
+  public void dependentsAreRecompiledWhenTheAbiChanges() throws InterruptedException, IOException {
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { "
+            + "public int value() { return 1; } public int other() { return 2; } }",
+        A);
+    assertTrue(build());
+    // The last round compiled the dependents of A.
+    assertEquals(ImmutableList.of(B.toString()), filesystem.readLines(SOURCES_LIST));
+
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public int other() { return 2; } }", A);
+    assertFalse(build());
+  }
+
+  @Test
+  public void subclassesAreRecompiledWhenASupertypeAbiChanges()
+      throws InterruptedException, IOException {
+    filesystem.writeContentsToPath("package com.example; public class A extends B {}", A);
+    filesystem.writeContentsToPath("package com.example; abstract class B extends C {}", B);
+    filesystem.writeContentsToPath("package com.example; abstract class C {}", C);
+    assertTrue(build());
+
+    // B keeps its ABI, but A no longer implements all the methods it inherits.
+    filesystem.writeContentsToPath(
+        "package com.example; abstract class C { abstract void run(); }", C);
+    assertFalse(build());
+  }
+
+  @Test
+  public void deletedSourcesTakeTheirClassesAlong() throws InterruptedException, IOException {
+    filesystem.deleteFileAtPath(C);
+    assertTrue(build());
+    assertFalse(filesystem.exists(OUTPUT_DIRECTORY.resolve("com/example/C.class")));
+
+    filesystem.deleteFileAtPath(A);
+    assertFalse(build());
+  }
+
+  @Test
+  public void changingConstantsRecompilesEverything() throws InterruptedException, IOException {
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public static final int VALUE = 1; }", A);
+    filesystem.writeContentsToPath("package com.example; class B { int value = A.VALUE; }", B);
+    assertTrue(build());
+
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public static final int VALUE = 2; }", A);
+    assertTrue(build());
+    assertEquals(
+        SOURCES.stream().map(Path::toString).collect(MoreCollectors.toImmutableList()),
+        filesystem.readLines(SOURCES_LIST));
+  }
+
+  /** Builds the library like a java_library would, saving the state only if it succeeds. */
+  private boolean build() throws InterruptedException, IOException {
+    filesystem.deleteRecursivelyIfExists(OUTPUT_DIRECTORY);
+    filesystem.mkdirs(OUTPUT_DIRECTORY);
+    ImmutableSortedSet.Builder<Path> sources = ImmutableSortedSet.naturalOrder();
+    for (Path source : SOURCES) {
+      if (filesystem.exists(source)) {
+        sources.add(source);
+      }
+    }
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .setSourceFilePaths(sources.build())
+            .setOutputDirectory(OUTPUT_DIRECTORY)
+            .setGeneratedCodeDirectory(Paths.get("generated"))
+            .setWorkingDirectory(Paths.get("working"))
+            .setDepFilePath(Paths.get("used-classes.json"))
+            .setPathToSourcesList(SOURCES_LIST)
+            .setShouldTrackClassUsage(true)
+            .build();
+    IncrementalJavacStep step =
+        new IncrementalJavacStep(
+            new JdkProvidedInMemoryJavac(),
+            JavacOptions.builder().setSourceLevel("8").setTargetLevel("8").build(),
+            BuildTargetFactory.newInstance("//com/example:lib"),
+            DefaultSourcePathResolver.from(
+                new SourcePathRuleFinder(
+                    new DefaultBuildRuleResolver(
+                        TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()))),
+            filesystem,
+            parameters,
+            JAR);
+    if (!step.execute(context).isSuccess()) {
+      return false;
+    }
+    new JarDirectoryStep(
+            filesystem,
+            JarParameters.builder()
+                .setJarPath(JAR)
+                .setEntriesToJar(ImmutableSortedSet.of(OUTPUT_DIRECTORY))
+                .build())
+        .execute(context);
+    step.createSaveStateStep().execute(context);
+    return true;
+  }
+}
@@ -23,10 +23,12 @@ import com.facebook.buck.zip.JarBuilder;
 import com.facebook.buck.zip.JarEntryContainer;
 import com.facebook.buck.zip.JarEntrySupplier;
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.CharStreams;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
@@ -37,6 +39,9 @@ import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,6 +50,44 @@ import org.junit.rules.TemporaryFolder;
 public class JarBuilderTest {
   @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
+  @Test
+  public void testCopiesDeflatedEntriesOfJarsAsIs() throws IOException {
+    File inputJar = temporaryFolder.newFile("input.jar");
+    String contents = Strings.repeat("The quick brown fox jumps over the lazy dog. ", 1000);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(inputJar))) {
+      // Not the level JarBuilder deflates with, so recompressing would change the data.
+      out.setLevel(Deflater.BEST_SPEED);
+      out.putNextEntry(new ZipEntry("com/example/Foo.class"));
+      out.write(contents.getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry("META-INF/services/com.example.Foo"));
+      out.write("com.example.Bar".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+
+    File outputJar = temporaryFolder.newFile("output.jar");
+    try (JarEntryContainer container = JarEntryContainer.of(inputJar.toPath())) {
+      new JarBuilder().addEntryContainer(container).createJarFile(outputJar.toPath());
+    }
+
+    try (JarFile input = new JarFile(inputJar);
+        JarFile output = new JarFile(outputJar)) {
+      JarEntry inputEntry = input.getJarEntry("com/example/Foo.class");
+      JarEntry outputEntry = output.getJarEntry("com/example/Foo.class");
+      assertEquals(inputEntry.getCompressedSize(), outputEntry.getCompressedSize());
+      assertEquals(inputEntry.getCrc(), outputEntry.getCrc());
+      assertEquals(
+          contents,
+          CharStreams.toString(
+              new InputStreamReader(output.getInputStream(outputEntry), Charsets.UTF_8)));
+      assertEquals(
+          "com.example.Bar",
+          CharStreams.toString(
+              new InputStreamReader(
+                  output.getInputStream(output.getEntry("META-INF/services/com.example.Foo")),
+                  Charsets.UTF_8)));
+    }
+  }
+
   @Test
   public void testSortsEntriesFromAllContainers() throws IOException {
     File tempFile = temporaryFolder.newFile();
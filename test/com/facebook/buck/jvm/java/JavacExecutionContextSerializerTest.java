@@ -81,6 +81,11 @@ public class JavacExecutionContextSerializerTest {
             .setMainClass(Optional.of("hello I am main class"))
             .setManifestFile(Optional.of(Paths.get("/MANIFEST/FILE.TXT")))
             .build();
+    JarParameters sourceAbiJarParameters =
+        JarParameters.builder()
+            .setJarPath(Paths.get("/abi/path"))
+            .setEntriesToJar(ImmutableSortedSet.of(Paths.get("abi/path")))
+            .build();
 
     JavacExecutionContext input =
         JavacExecutionContext.of(
@@ -95,7 +100,8 @@ public class JavacExecutionContextSerializerTest {
             environment,
             processExecutor,
             pathToInputs,
-            Optional.of(directToJarParameters));
+            Optional.of(directToJarParameters),
+            Optional.of(sourceAbiJarParameters));
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output =
         JavacExecutionContextSerializer.deserialize(
@@ -144,6 +150,12 @@ public class JavacExecutionContextSerializerTest {
     assertThat(
         output.getDirectToJarParameters().get().getJarPath(),
         Matchers.equalToObject(directToJarParameters.getJarPath()));
+    assertThat(
+        output.getSourceAbiJarParameters().get().getJarPath(),
+        Matchers.equalToObject(sourceAbiJarParameters.getJarPath()));
+    assertThat(
+        output.getSourceAbiJarParameters().get().getEntriesToJar(),
+        Matchers.equalToObject(sourceAbiJarParameters.getEntriesToJar()));
     assertThat(
         output.getDirectToJarParameters().get().getEntriesToJar(),
         Matchers.equalToObject(directToJarParameters.getEntriesToJar()));
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.FakeBuckEventListener;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.tracing.JavacPhaseEvent;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.DefaultBuildRuleResolver;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JavacPipelineStateTest {
+  private static final BuildTarget LIBRARY = BuildTargetFactory.newInstance("//com/example:lib");
+  private static final BuildTarget SOURCE_ABI = HasJavaAbi.getSourceAbiJar(LIBRARY);
+  private static final Path SOURCE = Paths.get("com/example/A.java");
+  private static final Path LIBRARY_JAR = Paths.get("lib.jar");
+  private static final Path ABI_JAR = Paths.get("abi.jar");
+  private static final Path ABI_RESOURCES = Paths.get("abi-classes");
+
+  @Rule public TemporaryPaths temp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private FakeBuckEventListener listener;
+  private SourcePathResolver resolver;
+  private Javac javac;
+  private JavacOptions options;
+  private CompilerParameters parameters;
+  private JarParameters libraryJarParameters;
+  private JarParameters abiJarParameters;
+
+  @Before
+  public void setUp() throws InterruptedException, IOException {
+    filesystem = new ProjectFilesystem(temp.getRoot());
+    context = TestExecutionContext.newInstance();
+    listener = new FakeBuckEventListener();
+    context.getBuckEventBus().register(listener);
+    resolver =
+        DefaultSourcePathResolver.from(
+            new SourcePathRuleFinder(
+                new DefaultBuildRuleResolver(
+                    TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    javac = new JdkProvidedInMemoryJavac();
+    options = JavacOptions.builder().setSourceLevel("8").setTargetLevel("8").build();
+
+    filesystem.mkdirs(SOURCE.getParent());
+    filesystem.mkdirs(ABI_RESOURCES.resolve("com/example"));
+    filesystem.writeContentsToPath("resource", ABI_RESOURCES.resolve("com/example/res.txt"));
+    parameters =
+        CompilerParameters.builder()
+            .setSourceFilePaths(ImmutableSortedSet.of(SOURCE))
+            .setOutputDirectory(Paths.get("classes"))
+            .setGeneratedCodeDirectory(Paths.get("generated"))
+            .setWorkingDirectory(Paths.get("working"))
+            .setDepFilePath(Paths.get("used-classes.json"))
+            .setPathToSourcesList(Paths.get("srcs"))
+            .build();
+    libraryJarParameters =
+        JarParameters.builder()
+            .setJarPath(LIBRARY_JAR)
+            .setEntriesToJar(ImmutableSortedSet.of(parameters.getOutputDirectory()))
+            .build();
+    abiJarParameters =
+        JarParameters.builder()
+            .setJarPath(ABI_JAR)
+            .setEntriesToJar(ImmutableSortedSet.of(ABI_RESOURCES))
+            .build();
+  }
+
+  @Test
+  public void sourceAbiAndClassesShareOneFrontendRun() throws InterruptedException, IOException {
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public int value() { return 1; } }", SOURCE);
+
+    try (JavacPipelineState state = newPipelineState()) {
+      assertTrue(newStep(SOURCE_ABI, ABI_JAR, state).execute(context).isSuccess());
+      assertTrue(jarContains(ABI_JAR, "com/example/A.class"));
+      assertTrue(jarContains(ABI_JAR, "com/example/res.txt"));
+      assertFalse(filesystem.exists(LIBRARY_JAR));
+
+      assertTrue(newLibraryStep(state).execute(context).isSuccess());
+      assertTrue(jarContains(LIBRARY_JAR, "com/example/A.class"));
+      assertFalse(jarContains(LIBRARY_JAR, "com/example/res.txt"));
+    }
+
+    assertEquals(1, countStartedPhases(JavacPhaseEvent.Phase.PARSE));
+    assertEquals(1, countStartedPhases(JavacPhaseEvent.Phase.SOURCE_ABI));
+    assertEquals(1, countStartedPhases(JavacPhaseEvent.Phase.CODE_GENERATION));
+  }
+
+  @Test
+  public void errorsFoundAfterTheSourceAbiFailTheLibrary()
+      throws InterruptedException, IOException {
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public int value() { return \"1\"; } }", SOURCE);
+
+    try (JavacPipelineState state = newPipelineState()) {
+      assertTrue(newStep(SOURCE_ABI, ABI_JAR, state).execute(context).isSuccess());
+
+      StepExecutionResult result = newLibraryStep(state).execute(context);
+      assertFalse(result.isSuccess());
+      assertThat(result.getStderr().get(), containsString("incompatible types"));
+    }
+  }
+
+  @Test
+  public void libraryStartsTheInvocationWhenTheSourceAbiWasNotBuilt()
+      throws InterruptedException, IOException {
+    filesystem.writeContentsToPath(
+        "package com.example; public class A { public int value() { return 1; } }", SOURCE);
+
+    try (JavacPipelineState state = newPipelineState()) {
+      assertTrue(newLibraryStep(state).execute(context).isSuccess());
+    }
+
+    assertTrue(jarContains(LIBRARY_JAR, "com/example/A.class"));
+    assertFalse(filesystem.exists(ABI_JAR));
+  }
+
+  private JavacPipelineState newPipelineState() {
+    return new JavacPipelineState(
+        javac,
+        options,
+        LIBRARY,
+        resolver,
+        filesystem,
+        NoOpClassUsageFileWriter.instance(),
+        parameters,
+        Optional.of(libraryJarParameters),
+        Optional.of(abiJarParameters));
+  }
+
+  /** The library rule only makes its classes directory once the source ABI rule is done. */
+  private JavacStep newLibraryStep(JavacPipelineState state) throws IOException {
+    filesystem.mkdirs(parameters.getOutputDirectory());
+    return newStep(LIBRARY, null, state);
+  }
+
+  private JavacStep newStep(BuildTarget target, @Nullable Path abiJar, JavacPipelineState state) {
+    return new JavacStep(
+        NoOpClassUsageFileWriter.instance(),
+        javac,
+        options,
+        target,
+        resolver,
+        filesystem,
+        new ClasspathChecker(),
+        parameters,
+        Optional.of(abiJar == null ? libraryJarParameters : abiJarParameters),
+        abiJar,
+        state);
+  }
+
+  private boolean jarContains(Path jar, String entry) throws IOException {
+    try (ZipFile zipFile = new ZipFile(filesystem.resolve(jar).toFile())) {
+      return zipFile.getEntry(entry) != null;
+    }
+  }
+
+  private long countStartedPhases(JavacPhaseEvent.Phase phase) {
+    return listener
+        .getEvents()
+        .stream()
+        .filter(event -> event instanceof JavacPhaseEvent.Started)
+        .filter(event -> ((JavacPhaseEvent.Started) event).getPhase() == phase)
+        .count();
+  }
+}
@@ -129,6 +129,7 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(),
+            Optional.empty(),
             Optional.empty());
 
     int exitCode =
@@ -181,6 +182,7 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(),
+            Optional.empty(),
             Optional.empty());
 
     int exitCode =
@@ -280,6 +282,7 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(fakeJavacJar),
+            Optional.empty(),
             Optional.empty());
 
     boolean caught = false;
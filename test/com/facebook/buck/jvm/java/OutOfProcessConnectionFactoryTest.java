@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.message_ipc.Connection;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.worker.FakeWorkerProcess;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutOfProcessConnectionFactoryTest {
+
+  private ProjectFilesystem filesystem;
+  private OutOfProcessJsr199Javac javac;
+  private List<KillableWorkerProcess> startedWorkers;
+  private ConcurrentHashMap<String, WorkerProcessPool> persistentWorkerPools;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    javac = new OutOfProcessJdkProvidedInMemoryJavac();
+    startedWorkers = new ArrayList<>();
+    persistentWorkerPools = new ConcurrentHashMap<>();
+  }
+
+  @Test
+  public void workersAreReusedAcrossBuilds() throws Exception {
+    WorkerProcessPool pool = registerPool(2);
+
+    for (int build = 0; build < 2; build++) {
+      try (Connection<OutOfProcessJavacConnectionInterface> connection =
+          connect(createExecutionContext())) {
+        assertSame(connection, javac.getConnection());
+      }
+    }
+
+    assertEquals(1, startedWorkers.size());
+    assertSame(
+        pool,
+        persistentWorkerPools.get(
+            OutOfProcessConnectionFactory.getWorkerProcessIdentity().getPersistentWorkerKey()));
+  }
+
+  @Test
+  public void eachThreadHasItsOwnConnection() throws Exception {
+    registerPool(2);
+    ExecutionContext context = createExecutionContext();
+    ExecutorService otherThread = Executors.newSingleThreadExecutor();
+    try (Connection<OutOfProcessJavacConnectionInterface> connection = connect(context);
+        Connection<OutOfProcessJavacConnectionInterface> otherConnection =
+            otherThread.submit(() -> connect(context)).get()) {
+      assertNotSame(connection, otherConnection);
+      assertSame(connection, javac.getConnection());
+      assertSame(otherConnection, otherThread.submit(javac::getConnection).get());
+      assertEquals(2, startedWorkers.size());
+    } finally {
+      otherThread.shutdownNow();
+    }
+  }
+
+  @Test
+  public void deadWorkersAreReplaced() throws Exception {
+    registerPool(1);
+
+    try (Connection<OutOfProcessJavacConnectionInterface> connection =
+        connect(createExecutionContext())) {
+      // The worker dies during the build, the next build needs a new one.
+      startedWorkers.get(0).kill();
+    }
+    try (Connection<OutOfProcessJavacConnectionInterface> connection =
+        connect(createExecutionContext())) {
+      assertSame(connection, javac.getConnection());
+    }
+
+    assertEquals(2, startedWorkers.size());
+    assertTrue(startedWorkers.get(1).isAlive());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void closedConnectionsAreForgotten() throws Exception {
+    registerPool(1);
+
+    try (Connection<OutOfProcessJavacConnectionInterface> connection =
+        connect(createExecutionContext())) {
+      assertSame(connection, javac.getConnection());
+    }
+
+    javac.getConnection();
+  }
+
+  private Connection<OutOfProcessJavacConnectionInterface> connect(ExecutionContext context)
+      throws IOException, InterruptedException {
+    return OutOfProcessConnectionFactory.connectionForOutOfProcessBuild(context, filesystem, javac);
+  }
+
+  private WorkerProcessPool registerPool(int capacity) {
+    WorkerProcessPool pool =
+        new WorkerProcessPool(
+            capacity, OutOfProcessConnectionFactory.getWorkerProcessIdentity().getWorkerHash()) {
+          @Override
+          protected WorkerProcess startWorkerProcess() throws IOException {
+            KillableWorkerProcess process = new KillableWorkerProcess();
+            process.ensureLaunchAndHandshake();
+            synchronized (startedWorkers) {
+              startedWorkers.add(process);
+            }
+            return process;
+          }
+        };
+    persistentWorkerPools.put(
+        OutOfProcessConnectionFactory.getWorkerProcessIdentity().getPersistentWorkerKey(), pool);
+    return pool;
+  }
+
+  /** Each build gets a context of its own, the daemon's worker pools are what they share. */
+  private ExecutionContext createExecutionContext() {
+    return TestExecutionContext.newBuilder()
+        .setPersistentWorkerPools(persistentWorkerPools)
+        .build();
+  }
+
+  private static class KillableWorkerProcess extends FakeWorkerProcess {
+    private boolean killed = false;
+
+    KillableWorkerProcess() throws IOException {
+      super(ImmutableMap.of());
+    }
+
+    void kill() {
+      killed = true;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return !killed && super.isAlive();
+    }
+
+    @Override
+    public void close() {
+      if (!killed) {
+        super.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedClasspathIndexTest {
+
+  private static final Pattern CLASS_NAME = Pattern.compile("class (\\w+)");
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private JavaCompiler compiler;
+  private SharedClasspathIndex index;
+  private Path jar;
+
+  @Before
+  public void setUp() throws IOException {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    index = new SharedClasspathIndex(16);
+    jar = temp.getRoot().toPath().resolve("lib.jar");
+    writeLibrary("package a; public class A { public static int value() { return 1; } }");
+  }
+
+  @Test
+  public void compilationsShareTheIndexOfTheJarsOnTheirClasspath() throws IOException {
+    long misses = SharedClasspathIndex.getMisses();
+    long hits = SharedClasspathIndex.getHits();
+
+    assertTrue(compile("class B { int x = a.A.value(); }"));
+    assertEquals(misses + 1, SharedClasspathIndex.getMisses());
+
+    assertTrue(compile("class C { int y = a.A.value(); }"));
+    assertEquals(misses + 1, SharedClasspathIndex.getMisses());
+    assertTrue(SharedClasspathIndex.getHits() > hits);
+  }
+
+  @Test
+  public void changedJarsAreReindexed() throws IOException {
+    assertTrue(compile("class B { int x = a.A.value(); }"));
+    long misses = SharedClasspathIndex.getMisses();
+
+    writeLibrary(
+        "package a; public class A { public static int otherValue() { return 2; } }",
+        "package a; public class D {}");
+    assertTrue(compile("class B { int x = a.A.otherValue(); a.D d; }"));
+    assertEquals(misses + 1, SharedClasspathIndex.getMisses());
+  }
+
+  @Test
+  public void summariesAreKeptUntilTheJarChanges() throws IOException {
+    AtomicInteger summarized = new AtomicInteger();
+    SharedClasspathIndex.JarSummarizer<Integer> entryCount =
+        zipFile -> {
+          summarized.incrementAndGet();
+          return zipFile.size();
+        };
+
+    assertEquals(Optional.of(1), index.getSummary(jar, entryCount));
+    assertEquals(Optional.of(1), index.getSummary(jar, entryCount));
+    assertEquals(1, summarized.get());
+
+    writeLibrary("package a; public class A {}", "package a; public class D {}");
+    assertEquals(Optional.of(2), index.getSummary(jar, entryCount));
+    assertEquals(2, summarized.get());
+  }
+
+  @Test
+  public void indexedClassesAreTrackedLikeTheOnesJavacReads() throws IOException {
+    ClassUsageTracker tracker = new ClassUsageTracker();
+    try (StandardJavaFileManager fileManager =
+        tracker.wrapFileManager(index.wrap(compiler.getStandardFileManager(null, null, null)))) {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(jar.toFile()));
+      JavaFileObject fileObject =
+          Iterables.getOnlyElement(
+              fileManager.list(
+                  StandardLocation.CLASS_PATH,
+                  "a",
+                  ImmutableSet.of(JavaFileObject.Kind.CLASS),
+                  false));
+
+      assertEquals("a.A", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, fileObject));
+      assertTrue(fileObject.isNameCompatible("A", JavaFileObject.Kind.CLASS));
+      fileObject.openInputStream().close();
+    }
+
+    assertEquals(
+        ImmutableSet.of(Paths.get("a", "A.class")),
+        tracker.getClassUsageMap().get(jar.toAbsolutePath()));
+  }
+
+  private boolean compile(String source) throws IOException {
+    Path sourceFile = temp.newFolder().toPath().resolve("Source.java");
+    Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+    Path output = temp.newFolder().toPath();
+    try (StandardJavaFileManager fileManager =
+        index.wrap(compiler.getStandardFileManager(null, null, null))) {
+      return compiler
+          .getTask(
+              null,
+              fileManager,
+              null,
+              ImmutableList.of("-classpath", jar.toString(), "-d", output.toString()),
+              null,
+              fileManager.getJavaFileObjects(sourceFile.toFile()))
+          .call();
+    }
+  }
+
+  private void writeLibrary(String... sources) throws IOException {
+    Path sourceDir = temp.newFolder().toPath();
+    Path classesDir = temp.newFolder().toPath();
+    ImmutableList.Builder<String> arguments = ImmutableList.builder();
+    arguments.add("-d", classesDir.toString());
+    for (String source : sources) {
+      Matcher className = CLASS_NAME.matcher(source);
+      assertTrue(className.find());
+      Path sourceFile = sourceDir.resolve(className.group(1) + ".java");
+      Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+      arguments.add(sourceFile.toString());
+    }
+    assertEquals(0, compiler.run(null, null, null, arguments.build().toArray(new String[0])));
+
+    try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(jar));
+        DirectoryStream<Path> classFiles = Files.newDirectoryStream(classesDir.resolve("a"))) {
+      for (Path classFile : classFiles) {
+        jarOutputStream.putNextEntry(new ZipEntry("a/" + classFile.getFileName()));
+        jarOutputStream.write(Files.readAllBytes(classFile));
+        jarOutputStream.closeEntry();
+      }
+    }
+  }
+}
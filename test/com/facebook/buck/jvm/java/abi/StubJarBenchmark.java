@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Compares stubbing a large third-party-like jar one class at a time with stubbing its classes in
+ * parallel.
+ */
+public class StubJarBenchmark {
+  @Param({"1000", "10000"})
+  private int classesCount = 1000;
+
+  private static final int METHODS_PER_CLASS = 20;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private Path jar;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    root = Files.createTempDirectory("stub-jar-benchmark");
+    filesystem = new ProjectFilesystem(root);
+    jar = root.resolve("library.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (int i = 0; i < classesCount; i++) {
+        String name = "com/example/Class" + i;
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.write(generateClass(name));
+        out.closeEntry();
+      }
+    }
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws IOException {
+    MoreFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void parallelStubbingWritesTheSameJar() throws Exception {
+    Path sequential = writeStubJar("sequential-abi.jar", false);
+    Path parallel = writeStubJar("parallel-abi.jar", true);
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(sequential)),
+        Files.readAllBytes(filesystem.resolve(parallel)));
+  }
+
+  @Benchmark
+  public void stubSequentially() throws Exception {
+    filesystem.deleteFileAtPath(writeStubJar("sequential-abi.jar", false));
+  }
+
+  @Benchmark
+  public void stubInParallel() throws Exception {
+    filesystem.deleteFileAtPath(writeStubJar("parallel-abi.jar", true));
+  }
+
+  private Path writeStubJar(String name, boolean stubClassesInParallel) throws IOException {
+    Path abiJar = Paths.get(name);
+    new StubJar(jar).setStubClassesInParallel(stubClassesInParallel).writeTo(filesystem, abiJar);
+    return abiJar;
+  }
+
+  /** Classes with a few fields and plenty of methods with bodies, private and public ones. */
+  private static byte[] generateClass(String name) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+    writer.visitField(Opcodes.ACC_PRIVATE, "value", "I", null, null).visitEnd();
+    writer.visitField(Opcodes.ACC_PUBLIC, "name", "Ljava/lang/String;", null, null).visitEnd();
+
+    MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(
+        Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    for (int i = 0; i < METHODS_PER_CLASS; i++) {
+      MethodVisitor method =
+          writer.visitMethod(
+              i % 2 == 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE,
+              "method" + i,
+              "(I)I",
+              null,
+              null);
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ILOAD, 1);
+      for (int j = 0; j < 50; j++) {
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, name, "value", "I");
+        method.visitInsn(j % 2 == 0 ? Opcodes.IADD : Opcodes.IXOR);
+      }
+      method.visitInsn(Opcodes.IRETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
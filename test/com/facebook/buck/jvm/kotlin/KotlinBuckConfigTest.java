@@ -16,8 +16,11 @@
 package com.facebook.buck.jvm.kotlin;
 
 import static java.io.File.pathSeparator;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.cli.BuckConfig;
@@ -329,4 +332,45 @@ public class KotlinBuckConfigTest {
     assertNotNull(runtimeJar);
     assertTrue(runtimeJar.endsWith("faux_kotlin_home/libexec/lib/kotlin-stdlib.jar"));
   }
+
+  @Test
+  public void testUsesCompilerWorkersWhenConfigured() throws InterruptedException {
+    BuckConfig buckConfig =
+        FakeBuckConfig.builder()
+            .setFilesystem(new ProjectFilesystem(testDataDirectory))
+            .setSections(
+                ImmutableMap.of(
+                    "kotlin",
+                    ImmutableMap.of(
+                        "kotlin_home", "faux_kotlin_home",
+                        "compiler_workers", "2")))
+            .build();
+
+    assertThat(new KotlinBuckConfig(buckConfig).getKotlinc(), instanceOf(WorkerKotlinc.class));
+  }
+
+  @Test
+  public void testCompilesInProcessByDefault() throws InterruptedException {
+    BuckConfig buckConfig =
+        FakeBuckConfig.builder()
+            .setFilesystem(new ProjectFilesystem(testDataDirectory))
+            .setSections(
+                ImmutableMap.of("kotlin", ImmutableMap.of("kotlin_home", "faux_kotlin_home")))
+            .build();
+
+    assertThat(
+        new KotlinBuckConfig(buckConfig).getKotlinc(),
+        instanceOf(JarBackedReflectedKotlinc.class));
+  }
+
+  @Test
+  public void testTracksClassUsageOnlyWhenConfigured() {
+    assertFalse(new KotlinBuckConfig(FakeBuckConfig.builder().build()).trackClassUsage());
+    assertTrue(
+        new KotlinBuckConfig(
+                FakeBuckConfig.builder()
+                    .setSections("[kotlin]", "track_class_usage = true")
+                    .build())
+            .trackClassUsage());
+  }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.JvmCompilerWorkers;
+import com.facebook.buck.jvm_compiler_worker.CompilerArguments;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.worker.FakeWorkerProcess;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class WorkerKotlincTest {
+  private static final Path COMPILER_JAR = Paths.get("/opt/kotlin/lib/kotlin-compiler.jar");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private TestConsole console;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    console = new TestConsole();
+  }
+
+  @Test
+  public void compilesTheAbsoluteSourcesInAWorker() throws Exception {
+    String jobArgs =
+        CompilerArguments.encode(
+            ImmutableList.of(
+                "-d",
+                "out dir",
+                filesystem.resolve("A.kt").toString(),
+                filesystem.resolve("B.kt").toString()));
+    ExecutionContext context =
+        createExecutionContextWith(
+            ImmutableMap.of(
+                jobArgs,
+                WorkerJobResult.of(
+                    1, Optional.of("info: kotlinc\n"), Optional.of("error: A.kt\n"))));
+
+    int exitCode =
+        new WorkerKotlinc(ImmutableSet.of(new PathSourcePath(filesystem, COMPILER_JAR)), 2)
+            .buildWithClasspath(
+                context,
+                BuildTargetFactory.newInstance("//:lib"),
+                ImmutableList.of("-d", "out dir"),
+                ImmutableSortedSet.of(Paths.get("A.kt"), Paths.get("B.kt")),
+                Paths.get("srcs"),
+                Optional.empty(),
+                filesystem);
+
+    assertEquals(1, exitCode);
+    assertEquals("info: kotlinc\nerror: A.kt\n", console.getTextWrittenToStdErr());
+  }
+
+  private ExecutionContext createExecutionContextWith(
+      ImmutableMap<String, WorkerJobResult> jobArgs) {
+    WorkerProcessIdentity identity =
+        JvmCompilerWorkers.getWorkerProcessIdentity(
+            JvmCompilerWorkers.Compiler.KOTLINC, ImmutableList.of(COMPILER_JAR));
+    WorkerProcessPool pool =
+        new WorkerProcessPool(2, identity.getWorkerHash()) {
+          @Override
+          protected WorkerProcess startWorkerProcess() throws IOException {
+            return new FakeWorkerProcess(jobArgs);
+          }
+        };
+    ConcurrentHashMap<String, WorkerProcessPool> persistentWorkerPools = new ConcurrentHashMap<>();
+    persistentWorkerPools.put(identity.getPersistentWorkerKey(), pool);
+    return TestExecutionContext.newBuilder()
+        .setPersistentWorkerPools(persistentWorkerPools)
+        .setConsole(console)
+        .build();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.scala;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.JvmCompilerWorkers;
+import com.facebook.buck.jvm_compiler_worker.CompilerArguments;
+import com.facebook.buck.rules.CommandTool;
+import com.facebook.buck.rules.DefaultBuildRuleResolver;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.worker.FakeWorkerProcess;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ScalacStepTest {
+  private static final ImmutableList<Path> COMPILER_CLASSPATH =
+      ImmutableList.of(Paths.get("/opt/scala/lib/scala-compiler.jar"));
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void workersGetTheOptionsFollowingTheExecutable() throws Exception {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    String jobArgs =
+        CompilerArguments.encode(
+            ImmutableList.of(
+                "-target:jvm-1.7",
+                "-Xfatal-warnings",
+                "-d",
+                filesystem.resolve("classes").toString(),
+                "-classpath",
+                "",
+                filesystem.resolve("Foo.scala").toString()));
+    ExecutionContext context =
+        createExecutionContextWith(
+            ImmutableMap.of(
+                jobArgs,
+                WorkerJobResult.of(1, Optional.of(""), Optional.of("Foo.scala:1: error"))));
+
+    StepExecutionResult result =
+        new ScalacStep(
+                new CommandTool.Builder()
+                    .addArg("/opt/scala/bin/scalac")
+                    .addArg("-target:jvm-1.7")
+                    .build(),
+                ImmutableList.of("-Xfatal-warnings"),
+                DefaultSourcePathResolver.from(
+                    new SourcePathRuleFinder(
+                        new DefaultBuildRuleResolver(
+                            TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()))),
+                Paths.get("classes"),
+                ImmutableSortedSet.of(Paths.get("Foo.scala")),
+                ImmutableSortedSet.of(),
+                filesystem,
+                2,
+                COMPILER_CLASSPATH)
+            .execute(context);
+
+    assertEquals(1, result.getExitCode());
+    assertEquals(Optional.of("Foo.scala:1: error"), result.getStderr());
+  }
+
+  private ExecutionContext createExecutionContextWith(
+      ImmutableMap<String, WorkerJobResult> jobArgs) {
+    WorkerProcessIdentity identity =
+        JvmCompilerWorkers.getWorkerProcessIdentity(
+            JvmCompilerWorkers.Compiler.SCALAC, COMPILER_CLASSPATH);
+    WorkerProcessPool pool =
+        new WorkerProcessPool(2, identity.getWorkerHash()) {
+          @Override
+          protected WorkerProcess startWorkerProcess() throws IOException {
+            return new FakeWorkerProcess(jobArgs);
+          }
+        };
+    ConcurrentHashMap<String, WorkerProcessPool> persistentWorkerPools = new ConcurrentHashMap<>();
+    persistentWorkerPools.put(identity.getPersistentWorkerKey(), pool);
+    return TestExecutionContext.newBuilder()
+        .setPersistentWorkerPools(persistentWorkerPools)
+        .setConsole(new TestConsole(Verbosity.STANDARD_INFORMATION))
+        .build();
+  }
+}
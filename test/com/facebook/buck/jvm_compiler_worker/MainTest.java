@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.jvm_compiler_worker;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.worker.WorkerProcessCommand;
+import com.facebook.buck.worker.WorkerProcessProtocol;
+import com.facebook.buck.worker.WorkerProcessProtocolZero;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MainTest {
+  @Rule public TemporaryPaths temp = new TemporaryPaths();
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void argumentsSurviveTheArgumentsFile() {
+    ImmutableList<String> arguments =
+        ImmutableList.of("-d", "", "with spaces", "with\nline\r\nbreaks", "12:34\n");
+    assertEquals(arguments, CompilerArguments.decode(CompilerArguments.encode(arguments)));
+    assertEquals("", CompilerArguments.encode(ImmutableList.of()));
+    assertEquals(ImmutableList.of(), CompilerArguments.decode(""));
+  }
+
+  @Test
+  public void runsEachJobWithItsOwnArgumentsAndOutputs() throws Exception {
+    // Stands for the System.out and System.err the worker redirects to the files of each job.
+    ByteArrayOutputStream outsideOfJobs = new ByteArrayOutputStream();
+    Main.RedirectableOutputStream stdout = new Main.RedirectableOutputStream(outsideOfJobs);
+    Main.RedirectableOutputStream stderr = new Main.RedirectableOutputStream(outsideOfJobs);
+    List<List<String>> compilations = new ArrayList<>();
+    try (PipedOutputStream commands = new PipedOutputStream();
+        PipedInputStream workerStdin = new PipedInputStream(commands);
+        PipedOutputStream responses = new PipedOutputStream();
+        PipedInputStream workerStdout = new PipedInputStream(responses);
+        PrintStream compilerStdout = new PrintStream(stdout, true)) {
+      Future<Void> worker =
+          executor.submit(
+              () -> {
+                Main.serve(
+                    (arguments, jobStderr) -> {
+                      compilations.add(Arrays.asList(arguments));
+                      compilerStdout.print("compiled " + arguments.length);
+                      jobStderr.print("warning: " + arguments[0]);
+                      return arguments[0].equals("fail") ? 1 : 0;
+                    },
+                    workerStdin,
+                    responses,
+                    stdout,
+                    stderr);
+                return null;
+              });
+
+      WorkerProcessProtocol.CommandSender sender =
+          new WorkerProcessProtocolZero.CommandSender(
+              commands, workerStdout, temp.getRoot().resolve("worker_stderr"), () -> {});
+      sender.handshake(0);
+      assertEquals(0, submit(sender, 1, ImmutableList.of("-d", "out dir", "line\nbreak")));
+      assertEquals("compiled 3", read("1.out"));
+      assertEquals("warning: -d", read("1.err"));
+      assertEquals(1, submit(sender, 2, ImmutableList.of("fail")));
+      assertEquals("compiled 1", read("2.out"));
+      assertEquals("warning: fail", read("2.err"));
+      sender.close();
+      worker.get();
+    }
+
+    assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("-d", "out dir", "line\nbreak"), ImmutableList.of("fail")),
+        compilations);
+    assertEquals("", outsideOfJobs.toString(StandardCharsets.UTF_8.name()));
+  }
+
+  private int submit(WorkerProcessProtocol.CommandSender sender, int id, List<String> arguments)
+      throws Exception {
+    Path argsPath = temp.getRoot().resolve(id + ".args");
+    Files.write(argsPath, CompilerArguments.encode(arguments).getBytes(StandardCharsets.UTF_8));
+    sender.send(
+        id,
+        WorkerProcessCommand.of(
+            argsPath, temp.getRoot().resolve(id + ".out"), temp.getRoot().resolve(id + ".err")));
+    return sender.receiveCommandResponse(id);
+  }
+
+  private String read(String fileName) throws Exception {
+    return new String(Files.readAllBytes(temp.getRoot().resolve(fileName)), StandardCharsets.UTF_8);
+  }
+}
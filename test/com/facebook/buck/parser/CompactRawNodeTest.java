@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class CompactRawNodeTest {
+
+  private static Map<String, Object> javaLibrary(String name) {
+    return ImmutableMap.of(
+        "name",
+        name,
+        "buck.type",
+        "java_library",
+        "deps",
+        new ArrayList<>(Arrays.asList("//third-party:guava", "//third-party:jsr305")),
+        "visibility",
+        ImmutableList.of("PUBLIC"));
+  }
+
+  @Test
+  public void compactNodeIsEqualToOriginal() {
+    Map<String, Object> rawNode = javaLibrary("foo");
+    Map<String, Object> compact = CompactRawNode.of(rawNode);
+
+    assertEquals(rawNode, compact);
+    assertEquals(compact, rawNode);
+    assertEquals(rawNode.hashCode(), compact.hashCode());
+    assertEquals(ImmutableList.copyOf(rawNode.keySet()), ImmutableList.copyOf(compact.keySet()));
+    assertEquals("foo", compact.get("name"));
+    assertTrue(compact.containsKey("deps"));
+    assertFalse(compact.containsKey("srcs"));
+    assertNull(compact.get("srcs"));
+  }
+
+  @Test
+  public void valuesAreSharedBetweenNodes() {
+    Map<String, Object> foo = CompactRawNode.of(javaLibrary("foo"));
+    Map<String, Object> bar = CompactRawNode.of(javaLibrary("bar"));
+
+    assertSame(foo.get("deps"), bar.get("deps"));
+    assertSame(foo.get("visibility"), bar.get("visibility"));
+    assertSame(foo.get("buck.type"), bar.get("buck.type"));
+    assertFalse(foo.equals(bar));
+  }
+
+  @Test
+  public void nodesWithDifferentlyOrderedAttributesAreEqual() {
+    Map<String, Object> foo = CompactRawNode.of(javaLibrary("foo"));
+    Map<String, Object> reordered =
+        CompactRawNode.of(
+            ImmutableMap.of(
+                "buck.type",
+                "java_library",
+                "name",
+                "foo",
+                "visibility",
+                ImmutableList.of("PUBLIC"),
+                "deps",
+                ImmutableList.of("//third-party:guava", "//third-party:jsr305")));
+
+    assertEquals(foo, reordered);
+    assertEquals(reordered, foo);
+    assertEquals(foo.hashCode(), reordered.hashCode());
+  }
+
+  @Test
+  public void nullValuesArePreserved() {
+    Map<String, Object> rawNode =
+        ImmutableMapWithNullValues.Builder.<String, Object>insertionOrder()
+            .put("name", "foo")
+            .put("out", null)
+            .put("srcs", Arrays.asList("a.txt", null))
+            .build();
+    Map<String, Object> compact = CompactRawNode.of(rawNode);
+
+    assertEquals(rawNode, compact);
+    assertTrue(compact.containsKey("out"));
+    assertNull(compact.get("out"));
+    assertEquals(Arrays.asList("a.txt", null), compact.get("srcs"));
+  }
+
+  @Test
+  public void copyOfKeepsOrderAndIsIdempotent() {
+    ImmutableSet<Map<String, Object>> compact =
+        CompactRawNode.copyOf(ImmutableList.of(javaLibrary("foo"), javaLibrary("bar")));
+
+    assertEquals("foo", Iterables.get(compact, 0).get("name"));
+    assertEquals("bar", Iterables.get(compact, 1).get("name"));
+    Map<String, Object> first = Iterables.get(compact, 0);
+    assertSame(first, CompactRawNode.of(first));
+    assertTrue(CompactRawNode.getEstimatedHeapBytes(compact) > 0);
+  }
+}
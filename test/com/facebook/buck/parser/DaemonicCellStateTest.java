@@ -18,6 +18,7 @@ package com.facebook.buck.parser;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.cli.FakeBuckConfig;
@@ -97,6 +98,19 @@ public class DaemonicCellStateTest {
         cache.lookupComputedNode(rootCell, target));
   }
 
+  @Test
+  public void testRawNodesHeapEstimateTracksInvalidation() throws BuildTargetException {
+    BuildTarget target =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//path/to:target");
+    assertEquals(0, state.getRawNodesEstimatedHeapBytes());
+
+    populateDummyRawNode(state, target);
+    assertTrue(state.getRawNodesEstimatedHeapBytes() > 0);
+
+    state.invalidatePath(filesystem.resolve("path/to/BUCK"));
+    assertEquals(0, state.getRawNodesEstimatedHeapBytes());
+  }
+
   @Test
   public void testCellNameDoesNotAffectInvalidation()
       throws BuildTargetException, IOException, InterruptedException {
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ParseCostLedgerTest {
+
+  private static ImmutableList<Map<String, Object>> rulesAndMetaRules(int rules, int includes) {
+    ImmutableList.Builder<Map<String, Object>> builder = ImmutableList.builder();
+    for (int i = 0; i < rules; i++) {
+      builder.add(ImmutableMap.of("name", "rule" + i, "buck.type", "java_library"));
+    }
+    ImmutableList.Builder<String> includePaths = ImmutableList.builder();
+    includePaths.add("BUCK");
+    for (int i = 0; i < includes; i++) {
+      includePaths.add("include" + i);
+    }
+    builder.add(ImmutableMap.of("__includes", includePaths.build()));
+    builder.add(ImmutableMap.of("__configs", ImmutableMap.of()));
+    builder.add(ImmutableMap.of("__env", ImmutableMap.of()));
+    builder.add(ImmutableMap.of("__stats", ImmutableMap.of("glob_time_micros", 1500)));
+    return builder.build();
+  }
+
+  @Test
+  public void recordsCostOfBuildFile() {
+    ParseCostLedger ledger = new ParseCostLedger();
+    Path buildFile = Paths.get("/project/foo/BUCK");
+
+    ledger.record(buildFile, TimeUnit.MILLISECONDS.toNanos(42), 1024, rulesAndMetaRules(3, 2));
+
+    assertEquals(
+        ImmutableList.of(ParseCost.of(buildFile.toString(), 42000, 1024, 3, 2, 1500)),
+        ledger.getCosts());
+  }
+
+  @Test
+  public void costsAreSortedByParseTime() {
+    ParseCostLedger ledger = new ParseCostLedger();
+    ledger.record(Paths.get("/project/cheap/BUCK"), 1000, 0, rulesAndMetaRules(1, 0));
+    ledger.record(Paths.get("/project/expensive/BUCK"), 5000000, 0, rulesAndMetaRules(1, 0));
+
+    assertEquals("/project/expensive/BUCK", ledger.getCosts().get(0).getBuildFile());
+    assertEquals("/project/cheap/BUCK", ledger.getCosts().get(1).getBuildFile());
+  }
+
+  @Test
+  public void ledgerFileKeepsLatestCostOfEachBuildFile() throws Exception {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    assertTrue(ParseCostLedger.readLedgerFile(filesystem).isEmpty());
+
+    ParseCostLedger first = new ParseCostLedger();
+    first.record(Paths.get("/project/a/BUCK"), 3000000, 10, rulesAndMetaRules(1, 0));
+    first.record(Paths.get("/project/b/BUCK"), 2000000, 20, rulesAndMetaRules(2, 0));
+    first.mergeIntoLedgerFile(filesystem);
+
+    ParseCostLedger second = new ParseCostLedger();
+    second.record(Paths.get("/project/a/BUCK"), 1000000, 30, rulesAndMetaRules(4, 1));
+    second.mergeIntoLedgerFile(filesystem);
+
+    assertEquals(
+        ImmutableList.of(
+            ParseCost.of("/project/b/BUCK", 2000, 20, 2, 0, 1500),
+            ParseCost.of("/project/a/BUCK", 1000, 30, 4, 1, 1500)),
+        ParseCostLedger.readLedgerFile(filesystem));
+  }
+
+  @Test
+  public void concurrentMergesKeepEachOthersCosts() throws Exception {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> merges = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        ParseCostLedger ledger = new ParseCostLedger();
+        ledger.record(Paths.get("/project/" + i + "/BUCK"), 1000000, i, rulesAndMetaRules(1, 0));
+        merges.add(
+            executor.submit(
+                () -> {
+                  ledger.mergeIntoLedgerFile(filesystem);
+                  return null;
+                }));
+      }
+      for (Future<?> merge : merges) {
+        merge.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(8, ParseCostLedger.readLedgerFile(filesystem).size());
+  }
+}
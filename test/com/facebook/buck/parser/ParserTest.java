@@ -96,6 +96,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.SortedMap;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Assert;
@@ -278,6 +279,89 @@ public class ParserTest {
                 Matchers.hasProperty("graph", equalTo(Optional.of(targetGraph))))));
   }
 
+  @Test
+  public void buildTargetGraphRecordsBuildFilesForSpeculativeParsing() throws Exception {
+    Path libBuildFile = cellRoot.resolve("lib/BUCK");
+    Files.createDirectories(libBuildFile.getParent());
+    Files.write(
+        libBuildFile,
+        ("genrule(name = 'lib', out = 'lib', cmd = 'lib')\n"
+                + "genrule(name = 'other', out = 'other', cmd = 'other')\n")
+            .getBytes(UTF_8));
+    Path binBuildFile = cellRoot.resolve("bin/BUCK");
+    Files.createDirectories(binBuildFile.getParent());
+    Files.write(
+        binBuildFile,
+        "genrule(name = 'bin', out = 'bin', cmd = 'bin', srcs = ['//lib:lib'])\n".getBytes(UTF_8));
+
+    BuildTarget binTarget = BuildTargetFactory.newInstance(cellRoot, "//bin", "bin");
+    ImmutableSet<BuildTarget> roots = ImmutableSet.of(binTarget);
+    assertThat(parser.getPermState().getTargetGraphPackages(roots), Matchers.empty());
+
+    parser.buildTargetGraph(eventBus, cell, false, executorService, roots);
+
+    ImmutableSet<BuildTarget> packages = parser.getPermState().getTargetGraphPackages(roots);
+    assertThat(
+        packages.stream().map(BuildTarget::getBasePath).collect(Collectors.toSet()),
+        equalTo(ImmutableSet.of(Paths.get("bin"), Paths.get("lib"))));
+  }
+
+  @Test
+  public void speculativeParsingOnlyCountsTheBytesOfNeededBuildFiles() throws Exception {
+    Path libBuildFile = cellRoot.resolve("lib/BUCK");
+    Files.createDirectories(libBuildFile.getParent());
+    Files.write(libBuildFile, "genrule(name = 'lib', out = 'lib', cmd = 'lib')\n".getBytes(UTF_8));
+    BuildTarget libTarget = BuildTargetFactory.newInstance(cellRoot, "//lib", "lib");
+    Cell speculativeCell =
+        new TestCellBuilder()
+            .setFilesystem(filesystem)
+            .setBuckConfig(
+                FakeBuckConfig.builder()
+                    .setFilesystem(filesystem)
+                    .setSections(
+                        ImmutableMap.of(
+                            "project",
+                            ImmutableMap.of("parallel_parsing", "true"),
+                            "parser",
+                            ImmutableMap.of("speculative_parsing_from_previous_build", "true")))
+                    .build())
+            .build();
+    DefaultTypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory();
+    Parser speculativeParser =
+        new Parser(
+            new BroadcastEventListener(),
+            speculativeCell.getBuckConfig().getView(ParserConfig.class),
+            typeCoercerFactory,
+            new ConstructorArgMarshaller(typeCoercerFactory));
+
+    PerBuildState state =
+        new PerBuildState(
+            speculativeParser,
+            eventBus,
+            executorService,
+            speculativeCell,
+            false,
+            PerBuildState.SpeculativeParsing.ENABLED);
+    try {
+      state.startSpeculativeParsing(ImmutableSet.of(libTarget));
+    } finally {
+      // Waits for the speculative parses to finish.
+      state.close();
+    }
+
+    // Nothing asked for the build file, it got parsed anyway.
+    assertTrue(
+        speculativeParser
+            .getPermState()
+            .getRawNodeCache()
+            .lookupComputedNode(speculativeCell, libBuildFile)
+            .isPresent());
+    assertEquals(0, state.getParseProcessedBytes());
+
+    state.countSpeculativeParseProcessedBytes(ImmutableSet.of(libTarget));
+    assertThat(state.getParseProcessedBytes(), Matchers.greaterThan(0L));
+  }
+
   @Test
   public void testMissingBuildRuleInValidFile()
       throws BuildFileParseException, BuildTargetException, IOException, InterruptedException {
@@ -1777,6 +1861,32 @@ public class ParserTest {
     assertThat(targets, equalTo(ImmutableList.of(ImmutableSet.of(foo), ImmutableSet.of(bar))));
   }
 
+  @Test
+  public void resolveTargetSpecsDoesNotCoerceTargetsFilteredOutByPattern() throws Exception {
+    BuildTarget test = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//foo:test");
+    Path buckFile = cellRoot.resolve("foo/BUCK");
+    Files.createDirectories(buckFile.getParent());
+    Files.write(
+        buckFile,
+        ("genrule(name='broken', out='broken', cmd='broken', srcs=1)\n"
+                + "sh_test(name='test', test='test.sh')\n")
+            .getBytes(UTF_8));
+
+    ImmutableList<ImmutableSet<BuildTarget>> targets =
+        parser.resolveTargetSpecs(
+            eventBus,
+            cell,
+            false,
+            executorService,
+            ImmutableList.of(
+                TargetNodePredicateSpec.of(
+                        BuildFileSpec.fromRecursivePath(Paths.get("foo"), cell.getRoot()))
+                    .withOnlyTests(true)),
+            PerBuildState.SpeculativeParsing.ENABLED,
+            ParserConfig.ApplyDefaultFlavorsMode.ENABLED);
+    assertThat(targets, equalTo(ImmutableList.of(ImmutableSet.of(test))));
+  }
+
   @Test
   public void defaultFlavorsInRuleArgsAppliedToTarget() throws Exception {
     // We depend on Xcode platforms for this test.
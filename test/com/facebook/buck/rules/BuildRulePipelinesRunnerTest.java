@@ -215,7 +215,8 @@ public class BuildRulePipelinesRunnerTest {
     }
 
     public PipelineTester startPipelineAtRule(int ruleNum) {
-      pipelineRunnableFuture = runner.runPipelineStartingAt(rules.get(ruleNum), executor);
+      pipelineRunnableFuture =
+          runner.runPipelineStartingAt(FakeBuildContext.NOOP_CONTEXT, rules.get(ruleNum), executor);
       return this;
     }
 
@@ -370,7 +371,7 @@ public class BuildRulePipelinesRunnerTest {
 
     @Override
     public RulePipelineStateFactory<TestPipelineState> getPipelineStateFactory() {
-      return TestPipelineState::new;
+      return (context, firstTarget) -> new TestPipelineState();
     }
   }
 }
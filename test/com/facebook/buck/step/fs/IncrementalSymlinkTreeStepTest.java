@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalSymlinkTreeStepTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private final Path root = Paths.get("symlink-tree-root");
+  private final Path source1 = Paths.get("source1");
+  private final Path source2 = Paths.get("source2");
+  private final Path source3 = Paths.get("source3");
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() throws InterruptedException, IOException {
+    filesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    context = TestExecutionContext.newInstance();
+    filesystem.writeContentsToPath("foo", source1);
+    filesystem.writeContentsToPath("bar", source2);
+    filesystem.writeContentsToPath("baz", source3);
+  }
+
+  private Object getLinkKey(Path link) throws IOException {
+    return filesystem
+        .readAttributes(root.resolve(link), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+        .fileKey();
+  }
+
+  @Test
+  public void onlyChangedLinksAreUpdated() throws InterruptedException, IOException {
+    Path unchanged = Paths.get("unchanged");
+    Path retargeted = Paths.get("dir", "retargeted");
+    Path removed = Paths.get("removed", "under", "directory");
+    new IncrementalSymlinkTreeStep(
+            filesystem,
+            root,
+            ImmutableMap.of(unchanged, source1, retargeted, source2, removed, source3))
+        .execute(context);
+    assertTrue(filesystem.exists(IncrementalSymlinkTreeStep.getManifestPath(root)));
+    Object unchangedKey = getLinkKey(unchanged);
+
+    Path added = Paths.get("dir", "added");
+    new IncrementalSymlinkTreeStep(
+            filesystem,
+            root,
+            ImmutableMap.of(unchanged, source1, retargeted, source3, added, source2))
+        .execute(context);
+
+    assertEquals(unchangedKey, getLinkKey(unchanged));
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve(unchanged)));
+    assertEquals(Optional.of("baz"), filesystem.readFirstLine(root.resolve(retargeted)));
+    assertEquals(Optional.of("bar"), filesystem.readFirstLine(root.resolve(added)));
+    assertFalse(filesystem.exists(root.resolve("removed")));
+  }
+
+  @Test
+  public void linksChangedSinceTheLastUpdateAreRecreated()
+      throws InterruptedException, IOException {
+    Path deleted = Paths.get("dir", "deleted");
+    Path replaced = Paths.get("dir", "replaced");
+    IncrementalSymlinkTreeStep step =
+        new IncrementalSymlinkTreeStep(
+            filesystem, root, ImmutableMap.of(deleted, source1, replaced, source2));
+    step.execute(context);
+    // Changes below the root directory leave it as it was.
+    filesystem.deleteFileAtPath(root.resolve(deleted));
+    filesystem.deleteFileAtPath(root.resolve(replaced));
+    filesystem.writeContentsToPath("edited", root.resolve(replaced));
+
+    step.execute(context);
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve(deleted)));
+    assertTrue(filesystem.isSymLink(root.resolve(replaced)));
+    assertEquals(Optional.of("bar"), filesystem.readFirstLine(root.resolve(replaced)));
+  }
+
+  @Test
+  public void treeRecreatedElsewhereIsRebuiltFromScratch()
+      throws InterruptedException, IOException {
+    Path link = Paths.get("link");
+    new IncrementalSymlinkTreeStep(filesystem, root, ImmutableMap.of(link, source1))
+        .execute(context);
+    // E.g. a non-incremental build recreating the tree, but leaving the manifest behind.
+    filesystem.deleteRecursivelyIfExists(root);
+    filesystem.mkdirs(root);
+
+    new IncrementalSymlinkTreeStep(filesystem, root, ImmutableMap.of(link, source1))
+        .execute(context);
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve(link)));
+  }
+}
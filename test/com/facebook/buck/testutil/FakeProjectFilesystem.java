@@ -17,6 +17,7 @@
 package com.facebook.buck.testutil;
 
 import com.facebook.buck.io.DefaultProjectFilesystemDelegate;
+import com.facebook.buck.io.FileMaterializer;
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
@@ -498,6 +499,20 @@ public class FakeProjectFilesystem extends ProjectFilesystem {
     directories.remove(path);
   }
 
+  @Override
+  public void moveToTrash(Path path) throws IOException {
+    deleteRecursivelyIfExists(path);
+  }
+
+  @Override
+  public void startCleaningTrash() {
+    try {
+      deleteRecursivelyIfExists(getBuckPaths().getTrashDir());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public void mkdirs(Path path) throws IOException {
     for (Path parent = path; parent != null; parent = parent.getParent()) {
@@ -674,6 +689,13 @@ public class FakeProjectFilesystem extends ProjectFilesystem {
     }
   }
 
+  @Override
+  public void copy(
+      Path source, Path target, CopySourceMode sourceMode, FileMaterializer.Strategy strategy)
+      throws IOException {
+    copy(source, target, sourceMode);
+  }
+
   /**
    * TODO(natthu): (1) Also traverse the directories. (2) Do not ignore return value of {@code
    * fileVisitor}.
@@ -718,6 +740,12 @@ public class FakeProjectFilesystem extends ProjectFilesystem {
     writeContentsToPath(readFileIfItExists(source).get(), target);
   }
 
+  @Override
+  public void copyFile(Path source, Path target, FileMaterializer.Strategy strategy)
+      throws IOException {
+    copyFile(source, target);
+  }
+
   @Override
   public void createSymLink(Path symLink, Path realFile, boolean force) throws IOException {
     if (!force) {
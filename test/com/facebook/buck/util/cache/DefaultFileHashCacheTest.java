@@ -18,6 +18,7 @@ package com.facebook.buck.util.cache;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -273,6 +274,83 @@ public class DefaultFileHashCacheTest {
     cache.get(ArchiveMemberPath.of(abiJarPath, memberPath));
   }
 
+  @Test
+  public void merkleDirectoryHashOnlyRehashesTheSubtreesContainingChanges()
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path dir = Paths.get("dir");
+    Path unchanged = dir.resolve("a").resolve("file");
+    Path changed = dir.resolve("b").resolve("file");
+    filesystem.mkdirs(unchanged.getParent());
+    filesystem.mkdirs(changed.getParent());
+    filesystem.writeContentsToPath("a", unchanged);
+    filesystem.writeContentsToPath("b", changed);
+    filesystem.writeContentsToPath("c", dir.resolve("file"));
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, fileHashCacheMode, false, DirectoryHashMode.MERKLE);
+    HashCode before = cache.get(dir);
+
+    filesystem.writeContentsToPath("changed", changed);
+    // Not invalidated, so only seen if the subtree containing it is rehashed.
+    filesystem.writeContentsToPath("not invalidated", unchanged);
+    cache.invalidateWithParents(changed);
+    HashCode after = cache.get(dir);
+
+    assertNotEquals(before, after);
+    filesystem.writeContentsToPath("a", unchanged);
+    assertEquals(
+        after,
+        DefaultFileHashCache.createDefaultFileHashCache(
+                filesystem, fileHashCacheMode, false, DirectoryHashMode.MERKLE)
+            .get(dir));
+  }
+
+  @Test
+  public void merkleDirectoryHashIsRecomputedWhenTheDirectoryIsReplaced()
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path dir = Paths.get("dir");
+    Path file = dir.resolve("sub").resolve("file");
+    filesystem.mkdirs(file.getParent());
+    filesystem.writeContentsToPath("before", file);
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, fileHashCacheMode, false, DirectoryHashMode.MERKLE);
+    HashCode before = cache.get(dir);
+
+    // Only the deletion of the directory itself is reported.
+    filesystem.deleteRecursivelyIfExists(dir);
+    filesystem.mkdirs(file.getParent());
+    filesystem.writeContentsToPath("after", file);
+    cache.invalidate(dir);
+
+    DefaultFileHashCache fresh =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, fileHashCacheMode, false, DirectoryHashMode.MERKLE);
+    assertNotEquals(before, cache.get(dir));
+    assertEquals(fresh.get(dir), cache.get(dir));
+    assertEquals(fresh.get(file), cache.get(file));
+  }
+
+  @Test
+  public void merkleDirectoryHashIgnoresEmptyDirectories()
+      throws IOException, InterruptedException {
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    Path dir = Paths.get("dir");
+    filesystem.mkdirs(dir.resolve("sub"));
+    filesystem.writeContentsToPath("contents", dir.resolve("sub").resolve("file"));
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, fileHashCacheMode, false, DirectoryHashMode.MERKLE);
+    HashCode before = cache.get(dir);
+
+    filesystem.mkdirs(dir.resolve("empty").resolve("empty"));
+    cache.invalidateAll();
+
+    assertEquals(before, cache.get(dir));
+  }
+
   @Test
   public void getSizeOfMissingPathThrows() throws IOException {
     ProjectFilesystem filesystem = new FakeProjectFilesystem();
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.zip.CustomJarOutputStream;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JarMemberHashIndexTest {
+
+  private static final long MAX_IN_MEMORY_BYTES = 1024 * 1024;
+  private static final Path JAR_PATH = Paths.get("lib.jar");
+  private static final HashCode JAR_HASH =
+      HashCode.fromString("0123456789abcdef0123456789abcdef01234567");
+  private static final ImmutableMap<Path, HashCode> MEMBER_HASHES =
+      ImmutableMap.of(
+          Paths.get("com/example/A.class"), HashCode.fromInt(1),
+          Paths.get("com/example/B.class"), HashCode.fromInt(2));
+
+  private ProjectFilesystem filesystem;
+  private AtomicInteger loads;
+  private JarMemberHashIndex.Loader loader;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    loads = new AtomicInteger();
+    loader =
+        () -> {
+          loads.incrementAndGet();
+          return MEMBER_HASHES;
+        };
+  }
+
+  @Test
+  public void jarIsOnlyReadOnce() throws IOException {
+    JarMemberHashIndex index = new JarMemberHashIndex(MAX_IN_MEMORY_BYTES);
+
+    assertEquals(MEMBER_HASHES, index.getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader));
+    filesystem.deleteFileAtPath(JarMemberHashIndex.getIndexPath(filesystem, JAR_PATH));
+    assertEquals(MEMBER_HASHES, index.getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader));
+
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void jarsOverTheMemoryBoundAreNotKeptInMemory() throws IOException {
+    JarMemberHashIndex index = new JarMemberHashIndex(100);
+
+    index.getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader);
+    filesystem.deleteFileAtPath(JarMemberHashIndex.getIndexPath(filesystem, JAR_PATH));
+    index.getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader);
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void indexIsReadBackByOtherProcesses() throws IOException {
+    new JarMemberHashIndex(MAX_IN_MEMORY_BYTES)
+        .getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader);
+    assertTrue(filesystem.exists(JarMemberHashIndex.getIndexPath(filesystem, JAR_PATH)));
+
+    assertEquals(
+        MEMBER_HASHES,
+        new JarMemberHashIndex(MAX_IN_MEMORY_BYTES)
+            .getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void changedJarReplacesItsIndex() throws IOException {
+    JarMemberHashIndex index = new JarMemberHashIndex(MAX_IN_MEMORY_BYTES);
+    index.getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader);
+
+    ImmutableMap<Path, HashCode> otherHashes =
+        index.getMemberHashes(filesystem, JAR_PATH, HashCode.fromInt(42), ImmutableMap::of);
+
+    assertEquals(ImmutableMap.of(), otherHashes);
+    assertEquals(
+        1,
+        filesystem
+            .getDirectoryContents(JarMemberHashIndex.getIndexPath(filesystem, JAR_PATH).getParent())
+            .size());
+    // The index now describes the new contents, so the old ones are read from the jar again.
+    new JarMemberHashIndex(MAX_IN_MEMORY_BYTES)
+        .getMemberHashes(filesystem, JAR_PATH, JAR_HASH, loader);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void jarContentHasherReadsHashesFromTheManifest() throws IOException {
+    try (CustomJarOutputStream jar =
+        ZipOutputStreams.newJarOutputStream(filesystem.newFileOutputStream(JAR_PATH))) {
+      jar.setEntryHashingEnabled(true);
+      jar.writeEntry(
+          "A.class", new ByteArrayInputStream("contents".getBytes(StandardCharsets.UTF_8)));
+    }
+    HashCode jarHash = filesystem.computeSha1(JAR_PATH).asHashCode();
+    JarMemberHashIndex index = new JarMemberHashIndex(MAX_IN_MEMORY_BYTES);
+
+    ImmutableMap<Path, HashCode> fromJar =
+        new JarContentHasher(filesystem, JAR_PATH, jarHash, index).getMemberHashes();
+    ImmutableMap<Path, HashCode> fromIndexFile =
+        new JarMemberHashIndex(MAX_IN_MEMORY_BYTES)
+            .getMemberHashes(filesystem, JAR_PATH, jarHash, loader);
+
+    assertEquals(ImmutableSet.of(Paths.get("A.class")), fromJar.keySet());
+    assertEquals(fromJar, fromIndexFile);
+    assertEquals(0, loads.get());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Compares hashing a cold set of files one at a time with hashing them in parallel. */
+public class ParallelFileHasherBenchmark {
+  @Param({"1000", "10000"})
+  private int filesCount = 1000;
+
+  @Param({"1", "4", "16"})
+  private int threads = 4;
+
+  private static final Random random = new Random(123);
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private List<Path> files = new ArrayList<>();
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    root = Files.createTempDirectory("parallel-file-hasher-benchmark");
+    filesystem = new ProjectFilesystem(root);
+    for (int i = 0; i < filesCount; i++) {
+      Path path = Paths.get("dir" + (i % 100), "File" + i + ".java");
+      filesystem.mkdirs(path.getParent());
+      // Source files are mostly a few KB, with a long tail of much larger ones.
+      byte[] contents = new byte[1024 + random.nextInt(i % 50 == 0 ? 1024 * 1024 : 16 * 1024)];
+      random.nextBytes(contents);
+      filesystem.writeBytesToPath(contents, path);
+      files.add(path);
+    }
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws IOException {
+    executor.shutdownNow();
+    MoreFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void hashFilesSequentiallyPerformance() throws Exception {
+    hashFilesSequentially();
+  }
+
+  @Benchmark
+  public void hashFilesSequentially() throws Exception {
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, FileHashCacheMode.DEFAULT);
+    for (Path file : files) {
+      cache.get(file);
+    }
+  }
+
+  @Test
+  public void hashFilesInParallelPerformance() throws Exception {
+    hashFilesInParallel();
+  }
+
+  @Benchmark
+  public void hashFilesInParallel() throws Exception {
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, FileHashCacheMode.DEFAULT);
+    new ParallelFileHasher(executor).hashAll(cache, files).get();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ParallelFileHasherTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ListeningExecutorService executor;
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void hashesUncachedFilesIntoTheCache() throws Exception {
+    ImmutableList.Builder<Path> paths = ImmutableList.builder();
+    for (int i = 0; i < 20; i++) {
+      Path path = Paths.get("File" + i + ".java");
+      filesystem.writeContentsToPath("class File" + i + " {}", path);
+      paths.add(path);
+    }
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, FileHashCacheMode.DEFAULT);
+    cache.set(Paths.get("File0.java"), HashCode.fromInt(42));
+
+    int hashed = new ParallelFileHasher(executor).hashAll(cache, paths.build()).get();
+
+    assertEquals(19, hashed);
+    assertEquals(Optional.of(HashCode.fromInt(42)), cache.getIfPresent(Paths.get("File0.java")));
+    for (Path path : paths.build().subList(1, 20)) {
+      assertEquals(
+          Optional.of(filesystem.computeSha1(path).asHashCode()), cache.getIfPresent(path));
+    }
+  }
+
+  @Test
+  public void skipsMissingAndIgnoredFiles() throws Exception {
+    Path output = Paths.get("buck-out/gen/Output.java");
+    filesystem.mkdirs(output.getParent());
+    filesystem.writeContentsToPath("output", output);
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, FileHashCacheMode.DEFAULT);
+
+    int hashed =
+        new ParallelFileHasher(executor)
+            .hashAll(cache, ImmutableList.of(Paths.get("Missing.java"), output))
+            .get();
+
+    assertEquals(0, hashed);
+  }
+}
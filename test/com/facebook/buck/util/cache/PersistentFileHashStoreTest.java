@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentFileHashStoreTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    path = Paths.get("SomeClass.java");
+    writeOldFile(path, "class SomeClass {}");
+  }
+
+  private void writeOldFile(Path path, String contents) throws IOException {
+    filesystem.writeContentsToPath(contents, path);
+    filesystem.setLastModifiedTime(
+        path, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+  }
+
+  private BasicFileAttributes stat(Path path) throws IOException {
+    return filesystem.readAttributes(path, BasicFileAttributes.class);
+  }
+
+  @Test
+  public void storedHashIsReturnedWhileFileIsUnchanged() throws IOException {
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    HashCode hashCode = filesystem.computeSha1(path).asHashCode();
+    store.put(path, stat(path), hashCode);
+
+    assertEquals(Optional.of(hashCode), store.get(path, stat(path)));
+
+    filesystem.writeContentsToPath("class SomeClass { int field; }", path);
+    assertFalse(store.get(path, stat(path)).isPresent());
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotStored() throws IOException {
+    filesystem.writeContentsToPath("class SomeClass {}", path);
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    store.put(path, stat(path), filesystem.computeSha1(path).asHashCode());
+
+    assertFalse(store.get(path, stat(path)).isPresent());
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void hashesSurviveSavingAndLoading() throws IOException {
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    HashCode hashCode = filesystem.computeSha1(path).asHashCode();
+    store.put(path, stat(path), hashCode);
+    store.save();
+
+    assertTrue(filesystem.exists(PersistentFileHashStore.getStorePath(filesystem)));
+    assertEquals(
+        Optional.of(hashCode), PersistentFileHashStore.load(filesystem).get(path, stat(path)));
+  }
+
+  @Test
+  public void invalidatingDropsTheHashesOfDeletedFiles() throws IOException {
+    Path otherPath = Paths.get("OtherClass.java");
+    writeOldFile(otherPath, "class OtherClass {}");
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    store.put(path, stat(path), filesystem.computeSha1(path).asHashCode());
+    store.put(otherPath, stat(otherPath), filesystem.computeSha1(otherPath).asHashCode());
+    store.save();
+
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, FileHashCacheMode.LOADING_CACHE, true);
+    filesystem.deleteFileAtPath(otherPath);
+    cache.invalidate(otherPath);
+    cache.persist();
+
+    assertEquals(1, PersistentFileHashStore.load(filesystem).size());
+    // Nothing is left behind next to the store.
+    assertEquals(
+        ImmutableList.of(PersistentFileHashStore.getStorePath(filesystem)),
+        ImmutableList.copyOf(
+            filesystem.getDirectoryContents(
+                PersistentFileHashStore.getStorePath(filesystem).getParent())));
+  }
+
+  @Test
+  public void verifyReportsWrongStoredHashes() throws IOException {
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    store.put(path, stat(path), HashCode.fromInt(42));
+
+    assertEquals(ImmutableList.of(path.toString()), store.verify());
+  }
+
+  @Test
+  public void defaultFileHashCacheUsesStoredHashes() throws IOException {
+    PersistentFileHashStore store = PersistentFileHashStore.load(filesystem);
+    HashCode storedHashCode = HashCode.fromInt(42);
+    store.put(path, stat(path), storedHashCode);
+    store.save();
+
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem, FileHashCacheMode.LOADING_CACHE, true);
+    assertEquals(storedHashCode, cache.get(path));
+
+    Path otherPath = Paths.get("OtherClass.java");
+    writeOldFile(otherPath, "class OtherClass {}");
+    HashCode otherHashCode = cache.get(otherPath);
+    cache.persist();
+
+    assertEquals(
+        Optional.of(otherHashCode),
+        PersistentFileHashStore.load(filesystem).get(otherPath, stat(otherPath)));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.FakeWatchmanClient;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.ProjectWatch;
+import com.facebook.buck.io.WatchmanClient;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class WatchmanFileHashCacheTest {
+
+  private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+  private static final HashCode WATCHMAN_HASH = HashCode.fromString(HASH);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private DefaultFileHashCache delegate;
+
+  @Before
+  public void setUp() throws InterruptedException, IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    filesystem.mkdirs(Paths.get("dir"));
+    filesystem.writeContentsToPath("tracked", Paths.get("dir/Tracked.java"));
+    filesystem.writeContentsToPath("untracked", Paths.get("dir/Untracked.java"));
+    delegate =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, FileHashCacheMode.DEFAULT);
+  }
+
+  private static ImmutableList<Object> query(Object nameExpression) {
+    return ImmutableList.of(
+        "query",
+        "/root",
+        ImmutableMap.of(
+            "relative_root",
+            "project",
+            "expression",
+            ImmutableList.of("allof", ImmutableList.of("type", "f"), nameExpression),
+            "fields",
+            ImmutableList.of("name", "content.sha1hex")));
+  }
+
+  private WatchmanFileHashCache createCache(
+      ImmutableMap<ImmutableList<Object>, ImmutableMap<String, Object>> queryResults,
+      boolean compareWithLocalHashes) {
+    return new WatchmanFileHashCache(
+        delegate,
+        new FakeWatchmanClient(0, queryResults),
+        ProjectWatch.of("/root", Optional.of("project")),
+        true,
+        compareWithLocalHashes);
+  }
+
+  @Test
+  public void hashesComeFromWatchman() throws IOException {
+    WatchmanFileHashCache cache =
+        createCache(
+            ImmutableMap.of(
+                query(ImmutableList.of("name", ImmutableList.of("dir/Tracked.java"), "wholename")),
+                ImmutableMap.of(
+                    "files",
+                    ImmutableList.of(
+                        ImmutableMap.of(
+                            "name", "dir/Tracked.java",
+                            "content.sha1hex", WATCHMAN_HASH.toString())))),
+            false);
+
+    assertEquals(WATCHMAN_HASH, cache.get(Paths.get("dir/Tracked.java")));
+    assertEquals(Optional.of(WATCHMAN_HASH), delegate.getIfPresent(Paths.get("dir/Tracked.java")));
+  }
+
+  @Test
+  public void directoriesAreFetchedInOneQueryWithLocalFallback() throws IOException {
+    Path untracked = Paths.get("dir/Untracked.java");
+    WatchmanFileHashCache cache =
+        createCache(
+            ImmutableMap.of(
+                query(ImmutableList.of("dirname", "dir")),
+                ImmutableMap.of(
+                    "files",
+                    ImmutableList.of(
+                        ImmutableMap.of(
+                            "name", "dir/Tracked.java",
+                            "content.sha1hex", WATCHMAN_HASH.toString()),
+                        ImmutableMap.of(
+                            "name", "dir/Untracked.java",
+                            "content.sha1hex", ImmutableMap.of("error", "untracked"))))),
+            false);
+
+    cache.get(Paths.get("dir"));
+
+    assertEquals(Optional.of(WATCHMAN_HASH), delegate.getIfPresent(Paths.get("dir/Tracked.java")));
+    assertEquals(
+        Optional.of(filesystem.computeSha1(untracked).asHashCode()),
+        delegate.getIfPresent(untracked));
+  }
+
+  @Test
+  public void comparisonPrefersLocalHashes() throws IOException {
+    Path tracked = Paths.get("dir/Tracked.java");
+    WatchmanFileHashCache cache =
+        createCache(
+            ImmutableMap.of(
+                query(ImmutableList.of("name", ImmutableList.of("dir/Tracked.java"), "wholename")),
+                ImmutableMap.of(
+                    "files",
+                    ImmutableList.of(
+                        ImmutableMap.of(
+                            "name", "dir/Tracked.java",
+                            "content.sha1hex", WATCHMAN_HASH.toString())))),
+            true);
+
+    assertEquals(filesystem.computeSha1(tracked).asHashCode(), cache.get(tracked));
+    assertEquals(4, cache.getStatsEvents().size());
+  }
+
+  @Test
+  public void concurrentMissesAreFetchedInOneQuery() throws Exception {
+    filesystem.writeContentsToPath("a", Paths.get("dir/A.java"));
+    filesystem.writeContentsToPath("b", Paths.get("dir/B.java"));
+    List<ImmutableSet<Object>> queriedNames = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch firstQueryStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirstQuery = new CountDownLatch(1);
+    WatchmanClient client =
+        new WatchmanClient() {
+          @Override
+          public Optional<? extends Map<String, ? extends Object>> queryWithTimeout(
+              long timeoutNanos, Object... query) throws InterruptedException {
+            List<?> expression = (List<?>) ((Map<?, ?>) query[2]).get("expression");
+            List<?> names = (List<?>) ((List<?>) expression.get(2)).get(1);
+            queriedNames.add(ImmutableSet.copyOf(names));
+            if (queriedNames.size() == 1) {
+              firstQueryStarted.countDown();
+              releaseFirstQuery.await();
+            }
+            return Optional.of(
+                ImmutableMap.of(
+                    "files",
+                    names
+                        .stream()
+                        .map(name -> ImmutableMap.of("name", name, "content.sha1hex", HASH))
+                        .collect(MoreCollectors.toImmutableList())));
+          }
+
+          @Override
+          public void close() {}
+        };
+    WatchmanFileHashCache cache =
+        new WatchmanFileHashCache(
+            delegate, client, ProjectWatch.of("/root", Optional.of("project")), true, false);
+
+    FutureTask<HashCode> tracked = new FutureTask<>(() -> cache.get(Paths.get("dir/Tracked.java")));
+    new Thread(tracked).start();
+    firstQueryStarted.await();
+    FutureTask<HashCode> a = new FutureTask<>(() -> cache.get(Paths.get("dir/A.java")));
+    FutureTask<HashCode> b = new FutureTask<>(() -> cache.get(Paths.get("dir/B.java")));
+    Thread aThread = new Thread(a);
+    Thread bThread = new Thread(b);
+    aThread.start();
+    bThread.start();
+    while (aThread.getState() != Thread.State.WAITING
+        || bThread.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    releaseFirstQuery.countDown();
+
+    assertEquals(WATCHMAN_HASH, tracked.get());
+    assertEquals(WATCHMAN_HASH, a.get());
+    assertEquals(WATCHMAN_HASH, b.get());
+    assertEquals(
+        ImmutableList.of(
+            ImmutableSet.of("dir/Tracked.java"), ImmutableSet.of("dir/A.java", "dir/B.java")),
+        queriedNames);
+  }
+}
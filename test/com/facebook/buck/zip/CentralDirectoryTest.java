@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CentralDirectoryTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readsTheFileHeadersOfZipsWithAComment() throws IOException {
+    Path zip = temporaryFolder.newFile("comment.zip").toPath();
+    byte[] contents = Strings.repeat("Some contents. ", 100).getBytes(UTF_8);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.setComment("A comment.");
+      out.putNextEntry(new ZipEntry("dir/"));
+      out.putNextEntry(new ZipEntry("dir/file.txt"));
+      out.write(contents);
+      ZipEntry stored = new ZipEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(0);
+      stored.setCrc(0);
+      out.putNextEntry(stored);
+      out.closeEntry();
+    }
+
+    ImmutableList<CentralDirectory.FileHeader> headers;
+    try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+      headers = CentralDirectory.readFileHeaders(channel).get();
+      assertEquals(3, headers.size());
+
+      try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+        for (CentralDirectory.FileHeader header : headers) {
+          assertTrue(header.describes(zipFile.getEntry(header.getName())));
+        }
+      }
+
+      CentralDirectory.FileHeader file = headers.get(1);
+      assertEquals("dir/file.txt", file.getName());
+      assertEquals(ZipEntry.DEFLATED, file.getMethod());
+      assertFalse(file.isEncrypted());
+      PrecompressedContents copied =
+          PrecompressedContents.ofDeflatedData(
+              CentralDirectory.readCompressedData(channel, file), file.getCrc(), file.getSize());
+      assertArrayEquals(contents, copied.getContents());
+    }
+  }
+
+  @Test
+  public void readsNothingFromFilesThatAreNotZips() throws IOException {
+    Path notAZip = temporaryFolder.newFile("not-a.zip").toPath();
+    Files.write(notAZip, Strings.repeat("Not a zip. ", 100).getBytes(UTF_8));
+
+    try (FileChannel channel = FileChannel.open(notAZip, StandardOpenOption.READ)) {
+      assertEquals(Optional.empty(), CentralDirectory.readFileHeaders(channel));
+    }
+  }
+}
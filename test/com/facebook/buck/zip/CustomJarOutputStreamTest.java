@@ -28,6 +28,7 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.Deflater;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -85,4 +86,25 @@ public class CustomJarOutputStreamTest {
       }
     }
   }
+
+  @Test
+  public void precompressedEntriesAreHashedLikeStreamedOnes() throws IOException {
+    byte[] contents = "contents".getBytes(StandardCharsets.UTF_8);
+    writer.writePrecompressedEntry(
+        new CustomZipEntry("A"),
+        PrecompressedContents.compress(contents, Deflater.DEFAULT_COMPRESSION));
+    writer.close();
+
+    try (JarInputStream jar = new JarInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      jar.getNextJarEntry();
+      JarEntry manifestEntry = jar.getNextJarEntry();
+      assertEquals(JarFile.MANIFEST_NAME, manifestEntry.getName());
+      Manifest manifest = new Manifest();
+      manifest.read(jar);
+
+      assertEquals(
+          Hashing.murmur3_128().hashBytes(contents).toString(),
+          manifest.getEntries().get("A").getValue("Murmur3-128-Digest"));
+    }
+  }
 }
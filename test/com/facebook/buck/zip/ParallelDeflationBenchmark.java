@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static com.facebook.buck.zip.ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP;
+import static org.junit.Assert.assertArrayEquals;
+
+import com.facebook.buck.io.MoreFiles;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Compares writing a large jar deflating one entry at a time with deflating them in parallel. */
+public class ParallelDeflationBenchmark {
+  @Param({"1000", "10000"})
+  private int entriesCount = 1000;
+
+  private static final Random random = new Random(123);
+
+  private Path root;
+  private List<byte[]> contents = new ArrayList<>();
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    root = Files.createTempDirectory("parallel-deflation-benchmark");
+    for (int i = 0; i < entriesCount; i++) {
+      // Class files are mostly a few KB, with a long tail of much larger resources. Only half of
+      // the bytes are random so that there is something to compress.
+      byte[] entry = new byte[1024 + random.nextInt(i % 50 == 0 ? 1024 * 1024 : 16 * 1024)];
+      random.nextBytes(entry);
+      for (int j = 0; j < entry.length; j += 2) {
+        entry[j] = (byte) (j % 16);
+      }
+      contents.add(entry);
+    }
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws IOException {
+    MoreFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void parallelDeflationWritesTheSameJar() throws Exception {
+    Path sequential = writeJar("sequential.jar", false);
+    Path parallel = writeJar("parallel.jar", true);
+    assertArrayEquals(Files.readAllBytes(sequential), Files.readAllBytes(parallel));
+  }
+
+  @Benchmark
+  public void deflateSequentially() throws Exception {
+    Files.delete(writeJar("sequential.jar", false));
+  }
+
+  @Benchmark
+  public void deflateInParallel() throws Exception {
+    Files.delete(writeJar("parallel.jar", true));
+  }
+
+  private Path writeJar(String name, boolean deflateInParallel) throws IOException {
+    Path jar = root.resolve(name);
+    try (CustomJarOutputStream out =
+        ZipOutputStreams.newJarOutputStream(jar, APPEND_TO_ZIP, deflateInParallel)) {
+      for (int i = 0; i < contents.size(); i++) {
+        out.putNextEntry(new CustomZipEntry("com/example/Class" + i + ".class"));
+        out.write(contents.get(i));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
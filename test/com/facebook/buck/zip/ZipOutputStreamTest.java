@@ -32,13 +32,16 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.io.MorePosixFilePermissions;
 import com.facebook.buck.testutil.Zip;
+import com.facebook.buck.timing.DefaultClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -53,6 +56,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
@@ -293,6 +298,126 @@ public class ZipOutputStreamTest {
       assertArrayEquals(expected, seen);
     }
 
+    @Test
+    public void precompressedEntriesAreWrittenExactlyLikeStreamedOnes() throws IOException {
+      Path reference = Files.createTempFile("reference", ".zip");
+      String packageName = getClass().getPackage().getName().replace('.', '/');
+      URL sample = Resources.getResource(packageName + "/macbeth.properties");
+      byte[] input = Resources.toByteArray(sample);
+      int[] levels = {Deflater.DEFAULT_COMPRESSION, BEST_COMPRESSION, Deflater.BEST_SPEED};
+
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(reference, mode)) {
+        for (int level : levels) {
+          out.putNextEntry(newEntry("level" + level, level));
+          // Stream the contents in awkward chunks to make sure the chunking doesn't matter.
+          for (int offset = 0; offset < input.length; offset += 1000) {
+            out.write(input, offset, Math.min(1000, input.length - offset));
+          }
+        }
+        out.putNextEntry(newEntry("empty", Deflater.DEFAULT_COMPRESSION));
+      }
+
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        for (int level : levels) {
+          out.writePrecompressedEntry(
+              newEntry("level" + level, level), PrecompressedContents.compress(input, level));
+        }
+        out.writePrecompressedEntry(
+            newEntry("empty", Deflater.DEFAULT_COMPRESSION),
+            PrecompressedContents.compress(new byte[0], Deflater.DEFAULT_COMPRESSION));
+      }
+
+      assertArrayEquals(Files.readAllBytes(reference), Files.readAllBytes(output));
+    }
+
+    @Test
+    public void deflatingInParallelWritesTheSameZip() throws IOException {
+      Path reference = Files.createTempFile("reference", ".zip");
+      String packageName = getClass().getPackage().getName().replace('.', '/');
+      byte[] input =
+          Resources.toByteArray(Resources.getResource(packageName + "/macbeth.properties"));
+
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(reference, mode)) {
+        writeEntriesOfAllKinds(out, input);
+      }
+      // With a low bound on the pending bytes, the larger entries are streamed to the zip as they
+      // are written, in between the deflated ones.
+      for (long maxPendingBytes : new long[] {64 * 1024 * 1024, 4 * input.length}) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (CustomZipOutputStream out =
+            new CustomZipOutputStream(newParallelDeflatingImpl(output, pool, maxPendingBytes))) {
+          writeEntriesOfAllKinds(out, input);
+        } finally {
+          pool.shutdown();
+        }
+
+        assertArrayEquals(Files.readAllBytes(reference), Files.readAllBytes(output));
+      }
+    }
+
+    @Test
+    public void deflatingInParallelReportsDuplicatesAsTheyArePut() throws IOException {
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try (CustomZipOutputStream out =
+          new CustomZipOutputStream(newParallelDeflatingImpl(output, pool, 64 * 1024 * 1024))) {
+        out.putNextEntry(new ZipEntry("example.txt"));
+        if (mode == THROW_EXCEPTION) {
+          try {
+            out.putNextEntry(new ZipEntry("example.txt"));
+            fail("Expected the duplicate entry to be rejected");
+          } catch (ZipException e) {
+            assertEquals("duplicate entry: example.txt", e.getMessage());
+          }
+        } else {
+          out.putNextEntry(new ZipEntry("example.txt"));
+        }
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    private ParallelDeflatingZipOutputStreamImpl newParallelDeflatingImpl(
+        Path zip, ForkJoinPool pool, long maxPendingBytes) throws IOException {
+      return new ParallelDeflatingZipOutputStreamImpl(
+          ZipOutputStreams.newImpl(
+              new BufferedOutputStream(Files.newOutputStream(zip)), mode, new DefaultClock()),
+          mode == THROW_EXCEPTION,
+          pool,
+          maxPendingBytes);
+    }
+
+    private void writeEntriesOfAllKinds(CustomZipOutputStream out, byte[] input)
+        throws IOException {
+      // Write more entries than are ever pending at once.
+      for (int i = 0; i < 200; i++) {
+        int level = i % 3 == 0 ? BEST_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+        out.putNextEntry(newEntry("dir" + i + "/", level));
+        out.putNextEntry(newEntry("dir" + i + "/empty", level));
+        out.putNextEntry(newEntry("dir" + i + "/text", level));
+        out.write(input, 0, i * input.length / 200);
+      }
+
+      CustomZipEntry stored = new CustomZipEntry("stored");
+      stored.setCompressionLevel(NO_COMPRESSION);
+      stored.setSize(input.length);
+      stored.setCompressedSize(input.length);
+      stored.setCrc(Hashing.crc32().hashBytes(input).padToLong());
+      out.putNextEntry(stored);
+      out.write(input);
+
+      out.writePrecompressedEntry(
+          newEntry("precompressed", Deflater.DEFAULT_COMPRESSION),
+          PrecompressedContents.compress(input, Deflater.DEFAULT_COMPRESSION));
+    }
+
+    private CustomZipEntry newEntry(String name, int compressionLevel) {
+      CustomZipEntry entry = new CustomZipEntry(name);
+      if (compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+        entry.setCompressionLevel(compressionLevel);
+      }
+      return entry;
+    }
+
     @Test
     public void testThatExternalAttributesFieldIsFunctional() throws IOException {
 